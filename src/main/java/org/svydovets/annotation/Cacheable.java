@@ -0,0 +1,72 @@
+package org.svydovets.annotation;
+
+import org.svydovets.cache.CacheStorageType;
+import org.svydovets.cache.EvictionPolicy;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * The {@code Cacheable} annotation marks an entity whose state is kept in the second-level cache
+ * shared by all sessions of a {@code SessionFactory}. It is meant for data that is read often and
+ * changed rarely, such as countries, plans or configuration rows.
+ *
+ * <p>Each cacheable entity gets its own cache region. Loading the entity by its identifier, directly
+ * or through a {@code @ManyToOne}/{@code @OneToOne} association, is served from the region when the
+ * state is cached, and updating or removing the entity invalidates the cached state.</p>
+ *
+ * <p>Example usage:</p>
+ * <pre>{@code
+ * @Entity
+ * @Table(name = "countries")
+ * @Cacheable(maxEntries = 500, timeToLiveSeconds = 3600)
+ * public class Country {
+ *     // class body
+ * }
+ * }</pre>
+ *
+ * @see org.svydovets.cache.SecondLevelCache
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface Cacheable {
+
+    /**
+     * Specifies the maximum number of entities kept in the cache region.
+     *
+     * @return the maximum number of cached entities
+     */
+    int maxEntries() default 1000;
+
+    /**
+     * Specifies how long the cached state of an entity stays valid after it was put into the cache.
+     *
+     * @return the time to live in seconds, {@code 0} means the state never expires
+     */
+    long timeToLiveSeconds() default 0;
+
+    /**
+     * Specifies the policy choosing the entities to evict once the region is full. Only applies to
+     * regions stored on the heap.
+     *
+     * @return the eviction policy
+     */
+    EvictionPolicy eviction() default EvictionPolicy.W_TINY_LFU;
+
+    /**
+     * Specifies where the region keeps the cached state.
+     *
+     * @return the storage type
+     */
+    CacheStorageType storage() default CacheStorageType.HEAP;
+
+    /**
+     * Specifies the amount of direct memory, or of the file, the region may use when stored off-heap or in
+     * a memory-mapped file.
+     *
+     * @return the off-heap capacity in megabytes
+     */
+    long offHeapCapacityMegabytes() default 64;
+}
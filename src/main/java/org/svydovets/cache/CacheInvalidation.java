@@ -0,0 +1,152 @@
+package org.svydovets.cache;
+
+import org.svydovets.session.EntityKey;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * The changes of one committed transaction (or one auto-committed statement) that make cached data of other
+ * nodes stale, as sent through a {@link CacheInvalidationTransport}.
+ *
+ * <p>An invalidation is coalesced: each entity and table appears once, and once more than
+ * {@value #MAX_KEYS_PER_ENTITY_TYPE} entities of a type were changed, the whole region of the type is
+ * invalidated instead of listing them.</p>
+ *
+ * @param origin      the id of the {@link SecondLevelCache} the changes were made through
+ * @param entityKeys  the entities whose cached state is stale
+ * @param entityTypes the entity types whose cached state is stale altogether
+ * @param tables      the tables whose cached query results are stale
+ */
+public record CacheInvalidation(String origin, Set<EntityKey<?>> entityKeys, Set<Class<?>> entityTypes,
+                                Set<String> tables) {
+
+    public static final int MAX_KEYS_PER_ENTITY_TYPE = 64;
+
+    private static final String TABLE = "T";
+    private static final String ENTITY_TYPE = "A";
+    private static final String ENTITY_KEY = "K";
+    private static final String SEPARATOR = "\t";
+    private static final Map<Class<?>, String> ID_TAGS = Map.of(
+            Long.class, "L", Integer.class, "I", Short.class, "H", String.class, "S", UUID.class, "U");
+
+    public CacheInvalidation {
+        entityKeys = Set.copyOf(entityKeys);
+        entityTypes = Set.copyOf(entityTypes);
+        tables = Set.copyOf(tables);
+    }
+
+    /**
+     * Creates a coalesced invalidation.
+     *
+     * @param origin     the id of the cache the changes were made through
+     * @param entityKeys the changed entities
+     * @param tables     the changed tables
+     * @return the invalidation
+     */
+    public static CacheInvalidation of(String origin, Set<EntityKey<?>> entityKeys, Set<String> tables) {
+        Map<Class<?>, Integer> keysPerType = new HashMap<>();
+        entityKeys.forEach(entityKey -> keysPerType.merge(entityKey.entityType(), 1, Integer::sum));
+
+        Set<Class<?>> entityTypes = new LinkedHashSet<>();
+        keysPerType.forEach((entityType, count) -> {
+            if (count > MAX_KEYS_PER_ENTITY_TYPE) {
+                entityTypes.add(entityType);
+            }
+        });
+        Set<EntityKey<?>> remainingKeys = new LinkedHashSet<>();
+        entityKeys.stream()
+                .filter(entityKey -> !entityTypes.contains(entityKey.entityType()))
+                .forEach(remainingKeys::add);
+
+        return new CacheInvalidation(origin, remainingKeys, entityTypes, tables);
+    }
+
+    public boolean isEmpty() {
+        return entityKeys.isEmpty() && entityTypes.isEmpty() && tables.isEmpty();
+    }
+
+    /**
+     * Encodes the invalidation as lines of text: the origin followed by a line per table, entity type and entity.
+     * Entities whose id cannot be written as text are invalidated with their whole type.
+     *
+     * @return the lines
+     */
+    public List<String> toLines() {
+        List<String> lines = new ArrayList<>();
+        lines.add(origin);
+        tables.forEach(table -> lines.add(TABLE + SEPARATOR + table));
+
+        Set<Class<?>> invalidatedTypes = new LinkedHashSet<>(entityTypes);
+        for (EntityKey<?> entityKey : entityKeys) {
+            String idTag = ID_TAGS.get(entityKey.id().getClass());
+            String id = entityKey.id().toString();
+            if (idTag == null || id.contains(SEPARATOR) || id.contains("\n")) {
+                invalidatedTypes.add(entityKey.entityType());
+            } else {
+                lines.add(String.join(SEPARATOR, ENTITY_KEY, entityKey.entityType().getName(), idTag, id));
+            }
+        }
+        invalidatedTypes.forEach(entityType -> lines.add(ENTITY_TYPE + SEPARATOR + entityType.getName()));
+
+        return lines;
+    }
+
+    /**
+     * Decodes an invalidation out of the lines built by {@link #toLines()}. Lines referencing unknown entity
+     * classes are skipped.
+     *
+     * @param lines the lines
+     * @return the invalidation
+     * @throws IllegalArgumentException if the lines are malformed
+     */
+    public static CacheInvalidation fromLines(List<String> lines) {
+        if (lines.isEmpty()) {
+            throw new IllegalArgumentException("Cache invalidation has no origin");
+        }
+
+        Set<EntityKey<?>> entityKeys = new LinkedHashSet<>();
+        Set<Class<?>> entityTypes = new LinkedHashSet<>();
+        Set<String> tables = new LinkedHashSet<>();
+        for (String line : lines.subList(1, lines.size())) {
+            String[] parts = line.split(SEPARATOR, 4);
+            if (parts.length < (ENTITY_KEY.equals(parts[0]) ? 4 : 2)) {
+                throw new IllegalArgumentException(String.format("Malformed cache invalidation: %s", line));
+            }
+            switch (parts[0]) {
+                case TABLE -> tables.add(parts[1]);
+                case ENTITY_TYPE -> loadClass(parts[1]).ifPresent(entityTypes::add);
+                case ENTITY_KEY -> loadClass(parts[1])
+                        .ifPresent(entityType -> entityKeys.add(new EntityKey<>(entityType, parseId(parts[2], parts[3]))));
+                default -> throw new IllegalArgumentException(String.format("Malformed cache invalidation: %s", line));
+            }
+        }
+
+        return new CacheInvalidation(lines.get(0), entityKeys, entityTypes, tables);
+    }
+
+    private static Object parseId(String idTag, String id) {
+        return switch (idTag) {
+            case "L" -> Long.valueOf(id);
+            case "I" -> Integer.valueOf(id);
+            case "H" -> Short.valueOf(id);
+            case "S" -> id;
+            case "U" -> UUID.fromString(id);
+            default -> throw new IllegalArgumentException(String.format("Unknown id type of cache invalidation: %s", idTag));
+        };
+    }
+
+    private static Optional<Class<?>> loadClass(String className) {
+        try {
+            return Optional.of(Class.forName(className));
+        } catch (ClassNotFoundException exception) {
+            return Optional.empty();
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package org.svydovets.cache;
+
+/**
+ * Carries {@link CacheInvalidation}s between the second-level caches of the nodes of an application sharing
+ * one database, so that a node evicts what other nodes changed.
+ *
+ * <p>Each cache publishes the invalidations of its committed transactions and subscribes to the invalidations
+ * of the others; it recognizes and skips its own by their origin. Delivery is best effort: a transport that
+ * may have missed invalidations reports it to its listeners, which then drop everything they cached.</p>
+ *
+ * @see LoopbackCacheInvalidationTransport
+ * @see PostgresCacheInvalidationTransport
+ */
+public interface CacheInvalidationTransport extends AutoCloseable {
+
+    /**
+     * Sends the invalidation to all subscribed caches.
+     *
+     * @param invalidation the invalidation
+     */
+    void publish(CacheInvalidation invalidation);
+
+    /**
+     * Registers a listener of the invalidations sent through the transport.
+     *
+     * @param listener the listener
+     */
+    void subscribe(Listener listener);
+
+    /**
+     * Stops receiving and sending invalidations.
+     */
+    @Override
+    default void close() {
+    }
+
+    /**
+     * Receives the invalidations sent through a transport.
+     */
+    interface Listener {
+
+        /**
+         * Called for each invalidation sent through the transport, including the ones of the listener itself.
+         *
+         * @param invalidation the invalidation
+         */
+        void onInvalidation(CacheInvalidation invalidation);
+
+        /**
+         * Called when invalidations may have been lost, e.g. after the transport reconnected.
+         */
+        void onInvalidationsLost();
+    }
+}
@@ -0,0 +1,284 @@
+package org.svydovets.cache;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntFunction;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+
+/**
+ * The part of the {@link SecondLevelCache} holding the cached state of one entity type, keyed by entity id.
+ *
+ * <p>The region stores disassembled state - an array with one value per field of the entity - instead of
+ * live entity instances, so each session assembles its own instances and cannot change what other sessions
+ * read. The region is split into lock-striped segments, each guarding its own {@link CacheStorage}, so
+ * concurrent sessions reading different entities rarely contend on the same lock.</p>
+ *
+ * <p>State restored from a previous run of the application by a persistent storage is not trusted as is: it is
+ * only returned once a validator supplied by the reader confirms it is still current.</p>
+ */
+public class CacheRegion {
+
+    private static final int MAX_STRIPES = 16;
+    private static final int MIN_ENTRIES_PER_STRIPE = 64;
+
+    private final String name;
+    private final int maxEntries;
+    private final long timeToLiveNanos;
+    private final LongSupplier ticker;
+    private final Stripe[] stripes;
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder putCount = new LongAdder();
+
+    /**
+     * Constructs an empty region.
+     *
+     * @param name           the name of the region
+     * @param maxEntries     the maximum number of cached entities
+     * @param timeToLive     how long a cached state stays valid, {@link Duration#ZERO} means forever
+     * @param evictionPolicy the policy evicting entities once the region is full
+     * @throws IllegalArgumentException if {@code maxEntries} is less than 1 or {@code timeToLive} is negative
+     */
+    public CacheRegion(String name, int maxEntries, Duration timeToLive, EvictionPolicy evictionPolicy) {
+        this(name, maxEntries, timeToLive, evictionPolicy::createStorage, System::nanoTime);
+    }
+
+    CacheRegion(String name, int maxEntries, Duration timeToLive, EvictionPolicy evictionPolicy, LongSupplier ticker) {
+        this(name, maxEntries, timeToLive, evictionPolicy::createStorage, ticker);
+    }
+
+    /**
+     * Constructs an empty region backed by the given storages.
+     *
+     * @param name           the name of the region
+     * @param maxEntries     the maximum number of cached entities
+     * @param timeToLive     how long a cached state stays valid, {@link Duration#ZERO} means forever
+     * @param storageFactory creates the storage of a stripe out of its maximum number of entries
+     * @param ticker         the source of the current time in nanoseconds
+     */
+    CacheRegion(String name, int maxEntries, Duration timeToLive,
+                IntFunction<CacheStorage<Object, CachedEntityState>> storageFactory, LongSupplier ticker) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException(String.format("Maximum entries of cache region %s cannot be less than 1", name));
+        }
+        if (timeToLive.isNegative()) {
+            throw new IllegalArgumentException(String.format("Time to live of cache region %s cannot be negative", name));
+        }
+        this.name = name;
+        this.maxEntries = maxEntries;
+        this.timeToLiveNanos = timeToLive.toNanos();
+        this.ticker = ticker;
+
+        int stripesCount = stripesCount(maxEntries);
+        int stripeMaxEntries = (maxEntries + stripesCount - 1) / stripesCount;
+        this.stripes = new Stripe[stripesCount];
+        for (int i = 0; i < stripesCount; i++) {
+            stripes[i] = new Stripe(storageFactory.apply(stripeMaxEntries));
+        }
+    }
+
+    /**
+     * Returns a copy of the cached state of the entity. State restored from a previous run is not returned.
+     *
+     * @param id the entity id
+     * @return the state, or {@code null} if the entity is not cached or its state has expired
+     */
+    public Object[] get(Object id) {
+        return get(id, null);
+    }
+
+    /**
+     * Returns a copy of the cached state of the entity, validating state restored from a previous run first.
+     * The validator runs outside of the region locks; valid state is kept as current, invalid state is evicted.
+     *
+     * @param id                     the entity id
+     * @param restoredStateValidator tells whether restored state is still current, {@code null} to ignore it
+     * @return the state, or {@code null} if the entity is not cached, its state has expired or is not valid
+     */
+    public Object[] get(Object id, Predicate<Object[]> restoredStateValidator) {
+        Stripe stripe = stripeOf(id);
+        CachedEntityState cachedState;
+        stripe.lock.lock();
+        try {
+            cachedState = stripe.storage.get(id);
+            if (cachedState != null && cachedState.isExpired(ticker.getAsLong())) {
+                stripe.storage.remove(id);
+                cachedState = null;
+            }
+        } finally {
+            stripe.lock.unlock();
+        }
+
+        if (cachedState != null && cachedState.restored()) {
+            cachedState = restoredStateValidator != null
+                    ? validateRestoredState(stripe, id, cachedState, restoredStateValidator)
+                    : null;
+        }
+
+        if (cachedState == null) {
+            missCount.increment();
+            return null;
+        }
+        hitCount.increment();
+        return cachedState.state().clone();
+    }
+
+    /**
+     * Caches a copy of the state of the entity.
+     *
+     * @param id    the entity id
+     * @param state the disassembled state of the entity
+     */
+    public void put(Object id, Object[] state) {
+        long expiresAt = timeToLiveNanos == 0 ? CachedEntityState.NEVER_EXPIRES : ticker.getAsLong() + timeToLiveNanos;
+        CachedEntityState cachedState = new CachedEntityState(state.clone(), expiresAt);
+
+        Stripe stripe = stripeOf(id);
+        stripe.lock.lock();
+        try {
+            stripe.storage.put(id, cachedState);
+        } finally {
+            stripe.lock.unlock();
+        }
+        putCount.increment();
+    }
+
+    /**
+     * Removes the cached state of the entity.
+     *
+     * @param id the entity id
+     */
+    public void evict(Object id) {
+        Stripe stripe = stripeOf(id);
+        stripe.lock.lock();
+        try {
+            stripe.storage.remove(id);
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    /**
+     * Removes the cached state of all entities of the region.
+     */
+    public void evictAll() {
+        for (Stripe stripe : stripes) {
+            stripe.lock.lock();
+            try {
+                stripe.storage.clear();
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Closes the storages of the region, e.g. to persist them before the application stops. The region must
+     * not be used afterwards.
+     */
+    public void close() {
+        for (Stripe stripe : stripes) {
+            stripe.lock.lock();
+            try {
+                stripe.storage.close();
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Returns the number of cached entities, including expired ones that have not been read since.
+     *
+     * @return the number of cached entities
+     */
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            stripe.lock.lock();
+            try {
+                size += stripe.storage.size();
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+
+        return size;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    public long getPutCount() {
+        return putCount.sum();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("CacheRegion[%s, size=%d/%d, hits=%d, misses=%d, puts=%d]",
+                name, size(), maxEntries, getHitCount(), getMissCount(), getPutCount());
+    }
+
+    /**
+     * Returns the number of lock stripes of a region of the given size.
+     */
+    static int stripesCount(int maxEntries) {
+        return Math.min(MAX_STRIPES, Integer.highestOneBit(Math.max(1, maxEntries / MIN_ENTRIES_PER_STRIPE)));
+    }
+
+    /**
+     * Replaces restored state confirmed by the validator with current state, or evicts it. Either is skipped
+     * if the entry was changed while the validator ran.
+     */
+    private CachedEntityState validateRestoredState(Stripe stripe, Object id, CachedEntityState restoredState,
+                                                    Predicate<Object[]> validator) {
+        boolean valid = validator.test(restoredState.state().clone());
+        CachedEntityState validState = new CachedEntityState(restoredState.state(), restoredState.expiresAt());
+        stripe.lock.lock();
+        try {
+            CachedEntityState cachedState = stripe.storage.get(id);
+            if (cachedState == null || !cachedState.restored()) {
+                return null;
+            }
+            if (valid) {
+                stripe.storage.put(id, validState);
+                return validState;
+            }
+            stripe.storage.remove(id);
+            return null;
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    private Stripe stripeOf(Object id) {
+        int hash = id.hashCode();
+        return stripes[(hash ^ (hash >>> 16)) & (stripes.length - 1)];
+    }
+
+    private static final class Stripe {
+
+        private final ReentrantLock lock = new ReentrantLock();
+        private final CacheStorage<Object, CachedEntityState> storage;
+
+        private Stripe(CacheStorage<Object, CachedEntityState> storage) {
+            this.storage = storage;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package org.svydovets.cache;
+
+/**
+ * A bounded key-value storage backing a stripe of a {@link CacheRegion}. The storage decides on its own
+ * which entries to evict once it is full.
+ *
+ * <p>Implementations are not thread-safe: the region guards each storage by the lock of its stripe.</p>
+ *
+ * @param <K> the type of the keys
+ * @param <V> the type of the values
+ */
+public interface CacheStorage<K, V> {
+
+    /**
+     * Returns the value stored for the key and records the access.
+     *
+     * @param key the key
+     * @return the value, or {@code null} if there is none
+     */
+    V get(K key);
+
+    /**
+     * Stores the value for the key, possibly evicting other entries.
+     *
+     * @param key   the key
+     * @param value the value
+     */
+    void put(K key, V value);
+
+    /**
+     * Removes the value stored for the key.
+     *
+     * @param key the key
+     * @return the removed value, or {@code null} if there was none
+     */
+    V remove(K key);
+
+    /**
+     * Removes all values.
+     */
+    void clear();
+
+    /**
+     * Returns the number of stored values.
+     *
+     * @return the number of values
+     */
+    int size();
+
+    /**
+     * Releases the resources held by the storage, e.g. flushes the file it is kept in. The storage must not
+     * be used afterwards.
+     */
+    default void close() {
+    }
+}
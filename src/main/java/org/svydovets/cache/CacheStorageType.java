@@ -0,0 +1,29 @@
+package org.svydovets.cache;
+
+/**
+ * Where a cache region keeps the cached state of its entities.
+ */
+public enum CacheStorageType {
+
+    /**
+     * Entity state arrays on the Java heap, evicted by the {@link EvictionPolicy} of the region.
+     */
+    HEAP,
+
+    /**
+     * Entity state encoded by {@link EntityStateCodec} into direct memory outside of the Java heap, evicted by
+     * segments with a clock policy. Keeps large regions out of the reach of the garbage collector.
+     *
+     * @see OffHeapCacheStorage
+     */
+    OFF_HEAP,
+
+    /**
+     * Like {@link #OFF_HEAP}, but with the segments mapped from a file in the directory of the
+     * {@link SecondLevelCache}, so the cache is warm right after a restart. Falls back to {@link #OFF_HEAP}
+     * if the cache has no directory.
+     *
+     * @see MappedFileCacheStorage
+     */
+    MAPPED_FILE
+}
@@ -0,0 +1,22 @@
+package org.svydovets.cache;
+
+/**
+ * An entry of a {@link CacheRegion}: the disassembled state of an entity and the time it expires at.
+ *
+ * @param state     the value of each declared field of the entity, see {@link EntityStateCodec}
+ * @param expiresAt the {@link System#nanoTime()} the state expires at, {@link Long#MAX_VALUE} if it never expires
+ * @param restored  whether the state was restored from a previous run of the application and must be
+ *                  validated against the database before it is used
+ */
+record CachedEntityState(Object[] state, long expiresAt, boolean restored) {
+
+    static final long NEVER_EXPIRES = Long.MAX_VALUE;
+
+    CachedEntityState(Object[] state, long expiresAt) {
+        this(state, expiresAt, false);
+    }
+
+    boolean isExpired(long now) {
+        return expiresAt != NEVER_EXPIRES && now - expiresAt >= 0;
+    }
+}
@@ -0,0 +1,346 @@
+package org.svydovets.cache;
+
+import org.svydovets.annotation.Version;
+import org.svydovets.util.EntityReflectionUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Field;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Encodes the disassembled state of an entity (one value per declared field, as cached by the
+ * {@link SecondLevelCache}) into a compact binary form and back, without any serialization framework.
+ *
+ * <p>The layout is derived from the entity metadata: the declared fields, their order and their column
+ * types. An encoded state starts with a hash of this schema, followed by a bitmap of the {@code null}
+ * fields and the non-null values, each prefixed with a one-byte type tag, so values of a type other than
+ * the declared one (e.g. a {@code java.sql.Date} read into a {@code LocalDate} field) survive the round trip.
+ * A state encoded for a different version of the entity class is rejected on decoding. The codec also
+ * knows which field holds the {@link Version} of the entity.</p>
+ *
+ * <p>Supported values are boxed primitives, {@code String}, {@code BigDecimal}, {@code BigInteger},
+ * {@code java.time} dates and times, {@code java.sql} dates and times, {@code UUID} and {@code byte[]}.</p>
+ */
+public final class EntityStateCodec {
+
+    private static final byte INT = 1;
+    private static final byte LONG = 2;
+    private static final byte SHORT = 3;
+    private static final byte BYTE = 4;
+    private static final byte BOOLEAN = 5;
+    private static final byte DOUBLE = 6;
+    private static final byte FLOAT = 7;
+    private static final byte CHAR = 8;
+    private static final byte STRING = 9;
+    private static final byte BIG_DECIMAL = 10;
+    private static final byte BIG_INTEGER = 11;
+    private static final byte LOCAL_DATE = 12;
+    private static final byte LOCAL_TIME = 13;
+    private static final byte LOCAL_DATE_TIME = 14;
+    private static final byte INSTANT = 15;
+    private static final byte SQL_DATE = 16;
+    private static final byte SQL_TIME = 17;
+    private static final byte SQL_TIMESTAMP = 18;
+    private static final byte UUID_TAG = 19;
+    private static final byte BYTES = 20;
+
+    private static final Map<Class<?>, Byte> TAGS = new HashMap<>();
+
+    static {
+        TAGS.put(Integer.class, INT);
+        TAGS.put(int.class, INT);
+        TAGS.put(Long.class, LONG);
+        TAGS.put(long.class, LONG);
+        TAGS.put(Short.class, SHORT);
+        TAGS.put(short.class, SHORT);
+        TAGS.put(Byte.class, BYTE);
+        TAGS.put(byte.class, BYTE);
+        TAGS.put(Boolean.class, BOOLEAN);
+        TAGS.put(boolean.class, BOOLEAN);
+        TAGS.put(Double.class, DOUBLE);
+        TAGS.put(double.class, DOUBLE);
+        TAGS.put(Float.class, FLOAT);
+        TAGS.put(float.class, FLOAT);
+        TAGS.put(Character.class, CHAR);
+        TAGS.put(char.class, CHAR);
+        TAGS.put(String.class, STRING);
+        TAGS.put(BigDecimal.class, BIG_DECIMAL);
+        TAGS.put(BigInteger.class, BIG_INTEGER);
+        TAGS.put(LocalDate.class, LOCAL_DATE);
+        TAGS.put(LocalTime.class, LOCAL_TIME);
+        TAGS.put(LocalDateTime.class, LOCAL_DATE_TIME);
+        TAGS.put(Instant.class, INSTANT);
+        TAGS.put(java.sql.Date.class, SQL_DATE);
+        TAGS.put(Time.class, SQL_TIME);
+        TAGS.put(Timestamp.class, SQL_TIMESTAMP);
+        TAGS.put(UUID.class, UUID_TAG);
+        TAGS.put(byte[].class, BYTES);
+    }
+
+    private final Class<?> entityType;
+    private final int fieldsCount;
+    private final int schemaHash;
+    private final int versionIndex;
+
+    private EntityStateCodec(Class<?> entityType) {
+        Field[] fields = entityType.getDeclaredFields();
+        int hash = entityType.getName().hashCode();
+        int version = -1;
+        for (int i = 0; i < fields.length; i++) {
+            hash = 31 * hash + fields[i].getName().hashCode();
+            hash = 31 * hash + columnTypeOf(fields[i]).getName().hashCode();
+            if (fields[i].isAnnotationPresent(Version.class)) {
+                version = i;
+            }
+        }
+
+        this.entityType = entityType;
+        this.fieldsCount = fields.length;
+        this.schemaHash = hash;
+        this.versionIndex = version;
+    }
+
+    /**
+     * Creates the codec of the entity type.
+     *
+     * @param entityType the entity class
+     * @return a new codec
+     */
+    public static EntityStateCodec forEntity(Class<?> entityType) {
+        return new EntityStateCodec(entityType);
+    }
+
+    /**
+     * Returns the hash of the fields and column types of the entity every encoded state starts with.
+     *
+     * @return the schema hash
+     */
+    public int getSchemaHash() {
+        return schemaHash;
+    }
+
+    /**
+     * Tells whether the entity has a {@link Version} field.
+     *
+     * @return {@code true} if the entity is versioned
+     */
+    public boolean isVersioned() {
+        return versionIndex >= 0;
+    }
+
+    /**
+     * Returns the value of the {@link Version} field in the state.
+     *
+     * @param state the disassembled state of the entity
+     * @return the version, or {@code null} if the entity has no version field
+     */
+    public Object getVersion(Object[] state) {
+        return versionIndex >= 0 ? state[versionIndex] : null;
+    }
+
+    /**
+     * Encodes the state of the entity.
+     *
+     * @param state the value of each declared field of the entity
+     * @return the encoded state
+     * @throws IllegalArgumentException if the state does not match the entity or holds an unsupported value
+     */
+    public byte[] encodeState(Object[] state) {
+        if (state.length != fieldsCount) {
+            throw new IllegalArgumentException(String.format("State of %s must have %d values, but has %d",
+                    entityType.getName(), fieldsCount, state.length));
+        }
+
+        byte[] nulls = new byte[(fieldsCount + 7) / 8];
+        for (int i = 0; i < fieldsCount; i++) {
+            if (state[i] == null) {
+                nulls[i >>> 3] |= (byte) (1 << (i & 7));
+            }
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(16 * fieldsCount + 8);
+        try (DataOutputStream output = new DataOutputStream(bytes)) {
+            output.writeInt(schemaHash);
+            output.write(nulls);
+            for (Object value : state) {
+                if (value != null) {
+                    writeValue(output, value);
+                }
+            }
+        } catch (IOException exception) {
+            throw new UncheckedIOException(exception);
+        }
+
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decodes a state encoded by {@link #encodeState(Object[])}, starting at the position of the buffer.
+     * The position is advanced past the state.
+     *
+     * @param buffer the buffer holding the encoded state
+     * @return the value of each declared field of the entity
+     * @throws IllegalArgumentException if the state was encoded for a different version of the entity class
+     */
+    public Object[] decodeState(ByteBuffer buffer) {
+        int encodedSchemaHash = buffer.getInt();
+        if (encodedSchemaHash != schemaHash) {
+            throw new IllegalArgumentException(String.format(
+                    "Cached state was encoded for another version of entity %s", entityType.getName()));
+        }
+
+        byte[] nulls = new byte[(fieldsCount + 7) / 8];
+        buffer.get(nulls);
+        Object[] state = new Object[fieldsCount];
+        for (int i = 0; i < fieldsCount; i++) {
+            if ((nulls[i >>> 3] & (1 << (i & 7))) == 0) {
+                state[i] = readValue(buffer);
+            }
+        }
+
+        return state;
+    }
+
+    /**
+     * Encodes an entity id.
+     *
+     * @param id the id
+     * @return the encoded id
+     * @throws IllegalArgumentException if the type of the id is not supported
+     */
+    public byte[] encodeKey(Object id) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(16);
+        try (DataOutputStream output = new DataOutputStream(bytes)) {
+            writeValue(output, id);
+        } catch (IOException exception) {
+            throw new UncheckedIOException(exception);
+        }
+
+        return bytes.toByteArray();
+    }
+
+    private static void writeValue(DataOutputStream output, Object value) throws IOException {
+        Byte tag = TAGS.get(value.getClass());
+        if (tag == null) {
+            throw new IllegalArgumentException(String.format(
+                    "Values of type %s cannot be cached off-heap", value.getClass().getName()));
+        }
+
+        output.writeByte(tag);
+        switch (tag) {
+            case INT -> output.writeInt((Integer) value);
+            case LONG -> output.writeLong((Long) value);
+            case SHORT -> output.writeShort((Short) value);
+            case BYTE -> output.writeByte((Byte) value);
+            case BOOLEAN -> output.writeBoolean((Boolean) value);
+            case DOUBLE -> output.writeDouble((Double) value);
+            case FLOAT -> output.writeFloat((Float) value);
+            case CHAR -> output.writeChar((Character) value);
+            case STRING -> writeBytes(output, ((String) value).getBytes(StandardCharsets.UTF_8));
+            case BIG_DECIMAL -> {
+                BigDecimal decimal = (BigDecimal) value;
+                output.writeInt(decimal.scale());
+                writeBytes(output, decimal.unscaledValue().toByteArray());
+            }
+            case BIG_INTEGER -> writeBytes(output, ((BigInteger) value).toByteArray());
+            case LOCAL_DATE -> output.writeLong(((LocalDate) value).toEpochDay());
+            case LOCAL_TIME -> output.writeLong(((LocalTime) value).toNanoOfDay());
+            case LOCAL_DATE_TIME -> {
+                LocalDateTime dateTime = (LocalDateTime) value;
+                output.writeLong(dateTime.toLocalDate().toEpochDay());
+                output.writeLong(dateTime.toLocalTime().toNanoOfDay());
+            }
+            case INSTANT -> {
+                Instant instant = (Instant) value;
+                output.writeLong(instant.getEpochSecond());
+                output.writeInt(instant.getNano());
+            }
+            case SQL_DATE -> output.writeLong(((java.sql.Date) value).getTime());
+            case SQL_TIME -> output.writeLong(((Time) value).getTime());
+            case SQL_TIMESTAMP -> {
+                Timestamp timestamp = (Timestamp) value;
+                output.writeLong(timestamp.getTime());
+                output.writeInt(timestamp.getNanos());
+            }
+            case UUID_TAG -> {
+                UUID uuid = (UUID) value;
+                output.writeLong(uuid.getMostSignificantBits());
+                output.writeLong(uuid.getLeastSignificantBits());
+            }
+            default -> writeBytes(output, (byte[]) value);
+        }
+    }
+
+    private static Object readValue(ByteBuffer buffer) {
+        byte tag = buffer.get();
+        return switch (tag) {
+            case INT -> buffer.getInt();
+            case LONG -> buffer.getLong();
+            case SHORT -> buffer.getShort();
+            case BYTE -> buffer.get();
+            case BOOLEAN -> buffer.get() != 0;
+            case DOUBLE -> buffer.getDouble();
+            case FLOAT -> buffer.getFloat();
+            case CHAR -> buffer.getChar();
+            case STRING -> new String(readBytes(buffer), StandardCharsets.UTF_8);
+            case BIG_DECIMAL -> {
+                int scale = buffer.getInt();
+                yield new BigDecimal(new BigInteger(readBytes(buffer)), scale);
+            }
+            case BIG_INTEGER -> new BigInteger(readBytes(buffer));
+            case LOCAL_DATE -> LocalDate.ofEpochDay(buffer.getLong());
+            case LOCAL_TIME -> LocalTime.ofNanoOfDay(buffer.getLong());
+            case LOCAL_DATE_TIME -> LocalDateTime.of(LocalDate.ofEpochDay(buffer.getLong()),
+                    LocalTime.ofNanoOfDay(buffer.getLong()));
+            case INSTANT -> Instant.ofEpochSecond(buffer.getLong(), buffer.getInt());
+            case SQL_DATE -> new java.sql.Date(buffer.getLong());
+            case SQL_TIME -> new Time(buffer.getLong());
+            case SQL_TIMESTAMP -> {
+                Timestamp timestamp = new Timestamp(buffer.getLong());
+                timestamp.setNanos(buffer.getInt());
+                yield timestamp;
+            }
+            case UUID_TAG -> new UUID(buffer.getLong(), buffer.getLong());
+            case BYTES -> readBytes(buffer);
+            default -> throw new IllegalArgumentException(String.format("Unknown type tag %d of cached value", tag));
+        };
+    }
+
+    private static void writeBytes(DataOutputStream output, byte[] value) throws IOException {
+        output.writeInt(value.length);
+        output.write(value);
+    }
+
+    private static byte[] readBytes(ByteBuffer buffer) {
+        byte[] value = new byte[buffer.getInt()];
+        buffer.get(value);
+        return value;
+    }
+
+    /**
+     * Returns the type of the value cached for the field: the id type of the referenced entity for
+     * entity fields, the field type otherwise.
+     */
+    private static Class<?> columnTypeOf(Field field) {
+        if (EntityReflectionUtils.isEntityField(field)) {
+            return EntityReflectionUtils.getIdField(field.getType()).getType();
+        }
+
+        return field.getType();
+    }
+}
@@ -0,0 +1,40 @@
+package org.svydovets.cache;
+
+/**
+ * The policies choosing which entries a full cache region evicts.
+ */
+public enum EvictionPolicy {
+
+    /**
+     * Evicts the least recently used entry. Cheap, but a single scan over many rarely used entities
+     * flushes the whole region.
+     */
+    LRU {
+        @Override
+        public <K, V> CacheStorage<K, V> createStorage(int maximumSize) {
+            return new LruCacheStorage<>(maximumSize);
+        }
+    },
+
+    /**
+     * Window TinyLFU: new entries enter a small LRU window and are admitted to the main region only if
+     * they are used more often than the entry they would replace. Keeps frequently used entities cached
+     * through scans and bursts of one-off reads.
+     */
+    W_TINY_LFU {
+        @Override
+        public <K, V> CacheStorage<K, V> createStorage(int maximumSize) {
+            return new WindowTinyLfuCacheStorage<>(maximumSize);
+        }
+    };
+
+    /**
+     * Creates an empty storage applying this policy.
+     *
+     * @param maximumSize the maximum number of entries of the storage
+     * @param <K>         the type of the keys
+     * @param <V>         the type of the values
+     * @return a new storage
+     */
+    public abstract <K, V> CacheStorage<K, V> createStorage(int maximumSize);
+}
@@ -0,0 +1,35 @@
+package org.svydovets.cache;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A {@link CacheInvalidationTransport} delivering invalidations synchronously to the caches of the same JVM
+ * sharing the transport instance, e.g. to test several session factories standing for several nodes.
+ */
+public class LoopbackCacheInvalidationTransport implements CacheInvalidationTransport {
+
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final LongAdder publishedCount = new LongAdder();
+
+    @Override
+    public void publish(CacheInvalidation invalidation) {
+        publishedCount.increment();
+        listeners.forEach(listener -> listener.onInvalidation(invalidation));
+    }
+
+    @Override
+    public void subscribe(Listener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Returns the number of invalidations published so far.
+     *
+     * @return the number of invalidations
+     */
+    public long getPublishedCount() {
+        return publishedCount.sum();
+    }
+}
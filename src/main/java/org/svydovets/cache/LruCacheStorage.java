@@ -0,0 +1,53 @@
+package org.svydovets.cache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A storage evicting the least recently used entry once it holds more than its maximum size.
+ *
+ * @param <K> the type of the keys
+ * @param <V> the type of the values
+ * @see EvictionPolicy#LRU
+ */
+public class LruCacheStorage<K, V> implements CacheStorage<K, V> {
+
+    private final LinkedHashMap<K, V> entries;
+
+    public LruCacheStorage(int maximumSize) {
+        if (maximumSize < 1) {
+            throw new IllegalArgumentException("Maximum size of a cache storage cannot be less than 1");
+        }
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                return size() > maximumSize;
+            }
+        };
+    }
+
+    @Override
+    public V get(K key) {
+        return entries.get(key);
+    }
+
+    @Override
+    public void put(K key, V value) {
+        entries.put(key, value);
+    }
+
+    @Override
+    public V remove(K key) {
+        return entries.remove(key);
+    }
+
+    @Override
+    public void clear() {
+        entries.clear();
+    }
+
+    @Override
+    public int size() {
+        return entries.size();
+    }
+}
@@ -0,0 +1,184 @@
+package org.svydovets.cache;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.svydovets.exception.BibernateException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * An {@link OffHeapCacheStorage} whose segments are memory-mapped regions of a file, so the cached state
+ * survives a restart of the application.
+ *
+ * <p>The file starts with a header holding the entity schema hash, the segment size, the change counter of
+ * the entity table and whether the file was closed cleanly, followed by the segments. Entries are decoded
+ * straight from the mapping, without reading the file. On opening, a file written for the same schema and
+ * closed cleanly is scanned back into the index:</p>
+ * <ul>
+ *     <li>if the table change counter has not moved since the file was closed, the entries are used as is;</li>
+ *     <li>otherwise the entries of a versioned entity are kept, but marked as
+ *     {@link CachedEntityState#restored() restored}, so each of them is validated against the version in the
+ *     database on its first read;</li>
+ *     <li>otherwise the file is discarded.</li>
+ * </ul>
+ * <p>Expiration times are carried over the restart by the wall clock time elapsed while the file was closed.</p>
+ *
+ * <p>The storage is not thread-safe, like all {@link CacheStorage}s.</p>
+ *
+ * @see CacheStorageType#MAPPED_FILE
+ */
+public class MappedFileCacheStorage extends OffHeapCacheStorage {
+
+    private static final Logger log = LoggerFactory.getLogger(MappedFileCacheStorage.class);
+
+    static final int MAGIC = 0x42424331;
+    static final int HEADER_BYTES = 64;
+    private static final int SCHEMA_HASH_OFFSET = Integer.BYTES;
+    private static final int SEGMENT_BYTES_OFFSET = 2 * Integer.BYTES;
+    private static final int CLEAN_OFFSET = 3 * Integer.BYTES;
+    private static final int TABLE_CHANGE_COUNT_OFFSET = 4 * Integer.BYTES;
+    private static final int CLOSED_AT_MILLIS_OFFSET = TABLE_CHANGE_COUNT_OFFSET + Long.BYTES;
+    private static final int CLOSED_AT_NANOS_OFFSET = CLOSED_AT_MILLIS_OFFSET + Long.BYTES;
+
+    private final Path file;
+    private final LongSupplier tableChangeCounter;
+    private final FileChannel channel;
+    private final MappedByteBuffer header;
+    private final List<MappedByteBuffer> mappedSegments = new ArrayList<>();
+    private boolean closed;
+
+    /**
+     * Opens the storage, restoring the entries of the file if they may still be used.
+     *
+     * @param codec              the codec of the entity type whose state is stored
+     * @param maxEntries         the maximum number of entries
+     * @param capacityBytes      the total size of the segments
+     * @param file               the file the segments are mapped from, created if it does not exist
+     * @param tableChangeCounter returns the change counter of the entity table, or {@link TableChangeCounter#UNKNOWN}
+     * @throws BibernateException if the file cannot be opened or mapped
+     */
+    public MappedFileCacheStorage(EntityStateCodec codec, int maxEntries, long capacityBytes,
+                                  Path file, LongSupplier tableChangeCounter) {
+        super(codec, maxEntries, capacityBytes);
+        this.file = file;
+        this.tableChangeCounter = tableChangeCounter;
+        try {
+            Files.createDirectories(file.toAbsolutePath().getParent());
+            this.channel = FileChannel.open(file,
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            RestoreMode restoreMode = resolveRestoreMode(codec);
+            if (restoreMode == RestoreMode.DISCARD) {
+                channel.truncate(0);
+            }
+
+            this.header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES);
+            if (restoreMode != RestoreMode.DISCARD) {
+                restoreSegments(restoreMode == RestoreMode.VALIDATE);
+            }
+
+            header.putInt(0, MAGIC);
+            header.putInt(SCHEMA_HASH_OFFSET, codec.getSchemaHash());
+            header.putInt(SEGMENT_BYTES_OFFSET, getSegmentBytes());
+            header.putInt(CLEAN_OFFSET, 0);
+            header.force();
+        } catch (IOException exception) {
+            throw new BibernateException(String.format("Error opening second-level cache file %s", file), exception);
+        }
+
+        if (log.isDebugEnabled()) {
+            log.debug("Opened second-level cache file {} with {} restored entries", file, size());
+        }
+    }
+
+    @Override
+    protected ByteBuffer allocateSegment(int segmentIndex) {
+        try {
+            MappedByteBuffer segment = channel.map(FileChannel.MapMode.READ_WRITE,
+                    HEADER_BYTES + (long) segmentIndex * getSegmentBytes(), getSegmentBytes());
+            mappedSegments.add(segment);
+            return segment;
+        } catch (IOException exception) {
+            throw new BibernateException(String.format("Error mapping second-level cache file %s", file), exception);
+        }
+    }
+
+    /**
+     * Flushes the segments to the file and marks it as closed cleanly, along with the current change counter
+     * of the entity table.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+
+        try {
+            mappedSegments.forEach(MappedByteBuffer::force);
+            header.putLong(TABLE_CHANGE_COUNT_OFFSET, tableChangeCounter.getAsLong());
+            header.putLong(CLOSED_AT_MILLIS_OFFSET, System.currentTimeMillis());
+            header.putLong(CLOSED_AT_NANOS_OFFSET, System.nanoTime());
+            header.putInt(CLEAN_OFFSET, 1);
+            header.force();
+            channel.close();
+        } catch (IOException exception) {
+            if (log.isWarnEnabled()) {
+                log.warn("Error closing second-level cache file {}", file, exception);
+            }
+        }
+    }
+
+    /**
+     * Reads the header of the file to decide what to do with its entries.
+     */
+    private RestoreMode resolveRestoreMode(EntityStateCodec codec) throws IOException {
+        ByteBuffer fileHeader = ByteBuffer.allocate(HEADER_BYTES);
+        if (channel.size() < HEADER_BYTES || channel.read(fileHeader, 0) < HEADER_BYTES) {
+            return RestoreMode.DISCARD;
+        }
+
+        if (fileHeader.getInt(0) != MAGIC
+                || fileHeader.getInt(SCHEMA_HASH_OFFSET) != codec.getSchemaHash()
+                || fileHeader.getInt(SEGMENT_BYTES_OFFSET) != getSegmentBytes()
+                || fileHeader.getInt(CLEAN_OFFSET) != 1) {
+            if (log.isDebugEnabled()) {
+                log.debug("Discarding second-level cache file {} written for another schema or not closed cleanly", file);
+            }
+            return RestoreMode.DISCARD;
+        }
+
+        long tableChangeCount = tableChangeCounter.getAsLong();
+        if (tableChangeCount != TableChangeCounter.UNKNOWN
+                && tableChangeCount == fileHeader.getLong(TABLE_CHANGE_COUNT_OFFSET)) {
+            return RestoreMode.TRUST;
+        }
+
+        return codec.isVersioned() ? RestoreMode.VALIDATE : RestoreMode.DISCARD;
+    }
+
+    private void restoreSegments(boolean markRestored) throws IOException {
+        long closedForNanos = TimeUnit.MILLISECONDS.toNanos(
+                System.currentTimeMillis() - header.getLong(CLOSED_AT_MILLIS_OFFSET));
+        long expiresAtShift = System.nanoTime() - header.getLong(CLOSED_AT_NANOS_OFFSET) - Math.max(0, closedForNanos);
+
+        for (int i = 0; i < SEGMENTS_COUNT; i++) {
+            if (HEADER_BYTES + (long) (i + 1) * getSegmentBytes() <= channel.size()) {
+                restoreSegment(i, markRestored, expiresAtShift);
+            }
+        }
+    }
+
+    private enum RestoreMode {
+        TRUST, VALIDATE, DISCARD
+    }
+}
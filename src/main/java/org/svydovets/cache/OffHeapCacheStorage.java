@@ -0,0 +1,476 @@
+package org.svydovets.cache;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A storage keeping cached entity state outside of the Java heap.
+ *
+ * <p>Ids and states are encoded by an {@link EntityStateCodec} and appended to direct {@link ByteBuffer}
+ * segments (slabs) of equal size, allocated on first use. An entry is laid out as its length, the hash of its
+ * encoded id, the id length, its flags, the expiration time, the encoded id and the encoded state, and the last
+ * entry of a segment is followed by a zero length, so a segment can be scanned back into its entries. The only
+ * per-entry heap cost is an open-addressing index of two primitive arrays holding the id hash and the location
+ * (segment and offset) of each entry; ids are compared against their encoded bytes in the segment.</p>
+ *
+ * <p>Space is reclaimed by whole segments. When a new entry fits neither in the current segment nor in a free
+ * one, or the storage holds its maximum number of entries, a clock hand sweeps over the segments: a segment read
+ * from since the last sweep gets a second chance, the first one that was not is evicted with all its entries.
+ * A segment whose entries were all removed or replaced becomes free right away.</p>
+ *
+ * <p>The storage is not thread-safe, like all {@link CacheStorage}s.</p>
+ *
+ * @see CacheStorageType#OFF_HEAP
+ */
+public class OffHeapCacheStorage implements CacheStorage<Object, CachedEntityState> {
+
+    private static final Logger log = LoggerFactory.getLogger(OffHeapCacheStorage.class);
+
+    static final int SEGMENTS_COUNT = 8;
+    static final int MIN_SEGMENT_BYTES = 4 * 1024;
+    static final int MAX_SEGMENT_BYTES = 1 << 30;
+    private static final int HASH_OFFSET = Integer.BYTES;
+    private static final int KEY_LENGTH_OFFSET = 2 * Integer.BYTES;
+    private static final int FLAGS_OFFSET = 3 * Integer.BYTES;
+    private static final int EXPIRES_AT_OFFSET = 4 * Integer.BYTES;
+    private static final int ENTRY_HEADER_BYTES = EXPIRES_AT_OFFSET + Long.BYTES;
+    private static final int REMOVED = 1;
+    private static final int RESTORED = 1 << 1;
+    private static final long NO_LOCATION = -1L;
+
+    private final EntityStateCodec codec;
+    private final int maxEntries;
+    private final int segmentBytes;
+
+    private final ByteBuffer[] segments = new ByteBuffer[SEGMENTS_COUNT];
+    private final int[] segmentEnds = new int[SEGMENTS_COUNT];
+    private final int[] segmentLiveEntries = new int[SEGMENTS_COUNT];
+    private final boolean[] segmentReferenced = new boolean[SEGMENTS_COUNT];
+    private int writeSegment;
+    private int clockHand;
+
+    private final int[] hashes;
+    private final long[] locations;
+    private final int indexMask;
+    private int size;
+
+    /**
+     * Constructs an empty storage.
+     *
+     * @param codec         the codec of the entity type whose state is stored
+     * @param maxEntries    the maximum number of entries
+     * @param capacityBytes the total size of the segments, split evenly between {@value #SEGMENTS_COUNT} segments
+     * @throws IllegalArgumentException if {@code maxEntries} is less than 1
+     */
+    public OffHeapCacheStorage(EntityStateCodec codec, int maxEntries, long capacityBytes) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("Maximum size of a cache storage cannot be less than 1");
+        }
+        this.codec = codec;
+        this.maxEntries = maxEntries;
+        this.segmentBytes = segmentBytesOf(capacityBytes);
+
+        int indexCapacity = Integer.highestOneBit(Math.max(8, maxEntries) * 2 - 1) << 1;
+        this.hashes = new int[indexCapacity];
+        this.locations = new long[indexCapacity];
+        this.indexMask = indexCapacity - 1;
+        Arrays.fill(locations, NO_LOCATION);
+    }
+
+    @Override
+    public CachedEntityState get(Object key) {
+        byte[] keyBytes = encodeKey(key);
+        if (keyBytes == null) {
+            return null;
+        }
+
+        int slot = findSlot(hash(keyBytes), keyBytes);
+        if (slot < 0) {
+            return null;
+        }
+
+        CachedEntityState cachedState = readEntry(locations[slot]);
+        if (cachedState == null) {
+            removeSlot(slot);
+            return null;
+        }
+        segmentReferenced[segmentOf(locations[slot])] = true;
+
+        return cachedState;
+    }
+
+    @Override
+    public void put(Object key, CachedEntityState value) {
+        byte[] keyBytes = encodeKey(key);
+        if (keyBytes == null) {
+            return;
+        }
+
+        int hash = hash(keyBytes);
+        int slot = findSlot(hash, keyBytes);
+        if (slot >= 0) {
+            removeSlot(slot);
+        }
+
+        byte[] stateBytes;
+        try {
+            stateBytes = codec.encodeState(value.state());
+        } catch (IllegalArgumentException exception) {
+            if (log.isDebugEnabled()) {
+                log.debug("State of entity {} is not cached off-heap: {}", key, exception.getMessage());
+            }
+            return;
+        }
+
+        int entryLength = ENTRY_HEADER_BYTES + keyBytes.length + stateBytes.length;
+        if (entryLength > segmentBytes) {
+            if (log.isDebugEnabled()) {
+                log.debug("State of entity {} takes {} bytes and does not fit into a segment of {} bytes",
+                        key, entryLength, segmentBytes);
+            }
+            return;
+        }
+
+        while (size >= maxEntries) {
+            evictSegment();
+        }
+
+        long location = allocate(entryLength);
+        ByteBuffer segment = segments[segmentOf(location)];
+        int offset = offsetOf(location);
+        segment.putInt(offset, entryLength);
+        segment.putInt(offset + HASH_OFFSET, hash);
+        segment.putInt(offset + KEY_LENGTH_OFFSET, keyBytes.length);
+        segment.putInt(offset + FLAGS_OFFSET, value.restored() ? RESTORED : 0);
+        segment.putLong(offset + EXPIRES_AT_OFFSET, value.expiresAt());
+        segment.put(offset + ENTRY_HEADER_BYTES, keyBytes);
+        segment.put(offset + ENTRY_HEADER_BYTES + keyBytes.length, stateBytes);
+        markSegmentEnd(segmentOf(location));
+
+        insertSlot(hash, location);
+    }
+
+    @Override
+    public CachedEntityState remove(Object key) {
+        byte[] keyBytes = encodeKey(key);
+        if (keyBytes == null) {
+            return null;
+        }
+
+        int slot = findSlot(hash(keyBytes), keyBytes);
+        if (slot < 0) {
+            return null;
+        }
+
+        CachedEntityState cachedState = readEntry(locations[slot]);
+        removeSlot(slot);
+        return cachedState;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(locations, NO_LOCATION);
+        Arrays.fill(segmentEnds, 0);
+        Arrays.fill(segmentLiveEntries, 0);
+        Arrays.fill(segmentReferenced, false);
+        for (int i = 0; i < SEGMENTS_COUNT; i++) {
+            markSegmentEnd(i);
+        }
+        size = 0;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the amount of memory allocated for the segments so far.
+     *
+     * @return the number of allocated bytes
+     */
+    public long getAllocatedBytes() {
+        return Arrays.stream(segments).filter(segment -> segment != null).count() * segmentBytes;
+    }
+
+    /**
+     * Allocates the memory of a segment on its first use.
+     *
+     * @param segmentIndex the index of the segment
+     * @return a buffer of {@link #getSegmentBytes()} bytes
+     */
+    protected ByteBuffer allocateSegment(int segmentIndex) {
+        return ByteBuffer.allocateDirect(segmentBytes);
+    }
+
+    protected int getSegmentBytes() {
+        return segmentBytes;
+    }
+
+    /**
+     * Indexes the entries a segment already holds when its memory outlives the storage, as a memory-mapped
+     * file does. Removed entries are skipped, and the scan stops at the first entry that is not consistent.
+     *
+     * @param segmentIndex   the index of the segment
+     * @param markRestored   whether the entries are marked as {@link CachedEntityState#restored() restored}
+     * @param expiresAtShift the number of nanoseconds added to the expiration time of the entries
+     */
+    protected void restoreSegment(int segmentIndex, boolean markRestored, long expiresAtShift) {
+        if (segments[segmentIndex] == null) {
+            segments[segmentIndex] = allocateSegment(segmentIndex);
+        }
+        ByteBuffer segment = segments[segmentIndex];
+
+        int offset = 0;
+        while (offset + ENTRY_HEADER_BYTES <= segmentBytes) {
+            int entryLength = segment.getInt(offset);
+            int keyLength = segment.getInt(offset + KEY_LENGTH_OFFSET);
+            if (entryLength < ENTRY_HEADER_BYTES || entryLength > segmentBytes - offset
+                    || keyLength < 0 || keyLength > entryLength - ENTRY_HEADER_BYTES) {
+                break;
+            }
+
+            int flags = segment.getInt(offset + FLAGS_OFFSET);
+            if ((flags & REMOVED) == 0 && size < maxEntries) {
+                long expiresAt = segment.getLong(offset + EXPIRES_AT_OFFSET);
+                if (expiresAt != CachedEntityState.NEVER_EXPIRES) {
+                    segment.putLong(offset + EXPIRES_AT_OFFSET, expiresAt + expiresAtShift);
+                }
+                segment.putInt(offset + FLAGS_OFFSET, markRestored ? flags | RESTORED : flags & ~RESTORED);
+                insertSlot(segment.getInt(offset + HASH_OFFSET), ((long) segmentIndex << 32) | offset);
+            } else {
+                segment.putInt(offset + FLAGS_OFFSET, flags | REMOVED);
+            }
+            offset += entryLength;
+        }
+
+        segmentEnds[segmentIndex] = segmentLiveEntries[segmentIndex] > 0 ? offset : 0;
+        markSegmentEnd(segmentIndex);
+        if (segmentEnds[segmentIndex] < segmentEnds[writeSegment]) {
+            writeSegment = segmentIndex;
+        }
+    }
+
+    private byte[] encodeKey(Object key) {
+        try {
+            return codec.encodeKey(key);
+        } catch (IllegalArgumentException exception) {
+            if (log.isDebugEnabled()) {
+                log.debug("Entity id {} is not cached off-heap: {}", key, exception.getMessage());
+            }
+            return null;
+        }
+    }
+
+    private CachedEntityState readEntry(long location) {
+        ByteBuffer segment = segments[segmentOf(location)];
+        int offset = offsetOf(location);
+        int entryLength = segment.getInt(offset);
+        int keyLength = segment.getInt(offset + KEY_LENGTH_OFFSET);
+        boolean restored = (segment.getInt(offset + FLAGS_OFFSET) & RESTORED) != 0;
+        long expiresAt = segment.getLong(offset + EXPIRES_AT_OFFSET);
+        int stateOffset = offset + ENTRY_HEADER_BYTES + keyLength;
+
+        try {
+            Object[] state = codec.decodeState(segment.slice(stateOffset, offset + entryLength - stateOffset));
+            return new CachedEntityState(state, expiresAt, restored);
+        } catch (IllegalArgumentException exception) {
+            if (log.isDebugEnabled()) {
+                log.debug("Dropping cached state that cannot be decoded: {}", exception.getMessage());
+            }
+            return null;
+        }
+    }
+
+    private boolean keyEquals(long location, byte[] keyBytes) {
+        ByteBuffer segment = segments[segmentOf(location)];
+        int offset = offsetOf(location);
+        int keyLength = segment.getInt(offset + KEY_LENGTH_OFFSET);
+        return keyLength == keyBytes.length
+                && segment.slice(offset + ENTRY_HEADER_BYTES, keyLength).equals(ByteBuffer.wrap(keyBytes));
+    }
+
+    /**
+     * Reserves space for an entry in the current segment, moving to a free segment and evicting segments
+     * when the current one is full.
+     */
+    private long allocate(int entryLength) {
+        if (segmentEnds[writeSegment] + entryLength > segmentBytes) {
+            int freeSegment = findFreeSegment();
+            while (freeSegment < 0) {
+                evictSegment();
+                freeSegment = findFreeSegment();
+            }
+            writeSegment = freeSegment;
+        }
+
+        if (segments[writeSegment] == null) {
+            segments[writeSegment] = allocateSegment(writeSegment);
+        }
+
+        int offset = segmentEnds[writeSegment];
+        segmentEnds[writeSegment] += entryLength;
+        return ((long) writeSegment << 32) | offset;
+    }
+
+    private int findFreeSegment() {
+        for (int i = 0; i < SEGMENTS_COUNT; i++) {
+            if (segmentEnds[i] == 0) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Writes the zero length terminating the entries of the segment, if there is room left for it.
+     */
+    private void markSegmentEnd(int segmentIndex) {
+        ByteBuffer segment = segments[segmentIndex];
+        int end = segmentEnds[segmentIndex];
+        if (segment != null && end + Integer.BYTES <= segmentBytes) {
+            segment.putInt(end, 0);
+        }
+    }
+
+    /**
+     * Advances the clock hand to the first used segment that was not read since the last sweep and evicts
+     * all its entries.
+     */
+    private void evictSegment() {
+        for (int step = 0; step < 2 * SEGMENTS_COUNT; step++) {
+            int segment = clockHand;
+            clockHand = (clockHand + 1) % SEGMENTS_COUNT;
+            if (segmentEnds[segment] == 0) {
+                continue;
+            }
+            if (segmentReferenced[segment]) {
+                segmentReferenced[segment] = false;
+                continue;
+            }
+
+            evictEntriesOf(segment);
+            return;
+        }
+    }
+
+    private void evictEntriesOf(int segmentIndex) {
+        ByteBuffer segment = segments[segmentIndex];
+        int end = segmentEnds[segmentIndex];
+        int evictedEntries = 0;
+        for (int offset = 0; offset < end; ) {
+            int entryLength = segment.getInt(offset);
+            long location = ((long) segmentIndex << 32) | offset;
+            int slot = findSlot(segment.getInt(offset + HASH_OFFSET), location);
+            if (slot >= 0) {
+                unlinkSlot(slot);
+                evictedEntries++;
+            }
+            offset += entryLength;
+        }
+
+        segmentEnds[segmentIndex] = 0;
+        segmentLiveEntries[segmentIndex] = 0;
+        segmentReferenced[segmentIndex] = false;
+        markSegmentEnd(segmentIndex);
+        if (log.isTraceEnabled()) {
+            log.trace("Evicted off-heap segment {} with {} entries", segmentIndex, evictedEntries);
+        }
+    }
+
+    private int findSlot(int hash, byte[] keyBytes) {
+        for (int slot = hash & indexMask; locations[slot] != NO_LOCATION; slot = (slot + 1) & indexMask) {
+            if (hashes[slot] == hash && keyEquals(locations[slot], keyBytes)) {
+                return slot;
+            }
+        }
+
+        return -1;
+    }
+
+    private int findSlot(int hash, long location) {
+        for (int slot = hash & indexMask; locations[slot] != NO_LOCATION; slot = (slot + 1) & indexMask) {
+            if (locations[slot] == location) {
+                return slot;
+            }
+        }
+
+        return -1;
+    }
+
+    private void insertSlot(int hash, long location) {
+        int slot = hash & indexMask;
+        while (locations[slot] != NO_LOCATION) {
+            slot = (slot + 1) & indexMask;
+        }
+
+        hashes[slot] = hash;
+        locations[slot] = location;
+        segmentLiveEntries[segmentOf(location)]++;
+        size++;
+    }
+
+    /**
+     * Removes the slot, freeing its segment right away if it held the last live entry of the segment.
+     */
+    private void removeSlot(int slot) {
+        int segment = unlinkSlot(slot);
+        if (segmentLiveEntries[segment] == 0) {
+            segmentEnds[segment] = 0;
+            segmentReferenced[segment] = false;
+            markSegmentEnd(segment);
+        }
+    }
+
+    /**
+     * Removes the slot and shifts the following slots of the probe sequence back, so lookups never stop
+     * at the hole. The entry is also flagged as removed in its segment, so it is never restored. The segment
+     * itself is left as is, so a scan over its entries can go on.
+     *
+     * @return the segment of the entry
+     */
+    private int unlinkSlot(int slot) {
+        int segment = segmentOf(locations[slot]);
+        int flagsOffset = offsetOf(locations[slot]) + FLAGS_OFFSET;
+        segments[segment].putInt(flagsOffset, segments[segment].getInt(flagsOffset) | REMOVED);
+        segmentLiveEntries[segment]--;
+        locations[slot] = NO_LOCATION;
+        size--;
+
+        int hole = slot;
+        for (int next = (hole + 1) & indexMask; locations[next] != NO_LOCATION; next = (next + 1) & indexMask) {
+            int home = hashes[next] & indexMask;
+            boolean homeBetweenHoleAndNext = hole <= next
+                    ? hole < home && home <= next
+                    : hole < home || home <= next;
+            if (!homeBetweenHoleAndNext) {
+                hashes[hole] = hashes[next];
+                locations[hole] = locations[next];
+                locations[next] = NO_LOCATION;
+                hole = next;
+            }
+        }
+        return segment;
+    }
+
+    static int segmentBytesOf(long capacityBytes) {
+        return (int) Math.min(MAX_SEGMENT_BYTES, Math.max(MIN_SEGMENT_BYTES, capacityBytes / SEGMENTS_COUNT));
+    }
+
+    private static int hash(byte[] keyBytes) {
+        int hash = Arrays.hashCode(keyBytes) * 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+    private static int segmentOf(long location) {
+        return (int) (location >>> 32);
+    }
+
+    private static int offsetOf(long location) {
+        return (int) location;
+    }
+}
@@ -0,0 +1,214 @@
+package org.svydovets.cache;
+
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.svydovets.connectionPool.config.DataSourceConfig;
+import org.svydovets.connectionPool.datasource.DriverDataSource;
+
+import javax.sql.DataSource;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Pattern;
+
+/**
+ * A {@link CacheInvalidationTransport} sending invalidations through PostgreSQL {@code LISTEN}/{@code NOTIFY}.
+ *
+ * <p>The transport opens two connections of its own with the configuration of the pooled data source, so it
+ * never competes with sessions for pooled connections: one sends notifications with {@code pg_notify}, the
+ * other listens to the channel on a daemon thread. An invalidation is sent as one notification, or as several
+ * when its text exceeds the payload limit of PostgreSQL. When the listening connection fails, the transport
+ * reconnects and reports that invalidations may have been lost.</p>
+ *
+ * <p>Publishing is serialized with a lock rather than a monitor, so a virtual thread committing a transaction
+ * does not pin its carrier thread while it waits for the database to take a notification.</p>
+ */
+public class PostgresCacheInvalidationTransport implements CacheInvalidationTransport {
+
+    private static final Logger log = LoggerFactory.getLogger(PostgresCacheInvalidationTransport.class);
+
+    public static final String DEFAULT_CHANNEL = "bibernate_cache_invalidation";
+    static final int MAX_PAYLOAD_BYTES = 7900;
+    private static final int POLL_TIMEOUT_MILLIS = 500;
+    private static final long RECONNECT_DELAY_MILLIS = 1000;
+    private static final Pattern CHANNEL_NAME = Pattern.compile("[a-z_][a-z0-9_]*");
+    private static final String NOTIFY_SQL = "select pg_notify(?, ?)";
+
+    private final DataSource dataSource;
+    private final String channel;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private Connection notifyConnection;
+    private Thread listenerThread;
+    private volatile boolean closed;
+
+    /**
+     * Constructs a transport on the given channel.
+     *
+     * @param config  the configuration of the database connections
+     * @param channel the name of the notification channel, in lower case
+     * @throws IllegalArgumentException if the channel name is not a plain identifier
+     */
+    public PostgresCacheInvalidationTransport(DataSourceConfig config, String channel) {
+        if (!CHANNEL_NAME.matcher(channel).matches()) {
+            throw new IllegalArgumentException(String.format("Invalid cache invalidation channel: %s", channel));
+        }
+        this.dataSource = new DriverDataSource(config);
+        this.channel = channel;
+    }
+
+    @Override
+    public void publish(CacheInvalidation invalidation) {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+
+            if (notifyConnection == null || notifyConnection.isClosed()) {
+                notifyConnection = dataSource.getConnection();
+            }
+            try (PreparedStatement statement = notifyConnection.prepareStatement(NOTIFY_SQL)) {
+                for (String payload : toPayloads(invalidation.toLines())) {
+                    statement.setString(1, channel);
+                    statement.setString(2, payload);
+                    statement.execute();
+                }
+            }
+        } catch (SQLException exception) {
+            closeQuietly(notifyConnection);
+            notifyConnection = null;
+            if (log.isWarnEnabled()) {
+                log.warn("Error publishing cache invalidation to channel {}: {}", channel, exception.getMessage());
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void subscribe(Listener listener) {
+        lock.lock();
+        try {
+            listeners.add(listener);
+            if (listenerThread == null && !closed) {
+                listenerThread = new Thread(this::listen, "bibernate-cache-invalidation-" + channel);
+                listenerThread.setDaemon(true);
+                listenerThread.start();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            if (listenerThread != null) {
+                listenerThread.interrupt();
+            }
+            closeQuietly(notifyConnection);
+            notifyConnection = null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Splits the lines of an invalidation into payloads within the size limit, each starting with the origin.
+     */
+    static List<String> toPayloads(List<String> lines) {
+        String origin = lines.get(0);
+        List<String> payloads = new ArrayList<>();
+        StringBuilder payload = new StringBuilder(origin);
+        int payloadBytes = origin.getBytes(StandardCharsets.UTF_8).length;
+        for (String line : lines.subList(1, lines.size())) {
+            int lineBytes = line.getBytes(StandardCharsets.UTF_8).length + 1;
+            if (payloadBytes + lineBytes > MAX_PAYLOAD_BYTES && payload.length() > origin.length()) {
+                payloads.add(payload.toString());
+                payload = new StringBuilder(origin);
+                payloadBytes = origin.getBytes(StandardCharsets.UTF_8).length;
+            }
+            payload.append('\n').append(line);
+            payloadBytes += lineBytes;
+        }
+        payloads.add(payload.toString());
+
+        return payloads;
+    }
+
+    private void listen() {
+        boolean reconnecting = false;
+        while (!closed) {
+            try (Connection connection = dataSource.getConnection()) {
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("listen " + channel);
+                }
+                if (reconnecting) {
+                    listeners.forEach(Listener::onInvalidationsLost);
+                }
+                if (log.isDebugEnabled()) {
+                    log.debug("Listening to cache invalidations on channel {}", channel);
+                }
+
+                PGConnection pgConnection = connection.unwrap(PGConnection.class);
+                while (!closed) {
+                    PGNotification[] notifications = pgConnection.getNotifications(POLL_TIMEOUT_MILLIS);
+                    if (notifications != null) {
+                        Arrays.stream(notifications).forEach(this::dispatch);
+                    }
+                }
+            } catch (SQLException exception) {
+                if (closed) {
+                    return;
+                }
+                if (log.isWarnEnabled()) {
+                    log.warn("Lost cache invalidation channel {}, reconnecting: {}", channel, exception.getMessage());
+                }
+                reconnecting = true;
+                try {
+                    Thread.sleep(RECONNECT_DELAY_MILLIS);
+                } catch (InterruptedException interruptedException) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private void dispatch(PGNotification notification) {
+        try {
+            CacheInvalidation invalidation = CacheInvalidation.fromLines(List.of(notification.getParameter().split("\n")));
+            listeners.forEach(listener -> listener.onInvalidation(invalidation));
+        } catch (RuntimeException exception) {
+            if (log.isWarnEnabled()) {
+                log.warn("Error applying cache invalidation from channel {}: {}", channel, exception.getMessage());
+            }
+            listeners.forEach(Listener::onInvalidationsLost);
+        }
+    }
+
+    private static void closeQuietly(Connection connection) {
+        if (connection == null) {
+            return;
+        }
+        try {
+            connection.close();
+        } catch (SQLException exception) {
+            if (log.isDebugEnabled()) {
+                log.debug("Error closing cache invalidation connection: {}", exception.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package org.svydovets.cache;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Caches the results of queries as ordered lists of entity ids, keyed by the SQL and its bound parameters.
+ * The entities themselves are resolved by id through the session and the {@link SecondLevelCache}.
+ *
+ * <p>A cached result remembers the tables the query reads and the {@link TableUpdateTimestamps timestamp}
+ * taken before it was executed; once any of these tables is written, the result is dropped on the next
+ * read. A result of a query with unknown tables is dropped after a write to any table.</p>
+ *
+ * <p>The cache is thread-safe. Hit and miss counters are kept per SQL, see {@link #getStatistics(String)}.</p>
+ */
+public class QueryCache {
+
+    private final TableUpdateTimestamps updateTimestamps;
+    private final CacheStorage<QueryKey, CachedResult> storage;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final ConcurrentMap<String, QueryStatistics> statistics = new ConcurrentHashMap<>();
+
+    /**
+     * Constructs an empty query cache.
+     *
+     * @param maxEntries       the maximum number of cached results
+     * @param evictionPolicy   the policy evicting results once the cache is full
+     * @param updateTimestamps the last update timestamps of the tables
+     */
+    public QueryCache(int maxEntries, EvictionPolicy evictionPolicy, TableUpdateTimestamps updateTimestamps) {
+        this.storage = evictionPolicy.createStorage(maxEntries);
+        this.updateTimestamps = updateTimestamps;
+    }
+
+    /**
+     * Returns the timestamp to pass to {@link #put(QueryKey, Set, long, List)}, taken before the query is executed.
+     *
+     * @return the current timestamp
+     */
+    public long currentTimestamp() {
+        return updateTimestamps.currentTimestamp();
+    }
+
+    /**
+     * Returns the cached ids of the query result.
+     *
+     * @param queryKey the SQL and parameters of the query
+     * @return the ids in the order of the result, or {@code null} if the result is not cached or out of date
+     */
+    public List<Object> get(QueryKey queryKey) {
+        CachedResult cachedResult;
+        lock.lock();
+        try {
+            cachedResult = storage.get(queryKey);
+            if (cachedResult != null && !updateTimestamps.isUpToDate(cachedResult.querySpaces(), cachedResult.timestamp())) {
+                storage.remove(queryKey);
+                cachedResult = null;
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        QueryStatistics queryStatistics = statisticsOf(queryKey);
+        if (cachedResult == null) {
+            queryStatistics.recordMiss();
+            return null;
+        }
+        queryStatistics.recordHit();
+        return cachedResult.ids();
+    }
+
+    /**
+     * Caches the ids of the query result.
+     *
+     * @param queryKey    the SQL and parameters of the query
+     * @param querySpaces the tables the query reads, an empty set means any table
+     * @param timestamp   the {@link #currentTimestamp()} taken before the query was executed
+     * @param ids         the ids of the resulting entities in the order of the result
+     */
+    public void put(QueryKey queryKey, Set<String> querySpaces, long timestamp, List<Object> ids) {
+        CachedResult cachedResult = new CachedResult(Set.copyOf(querySpaces), timestamp, List.copyOf(ids));
+        lock.lock();
+        try {
+            storage.put(queryKey, cachedResult);
+        } finally {
+            lock.unlock();
+        }
+        statisticsOf(queryKey).recordPut();
+    }
+
+    /**
+     * Removes the cached result of the query.
+     *
+     * @param queryKey the SQL and parameters of the query
+     */
+    public void evict(QueryKey queryKey) {
+        lock.lock();
+        try {
+            storage.remove(queryKey);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes all cached results. Statistics are kept.
+     */
+    public void evictAll() {
+        lock.lock();
+        try {
+            storage.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the statistics of the query.
+     *
+     * @param sql the SQL of the query
+     * @return the statistics, or {@code null} if the query has never been looked up in the cache
+     */
+    public QueryStatistics getStatistics(String sql) {
+        return statistics.get(sql);
+    }
+
+    /**
+     * Returns the statistics of all queries looked up in the cache so far.
+     *
+     * @return the unmodifiable collection of statistics
+     */
+    public Collection<QueryStatistics> getStatistics() {
+        return Collections.unmodifiableCollection(statistics.values());
+    }
+
+    private QueryStatistics statisticsOf(QueryKey queryKey) {
+        return statistics.computeIfAbsent(queryKey.sql(), QueryStatistics::new);
+    }
+
+    /**
+     * The key of a cached query result.
+     *
+     * @param sql        the SQL sent to the database
+     * @param parameters the values bound to the parameters of the SQL
+     */
+    public record QueryKey(String sql, List<Object> parameters) {
+
+        /**
+         * Creates the key of the query.
+         *
+         * @param sql        the SQL sent to the database
+         * @param parameters the values bound to the parameters of the SQL
+         * @return a new {@code QueryKey}
+         */
+        public static QueryKey of(String sql, Object[] parameters) {
+            return new QueryKey(sql, Collections.unmodifiableList(Arrays.asList(parameters.clone())));
+        }
+    }
+
+    private record CachedResult(Set<String> querySpaces, long timestamp, List<Object> ids) {
+    }
+}
@@ -0,0 +1,63 @@
+package org.svydovets.cache;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Hit and miss counters of one cached query, identified by its SQL.
+ */
+public class QueryStatistics {
+
+    private final String sql;
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder putCount = new LongAdder();
+
+    QueryStatistics(String sql) {
+        this.sql = sql;
+    }
+
+    public String getSql() {
+        return sql;
+    }
+
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    public long getPutCount() {
+        return putCount.sum();
+    }
+
+    /**
+     * Returns the share of executions served from the cache.
+     *
+     * @return the hit ratio between {@code 0} and {@code 1}, {@code 0} if the query was never executed
+     */
+    public double getHitRatio() {
+        long hits = getHitCount();
+        long requests = hits + getMissCount();
+        return requests == 0 ? 0 : (double) hits / requests;
+    }
+
+    void recordHit() {
+        hitCount.increment();
+    }
+
+    void recordMiss() {
+        missCount.increment();
+    }
+
+    void recordPut() {
+        putCount.increment();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("QueryStatistics[hits=%d, misses=%d, hitRatio=%.2f, sql=%s]",
+                getHitCount(), getMissCount(), getHitRatio(), sql);
+    }
+}
@@ -0,0 +1,473 @@
+package org.svydovets.cache;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.svydovets.annotation.Cacheable;
+import org.svydovets.query.ParameterNameResolver;
+import org.svydovets.session.EntityKey;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntFunction;
+import java.util.function.Predicate;
+
+/**
+ * The entity cache shared by all sessions of a {@code SessionFactory}.
+ *
+ * <p>Only entities annotated with {@link Cacheable} are cached, each type in its own {@link CacheRegion}
+ * created on first use with the size, time to live and eviction policy of the annotation. The cache holds
+ * the disassembled state of the entities; assembling instances out of it is up to the caller.</p>
+ *
+ * <p>The cache also owns the {@link QueryCache} and the {@link TableUpdateTimestamps} invalidating it.</p>
+ *
+ * <p>Regions stored in {@link CacheStorageType#MAPPED_FILE memory-mapped files} keep their files in the
+ * directory of the cache and persist them when the cache is {@link #close() closed}.</p>
+ *
+ * <p>Writes evict the changed entities and tables right away and record them per connection. Once the
+ * transaction of the connection commits, the recorded changes are evicted once more, in case a concurrent
+ * session cached the state committed before, and published as one {@link CacheInvalidation} through the
+ * {@link CacheInvalidationTransport} of the cache, so the caches of other nodes evict them too.</p>
+ *
+ * <p>Concurrent loads of the same entity, or of the same entity collection, missing the cache are coalesced
+ * through the {@link SingleFlight}s of the cache, which are forgotten along with the evicted data.</p>
+ *
+ * <p>The cache is thread-safe.</p>
+ */
+public class SecondLevelCache implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(SecondLevelCache.class);
+
+    public static final int DEFAULT_QUERY_CACHE_SIZE = 1000;
+
+    private final ConcurrentMap<Class<?>, Optional<CacheRegion>> regions = new ConcurrentHashMap<>();
+    private final TableUpdateTimestamps updateTimestamps = new TableUpdateTimestamps();
+    private final QueryCache queryCache =
+            new QueryCache(DEFAULT_QUERY_CACHE_SIZE, EvictionPolicy.W_TINY_LFU, updateTimestamps);
+    private final Path directory;
+    private final TableChangeCounter tableChangeCounter;
+    private final String id = UUID.randomUUID().toString();
+    private final CacheInvalidationTransport invalidationTransport;
+    private final Map<Connection, PendingInvalidation> pendingInvalidations = new ConcurrentHashMap<>();
+    private final SingleFlight<EntityKey<?>, Object[]> entityLoads = new SingleFlight<>();
+    private final ConcurrentMap<Class<?>, AtomicLong> invalidationCounts = new ConcurrentHashMap<>();
+    private final AtomicLong fullInvalidationCount = new AtomicLong();
+    private final SingleFlight<CollectionKey, List<Object[]>> collectionLoads = new SingleFlight<>();
+
+    /**
+     * Constructs a cache keeping all regions in memory. Regions stored in memory-mapped files are stored off-heap.
+     */
+    public SecondLevelCache() {
+        this(null, TableChangeCounter.NONE);
+    }
+
+    /**
+     * Constructs a cache keeping the memory-mapped files of its regions in the directory.
+     *
+     * @param directory          the directory of the cache files, {@code null} to keep all regions in memory
+     * @param tableChangeCounter tells whether the tables changed while the application was stopped
+     */
+    public SecondLevelCache(Path directory, TableChangeCounter tableChangeCounter) {
+        this(directory, tableChangeCounter, null);
+    }
+
+    /**
+     * Constructs a cache exchanging invalidations with the caches of other nodes.
+     *
+     * @param directory             the directory of the cache files, {@code null} to keep all regions in memory
+     * @param tableChangeCounter    tells whether the tables changed while the application was stopped
+     * @param invalidationTransport the transport of invalidations, {@code null} if the cache is the only one
+     */
+    public SecondLevelCache(Path directory, TableChangeCounter tableChangeCounter,
+                            CacheInvalidationTransport invalidationTransport) {
+        this.directory = directory;
+        this.tableChangeCounter = tableChangeCounter;
+        this.invalidationTransport = invalidationTransport;
+        if (invalidationTransport != null) {
+            invalidationTransport.subscribe(new InvalidationListener());
+        }
+    }
+
+    /**
+     * Returns the id the cache marks its published invalidations with.
+     *
+     * @return the id of the cache
+     */
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * Returns the cache of query results.
+     *
+     * @return the query cache
+     */
+    public QueryCache getQueryCache() {
+        return queryCache;
+    }
+
+    /**
+     * Returns the last update timestamps of the tables, which must be advanced on every write.
+     *
+     * @return the table update timestamps
+     */
+    public TableUpdateTimestamps getUpdateTimestamps() {
+        return updateTimestamps;
+    }
+
+    /**
+     * Returns the coalesced loads of entities by id, yielding the disassembled state of the entity.
+     *
+     * @return the entity loads
+     */
+    public SingleFlight<EntityKey<?>, Object[]> getEntityLoads() {
+        return entityLoads;
+    }
+
+    /**
+     * Returns the coalesced loads of entity collections, yielding the disassembled state of each entity.
+     *
+     * @return the collection loads
+     */
+    public SingleFlight<CollectionKey, List<Object[]>> getCollectionLoads() {
+        return collectionLoads;
+    }
+
+    /**
+     * Returns the cache region of the entity type, creating it on first use.
+     *
+     * @param entityType the entity class
+     * @return the region, or {@code null} if the entity type is not {@link Cacheable}
+     */
+    public CacheRegion getRegion(Class<?> entityType) {
+        return regions.computeIfAbsent(entityType, this::createRegion).orElse(null);
+    }
+
+    /**
+     * Returns the regions created so far.
+     *
+     * @return the unmodifiable collection of regions
+     */
+    public Collection<CacheRegion> getRegions() {
+        return regions.values().stream()
+                .flatMap(Optional::stream)
+                .toList();
+    }
+
+    /**
+     * Returns a copy of the cached state of the entity.
+     *
+     * @param entityKey the key identifying the entity
+     * @return the state, or {@code null} if the entity is not cacheable or not cached
+     */
+    public Object[] get(EntityKey<?> entityKey) {
+        return get(entityKey, null);
+    }
+
+    /**
+     * Returns a copy of the cached state of the entity, validating state restored from a previous run first.
+     *
+     * @param entityKey              the key identifying the entity
+     * @param restoredStateValidator tells whether restored state is still current
+     * @return the state, or {@code null} if the entity is not cacheable, not cached or its state is not valid
+     * @see CacheRegion#get(Object, Predicate)
+     */
+    public Object[] get(EntityKey<?> entityKey, Predicate<Object[]> restoredStateValidator) {
+        CacheRegion region = regionOf(entityKey);
+        return region != null ? region.get(entityKey.id(), restoredStateValidator) : null;
+    }
+
+    /**
+     * Caches the state of the entity if its type is {@link Cacheable}.
+     *
+     * @param entityKey the key identifying the entity
+     * @param state     the disassembled state of the entity
+     */
+    public void put(EntityKey<?> entityKey, Object[] state) {
+        CacheRegion region = regionOf(entityKey);
+        if (region != null) {
+            region.put(entityKey.id(), state);
+        }
+    }
+
+    /**
+     * Returns a stamp of the invalidations of entities of the type so far, to take before reading the state of
+     * such an entity from the database and hand to {@link #put(EntityKey, Object[], long)} along with the state.
+     *
+     * @param entityType the entity class
+     * @return the invalidation stamp
+     */
+    public long getInvalidationStamp(Class<?> entityType) {
+        return fullInvalidationCount.get() + invalidationCount(entityType).get();
+    }
+
+    /**
+     * Caches the state of the entity if its type is {@link Cacheable} and no entity of its type was invalidated
+     * since the stamp was taken, so state read before a concurrent write commits is not cached after the write
+     * evicted it. State put while an invalidation runs is evicted again.
+     *
+     * @param entityKey          the key identifying the entity
+     * @param state              the disassembled state of the entity
+     * @param invalidationStamp  the {@link #getInvalidationStamp(Class) stamp} taken before reading the state
+     */
+    public void put(EntityKey<?> entityKey, Object[] state, long invalidationStamp) {
+        CacheRegion region = regionOf(entityKey);
+        if (region == null || getInvalidationStamp(entityKey.entityType()) != invalidationStamp) {
+            return;
+        }
+        region.put(entityKey.id(), state);
+        if (getInvalidationStamp(entityKey.entityType()) != invalidationStamp) {
+            region.evict(entityKey.id());
+        }
+    }
+
+    /**
+     * Removes the cached state of the entity.
+     *
+     * @param entityKey the key identifying the entity
+     */
+    public void evict(EntityKey<?> entityKey) {
+        if (entityKey.entityType() != null) {
+            invalidationCount(entityKey.entityType()).incrementAndGet();
+        }
+        entityLoads.forget(entityKey);
+        CacheRegion region = regionOf(entityKey);
+        if (region != null) {
+            region.evict(entityKey.id());
+        }
+    }
+
+    /**
+     * Removes the cached state of all entities of the type.
+     *
+     * @param entityType the entity class
+     */
+    public void evictAll(Class<?> entityType) {
+        invalidationCount(entityType).incrementAndGet();
+        entityLoads.forgetIf(entityKey -> entityKey.entityType() == entityType);
+        CacheRegion region = getRegion(entityType);
+        if (region != null) {
+            region.evictAll();
+        }
+    }
+
+    /**
+     * Removes the cached state of all entities and all cached query results.
+     */
+    public void evictAll() {
+        fullInvalidationCount.incrementAndGet();
+        getRegions().forEach(CacheRegion::evictAll);
+        queryCache.evictAll();
+        entityLoads.forgetAll();
+        collectionLoads.forgetAll();
+    }
+
+    /**
+     * Records that the entity was changed through the connection, to be invalidated once its transaction commits.
+     *
+     * @param connection the connection of the write
+     * @param entityKey  the key identifying the entity
+     */
+    public void recordEviction(Connection connection, EntityKey<?> entityKey) {
+        if (entityKey.entityType() != null && entityKey.id() != null) {
+            pendingInvalidations.computeIfAbsent(connection, key -> new PendingInvalidation()).entityKeys.add(entityKey);
+        }
+    }
+
+    /**
+     * Records that the table was written through the connection, to be invalidated once its transaction commits.
+     *
+     * @param connection the connection of the write
+     * @param tableName  the name of the table
+     */
+    public void recordTableUpdate(Connection connection, String tableName) {
+        pendingInvalidations.computeIfAbsent(connection, key -> new PendingInvalidation()).tables.add(tableName);
+    }
+
+    /**
+     * Completes the transaction of the connection. The changes recorded for a committed transaction are evicted
+     * again and published to the caches of other nodes; the ones of a rolled back transaction are dropped.
+     *
+     * @param connection the connection of the transaction
+     * @param committed  whether the transaction was committed
+     */
+    public void completeTransaction(Connection connection, boolean committed) {
+        PendingInvalidation pendingInvalidation = pendingInvalidations.remove(connection);
+        if (pendingInvalidation == null || !committed) {
+            return;
+        }
+
+        CacheInvalidation invalidation = CacheInvalidation.of(id, pendingInvalidation.entityKeys, pendingInvalidation.tables);
+        applyInvalidation(invalidation);
+        if (invalidationTransport != null) {
+            try {
+                invalidationTransport.publish(invalidation);
+            } catch (RuntimeException exception) {
+                if (log.isWarnEnabled()) {
+                    log.warn("Error publishing cache invalidation: {}", exception.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Evicts the entities, entity types and tables of the invalidation. Regions that were not created yet
+     * are left alone.
+     *
+     * @param invalidation the invalidation
+     */
+    public void applyInvalidation(CacheInvalidation invalidation) {
+        invalidation.entityTypes().forEach(entityType -> invalidationCount(entityType).incrementAndGet());
+        invalidation.entityKeys().forEach(entityKey -> invalidationCount(entityKey.entityType()).incrementAndGet());
+        invalidation.entityTypes().forEach(entityType -> entityLoads.forgetIf(entityKey -> entityKey.entityType() == entityType));
+        invalidation.entityKeys().forEach(entityLoads::forget);
+        invalidation.tables().forEach(table -> collectionLoads.forgetIf(collectionKey -> collectionKey.isOf(table)));
+        invalidation.entityTypes().forEach(entityType -> existingRegion(entityType).ifPresent(CacheRegion::evictAll));
+        invalidation.entityKeys().forEach(entityKey -> existingRegion(entityKey.entityType())
+                .ifPresent(region -> region.evict(entityKey.id())));
+        invalidation.tables().forEach(updateTimestamps::invalidate);
+    }
+
+    /**
+     * Closes all regions, persisting the ones stored in memory-mapped files. Regions used afterwards are
+     * created anew.
+     */
+    @Override
+    public void close() {
+        regions.values().forEach(region -> region.ifPresent(CacheRegion::close));
+        regions.clear();
+    }
+
+    private AtomicLong invalidationCount(Class<?> entityType) {
+        return invalidationCounts.computeIfAbsent(entityType, type -> new AtomicLong());
+    }
+
+    private Optional<CacheRegion> existingRegion(Class<?> entityType) {
+        return regions.getOrDefault(entityType, Optional.empty());
+    }
+
+    private CacheRegion regionOf(EntityKey<?> entityKey) {
+        if (entityKey.entityType() == null || entityKey.id() == null) {
+            return null;
+        }
+
+        return getRegion(entityKey.entityType());
+    }
+
+    private Optional<CacheRegion> createRegion(Class<?> entityType) {
+        Cacheable cacheable = entityType.getAnnotation(Cacheable.class);
+        if (cacheable == null) {
+            return Optional.empty();
+        }
+
+        IntFunction<CacheStorage<Object, CachedEntityState>> storageFactory = switch (cacheable.storage()) {
+            case HEAP -> cacheable.eviction()::createStorage;
+            case OFF_HEAP -> offHeapStorageFactory(entityType, cacheable);
+            case MAPPED_FILE -> directory != null
+                    ? mappedFileStorageFactory(entityType, cacheable)
+                    : offHeapStorageFactory(entityType, cacheable);
+        };
+        CacheRegion region = new CacheRegion(entityType.getName(), cacheable.maxEntries(),
+                Duration.ofSeconds(cacheable.timeToLiveSeconds()), storageFactory, System::nanoTime);
+        if (log.isDebugEnabled()) {
+            log.debug("Created second-level cache region {} stored {}", region, switch (cacheable.storage()) {
+                case HEAP -> "on heap with " + cacheable.eviction() + " eviction";
+                case OFF_HEAP -> "off-heap";
+                case MAPPED_FILE -> directory != null ? "in " + directory : "off-heap";
+            });
+        }
+
+        return Optional.of(region);
+    }
+
+    /**
+     * Splits the off-heap capacity of the region between its stripes in proportion to their number of entries.
+     */
+    private static IntFunction<CacheStorage<Object, CachedEntityState>> offHeapStorageFactory(Class<?> entityType,
+                                                                                           Cacheable cacheable) {
+        EntityStateCodec codec = EntityStateCodec.forEntity(entityType);
+        long capacityBytes = cacheable.offHeapCapacityMegabytes() * 1024 * 1024;
+        return stripeMaxEntries -> new OffHeapCacheStorage(codec, stripeMaxEntries,
+                capacityBytes * stripeMaxEntries / Math.max(1, cacheable.maxEntries()));
+    }
+
+    /**
+     * Maps each stripe of the region from its own file, named after the entity, the stripe and the number of
+     * stripes, so a file is only reused by the stripe holding the same ids.
+     */
+    private IntFunction<CacheStorage<Object, CachedEntityState>> mappedFileStorageFactory(Class<?> entityType,
+                                                                                          Cacheable cacheable) {
+        EntityStateCodec codec = EntityStateCodec.forEntity(entityType);
+        long capacityBytes = cacheable.offHeapCapacityMegabytes() * 1024 * 1024;
+        String tableName = ParameterNameResolver.resolveTableName(entityType);
+        int stripesCount = CacheRegion.stripesCount(cacheable.maxEntries());
+        int[] nextStripe = new int[1];
+        return stripeMaxEntries -> {
+            Path file = directory.resolve(String.format("%s.%d-of-%d.cache",
+                    entityType.getName(), nextStripe[0]++, stripesCount));
+            return new MappedFileCacheStorage(codec, stripeMaxEntries,
+                    capacityBytes * stripeMaxEntries / Math.max(1, cacheable.maxEntries()), file,
+                    () -> tableChangeCounter.getChangeCount(tableName));
+        };
+    }
+
+    /**
+     * Identifies the load of the entities whose column holds the value.
+     *
+     * @param entityType the type of the loaded entities
+     * @param columnName the name of the restricting column
+     * @param value      the value of the restricting column
+     */
+    public record CollectionKey(Class<?> entityType, String columnName, Object value) {
+
+        boolean isOf(String tableName) {
+            return ParameterNameResolver.resolveTableName(entityType).equalsIgnoreCase(tableName);
+        }
+    }
+
+    /**
+     * The changes recorded for the transaction of a connection.
+     */
+    private static final class PendingInvalidation {
+
+        private final Set<EntityKey<?>> entityKeys = new LinkedHashSet<>();
+        private final Set<String> tables = new LinkedHashSet<>();
+    }
+
+    /**
+     * Applies the invalidations published by other caches.
+     */
+    private final class InvalidationListener implements CacheInvalidationTransport.Listener {
+
+        @Override
+        public void onInvalidation(CacheInvalidation invalidation) {
+            if (id.equals(invalidation.origin())) {
+                return;
+            }
+            if (log.isDebugEnabled()) {
+                log.debug("Applying cache invalidation of {} entities, {} entity types and tables {} from {}",
+                        invalidation.entityKeys().size(), invalidation.entityTypes().size(),
+                        invalidation.tables(), invalidation.origin());
+            }
+            applyInvalidation(invalidation);
+        }
+
+        @Override
+        public void onInvalidationsLost() {
+            if (log.isWarnEnabled()) {
+                log.warn("Cache invalidations may have been lost, evicting the whole second-level cache");
+            }
+            evictAll();
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package org.svydovets.cache;
+
+import org.svydovets.exception.BibernateException;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent loads of the same key: the first caller runs the load, and callers asking for the key
+ * while it is in flight wait for it and share its result, or its exception, instead of loading it again.
+ *
+ * <p>A thread running a load never waits for the loads of other threads: the loads it starts while running
+ * one, such as the loads of referenced entities, are run on their own when another thread is already loading
+ * the same key. So two threads loading entities that reference each other cannot wait for each other.</p>
+ *
+ * <p>Once the data of a key changes, it must be {@link #forget(Object) forgotten}, so later callers do not
+ * share a load started before the change.</p>
+ *
+ * <p>The class is thread-safe.</p>
+ *
+ * @param <K> the type of the keys
+ * @param <V> the type of the loaded values
+ */
+public class SingleFlight<K, V> {
+
+    private static final ThreadLocal<int[]> runningLoads = ThreadLocal.withInitial(() -> new int[1]);
+
+    private final ConcurrentMap<K, CompletableFuture<V>> flights = new ConcurrentHashMap<>();
+    private final LongAdder loadCount = new LongAdder();
+    private final LongAdder coalescedCount = new LongAdder();
+
+    /**
+     * Loads the value of the key, or waits for the load of the key in flight and returns its value.
+     *
+     * @param key    the key
+     * @param loader loads the value of the key
+     * @return the loaded value, may be {@code null}
+     * @throws RuntimeException the exception thrown by the loader, also to the callers sharing the load
+     */
+    public V execute(K key, Supplier<V> loader) {
+        CompletableFuture<V> flight = new CompletableFuture<>();
+        CompletableFuture<V> flightInProgress = flights.putIfAbsent(key, flight);
+        if (flightInProgress == null) {
+            return load(loader, key, flight);
+        }
+        if (runningLoads.get()[0] > 0) {
+            return load(loader, null, null);
+        }
+
+        coalescedCount.increment();
+        try {
+            return flightInProgress.join();
+        } catch (CompletionException exception) {
+            if (exception.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (exception.getCause() instanceof Error cause) {
+                throw cause;
+            }
+            throw new BibernateException(String.format("Error sharing load of %s", key), exception.getCause());
+        }
+    }
+
+    /**
+     * Makes later callers of the key run a new load instead of sharing the one in flight. Callers already
+     * waiting for the load in flight still get its result.
+     *
+     * @param key the key
+     */
+    public void forget(K key) {
+        flights.remove(key);
+    }
+
+    /**
+     * Forgets the loads in flight of the keys matching the filter.
+     *
+     * @param filter the filter of the keys
+     * @see #forget(Object)
+     */
+    public void forgetIf(Predicate<? super K> filter) {
+        flights.keySet().removeIf(filter);
+    }
+
+    /**
+     * Forgets all loads in flight.
+     *
+     * @see #forget(Object)
+     */
+    public void forgetAll() {
+        flights.clear();
+    }
+
+    /**
+     * Returns the number of loads run.
+     *
+     * @return the load count
+     */
+    public long getLoadCount() {
+        return loadCount.sum();
+    }
+
+    /**
+     * Returns the number of calls that shared a load in flight instead of running their own.
+     *
+     * @return the coalesced count
+     */
+    public long getCoalescedCount() {
+        return coalescedCount.sum();
+    }
+
+    /**
+     * Returns the number of loads in flight that may still be shared.
+     *
+     * @return the in flight count
+     */
+    public int getInFlightCount() {
+        return flights.size();
+    }
+
+    private V load(Supplier<V> loader, K key, CompletableFuture<V> flight) {
+        loadCount.increment();
+        int[] loads = runningLoads.get();
+        loads[0]++;
+        try {
+            V value = loader.get();
+            finish(key, flight);
+            if (flight != null) {
+                flight.complete(value);
+            }
+            return value;
+        } catch (RuntimeException | Error exception) {
+            finish(key, flight);
+            if (flight != null) {
+                flight.completeExceptionally(exception);
+            }
+            throw exception;
+        } finally {
+            loads[0]--;
+        }
+    }
+
+    private void finish(K key, CompletableFuture<V> flight) {
+        if (flight != null) {
+            flights.remove(key, flight);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("SingleFlight[loads=%d, coalesced=%d, inFlight=%d]",
+                getLoadCount(), getCoalescedCount(), getInFlightCount());
+    }
+}
@@ -0,0 +1,30 @@
+package org.svydovets.cache;
+
+/**
+ * A source of a counter of the changes made to a table, used to tell whether cached state persisted by a
+ * previous run of the application may still be used. The counter must change whenever rows of the table
+ * are inserted, updated or deleted, by any application.
+ *
+ * @see CacheStorageType#MAPPED_FILE
+ */
+@FunctionalInterface
+public interface TableChangeCounter {
+
+    /**
+     * The value returned when the counter cannot be read.
+     */
+    long UNKNOWN = -1L;
+
+    /**
+     * The counter used when none is configured.
+     */
+    TableChangeCounter NONE = tableName -> UNKNOWN;
+
+    /**
+     * Returns the current value of the counter of the table.
+     *
+     * @param tableName the name of the table
+     * @return the number of changes made to the table, or {@link #UNKNOWN}
+     */
+    long getChangeCount(String tableName);
+}
@@ -0,0 +1,63 @@
+package org.svydovets.cache;
+
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records when each table was last written, used to tell whether a cached query result is still valid.
+ *
+ * <p>Timestamps are taken from a logical clock rather than the wall clock: every write to a table advances
+ * the clock and stores its new value as the table's last update. A query result read at timestamp {@code t}
+ * is up to date as long as none of the tables it reads was updated after {@code t}. Table names are compared
+ * case-insensitively.</p>
+ */
+public class TableUpdateTimestamps {
+
+    private final AtomicLong clock = new AtomicLong();
+    private final ConcurrentMap<String, Long> lastUpdates = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the current timestamp, to be taken before a query is executed.
+     *
+     * @return the current value of the logical clock
+     */
+    public long currentTimestamp() {
+        return clock.get();
+    }
+
+    /**
+     * Records a write to the table. Must be called after the statement was executed, so that queries
+     * running at the same time are treated as stale.
+     *
+     * @param tableName the name of the written table
+     */
+    public void invalidate(String tableName) {
+        long timestamp = clock.incrementAndGet();
+        lastUpdates.merge(tableName.toLowerCase(Locale.ROOT), timestamp, Math::max);
+    }
+
+    /**
+     * Checks whether none of the tables was written after the timestamp.
+     *
+     * @param tableNames the tables read by a query, an empty set means any table
+     * @param timestamp  the timestamp taken before the query was executed
+     * @return {@code true} if the query result read at the timestamp is still valid
+     */
+    public boolean isUpToDate(Set<String> tableNames, long timestamp) {
+        if (tableNames.isEmpty()) {
+            return clock.get() <= timestamp;
+        }
+
+        for (String tableName : tableNames) {
+            Long lastUpdate = lastUpdates.get(tableName.toLowerCase(Locale.ROOT));
+            if (lastUpdate != null && lastUpdate > timestamp) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+}
@@ -0,0 +1,143 @@
+package org.svydovets.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A storage applying the Window TinyLFU policy.
+ *
+ * <p>Entries are split into three LRU segments: a window taking about 1% of the capacity, and the main
+ * region divided into a probation segment (20%) and a protected segment (80%). A new entry enters the
+ * window. The entry pushed out of the window becomes a candidate for the probation segment and is only
+ * admitted if the {@link FrequencySketch} estimates it was accessed more often than the least recently used
+ * probation entry, which is evicted instead. An entry read while on probation is promoted to the protected
+ * segment; the least recently used protected entry is demoted back to probation when the segment is full.</p>
+ *
+ * @param <K> the type of the keys
+ * @param <V> the type of the values
+ * @see EvictionPolicy#W_TINY_LFU
+ */
+public class WindowTinyLfuCacheStorage<K, V> implements CacheStorage<K, V> {
+
+    private final int windowMaximumSize;
+    private final int mainMaximumSize;
+    private final int protectedMaximumSize;
+    private final FrequencySketch sketch;
+
+    private final LinkedHashMap<K, V> window = new LinkedHashMap<>();
+    private final LinkedHashMap<K, V> probation = new LinkedHashMap<>();
+    private final LinkedHashMap<K, V> protectedSegment = new LinkedHashMap<>();
+
+    public WindowTinyLfuCacheStorage(int maximumSize) {
+        if (maximumSize < 1) {
+            throw new IllegalArgumentException("Maximum size of a cache storage cannot be less than 1");
+        }
+        this.windowMaximumSize = Math.max(1, maximumSize / 100);
+        this.mainMaximumSize = maximumSize - windowMaximumSize;
+        this.protectedMaximumSize = mainMaximumSize * 80 / 100;
+        this.sketch = new FrequencySketch(maximumSize);
+    }
+
+    @Override
+    public V get(K key) {
+        sketch.increment(key);
+
+        V value = window.remove(key);
+        if (value != null) {
+            window.put(key, value);
+            return value;
+        }
+
+        value = protectedSegment.remove(key);
+        if (value != null) {
+            protectedSegment.put(key, value);
+            return value;
+        }
+
+        value = probation.remove(key);
+        if (value != null) {
+            protectedSegment.put(key, value);
+            if (protectedSegment.size() > protectedMaximumSize) {
+                Map.Entry<K, V> demoted = removeEldest(protectedSegment);
+                probation.put(demoted.getKey(), demoted.getValue());
+            }
+        }
+
+        return value;
+    }
+
+    @Override
+    public void put(K key, V value) {
+        sketch.increment(key);
+
+        if (window.replace(key, value) != null
+                || protectedSegment.replace(key, value) != null
+                || probation.replace(key, value) != null) {
+            return;
+        }
+
+        window.put(key, value);
+        if (window.size() > windowMaximumSize) {
+            admit(removeEldest(window));
+        }
+    }
+
+    @Override
+    public V remove(K key) {
+        V value = window.remove(key);
+        if (value == null) {
+            value = protectedSegment.remove(key);
+        }
+        if (value == null) {
+            value = probation.remove(key);
+        }
+
+        return value;
+    }
+
+    @Override
+    public void clear() {
+        window.clear();
+        probation.clear();
+        protectedSegment.clear();
+    }
+
+    @Override
+    public int size() {
+        return window.size() + probation.size() + protectedSegment.size();
+    }
+
+    /**
+     * Moves the entry evicted from the window to the probation segment if the main region has room for it or
+     * if it is used more often than the probation entry it would replace.
+     */
+    private void admit(Map.Entry<K, V> candidate) {
+        if (mainMaximumSize == 0) {
+            return;
+        }
+
+        if (probation.size() + protectedSegment.size() < mainMaximumSize) {
+            probation.put(candidate.getKey(), candidate.getValue());
+            return;
+        }
+
+        K victimKey = probation.isEmpty()
+                ? protectedSegment.keySet().iterator().next()
+                : probation.keySet().iterator().next();
+        if (sketch.frequency(candidate.getKey()) > sketch.frequency(victimKey)) {
+            if (probation.remove(victimKey) == null) {
+                protectedSegment.remove(victimKey);
+            }
+            probation.put(candidate.getKey(), candidate.getValue());
+        }
+    }
+
+    private static <K, V> Map.Entry<K, V> removeEldest(LinkedHashMap<K, V> segment) {
+        Iterator<Map.Entry<K, V>> iterator = segment.entrySet().iterator();
+        Map.Entry<K, V> eldest = iterator.next();
+        eldest = Map.entry(eldest.getKey(), eldest.getValue());
+        iterator.remove();
+        return eldest;
+    }
+}
@@ -0,0 +1,21 @@
+package org.svydovets.connectionPool.config;
+
+/**
+ * How a {@link org.svydovets.connectionPool.datasource.PooledDataSource} opens its minimum idle connections
+ * when it is constructed. In both modes the connections are opened in parallel on a bounded number of threads.
+ */
+public enum InitializationMode {
+
+    /**
+     * The constructor returns once all minimum idle connections are open, and fails if any of them cannot be
+     * opened.
+     */
+    BLOCKING,
+
+    /**
+     * The constructor opens and validates a single connection, failing if it cannot, and returns right away
+     * while the other minimum idle connections are opened in the background. Speeds up the start of the
+     * application, at the cost of the first requests possibly waiting for connections.
+     */
+    FAIL_FAST
+}
@@ -0,0 +1,199 @@
+package org.svydovets.connectionPool.config;
+
+import java.time.Duration;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Sizing and timeout settings of a {@link org.svydovets.connectionPool.datasource.PooledDataSource}.
+ *
+ * <p>Start from {@link #defaults()} and override single settings with the {@code with*} methods:</p>
+ * <pre>{@code
+ * PoolConfig poolConfig = PoolConfig.defaults()
+ *         .withMaxPoolSize(20)
+ *         .withMinIdle(5)
+ *         .withConnectionTimeout(Duration.ofSeconds(5));
+ * }</pre>
+ *
+ * @param maxPoolSize            the maximum number of connections in the pool
+ * @param minIdle                the number of idle connections the pool keeps open, no more than {@code maxPoolSize}
+ * @param connectionTimeout      how long {@code getConnection()} waits for a connection to be returned to an
+ *                               exhausted pool before failing
+ * @param idleTimeout            how long a connection above {@code minIdle} may stay idle before it is closed,
+ *                               {@link Duration#ZERO} to keep idle connections forever
+ * @param maxLifetime            how long a connection may live before it is replaced, shortened by a random
+ *                               jitter of up to 2.5% per connection, {@link Duration#ZERO} to keep connections
+ *                               forever
+ * @param validationTimeout      how long checking whether a connection is alive may take, at least 1 second
+ * @param validationSkipWindow   how long after its last use or check a borrowed connection is handed out without
+ *                               checking whether it is alive
+ * @param keepaliveTime          how often idle connections are checked, so they are not dropped by the network or
+ *                               the database, {@link Duration#ZERO} to never check them
+ * @param leakDetectionThreshold how long a connection may be borrowed before it is reported as a leak along with
+ *                               the stack trace of its borrower, {@link Duration#ZERO} to never report leaks
+ * @param initializationMode     how the minimum idle connections are opened when the pool is constructed
+ * @param statementCacheSize     how many idle prepared statements each connection keeps for reuse, {@code 0} to
+ *                               close prepared statements once their caller closes them
+ * @param maxOpenStatements      how many statements a borrower may have open at once on a connection, so a caller
+ *                               leaking statements fails instead of piling them up on the database,
+ *                               {@code 0} for no limit
+ * @param threadingMode          the kind of threads borrowing the connections
+ */
+public record PoolConfig(int maxPoolSize, int minIdle, Duration connectionTimeout, Duration idleTimeout,
+                         Duration maxLifetime, Duration validationTimeout, Duration validationSkipWindow,
+                         Duration keepaliveTime, Duration leakDetectionThreshold,
+                         InitializationMode initializationMode, int statementCacheSize,
+                         int maxOpenStatements, ThreadingMode threadingMode) {
+
+    public static final int DEFAULT_MAX_POOL_SIZE = 10;
+    public static final int DEFAULT_MIN_IDLE = 2;
+    public static final Duration DEFAULT_CONNECTION_TIMEOUT = Duration.ofSeconds(30);
+    public static final Duration DEFAULT_IDLE_TIMEOUT = Duration.ofMinutes(10);
+    public static final Duration DEFAULT_MAX_LIFETIME = Duration.ofMinutes(30);
+    public static final Duration DEFAULT_VALIDATION_TIMEOUT = Duration.ofSeconds(5);
+    public static final Duration DEFAULT_VALIDATION_SKIP_WINDOW = Duration.ofMillis(500);
+    public static final Duration DEFAULT_KEEPALIVE_TIME = Duration.ofMinutes(2);
+    public static final int DEFAULT_STATEMENT_CACHE_SIZE = 64;
+    public static final int DEFAULT_MAX_OPEN_STATEMENTS = 100;
+
+    /**
+     * @throws IllegalArgumentException if {@code maxPoolSize} is less than 1, {@code minIdle},
+     *                                  {@code statementCacheSize} or {@code maxOpenStatements} is negative or
+     *                                  a duration is negative
+     */
+    public PoolConfig {
+        if (maxPoolSize <= 0) {
+            throw new IllegalArgumentException("Pool size cannot be equal or less than 0");
+        }
+        if (minIdle < 0) {
+            throw new IllegalArgumentException("Minimum idle connection count cannot be negative");
+        }
+        if (requireNonNull(connectionTimeout).isNegative()) {
+            throw new IllegalArgumentException("Connection timeout cannot be negative");
+        }
+        if (requireNonNull(idleTimeout).isNegative()) {
+            throw new IllegalArgumentException("Idle timeout cannot be negative");
+        }
+        if (requireNonNull(maxLifetime).isNegative()) {
+            throw new IllegalArgumentException("Max lifetime cannot be negative");
+        }
+        if (requireNonNull(validationTimeout).compareTo(Duration.ofSeconds(1)) < 0) {
+            throw new IllegalArgumentException("Validation timeout cannot be less than 1 second");
+        }
+        if (requireNonNull(validationSkipWindow).isNegative()) {
+            throw new IllegalArgumentException("Validation skip window cannot be negative");
+        }
+        if (requireNonNull(keepaliveTime).isNegative()) {
+            throw new IllegalArgumentException("Keepalive time cannot be negative");
+        }
+        if (requireNonNull(leakDetectionThreshold).isNegative()) {
+            throw new IllegalArgumentException("Leak detection threshold cannot be negative");
+        }
+        requireNonNull(initializationMode);
+        if (statementCacheSize < 0) {
+            throw new IllegalArgumentException("Statement cache size cannot be negative");
+        }
+        if (maxOpenStatements < 0) {
+            throw new IllegalArgumentException("Maximum open statement count cannot be negative");
+        }
+        requireNonNull(threadingMode);
+        minIdle = Math.min(minIdle, maxPoolSize);
+    }
+
+    /**
+     * Returns the default settings: a pool of up to {@value #DEFAULT_MAX_POOL_SIZE} connections keeping
+     * {@value #DEFAULT_MIN_IDLE} of them open when idle, waiting up to 30 seconds for a connection, closing
+     * connections idle for 10 minutes, replacing connections after about 30 minutes, checking borrowed connections
+     * unused for half a second and idle connections every 2 minutes, not reporting leaks, opening the minimum
+     * idle connections {@link InitializationMode#BLOCKING blocking} the construction of the pool, keeping up to
+     * {@value #DEFAULT_STATEMENT_CACHE_SIZE} prepared statements per connection for reuse and allowing up to
+     * {@value #DEFAULT_MAX_OPEN_STATEMENTS} open statements per borrowed connection, borrowed by
+     * {@link ThreadingMode#PLATFORM platform} threads.
+     *
+     * @return the default settings
+     */
+    public static PoolConfig defaults() {
+        return new PoolConfig(DEFAULT_MAX_POOL_SIZE, DEFAULT_MIN_IDLE, DEFAULT_CONNECTION_TIMEOUT,
+                DEFAULT_IDLE_TIMEOUT, DEFAULT_MAX_LIFETIME, DEFAULT_VALIDATION_TIMEOUT, DEFAULT_VALIDATION_SKIP_WINDOW,
+                DEFAULT_KEEPALIVE_TIME, Duration.ZERO, InitializationMode.BLOCKING, DEFAULT_STATEMENT_CACHE_SIZE,
+                DEFAULT_MAX_OPEN_STATEMENTS, ThreadingMode.PLATFORM);
+    }
+
+    public PoolConfig withMaxPoolSize(int maxPoolSize) {
+        return new PoolConfig(maxPoolSize, minIdle, connectionTimeout, idleTimeout, maxLifetime, validationTimeout,
+                validationSkipWindow, keepaliveTime, leakDetectionThreshold, initializationMode, statementCacheSize,
+                maxOpenStatements, threadingMode);
+    }
+
+    public PoolConfig withMinIdle(int minIdle) {
+        return new PoolConfig(maxPoolSize, minIdle, connectionTimeout, idleTimeout, maxLifetime, validationTimeout,
+                validationSkipWindow, keepaliveTime, leakDetectionThreshold, initializationMode, statementCacheSize,
+                maxOpenStatements, threadingMode);
+    }
+
+    public PoolConfig withConnectionTimeout(Duration connectionTimeout) {
+        return new PoolConfig(maxPoolSize, minIdle, connectionTimeout, idleTimeout, maxLifetime, validationTimeout,
+                validationSkipWindow, keepaliveTime, leakDetectionThreshold, initializationMode, statementCacheSize,
+                maxOpenStatements, threadingMode);
+    }
+
+    public PoolConfig withIdleTimeout(Duration idleTimeout) {
+        return new PoolConfig(maxPoolSize, minIdle, connectionTimeout, idleTimeout, maxLifetime, validationTimeout,
+                validationSkipWindow, keepaliveTime, leakDetectionThreshold, initializationMode, statementCacheSize,
+                maxOpenStatements, threadingMode);
+    }
+
+    public PoolConfig withMaxLifetime(Duration maxLifetime) {
+        return new PoolConfig(maxPoolSize, minIdle, connectionTimeout, idleTimeout, maxLifetime, validationTimeout,
+                validationSkipWindow, keepaliveTime, leakDetectionThreshold, initializationMode, statementCacheSize,
+                maxOpenStatements, threadingMode);
+    }
+
+    public PoolConfig withValidationTimeout(Duration validationTimeout) {
+        return new PoolConfig(maxPoolSize, minIdle, connectionTimeout, idleTimeout, maxLifetime, validationTimeout,
+                validationSkipWindow, keepaliveTime, leakDetectionThreshold, initializationMode, statementCacheSize,
+                maxOpenStatements, threadingMode);
+    }
+
+    public PoolConfig withValidationSkipWindow(Duration validationSkipWindow) {
+        return new PoolConfig(maxPoolSize, minIdle, connectionTimeout, idleTimeout, maxLifetime, validationTimeout,
+                validationSkipWindow, keepaliveTime, leakDetectionThreshold, initializationMode, statementCacheSize,
+                maxOpenStatements, threadingMode);
+    }
+
+    public PoolConfig withKeepaliveTime(Duration keepaliveTime) {
+        return new PoolConfig(maxPoolSize, minIdle, connectionTimeout, idleTimeout, maxLifetime, validationTimeout,
+                validationSkipWindow, keepaliveTime, leakDetectionThreshold, initializationMode, statementCacheSize,
+                maxOpenStatements, threadingMode);
+    }
+
+    public PoolConfig withLeakDetectionThreshold(Duration leakDetectionThreshold) {
+        return new PoolConfig(maxPoolSize, minIdle, connectionTimeout, idleTimeout, maxLifetime, validationTimeout,
+                validationSkipWindow, keepaliveTime, leakDetectionThreshold, initializationMode, statementCacheSize,
+                maxOpenStatements, threadingMode);
+    }
+
+    public PoolConfig withInitializationMode(InitializationMode initializationMode) {
+        return new PoolConfig(maxPoolSize, minIdle, connectionTimeout, idleTimeout, maxLifetime, validationTimeout,
+                validationSkipWindow, keepaliveTime, leakDetectionThreshold, initializationMode, statementCacheSize,
+                maxOpenStatements, threadingMode);
+    }
+
+    public PoolConfig withStatementCacheSize(int statementCacheSize) {
+        return new PoolConfig(maxPoolSize, minIdle, connectionTimeout, idleTimeout, maxLifetime, validationTimeout,
+                validationSkipWindow, keepaliveTime, leakDetectionThreshold, initializationMode, statementCacheSize,
+                maxOpenStatements, threadingMode);
+    }
+
+    public PoolConfig withMaxOpenStatements(int maxOpenStatements) {
+        return new PoolConfig(maxPoolSize, minIdle, connectionTimeout, idleTimeout, maxLifetime, validationTimeout,
+                validationSkipWindow, keepaliveTime, leakDetectionThreshold, initializationMode, statementCacheSize,
+                maxOpenStatements, threadingMode);
+    }
+
+    public PoolConfig withThreadingMode(ThreadingMode threadingMode) {
+        return new PoolConfig(maxPoolSize, minIdle, connectionTimeout, idleTimeout, maxLifetime, validationTimeout,
+                validationSkipWindow, keepaliveTime, leakDetectionThreshold, initializationMode, statementCacheSize,
+                maxOpenStatements, threadingMode);
+    }
+}
@@ -0,0 +1,24 @@
+package org.svydovets.connectionPool.config;
+
+/**
+ * The kind of threads borrowing the connections of a {@link org.svydovets.connectionPool.datasource.PooledDataSource},
+ * so the pool waits for connections the way that suits them. In both modes waiting callers park instead of
+ * holding a monitor, so a waiting virtual thread never pins its carrier thread.
+ */
+public enum ThreadingMode {
+
+    /**
+     * Connections are borrowed by a bounded number of long-lived platform threads, e.g. the worker threads of a
+     * server. A thread borrows the connection it returned last first, and all callers finding no idle connection
+     * wait on the pool directly.
+     */
+    PLATFORM,
+
+    /**
+     * Connections are borrowed by virtual threads, possibly thousands more than the pool has connections, each
+     * running a single request. At most as many callers as the pool may have connections look for one at once,
+     * the others queue up fairly on a semaphore in front of the pool and are woken one by one as connections are
+     * returned. Returned connections are not remembered per thread, as a virtual thread seldom borrows twice.
+     */
+    VIRTUAL
+}
@@ -0,0 +1,291 @@
+package org.svydovets.connectionPool.datasource;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A lock-free collection of pooled entries, borrowed and returned far more often than added or removed, as the
+ * connections of a {@link PooledDataSource}.
+ *
+ * <p>Each entry carries its own state, switched with compare-and-set, so borrowing and returning never take a
+ * lock shared by all callers:</p>
+ * <ol>
+ *     <li>a borrower first tries the entries it returned itself recently, kept in a thread-local list, which
+ *     usually hits on threads running one request after another; the list holds weak references, so an entry
+ *     removed from the bag by another thread is not kept reachable by the threads that returned it; bags borrowed from by short-lived threads,
+ *     such as virtual threads, are constructed without these lists;</li>
+ *     <li>then it scans the shared list of all entries for one not in use;</li>
+ *     <li>then it waits on a fair handoff queue, on which returned entries are handed to the waiting borrowers
+ *     in the order they started waiting.</li>
+ * </ol>
+ * <p>A borrower arriving while an entry is being handed off may take it first, so the order of waiting borrowers
+ * is kept, but a new borrower is not queued behind them.</p>
+ *
+ * <p>A borrower that finds no entry not in use tells the {@link Listener} of the bag, which may add entries,
+ * and a background task may {@link #reserve(Entry) reserve} an entry not in use to inspect or remove it
+ * without racing borrowers.</p>
+ *
+ * <p>The class is thread-safe.</p>
+ *
+ * @param <T> the type of the entries
+ */
+public class ConcurrentBag<T extends ConcurrentBag.Entry> {
+
+    private static final int MAX_THREAD_LOCAL_ENTRIES = 16;
+    private static final long MIN_WAIT_NANOS = TimeUnit.MICROSECONDS.toNanos(10);
+
+    private final CopyOnWriteArrayList<T> sharedList = new CopyOnWriteArrayList<>();
+    private final ThreadLocal<List<WeakReference<T>>> threadList;
+    private final AtomicInteger waiters = new AtomicInteger();
+    private final SynchronousQueue<T> handoffQueue = new SynchronousQueue<>(true);
+    private final Listener listener;
+
+    /**
+     * Constructs an empty bag that never asks for entries to be added.
+     */
+    public ConcurrentBag() {
+        this(waiting -> {
+        });
+    }
+
+    /**
+     * Constructs an empty bag.
+     *
+     * @param listener is told when borrowers find no entry not in use
+     */
+    public ConcurrentBag(Listener listener) {
+        this(listener, true);
+    }
+
+    /**
+     * Constructs an empty bag.
+     *
+     * @param listener           is told when borrowers find no entry not in use
+     * @param threadLocalEntries whether each thread borrows the entries it returned itself first, {@code false}
+     *                           when threads seldom borrow more than once, as virtual threads running one task
+     */
+    public ConcurrentBag(Listener listener, boolean threadLocalEntries) {
+        this.listener = listener;
+        this.threadList = threadLocalEntries
+                ? ThreadLocal.withInitial(() -> new ArrayList<>(MAX_THREAD_LOCAL_ENTRIES))
+                : null;
+    }
+
+    /**
+     * Borrows an entry not in use, waiting for one to be returned or added if there is none.
+     *
+     * @param timeout how long to wait
+     * @param unit    the unit of the timeout
+     * @return the borrowed entry, {@code null} if none became available within the timeout
+     * @throws InterruptedException if the calling thread was interrupted while waiting
+     */
+    public T borrow(long timeout, TimeUnit unit) throws InterruptedException {
+        if (threadList != null) {
+            List<WeakReference<T>> localEntries = threadList.get();
+            for (int i = localEntries.size() - 1; i >= 0; i--) {
+                T entry = localEntries.remove(i).get();
+                if (entry != null && entry.compareAndSetState(Entry.NOT_IN_USE, Entry.IN_USE)) {
+                    return entry;
+                }
+            }
+        }
+
+        int waiting = waiters.incrementAndGet();
+        try {
+            for (T entry : sharedList) {
+                if (entry.compareAndSetState(Entry.NOT_IN_USE, Entry.IN_USE)) {
+                    if (waiting > 1) {
+                        listener.onEntriesNeeded(waiting - 1);
+                    }
+                    return entry;
+                }
+            }
+
+            listener.onEntriesNeeded(waiting);
+
+            long remainingNanos = unit.toNanos(timeout);
+            do {
+                long startedAt = System.nanoTime();
+                T entry = handoffQueue.poll(remainingNanos, TimeUnit.NANOSECONDS);
+                if (entry == null || entry.compareAndSetState(Entry.NOT_IN_USE, Entry.IN_USE)) {
+                    return entry;
+                }
+                remainingNanos -= System.nanoTime() - startedAt;
+            } while (remainingNanos > MIN_WAIT_NANOS);
+
+            return null;
+        } finally {
+            waiters.decrementAndGet();
+        }
+    }
+
+    /**
+     * Returns a borrowed entry: hands it to a waiting borrower if there is one, otherwise keeps it in the
+     * thread-local list of the calling thread, if the bag has them, so the thread borrows it again first.
+     *
+     * @param entry the borrowed entry
+     */
+    public void requite(T entry) {
+        entry.setState(Entry.NOT_IN_USE);
+
+        for (int i = 0; waiters.get() > 0; i++) {
+            if (entry.getState() != Entry.NOT_IN_USE || handoffQueue.offer(entry)) {
+                return;
+            }
+            if ((i & 0xff) == 0xff) {
+                LockSupport.parkNanos(MIN_WAIT_NANOS);
+            } else {
+                Thread.yield();
+            }
+        }
+
+        if (threadList != null) {
+            List<WeakReference<T>> localEntries = threadList.get();
+            if (localEntries.size() < MAX_THREAD_LOCAL_ENTRIES) {
+                localEntries.add(new WeakReference<>(entry));
+            }
+        }
+    }
+
+    /**
+     * Adds a new entry, not in use, handing it to a waiting borrower if there is one.
+     *
+     * @param entry the entry
+     */
+    public void add(T entry) {
+        sharedList.add(entry);
+
+        while (waiters.get() > 0 && entry.getState() == Entry.NOT_IN_USE && !handoffQueue.offer(entry)) {
+            Thread.yield();
+        }
+    }
+
+    /**
+     * Removes a borrowed or reserved entry from the bag for good.
+     *
+     * @param entry the borrowed or reserved entry
+     * @return {@code true} if the entry was removed, {@code false} if it was neither borrowed nor reserved
+     */
+    public boolean remove(T entry) {
+        if (!entry.compareAndSetState(Entry.IN_USE, Entry.REMOVED)
+                && !entry.compareAndSetState(Entry.RESERVED, Entry.REMOVED)) {
+            return false;
+        }
+        sharedList.remove(entry);
+        if (threadList != null) {
+            threadList.get().removeIf(reference -> reference.get() == entry);
+        }
+        return true;
+    }
+
+    /**
+     * Reserves an entry not in use, so it cannot be borrowed until it is {@link #unreserve(Entry) unreserved}
+     * or {@link #remove(Entry) removed}.
+     *
+     * @param entry the entry
+     * @return {@code true} if the entry was reserved, {@code false} if it is in use or removed
+     */
+    public boolean reserve(T entry) {
+        return entry.compareAndSetState(Entry.NOT_IN_USE, Entry.RESERVED);
+    }
+
+    /**
+     * Makes a reserved entry available again, handing it to a waiting borrower if there is one.
+     *
+     * @param entry the reserved entry
+     */
+    public void unreserve(T entry) {
+        if (entry.compareAndSetState(Entry.RESERVED, Entry.NOT_IN_USE)) {
+            while (waiters.get() > 0 && entry.getState() == Entry.NOT_IN_USE && !handoffQueue.offer(entry)) {
+                Thread.yield();
+            }
+        }
+    }
+
+    /**
+     * Returns a snapshot of all entries in the bag, whatever their state.
+     *
+     * @return the entries
+     */
+    public List<T> values() {
+        return new ArrayList<>(sharedList);
+    }
+
+    /**
+     * Returns the number of entries in the given state.
+     *
+     * @param state one of the states of {@link Entry}
+     * @return the count
+     */
+    public int getCount(int state) {
+        int count = 0;
+        for (T entry : sharedList) {
+            if (entry.getState() == state) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public int size() {
+        return sharedList.size();
+    }
+
+    /**
+     * Returns the number of borrowers currently looking for an entry, including those still scanning the bag.
+     *
+     * @return the waiter count
+     */
+    public int getWaiterCount() {
+        return waiters.get();
+    }
+
+    /**
+     * Told by a {@link ConcurrentBag} when borrowers find no entry not in use.
+     */
+    @FunctionalInterface
+    public interface Listener {
+
+        /**
+         * Called on the thread of a borrower that found no entry not in use. Must not block.
+         *
+         * @param waiting the number of borrowers looking for an entry
+         */
+        void onEntriesNeeded(int waiting);
+    }
+
+    /**
+     * An entry of a {@link ConcurrentBag}, holding the state the bag switches on borrow and return.
+     */
+    public abstract static class Entry {
+
+        public static final int NOT_IN_USE = 0;
+        public static final int IN_USE = 1;
+        public static final int REMOVED = -1;
+        public static final int RESERVED = -2;
+
+        private static final AtomicIntegerFieldUpdater<Entry> STATE =
+                AtomicIntegerFieldUpdater.newUpdater(Entry.class, "state");
+
+        private volatile int state;
+
+        public int getState() {
+            return state;
+        }
+
+        void setState(int state) {
+            this.state = state;
+        }
+
+        boolean compareAndSetState(int expectedState, int newState) {
+            return STATE.compareAndSet(this, expectedState, newState);
+        }
+    }
+}
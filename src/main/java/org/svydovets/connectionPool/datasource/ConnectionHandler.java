@@ -1,69 +1,105 @@
 package org.svydovets.connectionPool.datasource;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import javax.sql.DataSource;
 import java.sql.Connection;
 import java.sql.SQLException;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * The {@code ConnectionHandler} class is responsible for managing database connections.
- * It handles the retrieval of connections based on the current transaction state and manages a cache of connections
- * associated with different threads.
+ * It hands out connections of the data source, except while a transaction of its owner runs, when it hands out
+ * the connection of that transaction.
+ *
+ * <p>The session factory has one handler, which never runs transactions, and each session gets a handler of
+ * its own from {@link #forSession()}. The connection of a transaction is thus bound to the session that began
+ * it: sessions run their transactions concurrently, each on its own connection, whatever thread they run on,
+ * and a session never reads or writes through the transaction of another session sharing its thread.</p>
+ *
+ * <p>The handler of a session is not thread-safe, like the session owning it.</p>
  */
 public class ConnectionHandler {
 
+    private static final Logger log = LoggerFactory.getLogger(ConnectionHandler.class);
+
     private final DataSource dataSource;
-    private final ConnectionAttributes connectionAttributes = new ConnectionAttributes();
-    private final Map<String, Connection> connections;
+    private TransactionalConnection transactionConnection;
 
     /**
      * Constructs a new {@code ConnectionHandler} with the given {@link DataSource}.
-     * It initializes an internal map to keep track of connections per thread.
      *
      * @param dataSource the data source from which connections will be obtained.
      */
     public ConnectionHandler(DataSource dataSource) {
         this.dataSource = dataSource;
-        connections = new ConcurrentHashMap<>();
     }
 
     /**
-     * Retrieves a {@link Connection} from the data source. If a transaction is currently activated,
-     * it returns a connection associated with the current thread. Otherwise, it fetches a new connection
-     * from the data source.
+     * Creates a handler borrowing connections from the same data source, for a session to run its transactions
+     * on.
+     *
+     * @return the handler of a session
+     */
+    public ConnectionHandler forSession() {
+        return new ConnectionHandler(dataSource);
+    }
+
+    /**
+     * Retrieves a {@link Connection} from the data source. If a transaction of this handler is running, it
+     * returns the connection of the transaction instead. Closing the connection of a transaction does not
+     * return it to the pool: it is returned by {@link #releaseTransactionConnection(Connection)} once the
+     * transaction ends.
      *
      * @return A {@link Connection} object for database operations.
      * @throws SQLException if a database access error occurs or the data source is closed.
      */
     public Connection getConnection() throws SQLException {
-        if (connectionAttributes.isTransactionActivated()) {
-            String threadName = Thread.currentThread().getName();
-
-            Connection connection = connections.get(threadName);
+        return transactionConnection != null ? transactionConnection : dataSource.getConnection();
+    }
 
-            if (connection == null) {
-                connection = dataSource.getConnection();
-                connections.put(threadName, connection);
-            }
-            return connection;
-        } else {
-            return dataSource.getConnection();
+    /**
+     * Borrows a connection for a transaction and binds it to this handler, so the connections it hands out are
+     * this one until it is {@link #releaseTransactionConnection(Connection) released}.
+     *
+     * @return the connection of the transaction
+     * @throws SQLException          if a database access error occurs or the data source is closed.
+     * @throws IllegalStateException if a transaction of this handler is already running.
+     */
+    public Connection bindTransactionConnection() throws SQLException {
+        if (transactionConnection != null) {
+            throw new IllegalStateException("A transaction is already running on this connection handler");
         }
+        transactionConnection = new TransactionalConnection(dataSource.getConnection());
+        return transactionConnection;
     }
 
-    public void closeConnectionByThreadName() {
-        String threadName = Thread.currentThread().getName();
-        connections.remove(threadName);
+    /**
+     * Tells whether a transaction of this handler is running.
+     *
+     * @return {@code true} if a transaction connection is bound to this handler.
+     */
+    public boolean isTransactionActive() {
+        return transactionConnection != null;
     }
 
     /**
-     * Retrieves the {@link ConnectionAttributes} object that represents the attributes of the connection,
-     * including the transaction activation status.
+     * Unbinds the connection of a transaction that ended from this handler and returns it to the pool.
      *
-     * @return The {@link ConnectionAttributes} object associated with this handler.
+     * @param connection the connection returned by {@link #bindTransactionConnection()}.
      */
-    public ConnectionAttributes getConnectionAttributes() {
-        return connectionAttributes;
+    public void releaseTransactionConnection(Connection connection) {
+        if (transactionConnection == connection) {
+            transactionConnection = null;
+        }
+        if (connection instanceof TransactionalConnection transactionalConnection) {
+            try {
+                transactionalConnection.release();
+            } catch (SQLException e) {
+                if (log.isWarnEnabled()) {
+                    log.warn("Error releasing the connection of the transaction: {}", e.getMessage());
+                }
+            }
+        }
     }
 }
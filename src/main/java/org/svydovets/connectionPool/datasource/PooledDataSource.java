@@ -1,9 +1,17 @@
 package org.svydovets.connectionPool.datasource;
 
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.svydovets.connectionPool.config.DataSourceConfig;
+import org.svydovets.connectionPool.config.InitializationMode;
+import org.svydovets.connectionPool.config.PoolConfig;
+import org.svydovets.connectionPool.config.ThreadingMode;
+import org.svydovets.connectionPool.exception.ConnectionTimeoutException;
 import org.svydovets.connectionPool.exception.PooledDataSourceCreationException;
 
+import javax.sql.DataSource;
+
 import java.sql.Array;
 import java.sql.Blob;
 import java.sql.CallableStatement;
@@ -20,24 +28,124 @@ import java.sql.Savepoint;
 import java.sql.ShardingKey;
 import java.sql.Statement;
 import java.sql.Struct;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Properties;
-import java.util.Queue;
 import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
 
 /**
  * A data source that manages a pool of database connections.
  * It extends {@code DriverDataSource} to reuse its connection creation logic.
- * The pool size is configurable, and connections are managed internally in a queue.
+ * The pool size is configurable, and connections are managed internally in a {@link ConcurrentBag}, so
+ * concurrent callers borrow and return them without contending on a shared lock.
+ *
+ * <p>When all connections are in use, {@link #getConnection()} waits for one to be returned, up to the
+ * configured connection timeout. Waiting callers are served in the order they started waiting and are woken
+ * up as soon as a connection is returned. How long the callers waited is recorded in a
+ * {@link #getWaitTimeHistogram() histogram}, so the pool can be sized from the observed waits.</p>
+ *
+ * <p>The pool is elastic: it opens {@link PoolConfig#minIdle()} connections at construction and grows up to
+ * {@link PoolConfig#maxPoolSize()} on demand, opening connections on a background thread when callers find
+ * none idle. A housekeeping task closes connections idle for longer than the idle timeout while more than
+ * {@code minIdle} connections are idle, and replaces connections older than their max lifetime. Each
+ * connection gets its own lifetime, shortened by a random jitter, so connections opened together are not all
+ * replaced at once. A connection in use when its lifetime ends is replaced once it is returned.</p>
+ *
+ * <p>The minimum idle connections are opened in parallel on at most {@value #INITIAL_FILL_PARALLELISM} threads,
+ * virtual ones when the JVM supports them. Depending on the {@link InitializationMode}, the constructor waits for
+ * all of them, or only opens and validates one and leaves the others to the background. The time it took to
+ * reach the minimum idle count is reported by {@link #getTimeToMinIdle()}.</p>
+ *
+ * <p>A connection unused for longer than the validation skip window is checked with {@link Connection#isValid}
+ * before it is handed out, and idle connections are checked every keepalive time, so connections dropped by a
+ * firewall or a restart of the database are neither handed out nor kept. Dead connections are closed and
+ * replaced in the background. When a leak detection threshold is set, a connection borrowed for longer is
+ * reported in the log along with the stack trace of the code that borrowed it.</p>
+ *
+ * <p>Each connection keeps the prepared statements closed by their callers in a {@link StatementCache}, up to
+ * {@link PoolConfig#statementCacheSize()} of them, so preparing the same SQL again reuses the statement the
+ * driver already prepared. The caches stay open while the connection is idle in the pool, and their hits, misses
+ * and evictions are counted in {@link #getStatementCacheStatistics()}.</p>
+ *
+ * <p>Every statement opened on a borrowed connection is tracked until its caller closes it, and the statements
+ * still open are closed when the connection is returned, so no statement outlives its borrower. At most
+ * {@link PoolConfig#maxOpenStatements()} statements may be open at once on a connection.</p>
+ *
+ * <p>A connection remembers its auto-commit, read-only, transaction isolation, schema and network timeout
+ * settings, so setting a value it already has and reading a setting cost no round trip to the database. When it
+ * is returned, the transaction its borrower left open is rolled back and only the settings the borrower changed
+ * are restored to the values the connection was opened with.</p>
+ *
+ * <p>Callers waiting for a connection park instead of holding a monitor, so virtual threads waiting never pin
+ * their carrier threads. In {@link ThreadingMode#VIRTUAL} at most {@link PoolConfig#maxPoolSize()} callers look
+ * for a connection at once, and the others wait their turn on a fair {@link Semaphore}, so thousands of virtual
+ * threads borrowing at once queue up without spinning on the pool.</p>
+ *
+ * <p>The data source should be {@link #close() closed} when the application stops.</p>
  */
-public class PooledDataSource extends DriverDataSource {
+public class PooledDataSource extends DriverDataSource implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(PooledDataSource.class);
 
-    private static final int DEFAULT_POOL_SIZE = 10;
-    private final Queue<Connection> connectionPool;
+    private static final long HOUSEKEEPING_PERIOD_MILLIS = 30_000;
+    private static final int MAX_LIFETIME_JITTER_DIVISOR = 40;
+    static final int INITIAL_FILL_PARALLELISM = 8;
+
+    private final ConcurrentBag<ConnectionProxy> connectionBag;
+    /**
+     * The permits of the callers allowed to look for a connection at once in {@link ThreadingMode#VIRTUAL},
+     * {@code null} in {@link ThreadingMode#PLATFORM}. A permit is taken by {@link #getConnection()} and given back
+     * when the borrowed connection is returned.
+     */
+    private final Semaphore borrowPermits;
     private final int maxPoolSize;
+    private final int minIdle;
+    private final long connectionTimeoutNanos;
+    private final long idleTimeoutNanos;
+    private final long maxLifetimeNanos;
+    private final int validationTimeoutSeconds;
+    private final long validationSkipWindowNanos;
+    private final long keepaliveTimeNanos;
+    private final long leakDetectionThresholdNanos;
+    private final int statementCacheSize;
+    private final int maxOpenStatements;
+    private final DataSource physicalDataSource;
+    private final LongSupplier ticker;
+    private final ThreadPoolExecutor connectionAdder;
+    private final ThreadPoolExecutor connectionCloser;
+    private final ScheduledExecutorService housekeeper;
+    private final WaitTimeHistogram waitTimeHistogram = new WaitTimeHistogram();
+    private final LongAdder timeoutCount = new LongAdder();
+    private final LongAdder createdCount = new LongAdder();
+    private final LongAdder retiredCount = new LongAdder();
+    private final LongAdder deadCount = new LongAdder();
+    private final LongAdder leakCount = new LongAdder();
+    private final StatementCacheStatistics statementCacheStatistics = new StatementCacheStatistics();
+    private final AtomicInteger connectionCount = new AtomicInteger();
+    private final AtomicLong timeToMinIdleNanos = new AtomicLong(-1);
+    private final long startedAt = System.nanoTime();
+    private volatile boolean closed;
 
     /**
      * Constructs a PooledDataSource with default pool size.
@@ -45,7 +153,7 @@ public class PooledDataSource extends DriverDataSource {
      * @param config The {@code DataSourceConfig} containing the database connection details.
      */
     public PooledDataSource(DataSourceConfig config) {
-        this(config, DEFAULT_POOL_SIZE);
+        this(config, PoolConfig.defaults());
     }
 
     /**
@@ -56,135 +164,850 @@ public class PooledDataSource extends DriverDataSource {
      * @throws IllegalArgumentException if {@code maxPoolSize} is less than or equal to 0.
      */
     public PooledDataSource(DataSourceConfig config, int maxPoolSize) {
-        super(config);
-        if (maxPoolSize <= 0) {
-            throw new IllegalArgumentException("Pool size cannot be equal or less than 0");
-        }
-        this.maxPoolSize = maxPoolSize;
-        this.connectionPool = new ArrayBlockingQueue<>(maxPoolSize);
+        this(config, PoolConfig.defaults().withMaxPoolSize(maxPoolSize));
+    }
 
-        initPooledDataSource();
+    /**
+     * Constructs a PooledDataSource with the specified pool settings.
+     *
+     * @param config     The {@code DataSourceConfig} containing the database connection details.
+     * @param poolConfig The sizing and timeout settings of the pool.
+     * @throws PooledDataSourceCreationException if unable to open the minimum idle connections, or the first
+     *                                           connection in {@link InitializationMode#FAIL_FAST} mode.
+     */
+    public PooledDataSource(DataSourceConfig config, PoolConfig poolConfig) {
+        this(config, poolConfig, null, System::nanoTime);
+    }
+
+    /**
+     * Constructs a PooledDataSource opening its physical connections through the given data source instead of
+     * the driver, {@code null} to use the driver, and checking idle times and lifetimes with the given ticker.
+     */
+    PooledDataSource(DataSourceConfig config, PoolConfig poolConfig, DataSource physicalDataSource,
+                     LongSupplier ticker) {
+        super(config);
+        this.maxPoolSize = poolConfig.maxPoolSize();
+        this.minIdle = poolConfig.minIdle();
+        this.connectionTimeoutNanos = poolConfig.connectionTimeout().toNanos();
+        this.idleTimeoutNanos = poolConfig.idleTimeout().toNanos();
+        this.maxLifetimeNanos = poolConfig.maxLifetime().toNanos();
+        this.validationTimeoutSeconds = (int) Math.max(1, poolConfig.validationTimeout().toSeconds());
+        this.validationSkipWindowNanos = poolConfig.validationSkipWindow().toNanos();
+        this.keepaliveTimeNanos = poolConfig.keepaliveTime().toNanos();
+        this.leakDetectionThresholdNanos = poolConfig.leakDetectionThreshold().toNanos();
+        this.statementCacheSize = poolConfig.statementCacheSize();
+        this.maxOpenStatements = poolConfig.maxOpenStatements();
+        this.physicalDataSource = physicalDataSource;
+        this.ticker = ticker;
+        boolean virtualThreads = poolConfig.threadingMode() == ThreadingMode.VIRTUAL;
+        this.connectionBag = new ConcurrentBag<>(this::onConnectionsNeeded, !virtualThreads);
+        this.borrowPermits = virtualThreads ? new Semaphore(maxPoolSize, true) : null;
+        this.connectionAdder = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(1),
+                daemonThreadFactory("bibernate-pool-connection-adder"), new ThreadPoolExecutor.DiscardPolicy());
+        this.connectionCloser = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+                daemonThreadFactory("bibernate-pool-connection-closer"), (task, executor) -> task.run());
+
+        initPooledDataSource(poolConfig.initializationMode());
+
+        this.housekeeper = Executors.newSingleThreadScheduledExecutor(daemonThreadFactory("bibernate-pool-housekeeper"));
+        long housekeepingPeriodMillis = keepaliveTimeNanos > 0
+                ? Math.min(HOUSEKEEPING_PERIOD_MILLIS, Math.max(1, TimeUnit.NANOSECONDS.toMillis(keepaliveTimeNanos)))
+                : HOUSEKEEPING_PERIOD_MILLIS;
+        housekeeper.scheduleWithFixedDelay(this::housekeep, housekeepingPeriodMillis, housekeepingPeriodMillis,
+                TimeUnit.MILLISECONDS);
     }
 
     /**
      * Initializes the pool of connections.
-     * Creates physical connections and wraps them in {@code ConnectionProxy} instances.
+     * Creates the minimum idle physical connections and wraps them in {@code ConnectionProxy} instances.
      *
      * @throws PooledDataSourceCreationException if unable to create connections.
      */
-    private void initPooledDataSource() {
-        for (int i = 0; i < maxPoolSize; i++) {
+    private void initPooledDataSource(InitializationMode initializationMode) {
+        try {
+            if (initializationMode == InitializationMode.FAIL_FAST) {
+                reserveConnectionSlot(maxPoolSize);
+                ConnectionProxy connection = createConnection();
+                if (!connection.physicalConnection.isValid(validationTimeoutSeconds)) {
+                    closePhysicalConnection(connection);
+                    throw new SQLException("The first connection of the pool is not valid");
+                }
+                connectionBag.add(connection);
+                onConnectionAdded();
+
+                Thread initialFill = new Thread(() -> {
+                    Exception failure = fillToMinIdle();
+                    if (failure != null && log.isWarnEnabled()) {
+                        log.warn("Error opening the minimum idle connections of the pool: {}", failure.getMessage());
+                    }
+                }, "bibernate-pool-initial-fill");
+                initialFill.setDaemon(true);
+                initialFill.start();
+            } else {
+                Exception failure = fillToMinIdle();
+                if (failure != null) {
+                    throw failure;
+                }
+            }
+        } catch (Exception e) {
+            closed = true;
+            connectionAdder.shutdownNow();
+            connectionCloser.shutdown();
+            connectionBag.values().forEach(this::closePhysicalConnection);
+            throw new PooledDataSourceCreationException("Failed to initialize the pooled data source", e);
+        }
+    }
+
+    /**
+     * Opens the missing minimum idle connections in parallel on a bounded number of threads.
+     *
+     * @return the first exception thrown opening a connection, {@code null} if all of them were opened
+     */
+    private Exception fillToMinIdle() {
+        int missing = minIdle - connectionCount.get();
+        if (missing <= 0) {
+            onConnectionAdded();
+            return null;
+        }
+
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        ExecutorService executor = newInitialFillExecutor(Math.min(missing, INITIAL_FILL_PARALLELISM));
+        try {
+            List<Future<?>> workers = new ArrayList<>();
+            for (int i = 0; i < Math.min(missing, INITIAL_FILL_PARALLELISM); i++) {
+                workers.add(executor.submit(() -> {
+                    while (failure.get() == null && !closed && reserveConnectionSlot(minIdle)) {
+                        try {
+                            connectionBag.add(createConnection());
+                            onConnectionAdded();
+                        } catch (SQLException | RuntimeException e) {
+                            failure.compareAndSet(null, e);
+                        }
+                    }
+                }));
+            }
+            for (Future<?> worker : workers) {
+                worker.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failure.compareAndSet(null, e);
+        } catch (ExecutionException e) {
+            failure.compareAndSet(null, e);
+        } finally {
+            executor.shutdown();
+        }
+
+        return failure.get();
+    }
+
+    /**
+     * Reserves a slot for a new connection, so connections opened concurrently never outgrow the limit.
+     * The slot is freed if the connection cannot be opened, or once it is retired.
+     *
+     * @return {@code true} if the slot was reserved, {@code false} if the limit is reached
+     */
+    private boolean reserveConnectionSlot(int limit) {
+        int count;
+        do {
+            count = connectionCount.get();
+            if (count >= limit) {
+                return false;
+            }
+        } while (!connectionCount.compareAndSet(count, count + 1));
+        return true;
+    }
+
+    private ConnectionProxy createConnection() throws SQLException {
+        Connection physicalConnection;
+        try {
+            physicalConnection = physicalDataSource != null
+                    ? physicalDataSource.getConnection()
+                    : super.getConnection();
+        } catch (SQLException | RuntimeException e) {
+            connectionCount.decrementAndGet();
+            throw e;
+        }
+        long lifetimeNanos = maxLifetimeNanos > 0
+                ? maxLifetimeNanos - ThreadLocalRandom.current().nextLong(maxLifetimeNanos / MAX_LIFETIME_JITTER_DIVISOR + 1)
+                : 0;
+        try {
+            ConnectionProxy connection = new ConnectionProxy(physicalConnection, this, ticker.getAsLong(), lifetimeNanos);
+            createdCount.increment();
+            return connection;
+        } catch (SQLException | RuntimeException e) {
+            connectionCount.decrementAndGet();
             try {
-                Connection physicalConnection = super.getConnection();
-                this.connectionPool.add(new ConnectionProxy(physicalConnection, connectionPool));
-            } catch (SQLException e) {
-                throw new PooledDataSourceCreationException("Failed to initialize the pooled data source", e);
+                physicalConnection.close();
+            } catch (SQLException closeFailure) {
+                e.addSuppressed(closeFailure);
+            }
+            throw e;
+        }
+    }
+
+    private void onConnectionAdded() {
+        if (connectionBag.size() >= minIdle && timeToMinIdleNanos.compareAndSet(-1, System.nanoTime() - startedAt)) {
+            if (log.isInfoEnabled()) {
+                log.info("Connection pool reached {} minimum idle connections in {} ms",
+                        minIdle, TimeUnit.NANOSECONDS.toMillis(timeToMinIdleNanos.get()));
             }
         }
     }
 
+    /**
+     * Borrows a connection from the pool, waiting for one to be returned if all of them are in use.
+     * Closing the borrowed connection returns it to the pool.
+     *
+     * @return a pooled connection
+     * @throws ConnectionTimeoutException if no connection was returned within the connection timeout
+     * @throws SQLException               if the data source is closed or the calling thread was interrupted
+     *                                    while waiting
+     */
     @Override
     public Connection getConnection() throws SQLException {
-        return connectionPool.poll();
+        if (closed) {
+            throw new SQLException("Pooled data source is closed");
+        }
+
+        long startedAt = System.nanoTime();
+        try {
+            if (borrowPermits == null || borrowPermits.tryAcquire(connectionTimeoutNanos, TimeUnit.NANOSECONDS)) {
+                ConnectionProxy connection = null;
+                try {
+                    connection = borrow(startedAt);
+                } finally {
+                    if (connection == null && borrowPermits != null) {
+                        borrowPermits.release();
+                    }
+                }
+                if (connection != null) {
+                    return connection;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a pooled connection", e);
+        }
+        waitTimeHistogram.record(System.nanoTime() - startedAt);
+
+        timeoutCount.increment();
+        throw new ConnectionTimeoutException(String.format(
+                "Connection is not available, request timed out after %d ms: %d of at most %d connections are in use",
+                TimeUnit.NANOSECONDS.toMillis(connectionTimeoutNanos), getActiveConnectionCount(), maxPoolSize));
+    }
+
+    /**
+     * Borrows a connection from the bag that is alive and within its lifetime, replacing the others.
+     *
+     * @return the connection, {@code null} if none was returned within the connection timeout
+     */
+    private ConnectionProxy borrow(long startedAt) throws InterruptedException {
+        long remainingNanos = connectionTimeoutNanos - (System.nanoTime() - startedAt);
+        do {
+            ConnectionProxy connection = connectionBag.borrow(remainingNanos, TimeUnit.NANOSECONDS);
+            if (connection == null) {
+                return null;
+            }
+            long now = ticker.getAsLong();
+            if (connection.isExpired(now)) {
+                retire(connection);
+            } else if (now - connection.lastAliveAt >= validationSkipWindowNanos && !isAlive(connection)) {
+                retireDead(connection);
+            } else {
+                connection.lastAliveAt = now;
+                waitTimeHistogram.record(System.nanoTime() - startedAt);
+                if (leakDetectionThresholdNanos > 0) {
+                    scheduleLeakDetection(connection);
+                }
+                return connection;
+            }
+            remainingNanos = connectionTimeoutNanos - (System.nanoTime() - startedAt);
+        } while (remainingNanos > 0);
+        return null;
+    }
+
+    /**
+     * Takes back a connection closed by its borrower, replacing it if its lifetime ended.
+     */
+    void recycle(ConnectionProxy connection) {
+        if (connection.leakDetection != null) {
+            connection.leakDetection.cancel(false);
+            connection.leakDetection = null;
+        }
+
+        long now = ticker.getAsLong();
+        if (closed || connection.isExpired(now)) {
+            retire(connection);
+        } else if (!resetState(connection)) {
+            retire(connection);
+        } else {
+            connection.lastAccessedAt = now;
+            connection.lastAliveAt = now;
+            connectionBag.requite(connection);
+        }
+        if (borrowPermits != null) {
+            borrowPermits.release();
+        }
+    }
+
+    private boolean resetState(ConnectionProxy connection) {
+        try {
+            connection.resetState();
+            return true;
+        } catch (SQLException e) {
+            if (log.isWarnEnabled()) {
+                log.warn("Error resetting the state of pooled connection, it will be replaced: {}", e.getMessage());
+            }
+            return false;
+        }
+    }
+
+    private boolean isAlive(ConnectionProxy connection) {
+        try {
+            return connection.physicalConnection.isValid(validationTimeoutSeconds);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private void retireDead(ConnectionProxy connection) {
+        deadCount.increment();
+        if (log.isWarnEnabled()) {
+            log.warn("Closing dead pooled connection, it will be replaced");
+        }
+        retire(connection);
+    }
+
+    private void scheduleLeakDetection(ConnectionProxy connection) {
+        Exception borrowStackTrace = new Exception(String.format("Connection borrowed by thread %s",
+                Thread.currentThread().getName()));
+        connection.leakDetection = housekeeper.schedule(() -> {
+            leakCount.increment();
+            if (log.isWarnEnabled()) {
+                log.warn("Connection leak detected: a pooled connection has been borrowed for more than {} ms",
+                        TimeUnit.NANOSECONDS.toMillis(leakDetectionThresholdNanos), borrowStackTrace);
+            }
+        }, leakDetectionThresholdNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Closes idle connections above the minimum idle count once they exceed the idle timeout, replaces
+     * connections whose lifetime ended or failing the keepalive check and opens connections up to the minimum
+     * idle count.
+     */
+    void housekeep() {
+        long now = ticker.getAsLong();
+        int idleToRetire = getIdleConnectionCount() - minIdle;
+        for (ConnectionProxy connection : connectionBag.values()) {
+            if (!connectionBag.reserve(connection)) {
+                continue;
+            }
+            if (connection.isExpired(now)) {
+                retire(connection);
+            } else if (idleTimeoutNanos > 0 && idleToRetire > 0 && now - connection.lastAccessedAt >= idleTimeoutNanos) {
+                retire(connection);
+                idleToRetire--;
+            } else if (keepaliveTimeNanos > 0 && now - connection.lastAliveAt >= keepaliveTimeNanos) {
+                if (isAlive(connection)) {
+                    connection.lastAliveAt = now;
+                    connectionBag.unreserve(connection);
+                } else {
+                    retireDead(connection);
+                }
+            } else {
+                connectionBag.unreserve(connection);
+            }
+        }
+
+        if (log.isDebugEnabled()) {
+            log.debug("Connection pool after housekeeping: {} connections, {} idle, {} waiting, {}",
+                    getTotalConnectionCount(), getIdleConnectionCount(), connectionBag.getWaiterCount(),
+                    statementCacheStatistics);
+        }
+        requestConnections();
+    }
+
+    private void retire(ConnectionProxy connection) {
+        if (connectionBag.remove(connection)) {
+            connectionCount.decrementAndGet();
+            retiredCount.increment();
+            connectionCloser.execute(() -> closePhysicalConnection(connection));
+            requestConnections();
+        }
+    }
+
+    private void onConnectionsNeeded(int waiting) {
+        if (connectionCount.get() < maxPoolSize) {
+            requestConnections();
+        }
+    }
+
+    private void requestConnections() {
+        if (!closed) {
+            connectionAdder.execute(this::addConnections);
+        }
+    }
+
+    /**
+     * Opens connections while callers are waiting for one or fewer than the minimum idle connections are idle,
+     * up to the maximum pool size. Runs on the single connection adder thread, so the pool never outgrows its
+     * maximum size.
+     */
+    private void addConnections() {
+        while (!closed && (connectionBag.getWaiterCount() > 0 || getIdleConnectionCount() < minIdle)
+                && reserveConnectionSlot(maxPoolSize)) {
+            try {
+                connectionBag.add(createConnection());
+                onConnectionAdded();
+            } catch (SQLException | RuntimeException e) {
+                if (log.isWarnEnabled()) {
+                    log.warn("Error opening pooled connection: {}", e.getMessage());
+                }
+                return;
+            }
+        }
+    }
+
+    private void closePhysicalConnection(ConnectionProxy connection) {
+        try {
+            connection.physicalConnection.close();
+        } catch (SQLException e) {
+            if (log.isDebugEnabled()) {
+                log.debug("Error closing pooled connection: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Closes the idle connections and stops the background tasks of the pool. Connections in use are closed
+     * once they are returned.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        housekeeper.shutdownNow();
+        connectionAdder.shutdownNow();
+        for (ConnectionProxy connection : connectionBag.values()) {
+            if (connectionBag.reserve(connection)) {
+                retire(connection);
+            }
+        }
+        connectionCloser.shutdown();
+    }
+
+    /**
+     * Returns the histogram of how long the callers of {@link #getConnection()} waited for a connection,
+     * including the callers that timed out.
+     *
+     * @return the wait time histogram
+     */
+    public WaitTimeHistogram getWaitTimeHistogram() {
+        return waitTimeHistogram;
+    }
+
+    /**
+     * Returns the number of {@link #getConnection()} calls that failed with a {@link ConnectionTimeoutException}.
+     *
+     * @return the timeout count
+     */
+    public long getTimeoutCount() {
+        return timeoutCount.sum();
+    }
+
+    /**
+     * Returns the number of connections currently in the pool, not borrowed by anyone.
+     *
+     * @return the idle connection count
+     */
+    public int getIdleConnectionCount() {
+        return connectionBag.getCount(ConcurrentBag.Entry.NOT_IN_USE);
+    }
+
+    /**
+     * Returns the number of connections currently borrowed.
+     *
+     * @return the active connection count
+     */
+    public int getActiveConnectionCount() {
+        return connectionBag.getCount(ConcurrentBag.Entry.IN_USE);
+    }
+
+    /**
+     * Returns the number of open connections of the pool, idle or borrowed.
+     *
+     * @return the total connection count
+     */
+    public int getTotalConnectionCount() {
+        return connectionBag.size();
+    }
+
+    /**
+     * Returns the number of connections found dead on borrow or by the keepalive check, and replaced.
+     *
+     * @return the dead connection count
+     */
+    public long getDeadConnectionCount() {
+        return deadCount.sum();
+    }
+
+    /**
+     * Returns the number of connections reported as leaks for being borrowed longer than the leak detection
+     * threshold.
+     *
+     * @return the leak count
+     */
+    public long getLeakCount() {
+        return leakCount.sum();
+    }
+
+    /**
+     * Returns how long it took the pool to open its minimum idle connections after construction started.
+     *
+     * @return the time to reach the minimum idle count, {@code null} while the connections are being opened
+     */
+    public Duration getTimeToMinIdle() {
+        long nanos = timeToMinIdleNanos.get();
+        return nanos < 0 ? null : Duration.ofNanos(nanos);
+    }
+
+    /**
+     * Returns the number of connections opened by the pool since it was constructed.
+     *
+     * @return the created connection count
+     */
+    public long getCreatedConnectionCount() {
+        return createdCount.sum();
+    }
+
+    /**
+     * Returns the number of connections closed by the pool for being idle, too old or on close of the pool.
+     *
+     * @return the retired connection count
+     */
+    public long getRetiredConnectionCount() {
+        return retiredCount.sum();
+    }
+
+    /**
+     * Returns the hit, miss and eviction counters of the prepared statement caches of all connections.
+     *
+     * @return the statement cache statistics
+     */
+    public StatementCacheStatistics getStatementCacheStatistics() {
+        return statementCacheStatistics;
+    }
+
+    /**
+     * Creates the executor opening the initial connections: a virtual thread per connection on JVMs supporting
+     * them, otherwise a pool of platform threads. The number of connections opened at once is bounded by the
+     * number of tasks submitted.
+     */
+    private static ExecutorService newInitialFillExecutor(int threads) {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(threads, daemonThreadFactory("bibernate-pool-initial-fill"));
+        }
+    }
+
+    private static ThreadFactory daemonThreadFactory(String name) {
+        return runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        };
     }
 
     /**
      * Proxy implementation for a pooled connection.
-     * Manages a physical connection and handles returning to the pool upon closing.
+     * Manages a physical connection and handles returning to the pool upon closing. Statements are handed out as
+     * {@link StatementProxy} instances, tracked until they are closed; prepared statements are returned to the
+     * statement cache of the connection when closed.
+     *
+     * <p>The proxy caches the auto-commit, read-only, transaction isolation, schema and network timeout settings
+     * of the physical connection, read once when it is opened. Settings changed behind its back, e.g. by a
+     * {@code SET search_path} statement, are not seen.</p>
      */
-    static class ConnectionProxy implements Connection {
-        private final Connection physicalConnection;
-        private final Queue<Connection> connectionPool;
-        public final List<Statement> openStatements;
+    static class ConnectionProxy extends ConcurrentBag.Entry implements Connection {
+        private static final int DIRTY_AUTO_COMMIT = 1;
+        private static final int DIRTY_READ_ONLY = 1 << 1;
+        private static final int DIRTY_TRANSACTION_ISOLATION = 1 << 2;
+        private static final int DIRTY_SCHEMA = 1 << 3;
+        private static final int DIRTY_NETWORK_TIMEOUT = 1 << 4;
+        private static final Executor NETWORK_TIMEOUT_EXECUTOR = Runnable::run;
 
-        public ConnectionProxy(Connection physicalConnection, Queue<Connection> connectionPool) {
+        private final Connection physicalConnection;
+        private final PooledDataSource pool;
+        private final long createdAt;
+        private final long lifetimeNanos;
+        private long lastAccessedAt;
+        private long lastAliveAt;
+        private ScheduledFuture<?> leakDetection;
+        private final StatementCache statementCache;
+        private final List<StatementProxy<?>> openStatements;
+        private final boolean defaultAutoCommit;
+        private final boolean defaultReadOnly;
+        private final int defaultTransactionIsolation;
+        private final String defaultSchema;
+        private final int defaultNetworkTimeout;
+        private boolean autoCommit;
+        private boolean readOnly;
+        private int transactionIsolation;
+        private String schema;
+        private int networkTimeout;
+        /**
+         * The {@code DIRTY_*} bits of the settings changed since the connection was last reset.
+         */
+        private int dirtyState;
+
+        ConnectionProxy(Connection physicalConnection, PooledDataSource pool, long createdAt, long lifetimeNanos)
+                throws SQLException {
             this.physicalConnection = physicalConnection;
-            this.connectionPool = connectionPool;
+            this.pool = pool;
+            this.createdAt = createdAt;
+            this.lifetimeNanos = lifetimeNanos;
+            this.lastAccessedAt = createdAt;
+            this.lastAliveAt = createdAt;
+            this.statementCache = pool.statementCacheSize > 0
+                    ? new StatementCache(pool.statementCacheSize, pool.statementCacheStatistics)
+                    : null;
             this.openStatements = new ArrayList<>();
+            this.defaultAutoCommit = physicalConnection.getAutoCommit();
+            this.defaultReadOnly = physicalConnection.isReadOnly();
+            this.defaultTransactionIsolation = physicalConnection.getTransactionIsolation();
+            this.defaultSchema = physicalConnection.getSchema();
+            this.defaultNetworkTimeout = physicalConnection.getNetworkTimeout();
+            this.autoCommit = defaultAutoCommit;
+            this.readOnly = defaultReadOnly;
+            this.transactionIsolation = defaultTransactionIsolation;
+            this.schema = defaultSchema;
+            this.networkTimeout = defaultNetworkTimeout;
         }
 
+        /**
+         * Rolls back the transaction left open by the borrower and restores the settings it changed to the values
+         * the connection was opened with. A borrower that changed nothing costs no round trip.
+         */
+        void resetState() throws SQLException {
+            if (!autoCommit) {
+                physicalConnection.rollback();
+            }
+            if (dirtyState == 0) {
+                return;
+            }
+            if ((dirtyState & DIRTY_AUTO_COMMIT) != 0 && autoCommit != defaultAutoCommit) {
+                physicalConnection.setAutoCommit(defaultAutoCommit);
+                autoCommit = defaultAutoCommit;
+            }
+            if ((dirtyState & DIRTY_READ_ONLY) != 0 && readOnly != defaultReadOnly) {
+                physicalConnection.setReadOnly(defaultReadOnly);
+                readOnly = defaultReadOnly;
+            }
+            if ((dirtyState & DIRTY_TRANSACTION_ISOLATION) != 0 && transactionIsolation != defaultTransactionIsolation) {
+                physicalConnection.setTransactionIsolation(defaultTransactionIsolation);
+                transactionIsolation = defaultTransactionIsolation;
+            }
+            if ((dirtyState & DIRTY_SCHEMA) != 0 && !Objects.equals(schema, defaultSchema)) {
+                physicalConnection.setSchema(defaultSchema);
+                schema = defaultSchema;
+            }
+            if ((dirtyState & DIRTY_NETWORK_TIMEOUT) != 0 && networkTimeout != defaultNetworkTimeout) {
+                physicalConnection.setNetworkTimeout(NETWORK_TIMEOUT_EXECUTOR, defaultNetworkTimeout);
+                networkTimeout = defaultNetworkTimeout;
+            }
+            dirtyState = 0;
+        }
+
+        boolean isExpired(long now) {
+            return lifetimeNanos > 0 && now - createdAt >= lifetimeNanos;
+        }
+
+        /**
+         * Closes the statements left open by the borrower, then returns the connection to the pool, even if
+         * closing a statement failed.
+         */
         @Override
         public void close() throws SQLException {
-            for (Statement s : openStatements) {
-                s.close();
+            SQLException failure = null;
+            for (int i = openStatements.size() - 1; i >= 0; i--) {
+                try {
+                    openStatements.get(i).close();
+                } catch (SQLException e) {
+                    if (failure == null) {
+                        failure = e;
+                    }
+                }
             }
             openStatements.clear();
-            connectionPool.add(this);
+            if (getState() == IN_USE) {
+                pool.recycle(this);
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        }
+
+        int getOpenStatementCount() {
+            return openStatements.size();
         }
 
         @Override
         public Statement createStatement() throws SQLException {
-            Statement statement = physicalConnection.createStatement();
-            openStatements.add(statement);
-            return statement;
+            checkOpenStatementLimit();
+            return trackStatement(new StatementProxy<>(physicalConnection.createStatement(), this));
         }
 
         @Override
         public PreparedStatement prepareStatement(String sql) throws SQLException {
-            PreparedStatement statement = physicalConnection.prepareStatement(sql);
-            openStatements.add(statement);
-            return statement;
+            checkOpenStatementLimit();
+            StatementCache.Key key = StatementCache.Key.of(sql);
+            PreparedStatement statement = takeCachedStatement(key);
+            return trackPreparedStatement(statement != null ? statement : physicalConnection.prepareStatement(sql), key);
         }
 
         @Override
         public CallableStatement prepareCall(String sql) throws SQLException {
-            CallableStatement statement = physicalConnection.prepareCall(sql);
-            openStatements.add(statement);
-            return statement;
+            checkOpenStatementLimit();
+            return trackStatement(new CallableStatementProxy(physicalConnection.prepareCall(sql), this));
         }
 
         @Override
         public Statement createStatement(int resultSetType, int resultSetConcurrency) throws SQLException {
-            // todo: The same logic as above
-            return physicalConnection.createStatement(resultSetType, resultSetConcurrency);
+            checkOpenStatementLimit();
+            return trackStatement(new StatementProxy<>(
+                    physicalConnection.createStatement(resultSetType, resultSetConcurrency), this));
         }
 
         @Override
         public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency) throws SQLException {
-            // todo: The same logic as above
-            return physicalConnection.prepareStatement(sql, resultSetType, resultSetConcurrency);
+            checkOpenStatementLimit();
+            StatementCache.Key key = StatementCache.Key.of(sql, resultSetType, resultSetConcurrency);
+            PreparedStatement statement = takeCachedStatement(key);
+            return trackPreparedStatement(statement != null
+                    ? statement
+                    : physicalConnection.prepareStatement(sql, resultSetType, resultSetConcurrency), key);
         }
 
         @Override
         public CallableStatement prepareCall(String sql, int resultSetType, int resultSetConcurrency) throws SQLException {
-            // todo: The same logic as above
-            return physicalConnection.prepareCall(sql, resultSetType, resultSetConcurrency);
+            checkOpenStatementLimit();
+            return trackStatement(new CallableStatementProxy(
+                    physicalConnection.prepareCall(sql, resultSetType, resultSetConcurrency), this));
         }
 
         @Override
         public Statement createStatement(int resultSetType, int resultSetConcurrency, int resultSetHoldability) throws SQLException {
-            // todo: The same logic as above
-            return physicalConnection.createStatement(resultSetType, resultSetConcurrency, resultSetHoldability);
+            checkOpenStatementLimit();
+            return trackStatement(new StatementProxy<>(
+                    physicalConnection.createStatement(resultSetType, resultSetConcurrency, resultSetHoldability), this));
         }
 
         @Override
         public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency, int resultSetHoldability) throws SQLException {
-            // todo: The same logic as above
-            return physicalConnection.prepareStatement(sql, resultSetType, resultSetConcurrency, resultSetHoldability);
+            checkOpenStatementLimit();
+            StatementCache.Key key = StatementCache.Key.of(sql, resultSetType, resultSetConcurrency, resultSetHoldability);
+            PreparedStatement statement = takeCachedStatement(key);
+            return trackPreparedStatement(statement != null
+                    ? statement
+                    : physicalConnection.prepareStatement(sql, resultSetType, resultSetConcurrency, resultSetHoldability), key);
         }
 
         @Override
         public CallableStatement prepareCall(String sql, int resultSetType, int resultSetConcurrency, int resultSetHoldability) throws SQLException {
-            // todo: The same logic as above
-            return physicalConnection.prepareCall(sql, resultSetType, resultSetConcurrency, resultSetHoldability);
+            checkOpenStatementLimit();
+            return trackStatement(new CallableStatementProxy(
+                    physicalConnection.prepareCall(sql, resultSetType, resultSetConcurrency, resultSetHoldability), this));
         }
 
         @Override
         public PreparedStatement prepareStatement(String sql, int autoGeneratedKeys) throws SQLException {
-            // todo: The same logic as above
-            return physicalConnection.prepareStatement(sql, autoGeneratedKeys);
+            checkOpenStatementLimit();
+            StatementCache.Key key = StatementCache.Key.withAutoGeneratedKeys(sql, autoGeneratedKeys);
+            PreparedStatement statement = takeCachedStatement(key);
+            return trackPreparedStatement(statement != null
+                    ? statement
+                    : physicalConnection.prepareStatement(sql, autoGeneratedKeys), key);
         }
 
         @Override
         public PreparedStatement prepareStatement(String sql, int[] columnIndexes) throws SQLException {
-            // todo: The same logic as above
-            return physicalConnection.prepareStatement(sql, columnIndexes);
+            checkOpenStatementLimit();
+            StatementCache.Key key = StatementCache.Key.withColumnIndexes(sql, columnIndexes);
+            PreparedStatement statement = takeCachedStatement(key);
+            return trackPreparedStatement(statement != null
+                    ? statement
+                    : physicalConnection.prepareStatement(sql, columnIndexes), key);
         }
 
         @Override
         public PreparedStatement prepareStatement(String sql, String[] columnNames) throws SQLException {
-            // todo: The same logic as above
-            return physicalConnection.prepareStatement(sql, columnNames);
+            checkOpenStatementLimit();
+            StatementCache.Key key = StatementCache.Key.withColumnNames(sql, columnNames);
+            PreparedStatement statement = takeCachedStatement(key);
+            return trackPreparedStatement(statement != null
+                    ? statement
+                    : physicalConnection.prepareStatement(sql, columnNames), key);
+        }
+
+        private PreparedStatement takeCachedStatement(StatementCache.Key key) {
+            return statementCache != null ? statementCache.take(key) : null;
+        }
+
+        private PreparedStatement trackPreparedStatement(PreparedStatement statement, StatementCache.Key key) {
+            return trackStatement(new PreparedStatementProxy<>(statement, this, statementCache != null ? key : null));
+        }
+
+        private <T extends StatementProxy<?>> T trackStatement(T statement) {
+            openStatements.add(statement);
+            return statement;
+        }
+
+        private void checkOpenStatementLimit() throws SQLException {
+            if (pool.maxOpenStatements > 0 && openStatements.size() >= pool.maxOpenStatements) {
+                throw new SQLException(String.format("Cannot open more than %d statements at once on a pooled "
+                        + "connection, close the statements no longer in use", pool.maxOpenStatements));
+            }
+        }
+
+        /**
+         * Takes back a statement closed by its caller: stops tracking it, returns a prepared statement to the
+         * statement cache, unless its settings were changed or it cannot be reset, and closes any other statement.
+         */
+        void onStatementClosed(StatementProxy<?> statement) throws SQLException {
+            untrackStatement(statement);
+            if (statement instanceof PreparedStatementProxy<?> prepared && prepared.cacheKey != null
+                    && !prepared.settingsChanged && resetForReuse(prepared.delegate)) {
+                statementCache.put(prepared.cacheKey, prepared.delegate);
+            } else {
+                statement.delegate.close();
+            }
+        }
+
+        /**
+         * Removes a statement from the open statements, searching from the most recently opened one, which is
+         * usually the one closed.
+         */
+        private void untrackStatement(StatementProxy<?> statement) {
+            for (int i = openStatements.size() - 1; i >= 0; i--) {
+                if (openStatements.get(i) == statement) {
+                    openStatements.remove(i);
+                    return;
+                }
+            }
+        }
+
+        private static boolean resetForReuse(PreparedStatement statement) {
+            try {
+                if (statement.isClosed()) {
+                    return false;
+                }
+                statement.clearParameters();
+                statement.clearBatch();
+                return true;
+            } catch (SQLException e) {
+                return false;
+            }
         }
 
         @Override
@@ -194,12 +1017,16 @@ public class PooledDataSource extends DriverDataSource {
 
         @Override
         public void setAutoCommit(boolean autoCommit) throws SQLException {
-            physicalConnection.setAutoCommit(autoCommit);
+            if (autoCommit != this.autoCommit) {
+                physicalConnection.setAutoCommit(autoCommit);
+                this.autoCommit = autoCommit;
+                dirtyState |= DIRTY_AUTO_COMMIT;
+            }
         }
 
         @Override
-        public boolean getAutoCommit() throws SQLException {
-            return physicalConnection.getAutoCommit();
+        public boolean getAutoCommit() {
+            return autoCommit;
         }
 
         @Override
@@ -224,12 +1051,16 @@ public class PooledDataSource extends DriverDataSource {
 
         @Override
         public void setReadOnly(boolean readOnly) throws SQLException {
-            physicalConnection.setReadOnly(readOnly);
+            if (readOnly != this.readOnly) {
+                physicalConnection.setReadOnly(readOnly);
+                this.readOnly = readOnly;
+                dirtyState |= DIRTY_READ_ONLY;
+            }
         }
 
         @Override
-        public boolean isReadOnly() throws SQLException {
-            return physicalConnection.isReadOnly();
+        public boolean isReadOnly() {
+            return readOnly;
         }
 
         @Override
@@ -244,12 +1075,16 @@ public class PooledDataSource extends DriverDataSource {
 
         @Override
         public void setTransactionIsolation(int level) throws SQLException {
-            physicalConnection.setTransactionIsolation(level);
+            if (level != transactionIsolation) {
+                physicalConnection.setTransactionIsolation(level);
+                transactionIsolation = level;
+                dirtyState |= DIRTY_TRANSACTION_ISOLATION;
+            }
         }
 
         @Override
-        public int getTransactionIsolation() throws SQLException {
-            return physicalConnection.getTransactionIsolation();
+        public int getTransactionIsolation() {
+            return transactionIsolation;
         }
 
         @Override
@@ -359,12 +1194,16 @@ public class PooledDataSource extends DriverDataSource {
 
         @Override
         public void setSchema(String schema) throws SQLException {
-            physicalConnection.setSchema(schema);
+            if (!Objects.equals(schema, this.schema)) {
+                physicalConnection.setSchema(schema);
+                this.schema = schema;
+                dirtyState |= DIRTY_SCHEMA;
+            }
         }
 
         @Override
-        public String getSchema() throws SQLException {
-            return physicalConnection.getSchema();
+        public String getSchema() {
+            return schema;
         }
 
         @Override
@@ -374,12 +1213,16 @@ public class PooledDataSource extends DriverDataSource {
 
         @Override
         public void setNetworkTimeout(Executor executor, int milliseconds) throws SQLException {
-            physicalConnection.setNetworkTimeout(executor, milliseconds);
+            if (milliseconds != networkTimeout) {
+                physicalConnection.setNetworkTimeout(executor, milliseconds);
+                networkTimeout = milliseconds;
+                dirtyState |= DIRTY_NETWORK_TIMEOUT;
+            }
         }
 
         @Override
-        public int getNetworkTimeout() throws SQLException {
-            return physicalConnection.getNetworkTimeout();
+        public int getNetworkTimeout() {
+            return networkTimeout;
         }
 
         @Override
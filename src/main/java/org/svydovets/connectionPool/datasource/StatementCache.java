@@ -0,0 +1,126 @@
+package org.svydovets.connectionPool.datasource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A cache of the idle prepared statements of one pooled connection, evicting the least recently used statement
+ * once it holds more than its maximum size.
+ *
+ * <p>A statement is {@link #take(Key) taken} out of the cache while it is in use and {@link #put(Key,
+ * PreparedStatement) put} back once its caller closes it, so the cache only holds statements nobody uses and
+ * callers preparing the same SQL at once each get a statement of their own. Evicted statements are closed.</p>
+ *
+ * <p>The class is not thread-safe: it is used by one borrower of the connection at a time.</p>
+ */
+class StatementCache {
+
+    private static final Logger log = LoggerFactory.getLogger(StatementCache.class);
+
+    private final LinkedHashMap<Key, PreparedStatement> statements;
+    private final StatementCacheStatistics statistics;
+
+    StatementCache(int maximumSize, StatementCacheStatistics statistics) {
+        if (maximumSize < 1) {
+            throw new IllegalArgumentException("Maximum size of a statement cache cannot be less than 1");
+        }
+        this.statistics = statistics;
+        this.statements = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, PreparedStatement> eldest) {
+                if (size() <= maximumSize) {
+                    return false;
+                }
+                statistics.recordEviction();
+                closeStatement(eldest.getValue());
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Takes the idle statement prepared for the key out of the cache.
+     *
+     * @param key the key of the statement
+     * @return the statement, {@code null} if none is cached for the key
+     */
+    PreparedStatement take(Key key) {
+        PreparedStatement statement = statements.remove(key);
+        if (statement != null) {
+            statistics.recordHit();
+        } else {
+            statistics.recordMiss();
+        }
+        return statement;
+    }
+
+    /**
+     * Puts a statement no longer in use back into the cache, closing it instead if another statement is already
+     * cached for the key.
+     *
+     * @param key       the key of the statement
+     * @param statement the statement, with its parameters and batch cleared
+     */
+    void put(Key key, PreparedStatement statement) {
+        if (statements.putIfAbsent(key, statement) != null) {
+            closeStatement(statement);
+        }
+    }
+
+    int size() {
+        return statements.size();
+    }
+
+    private static void closeStatement(PreparedStatement statement) {
+        try {
+            statement.close();
+        } catch (SQLException e) {
+            if (log.isDebugEnabled()) {
+                log.debug("Error closing cached prepared statement: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Identifies the prepared statements that are interchangeable: prepared for the same SQL with the same result
+     * set and generated keys options. Options not given to {@code prepareStatement} are {@link #UNSET}.
+     */
+    record Key(String sql, int resultSetType, int resultSetConcurrency, int resultSetHoldability,
+               int autoGeneratedKeys, List<Integer> columnIndexes, List<String> columnNames) {
+
+        static final int UNSET = -1;
+
+        static Key of(String sql) {
+            return new Key(sql, UNSET, UNSET, UNSET, UNSET, null, null);
+        }
+
+        static Key of(String sql, int resultSetType, int resultSetConcurrency) {
+            return new Key(sql, resultSetType, resultSetConcurrency, UNSET, UNSET, null, null);
+        }
+
+        static Key of(String sql, int resultSetType, int resultSetConcurrency, int resultSetHoldability) {
+            return new Key(sql, resultSetType, resultSetConcurrency, resultSetHoldability, UNSET, null, null);
+        }
+
+        static Key withAutoGeneratedKeys(String sql, int autoGeneratedKeys) {
+            return new Key(sql, UNSET, UNSET, UNSET, autoGeneratedKeys, null, null);
+        }
+
+        static Key withColumnIndexes(String sql, int[] columnIndexes) {
+            return new Key(sql, UNSET, UNSET, UNSET, UNSET,
+                    columnIndexes == null ? null : Arrays.stream(columnIndexes).boxed().toList(), null);
+        }
+
+        static Key withColumnNames(String sql, String[] columnNames) {
+            return new Key(sql, UNSET, UNSET, UNSET, UNSET, null,
+                    columnNames == null ? null : Arrays.asList(columnNames.clone()));
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package org.svydovets.connectionPool.datasource;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Hit, miss and eviction counters of the prepared statement caches of all connections of a
+ * {@link PooledDataSource}.
+ */
+public class StatementCacheStatistics {
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+
+    StatementCacheStatistics() {
+    }
+
+    /**
+     * Returns the number of statements prepared by reusing a cached one.
+     *
+     * @return the hit count
+     */
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    /**
+     * Returns the number of statements prepared by the driver because none was cached.
+     *
+     * @return the miss count
+     */
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    /**
+     * Returns the number of cached statements closed to make room for more recently used ones.
+     *
+     * @return the eviction count
+     */
+    public long getEvictionCount() {
+        return evictionCount.sum();
+    }
+
+    /**
+     * Returns the share of prepared statements reused from the caches.
+     *
+     * @return the hit ratio between {@code 0} and {@code 1}, {@code 0} if no statement was prepared
+     */
+    public double getHitRatio() {
+        long hits = getHitCount();
+        long requests = hits + getMissCount();
+        return requests == 0 ? 0 : (double) hits / requests;
+    }
+
+    void recordHit() {
+        hitCount.increment();
+    }
+
+    void recordMiss() {
+        missCount.increment();
+    }
+
+    void recordEviction() {
+        evictionCount.increment();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("StatementCacheStatistics[hits=%d, misses=%d, evictions=%d, hitRatio=%.2f]",
+                getHitCount(), getMissCount(), getEvictionCount(), getHitRatio());
+    }
+}
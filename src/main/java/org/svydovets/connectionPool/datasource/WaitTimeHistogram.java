@@ -0,0 +1,136 @@
+package org.svydovets.connectionPool.datasource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of how long callers of a {@link PooledDataSource} waited for a connection.
+ *
+ * <p>Wait times are counted in buckets whose bounds double, from under 1 microsecond up to about 35 minutes, so
+ * percentiles are reported with a relative error of at most 2x. Recording is lock-free and cheap enough to
+ * be done on every borrow.</p>
+ *
+ * <p>The class is thread-safe.</p>
+ */
+public class WaitTimeHistogram {
+
+    static final int BUCKETS_COUNT = 32;
+
+    private final LongAdder[] counts = new LongAdder[BUCKETS_COUNT];
+    private final LongAdder totalWaitNanos = new LongAdder();
+    private final LongAccumulator maxWaitNanos = new LongAccumulator(Long::max, 0);
+
+    public WaitTimeHistogram() {
+        for (int i = 0; i < BUCKETS_COUNT; i++) {
+            counts[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Records one wait.
+     *
+     * @param waitNanos the wait time in nanoseconds
+     */
+    public void record(long waitNanos) {
+        long waitMicros = Math.max(0, waitNanos) / 1000;
+        counts[Math.min(BUCKETS_COUNT - 1, Long.SIZE - Long.numberOfLeadingZeros(waitMicros))].increment();
+        totalWaitNanos.add(Math.max(0, waitNanos));
+        maxWaitNanos.accumulate(waitNanos);
+    }
+
+    /**
+     * Returns the number of recorded waits.
+     *
+     * @return the count
+     */
+    public long getCount() {
+        long count = 0;
+        for (LongAdder bucketCount : counts) {
+            count += bucketCount.sum();
+        }
+        return count;
+    }
+
+    public long getMaxWaitNanos() {
+        return maxWaitNanos.get();
+    }
+
+    public long getMeanWaitNanos() {
+        long count = getCount();
+        return count == 0 ? 0 : totalWaitNanos.sum() / count;
+    }
+
+    /**
+     * Returns an upper bound of the given percentile of the wait times: the upper bound of the bucket the
+     * percentile falls into, but no more than the longest recorded wait.
+     *
+     * @param percentile the percentile between {@code 0} and {@code 100}
+     * @return the wait time in nanoseconds, {@code 0} if no wait was recorded
+     * @throws IllegalArgumentException if the percentile is out of range
+     */
+    public long getPercentileNanos(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException(String.format("Percentile out of range: %s", percentile));
+        }
+
+        long[] snapshot = new long[BUCKETS_COUNT];
+        long count = 0;
+        for (int i = 0; i < BUCKETS_COUNT; i++) {
+            snapshot[i] = counts[i].sum();
+            count += snapshot[i];
+        }
+        if (count == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(count * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS_COUNT; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(upperBoundNanos(i), getMaxWaitNanos());
+            }
+        }
+        return getMaxWaitNanos();
+    }
+
+    /**
+     * Returns the buckets holding at least one wait, from the shortest wait times to the longest.
+     *
+     * @return the buckets
+     */
+    public List<Bucket> getBuckets() {
+        List<Bucket> buckets = new ArrayList<>();
+        for (int i = 0; i < BUCKETS_COUNT; i++) {
+            long count = counts[i].sum();
+            if (count > 0) {
+                buckets.add(new Bucket(upperBoundNanos(i), count));
+            }
+        }
+        return buckets;
+    }
+
+    static long upperBoundNanos(int bucket) {
+        return bucket == BUCKETS_COUNT - 1 ? Long.MAX_VALUE : TimeUnit.MICROSECONDS.toNanos(1L << bucket);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("WaitTimeHistogram[count=%d, mean=%dus, p50=%dus, p99=%dus, max=%dus]",
+                getCount(), getMeanWaitNanos() / 1000, getPercentileNanos(50) / 1000,
+                getPercentileNanos(99) / 1000, getMaxWaitNanos() / 1000);
+    }
+
+    /**
+     * The number of waits shorter than the upper bound of a bucket and at least as long as the bound of the
+     * previous one.
+     *
+     * @param upperBoundNanos the exclusive upper bound of the wait times in nanoseconds
+     * @param count           the number of waits
+     */
+    public record Bucket(long upperBoundNanos, long count) {
+    }
+}
@@ -0,0 +1,14 @@
+package org.svydovets.connectionPool.exception;
+
+import java.sql.SQLTransientConnectionException;
+
+/**
+ * Exception thrown by {@code PooledDataSource.getConnection()} when no connection was returned to the exhausted
+ * pool within the connection timeout. The failure is transient: retrying once the load drops may succeed.
+ */
+public class ConnectionTimeoutException extends SQLTransientConnectionException {
+
+    public ConnectionTimeoutException(String message) {
+        super(message);
+    }
+}
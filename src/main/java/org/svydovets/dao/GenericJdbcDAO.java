@@ -2,6 +2,7 @@ package org.svydovets.dao;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.svydovets.cache.SecondLevelCache;
 import org.svydovets.collection.LazyList;
 import org.svydovets.connectionPool.datasource.ConnectionHandler;
 import org.svydovets.exception.DaoOperationException;
@@ -13,14 +14,27 @@ import org.svydovets.session.EntityKey;
 import org.svydovets.util.EntityReflectionUtils;
 
 import java.lang.reflect.Field;
+import java.sql.Array;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * A generic JDBC Data Access Object (DAO) that provides common database operations.
@@ -32,17 +46,55 @@ public class GenericJdbcDAO {
     private static final Logger log = LoggerFactory.getLogger(GenericJdbcDAO.class);
     public static final String THE_RESULT_FOR_ENTITY_CONTAINS_MORE_THAN_ONE_LINE = "The result for entity [%s] contains more than one line";
     public static final String ERROR_LOADING_ENTITIES_FROM_THE_DB = "Error loading entities from the DB: %s";
+    public static final int MAX_IDS_PER_SELECT = 500;
+    private static final Map<Class<?>, String> SQL_ARRAY_TYPES = Map.of(
+            Long.class, "bigint", long.class, "bigint", Integer.class, "integer", int.class, "integer",
+            Short.class, "smallint", short.class, "smallint", String.class, "varchar", UUID.class, "uuid");
     private final ConnectionHandler connectionHandler;
     private final boolean isShownSql;
+    private final SecondLevelCache secondLevelCache;
 
     /**
-     * Constructs a new GenericJdbcDAO with a specified connection handler.
+     * Constructs a new GenericJdbcDAO with a specified connection handler and its own second-level cache.
      *
      * @param connectionHandler the connection handler responsible for providing database connections
      */
     public GenericJdbcDAO(ConnectionHandler connectionHandler, boolean isShownSql) {
+        this(connectionHandler, isShownSql, new SecondLevelCache());
+    }
+
+    /**
+     * Constructs a new GenericJdbcDAO with a specified connection handler and second-level cache.
+     * Entities loaded by id are read from the cache when their type is {@link org.svydovets.annotation.Cacheable},
+     * and updates and deletes invalidate the cached state.
+     *
+     * @param connectionHandler the connection handler responsible for providing database connections
+     * @param secondLevelCache  the cache shared by all sessions of the session factory
+     */
+    public GenericJdbcDAO(ConnectionHandler connectionHandler, boolean isShownSql, SecondLevelCache secondLevelCache) {
         this.connectionHandler = connectionHandler;
         this.isShownSql = isShownSql;
+        this.secondLevelCache = secondLevelCache;
+    }
+
+    /**
+     * Returns a DAO sharing the settings and the second-level cache of this one, borrowing its connections from
+     * the given handler, e.g. the handler of a session.
+     *
+     * @param connectionHandler the connection handler responsible for providing database connections
+     * @return the DAO
+     */
+    public GenericJdbcDAO withConnectionHandler(ConnectionHandler connectionHandler) {
+        return new GenericJdbcDAO(connectionHandler, isShownSql, secondLevelCache);
+    }
+
+    /**
+     * Returns the second-level cache used by this DAO.
+     *
+     * @return the second-level cache
+     */
+    public SecondLevelCache getSecondLevelCache() {
+        return secondLevelCache;
     }
 
     /**
@@ -64,6 +116,26 @@ public class GenericJdbcDAO {
         }
     }
 
+    /**
+     * Saves an entity to the database using the given connection. The connection is neither
+     * committed nor closed by this method.
+     *
+     * @param entity     the entity to save
+     * @param connection the connection to execute the INSERT statement on
+     * @return the generated key of the saved entity
+     * @throws DaoOperationException if there is an error saving the entity
+     */
+    public Object saveToDB(Object entity, Connection connection) {
+        try {
+            return save(entity, connection);
+        } catch (SQLException exception) {
+            throw new DaoOperationException(String.format(
+                    "Error saving entity to the DB: %s", entity.getClass().getName()),
+                    exception
+            );
+        }
+    }
+
     /**
      * Loads an entity from the database by its identifier.
      * This method automatically generates and executes a SELECT SQL statement to retrieve the entity.
@@ -84,6 +156,64 @@ public class GenericJdbcDAO {
         }
     }
 
+    /**
+     * Loads an entity from the database by its identifier using the given connection. Entities referenced
+     * by the loaded one are fetched through the same connection. The connection is not closed by this method.
+     *
+     * @param entityKey  the key identifying the entity to load
+     * @param connection the connection to execute the SELECT statement on
+     * @param <T>        the type parameter of the entity
+     * @return the loaded entity, or {@code null} if not found
+     * @throws DaoOperationException if there is an error loading the entity
+     */
+    public <T> T loadFromDB(EntityKey<T> entityKey, Connection connection) {
+        try {
+            return load(entityKey, connection);
+        } catch (SQLException exception) {
+            throw new DaoOperationException(String.format(
+                    "Error loading entity from the DB: %s", entityKey.entityType().getName()),
+                    exception
+            );
+        }
+    }
+
+    /**
+     * Loads the entities of the type with the given identifiers. Entities held by the second-level cache are
+     * assembled from it; the others are selected with {@code where id = any(?)} queries of at most
+     * {@value #MAX_IDS_PER_SELECT} ids each, all executed by one statement on one connection. The ids must be
+     * of the type of the id field.
+     *
+     * @param entityType the class of the entities to load
+     * @param ids        the identifiers of the entities
+     * @param <T>        the type parameter of the entities
+     * @return the found entities by their identifiers, entities that do not exist are missing
+     * @throws DaoOperationException if there is an error loading the entities
+     */
+    public <T> Map<Object, T> loadAllFromDB(Class<T> entityType, Collection<?> ids) {
+        Map<Object, T> entities = new HashMap<>();
+        try (Connection connection = connectionHandler.getConnection()) {
+            List<Object> uncachedIds = new ArrayList<>();
+            for (Object id : new LinkedHashSet<>(ids)) {
+                EntityKey<T> entityKey = new EntityKey<>(entityType, id);
+                Object[] cachedState = secondLevelCache.get(entityKey, state -> isCurrentVersion(entityKey, state, connection));
+                if (cachedState != null) {
+                    entities.put(id, assembleEntity(entityType, cachedState, connection));
+                } else {
+                    uncachedIds.add(id);
+                }
+            }
+
+            if (!uncachedIds.isEmpty()) {
+                selectAllByIds(entityType, uncachedIds, connection, entities);
+            }
+
+            return entities;
+        } catch (SQLException exception) {
+            throw new DaoOperationException(String
+                    .format(ERROR_LOADING_ENTITIES_FROM_THE_DB, entityType.getName()), exception);
+        }
+    }
+
     /**
      * Updates an existing entity in the database by its identifier.
      * This method automatically generates and executes an UPDATE SQL statement based on the provided entity data.
@@ -103,6 +233,66 @@ public class GenericJdbcDAO {
         }
     }
 
+    /**
+     * Updates an existing entity in the database using the given connection.
+     * The connection is neither committed nor closed by this method.
+     *
+     * @param entityEntry the entity entry containing the entity to update and its identifying key
+     * @param connection  the connection to execute the UPDATE statement on
+     * @throws DaoOperationException if there is an error updating the entity
+     */
+    public void update(EntityEntry entityEntry, Connection connection) {
+        try {
+            performUpdate(connection, entityEntry);
+        } catch (SQLException exception) {
+            String entityName = entityEntry.entityKey().entityType().getName();
+            throw new DaoOperationException(
+                    String.format("Error updating entity: %s", entityName),
+                    exception
+            );
+        }
+    }
+
+    /**
+     * Inserts the entity with its identifier, or updates the existing row with the same identifier, in one
+     * statement and without loading the row first. The update of a versioned entity only happens when the row
+     * holds the version of the entity; the new version is set to the entity once the statement succeeds.
+     *
+     * @param entityEntry the entity entry containing the entity to write and its identifying key
+     * @throws DaoOperationException if there is an error writing the entity, or the row holds another version
+     */
+    public void upsert(EntityEntry entityEntry) {
+        try (Connection connection = connectionHandler.getConnection()) {
+            performUpsert(connection, entityEntry);
+        } catch (SQLException exception) {
+            String entityName = entityEntry.entityKey().entityType().getName();
+            throw new DaoOperationException(
+                    String.format("Error upserting entity: %s", entityName),
+                    exception
+            );
+        }
+    }
+
+    /**
+     * Inserts or updates the entity using the given connection, see {@link #upsert(EntityEntry)}.
+     * The connection is neither committed nor closed by this method.
+     *
+     * @param entityEntry the entity entry containing the entity to write and its identifying key
+     * @param connection  the connection to execute the statement on
+     * @throws DaoOperationException if there is an error writing the entity, or the row holds another version
+     */
+    public void upsert(EntityEntry entityEntry, Connection connection) {
+        try {
+            performUpsert(connection, entityEntry);
+        } catch (SQLException exception) {
+            String entityName = entityEntry.entityKey().entityType().getName();
+            throw new DaoOperationException(
+                    String.format("Error upserting entity: %s", entityName),
+                    exception
+            );
+        }
+    }
+
     /**
      * Removes an entity from the database by its identifier.
      * This method automatically generates and executes a DELETE SQL statement for the specified entity.
@@ -117,24 +307,47 @@ public class GenericJdbcDAO {
         log.trace("Call remove({}) for entity class", entityClass);
 
         try (Connection connection = connectionHandler.getConnection()) {
-            String deleteQuery = SqlQueryBuilder.buildDeleteByIdQuery(entityClass);
-            if (log.isInfoEnabled()) {
-                log.info("Remove by id: {}", deleteQuery);
-            }
+            performRemove(connection, entityKey);
+        } catch (SQLException exception) {
+            throw new DaoOperationException(String
+                    .format("Error delete entity: %s", entityClass), exception);
+        }
+    }
 
-            PreparedStatement deleteByIdStatement = connection.prepareStatement(deleteQuery);
-            deleteByIdStatement.setObject(1, entityKey.id());
-            var deleteRowsCount = deleteByIdStatement.executeUpdate();
-            if (deleteRowsCount == 0) {
-                throw new DaoOperationException(String
-                        .format("Delete has not been perform for entity: %s", entityClass));
-            }
+    /**
+     * Removes an entity from the database by its identifier using the given connection.
+     * The connection is neither committed nor closed by this method.
+     *
+     * @param entityKey  the key identifying the entity to remove
+     * @param connection the connection to execute the DELETE statement on
+     * @param <T>        the type parameter of the entity
+     * @throws DaoOperationException if there is an error deleting the entity
+     */
+    public <T> void remove(EntityKey<T> entityKey, Connection connection) {
+        Class<T> entityClass = entityKey.entityType();
+
+        log.trace("Call remove({}, connection) for entity class", entityClass);
+
+        try {
+            performRemove(connection, entityKey);
         } catch (SQLException exception) {
             throw new DaoOperationException(String
                     .format("Error delete entity: %s", entityClass), exception);
         }
     }
 
+    /**
+     * Creates a {@link JdbcBatch} that groups INSERT, UPDATE and DELETE statements executed on the
+     * given connection into JDBC batches of at most {@code batchSize} rows.
+     *
+     * @param connection the connection the batch statements are prepared on
+     * @param batchSize  the maximum number of rows sent to the database in one batch
+     * @return a new batch bound to the connection
+     */
+    public JdbcBatch createBatch(Connection connection, int batchSize) {
+        return new JdbcBatch(this, connection, batchSize);
+    }
+
     /**
      * Returns the one entity by the restriction field
      *
@@ -168,12 +381,43 @@ public class GenericJdbcDAO {
     public <T> List<T> findAllBy(final Class<T> entityType, final Field field, final Object columnValue) {
         log.trace("Call findAllBy({}, {}, {})", entityType, field, columnValue);
 
-        List<T> resultList = new ArrayList<>();
         try (Connection connection = connectionHandler.getConnection()) {
-            var selectByColumnStatement = prepareSelectStatement(connection, entityType, field, columnValue);
-            ResultSet resultSet = selectByColumnStatement.executeQuery();
-            while (resultSet.next()) {
-                resultList.add(createEntityFromResultSet(entityType, resultSet));
+            if (!connection.getAutoCommit()) {
+                return selectAllBy(entityType, field, columnValue, connection);
+            }
+
+            var collectionKey = new SecondLevelCache.CollectionKey(
+                    entityType, ParameterNameResolver.resolveJoinColumnOrColumnName(field), columnValue);
+            AtomicReference<List<T>> loadedEntities = new AtomicReference<>();
+            List<Object[]> states = secondLevelCache.getCollectionLoads().execute(collectionKey, () -> {
+                List<T> entities = selectAllBy(entityType, field, columnValue, connection);
+                loadedEntities.set(entities);
+                return entities.stream().map(this::disassembleEntity).toList();
+            });
+            if (loadedEntities.get() != null) {
+                return loadedEntities.get();
+            }
+
+            List<T> resultList = new ArrayList<>();
+            for (Object[] state : states) {
+                resultList.add(assembleEntity(entityType, state, connection));
+            }
+
+            return resultList;
+        } catch (SQLException exception) {
+            throw new DaoOperationException(String
+                    .format(ERROR_LOADING_ENTITIES_FROM_THE_DB, entityType.getName()), exception);
+        }
+    }
+
+    private <T> List<T> selectAllBy(Class<T> entityType, Field field, Object columnValue, Connection connection) {
+        List<T> resultList = new ArrayList<>();
+        try {
+            try (var selectByColumnStatement = prepareSelectStatement(connection, entityType, field, columnValue)) {
+                ResultSet resultSet = selectByColumnStatement.executeQuery();
+                while (resultSet.next()) {
+                    resultList.add(createEntityFromResultSet(entityType, resultSet, connection));
+                }
             }
 
             return resultList;
@@ -218,10 +462,11 @@ public class GenericJdbcDAO {
 
         try (Connection connection = connectionHandler.getConnection()) {
             final List<T> resultList = new ArrayList<>();
-            final var selectByColumnStatement = prepareNativeQueryStatement(connection, query, columnValues);
-            ResultSet resultSet = selectByColumnStatement.executeQuery();
-            while (resultSet.next()) {
-                resultList.add(createEntityFromResultSet(entityType, resultSet));
+            try (final var selectByColumnStatement = prepareNativeQueryStatement(connection, query, columnValues)) {
+                ResultSet resultSet = selectByColumnStatement.executeQuery();
+                while (resultSet.next()) {
+                    resultList.add(createEntityFromResultSet(entityType, resultSet, connection));
+                }
             }
 
             return resultList;
@@ -231,15 +476,67 @@ public class GenericJdbcDAO {
         }
     }
 
-    private Object save(Object entity, Connection connection) throws SQLException {
-        PreparedStatement insertStatement = prepareInsertStatement(entity, connection);
-        insertStatement.executeUpdate();
-        ResultSet resultSet = insertStatement.getGeneratedKeys();
-        if (!resultSet.next()) {
-            throw new DaoOperationException(String.format("Error fetching generated id for entity: %s", entity.getClass().getName()));
+    /**
+     * Returns a lazily populated stream of entities read by native query. Rows are fetched from the
+     * database in chunks of {@code fetchSize} while the stream is consumed, so the whole result never
+     * has to be held in memory. The stream must be closed to release the underlying statement.
+     * Note that some drivers (e.g. PostgreSQL) only honor the fetch size when auto-commit is disabled.
+     *
+     * @param connection   - connection the query is executed on, it stays open after the stream is closed
+     * @param query        - native query
+     * @param entityType   - entity class type
+     * @param columnValues - values for query
+     * @param fetchSize    - number of rows fetched from the database per round trip
+     * @param <T>
+     * @return stream of entities
+     */
+    public <T> Stream<T> streamAllBy(final Connection connection,
+                                     final String query,
+                                     final Class<T> entityType,
+                                     final Object[] columnValues,
+                                     final int fetchSize) {
+        log.trace("Call streamAllBy({}, {}, {}, {})", query, entityType, columnValues, fetchSize);
+
+        final PreparedStatement selectStatement = prepareNativeQueryStatement(connection, query, columnValues);
+        try {
+            selectStatement.setFetchSize(fetchSize);
+            final ResultSet resultSet = selectStatement.executeQuery();
+            Spliterator<T> spliterator = new Spliterators.AbstractSpliterator<>(Long.MAX_VALUE, Spliterator.ORDERED) {
+                @Override
+                public boolean tryAdvance(Consumer<? super T> action) {
+                    try {
+                        if (!resultSet.next()) {
+                            return false;
+                        }
+                        action.accept(createEntityFromResultSet(entityType, resultSet, connection));
+                        return true;
+                    } catch (SQLException exception) {
+                        throw new DaoOperationException(String
+                                .format(ERROR_LOADING_ENTITIES_FROM_THE_DB, entityType.getName()), exception);
+                    }
+                }
+            };
+
+            return StreamSupport.stream(spliterator, false)
+                    .onClose(() -> closeStatement(selectStatement));
+        } catch (SQLException exception) {
+            closeStatement(selectStatement);
+            throw new DaoOperationException(String
+                    .format(ERROR_LOADING_ENTITIES_FROM_THE_DB, entityType.getName()), exception);
         }
+    }
+
+    private Object save(Object entity, Connection connection) throws SQLException {
+        try (PreparedStatement insertStatement = prepareInsertStatement(entity, connection)) {
+            insertStatement.executeUpdate();
+            invalidateQueryResults(entity.getClass(), connection);
+            ResultSet resultSet = insertStatement.getGeneratedKeys();
+            if (!resultSet.next()) {
+                throw new DaoOperationException(String.format("Error fetching generated id for entity: %s", entity.getClass().getName()));
+            }
 
-        return resultSet.getObject(1);
+            return resultSet.getObject(1);
+        }
     }
 
     private PreparedStatement prepareInsertStatement(Object entity, Connection connection) {
@@ -250,10 +547,7 @@ public class GenericJdbcDAO {
         }
         try {
             PreparedStatement insertStatement = connection.prepareStatement(insertQuery, Statement.RETURN_GENERATED_KEYS);
-            Field[] entityFields = EntityReflectionUtils.getInsertableFieldsForIdentityGenerationType(entity.getClass());
-            for (int i = 0; i < entityFields.length; i++) {
-                insertStatement.setObject(i + 1, EntityReflectionUtils.getFieldValue(entity, entityFields[i]));
-            }
+            bindInsertParameters(insertStatement, entity);
             return insertStatement;
         } catch (SQLException exception) {
             throw new DaoOperationException(String.format(
@@ -263,12 +557,193 @@ public class GenericJdbcDAO {
         }
     }
 
+    /**
+     * Binds the insertable field values of the entity to the parameters of an INSERT statement
+     * built by {@link SqlQueryBuilder#buildInsertQuery(Class)}.
+     */
+    void bindInsertParameters(PreparedStatement insertStatement, Object entity) throws SQLException {
+        Field[] entityFields = EntityReflectionUtils.getInsertableFieldsForIdentityGenerationType(entity.getClass());
+        for (int i = 0; i < entityFields.length; i++) {
+            insertStatement.setObject(i + 1, EntityReflectionUtils.getFieldValue(entity, entityFields[i]));
+        }
+    }
+
+    /**
+     * Binds the updatable field values and the identifier of the entity to the parameters of an UPDATE
+     * statement built by {@link SqlQueryBuilder#buildUpdateByIdQuery(Class)}, including the optimistic
+     * lock version when the entity declares one.
+     */
+    void bindUpdateParameters(PreparedStatement updateByIdStatement, EntityEntry entityEntry)
+            throws SQLException, IllegalAccessException {
+        Class<?> entityType = entityEntry.entityKey().entityType();
+        Object entity = entityEntry.entity();
+        Field[] entityFields = EntityReflectionUtils.getUpdatableFields(entityType);
+        int lastUpdatebleParam = entityFields.length + 1;
+
+        for (int i = 0; i < entityFields.length; i++) {
+            entityFields[i].setAccessible(true);
+            if (EntityReflectionUtils.isVesionOptLockField(entityFields[i])) {
+                Object incrementedVersion = EntityReflectionUtils.incrementVersionField(entityFields[i], entity);
+                updateByIdStatement.setObject(i + 1, incrementedVersion);
+                updateByIdStatement.setObject(lastUpdatebleParam, entityFields[i].get(entity));
+                lastUpdatebleParam--;
+            } else {
+                updateByIdStatement.setObject(i + 1, entityFields[i].get(entity));
+            }
+        }
+
+        Object entityId = entityEntry.entityKey().id();
+        updateByIdStatement.setObject(lastUpdatebleParam, entityId);
+    }
+
+    /**
+     * Binds the identifier and the insertable field values of the entity to the parameters of a statement
+     * built by {@link SqlQueryBuilder#buildUpsertQuery(Class)}. The version of a versioned entity is bound
+     * incremented, or as {@code 0} if the entity has none yet, and its current value guards the update.
+     *
+     * @return the version written by the statement, {@code null} if the entity is not versioned
+     */
+    Object bindUpsertParameters(PreparedStatement upsertStatement, EntityEntry entityEntry)
+            throws SQLException, IllegalAccessException {
+        Object entity = entityEntry.entity();
+        Field[] entityFields = EntityReflectionUtils.getInsertableFieldsForIdentityGenerationType(entity.getClass());
+        upsertStatement.setObject(1, entityEntry.entityKey().id());
+
+        Object nextVersion = null;
+        for (int i = 0; i < entityFields.length; i++) {
+            if (EntityReflectionUtils.isVesionOptLockField(entityFields[i])) {
+                entityFields[i].setAccessible(true);
+                Object version = entityFields[i].get(entity);
+                nextVersion = version != null
+                        ? EntityReflectionUtils.incrementVersionField(entityFields[i], entity)
+                        : initialVersion(entityFields[i]);
+                upsertStatement.setObject(i + 2, nextVersion);
+                upsertStatement.setObject(entityFields.length + 2, version);
+            } else {
+                upsertStatement.setObject(i + 2, EntityReflectionUtils.getFieldValue(entity, entityFields[i]));
+            }
+        }
+
+        return nextVersion;
+    }
+
+    boolean isShownSql() {
+        return isShownSql;
+    }
+
+    /**
+     * Removes the cached state of an entity that is about to be updated or deleted, and records it to be
+     * invalidated again once the transaction of the connection commits.
+     */
+    void invalidateCachedState(EntityKey<?> entityKey, Connection connection) {
+        secondLevelCache.evict(entityKey);
+        secondLevelCache.recordEviction(connection, entityKey);
+    }
+
+    /**
+     * Marks the cached results of queries reading the table of the entity type as out of date. Called
+     * after a write to the table was executed; outside of a transaction the write is already committed,
+     * so the recorded invalidations are published right away.
+     */
+    void invalidateQueryResults(Class<?> entityType, Connection connection) throws SQLException {
+        String tableName = ParameterNameResolver.resolveTableName(entityType);
+        secondLevelCache.getUpdateTimestamps().invalidate(tableName);
+        secondLevelCache.recordTableUpdate(connection, tableName);
+        if (connection.getAutoCommit()) {
+            secondLevelCache.completeTransaction(connection, true);
+        }
+    }
+
+    /**
+     * Completes the invalidations recorded for a write outside of a transaction once it is done, even if it
+     * failed before they were published, so they are not left keyed by the pooled connection for its next
+     * borrower. As a failed write may have been applied or not, the invalidations are published either way.
+     */
+    void completeAutoCommitWrite(Connection connection, boolean autoCommit) {
+        if (autoCommit) {
+            secondLevelCache.completeTransaction(connection, true);
+        }
+    }
+
+    private void performRemove(Connection connection, EntityKey<?> entityKey) throws SQLException {
+        boolean autoCommit = connection.getAutoCommit();
+        try {
+            Class<?> entityClass = entityKey.entityType();
+            String deleteQuery = SqlQueryBuilder.buildDeleteByIdQuery(entityClass);
+            if (log.isInfoEnabled()) {
+                log.info("Remove by id: {}", deleteQuery);
+            }
+
+            invalidateCachedState(entityKey, connection);
+            int deleteRowsCount;
+            try (PreparedStatement deleteByIdStatement = connection.prepareStatement(deleteQuery)) {
+                deleteByIdStatement.setObject(1, entityKey.id());
+                deleteRowsCount = deleteByIdStatement.executeUpdate();
+            }
+            invalidateQueryResults(entityClass, connection);
+            if (deleteRowsCount == 0) {
+                throw new DaoOperationException(String
+                        .format("Delete has not been perform for entity: %s", entityClass));
+            }
+        } finally {
+            completeAutoCommitWrite(connection, autoCommit);
+        }
+    }
+
+    private void performUpsert(Connection connection, EntityEntry entityEntry) throws SQLException {
+        boolean autoCommit = connection.getAutoCommit();
+        try {
+            Class<?> entityType = entityEntry.entityKey().entityType();
+            String upsertQuery = SqlQueryBuilder.buildUpsertQuery(entityType);
+            if (isShownSql && log.isInfoEnabled()) {
+                log.info("Upsert: {}", upsertQuery);
+            }
+
+            invalidateCachedState(entityEntry.entityKey(), connection);
+            try (PreparedStatement upsertStatement = connection.prepareStatement(upsertQuery)) {
+                Object nextVersion = bindUpsertParameters(upsertStatement, entityEntry);
+                var upsertedRowsCount = upsertStatement.executeUpdate();
+                invalidateQueryResults(entityType, connection);
+                if (upsertedRowsCount == 0) {
+                    throw new DaoOperationException(String.format("Upsert has not been perform for entity: %s", entityType.getName()));
+                }
+                if (nextVersion != null) {
+                    EntityReflectionUtils.setFieldValue(entityEntry.entity(), EntityReflectionUtils.getVersionField(entityType), nextVersion);
+                }
+            } catch (IllegalAccessException exception) {
+                throw new DaoOperationException(String.format(
+                        "Error preparing upsert statement for entity: %s", entityType.getName()),
+                        exception
+                );
+            }
+        } finally {
+            completeAutoCommitWrite(connection, autoCommit);
+        }
+    }
+
+    private static Object initialVersion(Field versionField) {
+        if (versionField.getType() == Long.class || versionField.getType() == long.class) {
+            return 0L;
+        }
+
+        return 0;
+    }
+
     private void performUpdate(Connection connection, EntityEntry entityEntry) throws SQLException {
-        PreparedStatement updateByIdStatement = prepareUpdateStatement(connection, entityEntry);
-        var updatedRowsCount = updateByIdStatement.executeUpdate();
-        if (updatedRowsCount == 0) {
-            String entityName = entityEntry.entityKey().entityType().getName();
-            throw new DaoOperationException(String.format("Update has not been perform for entity: %s", entityName));
+        boolean autoCommit = connection.getAutoCommit();
+        try {
+            invalidateCachedState(entityEntry.entityKey(), connection);
+            int updatedRowsCount;
+            try (PreparedStatement updateByIdStatement = prepareUpdateStatement(connection, entityEntry)) {
+                updatedRowsCount = updateByIdStatement.executeUpdate();
+            }
+            invalidateQueryResults(entityEntry.entityKey().entityType(), connection);
+            if (updatedRowsCount == 0) {
+                String entityName = entityEntry.entityKey().entityType().getName();
+                throw new DaoOperationException(String.format("Update has not been perform for entity: %s", entityName));
+            }
+        } finally {
+            completeAutoCommitWrite(connection, autoCommit);
         }
     }
 
@@ -283,25 +758,7 @@ public class GenericJdbcDAO {
             }
 
             PreparedStatement updateByIdStatement = connection.prepareStatement(updateQuery);
-
-            Object entity = entityEntry.entity();
-            Field[] entityFields = EntityReflectionUtils.getUpdatableFields(entityType);
-            int lastUpdatebleParam = entityFields.length + 1;
-
-            for (int i = 0; i < entityFields.length; i++) {
-                entityFields[i].setAccessible(true);
-                if (EntityReflectionUtils.isVesionOptLockField(entityFields[i])) {
-                    Object incrementedVersion = EntityReflectionUtils.incrementVersionField(entityFields[i], entity);
-                    updateByIdStatement.setObject(i + 1, incrementedVersion);
-                    updateByIdStatement.setObject(lastUpdatebleParam, entityFields[i].get(entity));
-                    lastUpdatebleParam--;
-                } else {
-                    updateByIdStatement.setObject(i + 1, entityFields[i].get(entity));
-                }
-            }
-
-            Object entityId = entityEntry.entityKey().id();
-            updateByIdStatement.setObject(lastUpdatebleParam, entityId);
+            bindUpdateParameters(updateByIdStatement, entityEntry);
 
             return updateByIdStatement;
         } catch (Exception exception) {
@@ -313,14 +770,190 @@ public class GenericJdbcDAO {
         }
     }
 
+    /**
+     * Loads the entity from the second-level cache or the database. Outside of a transaction, concurrent loads
+     * of the same entity share one select through {@link SecondLevelCache#getEntityLoads()}: the thread running
+     * the select gets the entity it created and caches its state, the others assemble their own instances out
+     * of that state. State read inside a transaction is neither shared nor cached, as it may contain changes
+     * other sessions must not see before the commit. State read while a write to an entity of the type commits
+     * is not cached either, see {@link SecondLevelCache#put(EntityKey, Object[], long)}.
+     */
     private <T> T load(EntityKey<T> entityKey, Connection connection) throws SQLException {
-        PreparedStatement selectByIdStatement = prepareSelectStatement(entityKey, connection);
-        ResultSet resultSet = selectByIdStatement.executeQuery();
-        if (resultSet.next()) {
-            return createEntityFromResultSet(entityKey.entityType(), resultSet);
+        Object[] cachedState = secondLevelCache.get(entityKey, state -> isCurrentVersion(entityKey, state, connection));
+        if (cachedState != null) {
+            return assembleEntity(entityKey.entityType(), cachedState, connection);
         }
 
-        return null;
+        if (!connection.getAutoCommit()) {
+            return selectById(entityKey, connection);
+        }
+
+        AtomicReference<T> loadedEntity = new AtomicReference<>();
+        Object[] state = secondLevelCache.getEntityLoads().execute(entityKey, () -> {
+            long invalidationStamp = secondLevelCache.getInvalidationStamp(entityKey.entityType());
+            T entity = selectById(entityKey, connection);
+            if (entity == null) {
+                return null;
+            }
+            loadedEntity.set(entity);
+            Object[] entityState = disassembleEntity(entity);
+            secondLevelCache.put(entityKey, entityState, invalidationStamp);
+            return entityState;
+        });
+        if (loadedEntity.get() != null) {
+            return loadedEntity.get();
+        }
+
+        return state != null ? assembleEntity(entityKey.entityType(), state, connection) : null;
+    }
+
+    /**
+     * Selects the entities by chunks of ids, caching their state outside of a transaction. Ids of a type
+     * PostgreSQL arrays are not built for are loaded one by one.
+     */
+    private <T> void selectAllByIds(Class<T> entityType, List<Object> ids, Connection connection,
+                                    Map<Object, T> entities) throws SQLException {
+        String sqlArrayType = SQL_ARRAY_TYPES.get(EntityReflectionUtils.getIdField(entityType).getType());
+        if (sqlArrayType == null) {
+            for (Object id : ids) {
+                T entity = load(new EntityKey<>(entityType, id), connection);
+                if (entity != null) {
+                    entities.put(id, entity);
+                }
+            }
+            return;
+        }
+
+        String selectQuery = SqlQueryBuilder.buildSelectByIdsQuery(entityType);
+        if (isShownSql && log.isInfoEnabled()) {
+            log.info("Select by ids: {}", selectQuery);
+        }
+
+        boolean cacheable = secondLevelCache.getRegion(entityType) != null && connection.getAutoCommit();
+        try (PreparedStatement selectByIdsStatement = connection.prepareStatement(selectQuery)) {
+            for (int from = 0; from < ids.size(); from += MAX_IDS_PER_SELECT) {
+                List<Object> chunk = ids.subList(from, Math.min(ids.size(), from + MAX_IDS_PER_SELECT));
+                Array idArray = connection.createArrayOf(sqlArrayType, chunk.toArray());
+                selectByIdsStatement.setArray(1, idArray);
+                long invalidationStamp = secondLevelCache.getInvalidationStamp(entityType);
+                try (ResultSet resultSet = selectByIdsStatement.executeQuery()) {
+                    while (resultSet.next()) {
+                        T entity = createEntityFromResultSet(entityType, resultSet, connection);
+                        Object id = EntityReflectionUtils.getEntityIdValue(entity);
+                        entities.put(id, entity);
+                        if (cacheable) {
+                            secondLevelCache.put(new EntityKey<>(entityType, id), disassembleEntity(entity),
+                                    invalidationStamp);
+                        }
+                    }
+                } finally {
+                    idArray.free();
+                }
+            }
+        }
+    }
+
+    private <T> T selectById(EntityKey<T> entityKey, Connection connection) {
+        try {
+            try (PreparedStatement selectByIdStatement = prepareSelectStatement(entityKey, connection)) {
+                ResultSet resultSet = selectByIdStatement.executeQuery();
+                if (resultSet.next()) {
+                    return createEntityFromResultSet(entityKey.entityType(), resultSet, connection);
+                }
+            }
+
+            return null;
+        } catch (SQLException exception) {
+            throw new DaoOperationException(String.format(
+                    "Error loading entity from the DB: %s", entityKey.entityType().getName()),
+                    exception
+            );
+        }
+    }
+
+    /**
+     * Tells whether cached state restored from a previous run of the application holds the version the entity
+     * has in the database. State of entities without a version field is never current.
+     */
+    private boolean isCurrentVersion(EntityKey<?> entityKey, Object[] state, Connection connection) {
+        Field[] fields = entityKey.entityType().getDeclaredFields();
+        int versionIndex = Arrays.asList(fields).indexOf(EntityReflectionUtils.getVersionField(entityKey.entityType()));
+        if (versionIndex < 0 || !(state[versionIndex] instanceof Number cachedVersion)) {
+            return false;
+        }
+
+        String selectVersionQuery = SqlQueryBuilder.buildSelectVersionByIdQuery(entityKey.entityType());
+        if (isShownSql && log.isInfoEnabled()) {
+            log.info("Select version by id: {}", selectVersionQuery);
+        }
+
+        try (PreparedStatement selectVersionStatement = connection.prepareStatement(selectVersionQuery)) {
+            selectVersionStatement.setObject(1, entityKey.id());
+            ResultSet resultSet = selectVersionStatement.executeQuery();
+            return resultSet.next() && resultSet.getLong(1) == cachedVersion.longValue();
+        } catch (SQLException exception) {
+            throw new DaoOperationException(String.format(
+                    "Error validating cached state of entity: %s", entityKey.entityType().getName()),
+                    exception
+            );
+        }
+    }
+
+    /**
+     * Converts the entity into an array holding a value per declared field: the column value for column
+     * fields, the id of the referenced entity for entity fields and {@code null} for entity collections.
+     */
+    private Object[] disassembleEntity(Object entity) {
+        Field[] fields = entity.getClass().getDeclaredFields();
+        Object[] state = new Object[fields.length];
+        try {
+            for (int i = 0; i < fields.length; i++) {
+                if (EntityReflectionUtils.isEntityField(fields[i])) {
+                    fields[i].setAccessible(true);
+                    Object referencedEntity = fields[i].get(entity);
+                    state[i] = referencedEntity != null ? EntityReflectionUtils.getEntityIdValue(referencedEntity) : null;
+                } else if (EntityReflectionUtils.isColumnField(fields[i])) {
+                    state[i] = EntityReflectionUtils.getFieldValue(entity, fields[i]);
+                }
+            }
+        } catch (IllegalAccessException exception) {
+            throw new DaoOperationException(String.format(
+                    "Error disassembling entity for the second-level cache: %s", entity.getClass().getName()),
+                    exception
+            );
+        }
+
+        return state;
+    }
+
+    /**
+     * Creates an entity out of the state built by {@link #disassembleEntity(Object)}. Referenced entities are
+     * loaded by their ids, from the cache when possible, and entity collections are loaded lazily.
+     */
+    private <T> T assembleEntity(Class<T> entityType, Object[] state, Connection connection) throws SQLException {
+        T entity = entityType.cast(EntityReflectionUtils.newInstanceOf(entityType));
+        Field[] fields = entityType.getDeclaredFields();
+        for (int i = 0; i < fields.length; i++) {
+            if (EntityReflectionUtils.isEntityField(fields[i])) {
+                Object referencedEntity = state[i] != null
+                        ? load(new EntityKey<>(fields[i].getType(), state[i]), connection)
+                        : null;
+                EntityReflectionUtils.setFieldValue(entity, fields[i], referencedEntity);
+            } else if (EntityReflectionUtils.isColumnField(fields[i])) {
+                EntityReflectionUtils.setFieldValue(entity, fields[i], state[i]);
+            }
+        }
+
+        Object entityId = EntityReflectionUtils.getEntityIdValue(entity);
+        for (Field field : fields) {
+            if (EntityReflectionUtils.isEntityCollectionField(field)) {
+                var joinClazz = EntityReflectionUtils.getJoinCollectionEntityType(field);
+                var entityFieldInJoinClazz = EntityReflectionUtils.getJoinClazzField(entityType, joinClazz);
+                EntityReflectionUtils.setFieldValue(entity, field, createLazyList(joinClazz, entityFieldInJoinClazz, entityId));
+            }
+        }
+
+        return entity;
     }
 
     private PreparedStatement prepareSelectStatement(EntityKey<?> entityKey, Connection connection) {
@@ -343,10 +976,10 @@ public class GenericJdbcDAO {
         }
     }
 
-    private <T> T createEntityFromResultSet(Class<T> entityType, ResultSet resultSet) {
+    private <T> T createEntityFromResultSet(Class<T> entityType, ResultSet resultSet, Connection connection) {
         try {
             T entity = entityType.getConstructor().newInstance();
-            parseResultSetForEntity(entityType, resultSet, entity);
+            parseResultSetForEntity(entityType, resultSet, entity, connection);
 
             return entity;
         } catch (Exception exception) {
@@ -355,10 +988,10 @@ public class GenericJdbcDAO {
         }
     }
 
-    private <T> void parseResultSetForEntity(Class<T> entityType, ResultSet resultSet, T entity) {
+    private <T> void parseResultSetForEntity(Class<T> entityType, ResultSet resultSet, T entity, Connection connection) {
         try {
             for (Field field : entityType.getDeclaredFields()) {
-                Object fieldValue = parseResultSetForField(entityType, resultSet, field);
+                Object fieldValue = parseResultSetForField(entityType, resultSet, field, connection);
                 EntityReflectionUtils.setFieldValue(entity, field, fieldValue);
             }
         } catch (SQLException exception) {
@@ -368,13 +1001,16 @@ public class GenericJdbcDAO {
         }
     }
 
-    private Object parseResultSetForField(Class<?> entityType, ResultSet resultSet, Field field) throws SQLException {
+    private Object parseResultSetForField(Class<?> entityType,
+                                          ResultSet resultSet,
+                                          Field field,
+                                          Connection connection) throws SQLException {
         if (EntityReflectionUtils.isEntityField(field)) {
             var joinClazz = field.getType();
             var joinColumnName = ParameterNameResolver.resolveJoinColumnName(field);
             var joinColumnValue = resultSet.getObject(joinColumnName);
             var entityKey = new EntityKey<>(joinClazz, joinColumnValue);
-            return loadFromDB(entityKey);
+            return load(entityKey, connection);
         } else if (EntityReflectionUtils.isEntityCollectionField(field)) {
             var joinClazz = EntityReflectionUtils.getJoinCollectionEntityType(field);
             var entityFieldInJoinClazz = EntityReflectionUtils.getJoinClazzField(entityType, joinClazz);
@@ -435,4 +1071,12 @@ public class GenericJdbcDAO {
         }
     }
 
+    private void closeStatement(Statement statement) {
+        try {
+            statement.close();
+        } catch (SQLException exception) {
+            log.warn("Error closing statement", exception);
+        }
+    }
+
 }
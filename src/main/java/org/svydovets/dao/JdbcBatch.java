@@ -0,0 +1,322 @@
+package org.svydovets.dao;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.svydovets.exception.DaoOperationException;
+import org.svydovets.query.SqlQueryBuilder;
+import org.svydovets.session.EntityEntry;
+import org.svydovets.session.EntityKey;
+import org.svydovets.util.EntityReflectionUtils;
+
+import java.lang.reflect.Field;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Accumulates INSERT, UPDATE and DELETE statements on a single connection and sends them to the
+ * database as JDBC batches.
+ *
+ * <p>Only consecutive statements with the same SQL are grouped together: as soon as a statement with
+ * a different SQL is added, the pending batch is executed first. This keeps the order of operations
+ * exactly as it was requested while still saving a round trip per row for runs of similar statements.
+ * A batch is also executed as soon as it reaches the configured size.</p>
+ *
+ * <p>The batch does not own the connection: {@link #close()} only releases the prepared statement.</p>
+ */
+public class JdbcBatch implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(JdbcBatch.class);
+
+    private final GenericJdbcDAO jdbcDAO;
+    private final Connection connection;
+    private final int batchSize;
+    private final List<PendingRow> pendingRows;
+
+    private String currentSql;
+    private PreparedStatement currentStatement;
+    private boolean currentInsert;
+    private long executedBatchesCount;
+
+    /**
+     * Constructs a new batch bound to the given connection.
+     *
+     * @param jdbcDAO    the DAO used to bind entity values to statement parameters
+     * @param connection the connection statements are prepared on
+     * @param batchSize  the maximum number of rows sent to the database in one batch
+     * @throws IllegalArgumentException if {@code batchSize} is less than 1
+     */
+    JdbcBatch(GenericJdbcDAO jdbcDAO, Connection connection, int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size cannot be less than 1");
+        }
+        this.jdbcDAO = jdbcDAO;
+        this.connection = connection;
+        this.batchSize = batchSize;
+        this.pendingRows = new ArrayList<>(batchSize);
+    }
+
+    /**
+     * Adds an INSERT of the entity to the batch. The identifier generated by the database is set
+     * to the entity's id field once the batch is executed.
+     *
+     * @param entity the entity to insert
+     */
+    public void addInsert(Object entity) {
+        addInsert(entity, generatedId -> {
+        });
+    }
+
+    /**
+     * Adds an INSERT of the entity to the batch. The identifier generated by the database is set
+     * to the entity's id field and passed to {@code generatedIdConsumer} once the batch is executed.
+     *
+     * @param entity              the entity to insert
+     * @param generatedIdConsumer the callback receiving the generated identifier
+     */
+    public void addInsert(Object entity, Consumer<Object> generatedIdConsumer) {
+        Class<?> entityType = entity.getClass();
+        String insertQuery = SqlQueryBuilder.buildInsertQuery(entityType);
+        try {
+            PreparedStatement insertStatement = switchStatement(insertQuery, true);
+            jdbcDAO.bindInsertParameters(insertStatement, entity);
+            addRow(new PendingRow(entityType, entity, generatedIdConsumer));
+        } catch (SQLException exception) {
+            throw new DaoOperationException(String.format(
+                    "Error adding insert of entity to the batch: %s", entityType.getName()),
+                    exception
+            );
+        }
+    }
+
+    /**
+     * Adds an UPDATE of the entity to the batch.
+     *
+     * @param entityEntry the entity entry containing the entity to update and its identifying key
+     */
+    public void addUpdate(EntityEntry entityEntry) {
+        Class<?> entityType = entityEntry.entityKey().entityType();
+        String updateQuery = SqlQueryBuilder.buildUpdateByIdQuery(entityType);
+        try {
+            jdbcDAO.invalidateCachedState(entityEntry.entityKey(), connection);
+            PreparedStatement updateStatement = switchStatement(updateQuery, false);
+            jdbcDAO.bindUpdateParameters(updateStatement, entityEntry);
+            addRow(new PendingRow(entityType, entityEntry.entity(), null));
+        } catch (SQLException | IllegalAccessException exception) {
+            throw new DaoOperationException(String.format(
+                    "Error adding update of entity to the batch: %s", entityType.getName()),
+                    exception
+            );
+        }
+    }
+
+    /**
+     * Adds an upsert of the entity to the batch: an INSERT updating the existing row with the same identifier
+     * instead, see {@link GenericJdbcDAO#upsert(EntityEntry)}. The new version of a versioned entity is set to
+     * the entity right away.
+     *
+     * @param entityEntry the entity entry containing the entity to write and its identifying key
+     */
+    public void addUpsert(EntityEntry entityEntry) {
+        Class<?> entityType = entityEntry.entityKey().entityType();
+        String upsertQuery = SqlQueryBuilder.buildUpsertQuery(entityType);
+        try {
+            jdbcDAO.invalidateCachedState(entityEntry.entityKey(), connection);
+            PreparedStatement upsertStatement = switchStatement(upsertQuery, false);
+            Object nextVersion = jdbcDAO.bindUpsertParameters(upsertStatement, entityEntry);
+            if (nextVersion != null) {
+                EntityReflectionUtils.setFieldValue(entityEntry.entity(), EntityReflectionUtils.getVersionField(entityType), nextVersion);
+            }
+            addRow(new PendingRow(entityType, entityEntry.entity(), null));
+        } catch (SQLException | IllegalAccessException exception) {
+            throw new DaoOperationException(String.format(
+                    "Error adding upsert of entity to the batch: %s", entityType.getName()),
+                    exception
+            );
+        }
+    }
+
+    /**
+     * Adds a DELETE of the entity identified by the key to the batch.
+     *
+     * @param entityKey the key identifying the entity to remove
+     */
+    public void addDelete(EntityKey<?> entityKey) {
+        Class<?> entityType = entityKey.entityType();
+        String deleteQuery = SqlQueryBuilder.buildDeleteByIdQuery(entityType);
+        try {
+            jdbcDAO.invalidateCachedState(entityKey, connection);
+            PreparedStatement deleteStatement = switchStatement(deleteQuery, false);
+            deleteStatement.setObject(1, entityKey.id());
+            addRow(new PendingRow(entityType, null, null));
+        } catch (SQLException exception) {
+            throw new DaoOperationException(String.format(
+                    "Error adding delete of entity to the batch: %s", entityType.getName()),
+                    exception
+            );
+        }
+    }
+
+    /**
+     * Executes all pending rows of the current batch.
+     */
+    public void execute() {
+        if (pendingRows.isEmpty()) {
+            return;
+        }
+
+        boolean autoCommit = isAutoCommit();
+        try {
+            int[] rowCounts = currentStatement.executeBatch();
+            executedBatchesCount++;
+            jdbcDAO.invalidateQueryResults(pendingRows.get(0).entityType(), connection);
+            if (log.isDebugEnabled()) {
+                log.debug("Executed batch of {} statements: {}", pendingRows.size(), currentSql);
+            }
+
+            checkRowCounts(rowCounts);
+            if (currentInsert) {
+                assignGeneratedIds();
+            }
+        } catch (SQLException exception) {
+            throw new DaoOperationException(String.format("Error executing batch: %s", currentSql), exception);
+        } finally {
+            pendingRows.clear();
+            jdbcDAO.completeAutoCommitWrite(connection, autoCommit);
+        }
+    }
+
+    /**
+     * Drops the pending rows without sending them to the database and releases the current
+     * prepared statement, e.g. when the surrounding transaction is rolled back.
+     */
+    public void discard() {
+        boolean autoCommit = isAutoCommit();
+        pendingRows.clear();
+        closeCurrentStatement();
+        jdbcDAO.completeAutoCommitWrite(connection, autoCommit);
+    }
+
+    /**
+     * Returns the number of rows added to the batch and not yet sent to the database.
+     *
+     * @return the number of pending rows
+     */
+    public int getPendingRowsCount() {
+        return pendingRows.size();
+    }
+
+    /**
+     * Returns how many JDBC batches have been sent to the database so far.
+     *
+     * @return the number of executed batches
+     */
+    public long getExecutedBatchesCount() {
+        return executedBatchesCount;
+    }
+
+    /**
+     * Executes the pending rows and releases the current prepared statement.
+     */
+    @Override
+    public void close() {
+        boolean autoCommit = isAutoCommit();
+        try {
+            execute();
+        } finally {
+            closeCurrentStatement();
+            jdbcDAO.completeAutoCommitWrite(connection, autoCommit);
+        }
+    }
+
+    /**
+     * Reads the auto-commit mode of the connection each time the batch completes its writes, since the
+     * connection of a batch may begin and end transactions during the lifetime of the batch. A connection
+     * whose mode cannot be read is treated as running a transaction, whose end completes the writes.
+     */
+    private boolean isAutoCommit() {
+        try {
+            return connection.getAutoCommit();
+        } catch (SQLException exception) {
+            log.warn("Error reading auto-commit mode of batch connection", exception);
+            return false;
+        }
+    }
+
+    private PreparedStatement switchStatement(String sql, boolean insert) throws SQLException {
+        if (sql.equals(currentSql)) {
+            return currentStatement;
+        }
+
+        execute();
+        closeCurrentStatement();
+
+        if (jdbcDAO.isShownSql() && log.isInfoEnabled()) {
+            log.info("Batch: {}", sql);
+        }
+
+        currentStatement = insert
+                ? connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)
+                : connection.prepareStatement(sql);
+        currentSql = sql;
+        currentInsert = insert;
+
+        return currentStatement;
+    }
+
+    private void addRow(PendingRow pendingRow) throws SQLException {
+        currentStatement.addBatch();
+        pendingRows.add(pendingRow);
+        if (pendingRows.size() >= batchSize) {
+            execute();
+        }
+    }
+
+    private void checkRowCounts(int[] rowCounts) {
+        for (int i = 0; i < rowCounts.length; i++) {
+            if (rowCounts[i] == 0) {
+                throw new DaoOperationException(String.format(
+                        "Batch statement has not been perform for entity: %s", pendingRows.get(i).entityType().getName()));
+            }
+        }
+    }
+
+    private void assignGeneratedIds() throws SQLException {
+        try (ResultSet generatedKeys = currentStatement.getGeneratedKeys()) {
+            for (PendingRow pendingRow : pendingRows) {
+                if (!generatedKeys.next()) {
+                    throw new DaoOperationException(String.format(
+                            "Error fetching generated id for entity: %s", pendingRow.entityType().getName()));
+                }
+
+                Object generatedId = generatedKeys.getObject(1);
+                Field idField = EntityReflectionUtils.getIdField(pendingRow.entityType());
+                EntityReflectionUtils.setFieldValue(pendingRow.entity(), idField, generatedId);
+                pendingRow.generatedIdConsumer().accept(generatedId);
+            }
+        }
+    }
+
+    private void closeCurrentStatement() {
+        if (currentStatement == null) {
+            return;
+        }
+
+        try {
+            currentStatement.close();
+        } catch (SQLException exception) {
+            log.warn("Error closing batch statement", exception);
+        } finally {
+            currentStatement = null;
+            currentSql = null;
+        }
+    }
+
+    private record PendingRow(Class<?> entityType, Object entity, Consumer<Object> generatedIdConsumer) {
+    }
+}
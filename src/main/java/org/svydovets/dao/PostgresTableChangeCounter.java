@@ -0,0 +1,47 @@
+package org.svydovets.dao;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.svydovets.cache.TableChangeCounter;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * A {@link TableChangeCounter} reading the number of inserted, updated and deleted rows of a table from the
+ * PostgreSQL cumulative statistics ({@code pg_stat_user_tables}).
+ *
+ * <p>The statistics are reported with a small delay and may be reset, both of which only make the counter
+ * look changed, so cached state is discarded rather than trusted by mistake.</p>
+ */
+public class PostgresTableChangeCounter implements TableChangeCounter {
+
+    private static final Logger log = LoggerFactory.getLogger(PostgresTableChangeCounter.class);
+
+    private static final String SELECT_CHANGE_COUNT_SQL =
+            "select n_tup_ins + n_tup_upd + n_tup_del from pg_stat_user_tables where relid = to_regclass(?)";
+
+    private final DataSource dataSource;
+
+    public PostgresTableChangeCounter(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    @Override
+    public long getChangeCount(String tableName) {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(SELECT_CHANGE_COUNT_SQL)) {
+            statement.setString(1, tableName);
+            ResultSet resultSet = statement.executeQuery();
+            return resultSet.next() ? resultSet.getLong(1) : UNKNOWN;
+        } catch (SQLException exception) {
+            if (log.isWarnEnabled()) {
+                log.warn("Error reading change count of table {}: {}", tableName, exception.getMessage());
+            }
+            return UNKNOWN;
+        }
+    }
+}
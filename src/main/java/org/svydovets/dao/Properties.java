@@ -1,8 +1,40 @@
 package org.svydovets.dao;
 
+import org.svydovets.connectionPool.config.PoolConfig;
+
 /**
  * Holds configuration properties for database connections, including the URL,
  * username, and password required to establish a connection.
+ *
+ * @param jdbcBatchSize  the maximum number of write statements sent to the database in one JDBC batch
+ *                       when a session is flushed, {@code 1} disables batching
+ * @param cacheDirectory the directory of the memory-mapped second-level cache files, {@code null} to keep
+ *                       the cache in memory only
+ * @param cacheInvalidationChannel the PostgreSQL channel the second-level caches of all nodes exchange
+ *                                 invalidations on, {@code null} if the application runs on a single node
+ * @param poolConfig     the sizing and timeout settings of the connection pool, {@code null} for the defaults
  */
-public record Properties(String url, String user, String password, boolean isShownSql) {
+public record Properties(String url, String user, String password, boolean isShownSql, int jdbcBatchSize,
+                         String cacheDirectory, String cacheInvalidationChannel, PoolConfig poolConfig) {
+
+    public static final int DEFAULT_JDBC_BATCH_SIZE = 50;
+
+    public Properties(String url, String user, String password, boolean isShownSql) {
+        this(url, user, password, isShownSql, DEFAULT_JDBC_BATCH_SIZE);
+    }
+
+    public Properties(String url, String user, String password, boolean isShownSql, int jdbcBatchSize) {
+        this(url, user, password, isShownSql, jdbcBatchSize, null, null);
+    }
+
+    public Properties(String url, String user, String password, boolean isShownSql, int jdbcBatchSize,
+                      String cacheDirectory, String cacheInvalidationChannel) {
+        this(url, user, password, isShownSql, jdbcBatchSize, cacheDirectory, cacheInvalidationChannel, null);
+    }
+
+    public Properties {
+        if (poolConfig == null) {
+            poolConfig = PoolConfig.defaults();
+        }
+    }
 }
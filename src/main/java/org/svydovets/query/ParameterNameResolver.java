@@ -12,7 +12,9 @@ import org.svydovets.util.EntityReflectionUtils;
 
 import java.lang.reflect.Field;
 import java.util.Arrays;
+import java.util.LinkedHashSet;
 import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 /**
@@ -46,6 +48,23 @@ public class ParameterNameResolver {
                 : tableAnnotation.name();
     }
 
+    /**
+     * Resolves the query spaces of a query over the given entity: the table of the entity and the tables
+     * of the entities it references through {@code @ManyToOne}/{@code @OneToOne} join columns, which are
+     * read together with it.
+     *
+     * @param entityType the entity class the query selects
+     * @return the names of the tables the query reads
+     */
+    public static Set<String> resolveQuerySpaces(Class<?> entityType) {
+        Set<String> querySpaces = new LinkedHashSet<>();
+        querySpaces.add(resolveTableName(entityType));
+        EntityReflectionUtils.getEntityFields(entityType)
+                .forEach(field -> querySpaces.add(resolveTableName(field.getType())));
+
+        return querySpaces;
+    }
+
     /**
      * This method helps to define name of declared <strong>entity field</strong> by name from annotation
      *
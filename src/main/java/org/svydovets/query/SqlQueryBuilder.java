@@ -15,8 +15,16 @@ public class SqlQueryBuilder {
     private static final Logger log = LoggerFactory.getLogger(SqlQueryBuilder.class);
     private static final String SELECT_BY_ID_SQL = "select * from %s where %s = ?";
 
+    private static final String SELECT_BY_IDS_SQL = "select * from %s where %s = any(?)";
+
+    private static final String SELECT_COLUMN_BY_ID_SQL = "select %s from %s where %s = ?";
+
     private static final String INSERT_SQL = "insert into %s (%s) values (%s)";
 
+    private static final String UPSERT_SQL = "insert into %s (%s) values (%s) on conflict (%s) do update set %s";
+
+    private static final String UPSERT_OPT_LOCK_VERSION_POSTFIX = " where %s.%s = ?";
+
     private static final String UPDATE_BY_ID_SQL = "update %s set %s where %s = ?";
 
     private static final String UPDATE_OPT_LOCK_VERSION_POSTFIX = " and %s = ?";
@@ -53,6 +61,35 @@ public class SqlQueryBuilder {
         return buildSelectByColumnQuery(tableName, idColumnName, lock);
     }
 
+    /**
+     * This method helps to build a SELECT QUERY of several rows by their primary keys, passed as one array parameter.
+     *
+     * @param entityType - entity class with annotation @Id
+     */
+    public static String buildSelectByIdsQuery(Class<?> entityType) {
+        log.trace("Call buildSelectByIdsQuery({}) for  entity class", entityType);
+
+        String tableName = ParameterNameResolver.resolveTableName(entityType);
+        String idColumnName = ParameterNameResolver.getIdFieldName(entityType);
+
+        return String.format(SELECT_BY_IDS_SQL, tableName, idColumnName);
+    }
+
+    /**
+     * This method helps to build a SELECT QUERY of the {@code @Version} column based on the primary key.
+     *
+     * @param entityType - entity class with annotations @Id and @Version
+     */
+    public static String buildSelectVersionByIdQuery(Class<?> entityType) {
+        log.trace("Call buildSelectVersionByIdQuery({}) for  entity class", entityType);
+
+        String tableName = ParameterNameResolver.resolveTableName(entityType);
+        String idColumnName = ParameterNameResolver.getIdFieldName(entityType);
+        String versionColumnName = ParameterNameResolver.getVersionFieldName(entityType);
+
+        return String.format(SELECT_COLUMN_BY_ID_SQL, versionColumnName, tableName, idColumnName);
+    }
+
     /**
      * This method helps to build a SELECT QUERY based on the column name.
      *
@@ -89,6 +126,29 @@ public class SqlQueryBuilder {
         }
     }
 
+    /**
+     * This method helps to build an INSERT QUERY updating the existing row with the same primary key instead,
+     * guarded by the {@code @Version} column when the entity declares one.
+     *
+     * @param entityType - entity class with annotation @Id
+     */
+    public static String buildUpsertQuery(Class<?> entityType) {
+        log.trace("Call buildUpsertQuery({}) for  entity class", entityType);
+
+        String tableName = ParameterNameResolver.resolveTableName(entityType);
+        String idColumnName = ParameterNameResolver.getIdFieldName(entityType);
+        String columnNames = idColumnName + ", " + SqlQueryUtil.resolveColumnNamesForInsert(entityType);
+        String columnValues = "?, " + SqlQueryUtil.resolveColumnValuesForInsert(entityType);
+        String updatableColumns = SqlQueryUtil.resolveUpdatableColumnsWithExcludedValues(entityType);
+        String upsertQuery = String.format(UPSERT_SQL, tableName, columnNames, columnValues, idColumnName, updatableColumns);
+        String versionOptLockColumnName = ParameterNameResolver.getVersionFieldName(entityType);
+        if (versionOptLockColumnName != null && !versionOptLockColumnName.isBlank()) {
+            return upsertQuery + String.format(UPSERT_OPT_LOCK_VERSION_POSTFIX, tableName, versionOptLockColumnName);
+        }
+
+        return upsertQuery;
+    }
+
     /**
      * This method helps to build a DELETE QUERY based on the primary key.
      *
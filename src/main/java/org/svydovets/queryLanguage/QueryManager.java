@@ -77,6 +77,8 @@ public class QueryManager<T> {
 
     private List<String> joinQueryList = new ArrayList<>();
 
+    private boolean cacheable;
+
     public QueryManager(final Class<T> entityType) {
         this.entityType = entityType;
     }
@@ -127,6 +129,26 @@ public class QueryManager<T> {
                 .toArray();
     }
 
+    /**
+     * mark the query result as cacheable: the ids of the result are kept in the query cache of the session
+     * factory until a table the query reads is written
+     *
+     * @param cacheable
+     * @see org.svydovets.cache.QueryCache
+     */
+    public void setCacheable(final boolean cacheable) {
+        this.cacheable = cacheable;
+    }
+
+    /**
+     * get whether the query result is cacheable
+     *
+     * @return
+     */
+    public boolean isCacheable() {
+        return cacheable;
+    }
+
     /**
      * get entityType from QueryManager
      *
@@ -136,6 +158,16 @@ public class QueryManager<T> {
         return entityType;
     }
 
+    /**
+     * get query spaces from QueryManager: the table of the entity type and the tables joined to it
+     *
+     * @return
+     * @see ParameterNameResolver#resolveQuerySpaces(Class)
+     */
+    public Set<String> getQuerySpaces() {
+        return ParameterNameResolver.resolveQuerySpaces(entityType);
+    }
+
     /**
      * build native query from QueryManager
      *
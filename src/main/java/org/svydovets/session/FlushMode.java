@@ -0,0 +1,25 @@
+package org.svydovets.session;
+
+/**
+ * Defines when the changes queued in a {@link Session} are synchronized with the database.
+ *
+ * @see Session#setFlushMode(FlushMode)
+ */
+public enum FlushMode {
+    /**
+     * Changes are flushed on commit, on close and before a query that reads a table with pending changes.
+     * Before such a query, only the managed entities and queued actions of the tables the query reads
+     * (and of the tables they reference or are referenced by) are flushed, so queries never see stale data
+     * and unrelated changes stay queued. A native query without declared query spaces flushes everything.
+     */
+    AUTO,
+    /**
+     * Changes are flushed on commit and on close only. Queries may not see changes made in the session.
+     */
+    COMMIT,
+    /**
+     * Changes are flushed only when {@link Session#flush()} is called. Commit does not flush the queued
+     * actions, and changes that were not flushed explicitly are discarded when the session is closed.
+     */
+    MANUAL
+}
@@ -0,0 +1,51 @@
+package org.svydovets.session;
+
+/**
+ * Defines how many actions a {@link Session} may accumulate before they are flushed incrementally,
+ * counted in queued actions, in estimated bytes of the queued entities, or both. Once the threshold is
+ * exceeded, the queued actions are executed as JDBC batches inside the active transaction and released,
+ * so a long write session does not hold all its changes until the final flush.
+ *
+ * @param maxActions        the maximum number of queued actions, {@code 0} means no limit
+ * @param maxEstimatedBytes the maximum estimated size of the queued entities in bytes, {@code 0} means no limit
+ */
+public record FlushThreshold(int maxActions, long maxEstimatedBytes) {
+
+    public FlushThreshold {
+        if (maxActions < 0 || maxEstimatedBytes < 0) {
+            throw new IllegalArgumentException("Flush threshold cannot be negative");
+        }
+    }
+
+    /**
+     * Creates a threshold limited by the number of queued actions.
+     *
+     * @param maxActions the maximum number of queued actions
+     * @return a new {@code FlushThreshold}
+     */
+    public static FlushThreshold ofActions(int maxActions) {
+        return new FlushThreshold(maxActions, 0);
+    }
+
+    /**
+     * Creates a threshold limited by the estimated size of the queued entities.
+     *
+     * @param maxEstimatedBytes the maximum estimated size in bytes
+     * @return a new {@code FlushThreshold}
+     */
+    public static FlushThreshold ofBytes(long maxEstimatedBytes) {
+        return new FlushThreshold(0, maxEstimatedBytes);
+    }
+
+    /**
+     * Checks whether the given action queue size is over this threshold.
+     *
+     * @param actions        the current number of queued actions
+     * @param estimatedBytes the current estimated size of the queued entities in bytes
+     * @return {@code true} if any of the limits is exceeded, {@code false} otherwise
+     */
+    public boolean isExceeded(int actions, long estimatedBytes) {
+        return (maxActions > 0 && actions > maxActions)
+                || (maxEstimatedBytes > 0 && estimatedBytes > maxEstimatedBytes);
+    }
+}
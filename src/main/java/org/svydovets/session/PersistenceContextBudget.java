@@ -0,0 +1,50 @@
+package org.svydovets.session;
+
+/**
+ * Defines an upper bound for the persistence context of a {@link Session}, counted in managed entities,
+ * in estimated bytes, or both. Once the bound is exceeded, the session flushes pending changes and clears
+ * its persistence context, so chunked processing loops can run in constant memory.
+ *
+ * @param maxManagedEntities the maximum number of managed entities, {@code 0} means no limit
+ * @param maxEstimatedBytes  the maximum estimated size of the managed entities in bytes, {@code 0} means no limit
+ */
+public record PersistenceContextBudget(int maxManagedEntities, long maxEstimatedBytes) {
+
+    public PersistenceContextBudget {
+        if (maxManagedEntities < 0 || maxEstimatedBytes < 0) {
+            throw new IllegalArgumentException("Persistence context budget cannot be negative");
+        }
+    }
+
+    /**
+     * Creates a budget limited by the number of managed entities.
+     *
+     * @param maxManagedEntities the maximum number of managed entities
+     * @return a new {@code PersistenceContextBudget}
+     */
+    public static PersistenceContextBudget ofEntities(int maxManagedEntities) {
+        return new PersistenceContextBudget(maxManagedEntities, 0);
+    }
+
+    /**
+     * Creates a budget limited by the estimated size of the managed entities.
+     *
+     * @param maxEstimatedBytes the maximum estimated size in bytes
+     * @return a new {@code PersistenceContextBudget}
+     */
+    public static PersistenceContextBudget ofBytes(long maxEstimatedBytes) {
+        return new PersistenceContextBudget(0, maxEstimatedBytes);
+    }
+
+    /**
+     * Checks whether the given persistence context size is over this budget.
+     *
+     * @param managedEntities the current number of managed entities
+     * @param estimatedBytes  the current estimated size of the managed entities in bytes
+     * @return {@code true} if any of the limits is exceeded, {@code false} otherwise
+     */
+    public boolean isExceeded(int managedEntities, long estimatedBytes) {
+        return (maxManagedEntities > 0 && managedEntities > maxManagedEntities)
+                || (maxEstimatedBytes > 0 && estimatedBytes > maxEstimatedBytes);
+    }
+}
@@ -0,0 +1,18 @@
+package org.svydovets.session;
+
+/**
+ * Callback notified when a {@link Session} exceeds its {@link PersistenceContextBudget}
+ * and automatically flushes and clears its persistence context.
+ */
+@FunctionalInterface
+public interface PersistenceContextListener {
+
+    /**
+     * Invoked after the session was flushed and cleared because the budget was exceeded.
+     *
+     * @param budget          the budget that was exceeded
+     * @param managedEntities the number of managed entities right before the session was cleared
+     * @param estimatedBytes  the estimated size of the managed entities right before the session was cleared
+     */
+    void onBudgetExceeded(PersistenceContextBudget budget, int managedEntities, long estimatedBytes);
+}
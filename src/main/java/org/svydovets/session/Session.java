@@ -2,23 +2,34 @@ package org.svydovets.session;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.svydovets.cache.QueryCache;
 import org.svydovets.connectionPool.datasource.ConnectionHandler;
 import org.svydovets.dao.GenericJdbcDAO;
+import org.svydovets.dao.Properties;
+import org.svydovets.exception.DaoOperationException;
 import org.svydovets.exception.SessionOperationException;
+import org.svydovets.query.ParameterNameResolver;
 import org.svydovets.queryLanguage.QueryManager;
 import org.svydovets.session.actionQueue.action.MergeAction;
 import org.svydovets.session.actionQueue.action.PersistAction;
 import org.svydovets.session.actionQueue.action.RemoveAction;
+import org.svydovets.session.actionQueue.action.UpsertAction;
 import org.svydovets.session.actionQueue.executor.ActionQueue;
+import org.svydovets.session.actionQueue.plan.FlushPlan;
+import org.svydovets.session.actionQueue.plan.FlushPlanner;
+import org.svydovets.session.persistenceContext.PersistenceContext;
 import org.svydovets.transaction.TransactionManager;
 import org.svydovets.transaction.TransactionManagerImpl;
 import org.svydovets.util.EntityReflectionUtils;
+import org.svydovets.util.EntitySizeEstimator;
 
 import java.lang.reflect.Field;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
-import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 import static org.svydovets.util.EntityReflectionUtils.*;
@@ -34,10 +45,14 @@ public class Session {
     private static final Logger log = LoggerFactory.getLogger(Session.class);
     private final GenericJdbcDAO jdbcDAO;
     private final ActionQueue actionQueue;
-    private final Map<EntityKey<?>, Object> entitiesCache;
+    private final PersistenceContext persistenceContext;
+    private final TransactionManager transactionManager;
 
-    private final Map<EntityKey<?>, Object[]> entitiesSnapshots;
-    private final ConnectionHandler connectionHandler;
+    private FlushMode flushMode;
+    private PersistenceContextBudget persistenceContextBudget;
+    private PersistenceContextListener persistenceContextListener;
+    private long estimatedBytes;
+    private long autoClearCount;
 
     private boolean closed;
 
@@ -48,11 +63,26 @@ public class Session {
      * @param connectionHandler The handler for managing database connections.
      */
     public Session(GenericJdbcDAO jdbcDAO, ConnectionHandler connectionHandler) {
-        this.jdbcDAO = jdbcDAO;
-        this.connectionHandler = connectionHandler;
-        this.actionQueue = new ActionQueue(jdbcDAO);
-        this.entitiesCache = new HashMap<>();
-        this.entitiesSnapshots = new HashMap<>();
+        this(jdbcDAO, connectionHandler, Properties.DEFAULT_JDBC_BATCH_SIZE);
+    }
+
+    /**
+     * Constructs a new session with the specified JDBC DAO, connection handler and JDBC batch size. The session
+     * runs its transactions on a handler of its own, so it never joins the transaction of another session.
+     *
+     * @param jdbcDAO           The DAO for database operations.
+     * @param connectionHandler The handler for managing database connections.
+     * @param jdbcBatchSize     The maximum number of write statements sent to the database in one batch on flush,
+     *                          {@code 1} disables batching.
+     */
+    public Session(GenericJdbcDAO jdbcDAO, ConnectionHandler connectionHandler, int jdbcBatchSize) {
+        ConnectionHandler sessionConnectionHandler = connectionHandler.forSession();
+        this.jdbcDAO = jdbcDAO.withConnectionHandler(sessionConnectionHandler);
+        this.actionQueue = new ActionQueue(this.jdbcDAO, sessionConnectionHandler, jdbcBatchSize);
+        this.transactionManager = new TransactionManagerImpl(sessionConnectionHandler, actionQueue,
+                this::getFlushMode, this.jdbcDAO.getSecondLevelCache());
+        this.persistenceContext = new PersistenceContext();
+        this.flushMode = FlushMode.AUTO;
         this.closed = false;
 
         if (log.isInfoEnabled()) {
@@ -61,12 +91,32 @@ public class Session {
     }
 
     /**
-     * Returns a transaction manager for managing transactions within this session.
+     * Returns the transaction manager of this session. The transaction state belongs to the session: every call
+     * returns the same manager, and the connection of a transaction is bound to this session, not to a thread.
      *
      * @return A {@link TransactionManager} instance.
      */
     public TransactionManager transactionManager() {
-        return new TransactionManagerImpl(connectionHandler, actionQueue);
+        return transactionManager;
+    }
+
+    /**
+     * Returns the flush mode of this session.
+     *
+     * @return The current {@link FlushMode}, {@link FlushMode#AUTO} by default.
+     */
+    public FlushMode getFlushMode() {
+        return flushMode;
+    }
+
+    /**
+     * Sets when the changes made in this session are synchronized with the database.
+     *
+     * @param flushMode The flush mode to use.
+     * @see FlushMode
+     */
+    public void setFlushMode(FlushMode flushMode) {
+        this.flushMode = Objects.requireNonNull(flushMode, "Flush mode cannot be null");
     }
 
     /**
@@ -75,12 +125,14 @@ public class Session {
      * @param entity The entity to persist.
      */
     public void persist(Object entity) {
+        enforcePersistenceContextBudget();
+
         PersistAction persistAction = new PersistAction(entity, true);
         actionQueue.addPersistAction(persistAction);
 
         EntityKey<?> entityKey = persistAction.getEntityEntry().entityKey();
-        entitiesCache.put(entityKey, entity);
-        saveEntitySnapshots(entityKey, entity);
+        persistenceContext.putEntity(entityKey.entityType(), entityKey.id(), entity);
+        saveEntitySnapshots(entityKey.entityType(), entityKey.id(), entity);
     }
 
     /**
@@ -93,13 +145,74 @@ public class Session {
      */
     public <T> T findById(Class<T> entityType, Object id) {
         checkIfOpenSession();
+        enforcePersistenceContextBudget();
+
+        return getOrLoadEntity(entityType, id);
+    }
+
+    private <T> T getOrLoadEntity(Class<T> entityType, Object id) {
+        Object entity = persistenceContext.getEntity(entityType, id);
+        if (entity == null) {
+            entity = jdbcDAO.loadFromDB(new EntityKey<>(entityType, id));
+            if (entity != null) {
+                persistenceContext.putEntity(entityType, id, entity);
+                saveEntitySnapshots(entityType, id, entity);
+            }
+        }
 
-        EntityKey<T> entityKey = new EntityKey<>(entityType, id);
-        Object entity = entitiesCache.computeIfAbsent(entityKey, jdbcDAO::loadFromDB);
-        saveEntitySnapshots(entityKey, entity);
         return entityType.cast(entity);
     }
 
+    /**
+     * Retrieves the entities of a class type by their identifiers, in the order of the identifiers. Entities that
+     * do not exist are returned as {@code null}.
+     *
+     * @param entityType The class of the entities to retrieve.
+     * @param ids        The identifiers of the entities.
+     * @param <T>        The type of the entities.
+     * @return The found entities, one per identifier.
+     * @see #findAllById(Class, Collection, boolean)
+     */
+    public <T> List<T> findAllById(Class<T> entityType, Collection<?> ids) {
+        return findAllById(entityType, ids, false);
+    }
+
+    /**
+     * Retrieves the entities of a class type by their identifiers, in the order of the identifiers. Entities
+     * already in the session are taken from it, the others are loaded at once from the second-level cache and
+     * the database, see {@link GenericJdbcDAO#loadAllFromDB(Class, Collection)}.
+     *
+     * @param entityType  The class of the entities to retrieve.
+     * @param ids         The identifiers of the entities.
+     * @param omitMissing Whether entities that do not exist are left out instead of returned as {@code null}.
+     * @param <T>         The type of the entities.
+     * @return The found entities.
+     */
+    public <T> List<T> findAllById(Class<T> entityType, Collection<?> ids, boolean omitMissing) {
+        checkIfOpenSession();
+        enforcePersistenceContextBudget();
+
+        List<Object> unmanagedIds = ids.stream()
+                .filter(id -> id != null && !persistenceContext.containsKey(entityType, id))
+                .collect(Collectors.toList());
+        if (!unmanagedIds.isEmpty()) {
+            jdbcDAO.loadAllFromDB(entityType, unmanagedIds).forEach((id, entity) -> {
+                persistenceContext.putEntity(entityType, id, entity);
+                saveEntitySnapshots(entityType, id, entity);
+            });
+        }
+
+        List<T> entities = new ArrayList<>(ids.size());
+        for (Object id : ids) {
+            Object entity = id != null ? persistenceContext.getEntity(entityType, id) : null;
+            if (entity != null || !omitMissing) {
+                entities.add(entityType.cast(entity));
+            }
+        }
+
+        return entities;
+    }
+
     /**
      * Retrieves an entity by its class type and identifier from the cache or database.
      *
@@ -111,6 +224,8 @@ public class Session {
      */
     public <T> T findBy(final Class<T> entityType, final Field field, final Object columnValue) {
         checkIfOpenSession();
+        enforcePersistenceContextBudget();
+        autoFlush(ParameterNameResolver.resolveQuerySpaces(entityType));
 
         T entity = jdbcDAO.findBy(entityType, field, columnValue);
 
@@ -129,6 +244,8 @@ public class Session {
      */
     public <T> List<T> findAllBy(final Class<T> entityType, final Field field, final Object columnValue) {
         checkIfOpenSession();
+        enforcePersistenceContextBudget();
+        autoFlush(ParameterNameResolver.resolveQuerySpaces(entityType));
         List<T> entities = jdbcDAO.findAllBy(entityType, field, columnValue);
 
         return entities.stream().map(ent -> entityType.cast(computeIfAbsent(ent))).collect(Collectors.toList());
@@ -144,7 +261,25 @@ public class Session {
      * @return The found entity or null if not found.
      */
     public <T> T nativeQueryBy(final String query, final Class<T> entityType, final Object[] columnValues) {
+        return nativeQueryBy(query, entityType, columnValues, Set.of());
+    }
+
+    /**
+     * Retrieves an entity by native query that reads only the declared tables. In {@link FlushMode#AUTO}
+     * only the pending changes of these tables are flushed before the query.
+     *
+     * @param query        The native query.
+     * @param entityType   The class of the entity to retrieve.
+     * @param columnValues The array of entity field values.
+     * @param querySpaces  The names of the tables the query reads, an empty set means any table.
+     * @param <T>          The type of the entity.
+     * @return The found entity or null if not found.
+     */
+    public <T> T nativeQueryBy(final String query, final Class<T> entityType, final Object[] columnValues,
+                               final Set<String> querySpaces) {
         checkIfOpenSession();
+        enforcePersistenceContextBudget();
+        autoFlush(querySpaces);
         T entity = jdbcDAO.nativeQueryBy(query, entityType, columnValues);
 
         return entityType.cast(computeIfAbsent(entity));
@@ -160,7 +295,49 @@ public class Session {
      * @return The found list entities or null if not found.
      */
     public <T> List<T> nativeQueryAllBy(final String query, final Class<T> entityType, final Object[] columnValues) {
+        return nativeQueryAllBy(query, entityType, columnValues, Set.of());
+    }
+
+    /**
+     * Retrieves list entities by native query that reads only the declared tables. In {@link FlushMode#AUTO}
+     * only the pending changes of these tables are flushed before the query.
+     *
+     * @param query        The native query.
+     * @param entityType   The class of the entity to retrieve.
+     * @param columnValues The array of entity field values.
+     * @param querySpaces  The names of the tables the query reads, an empty set means any table.
+     * @param <T>          The type of the entity.
+     * @return The found list entities or null if not found.
+     */
+    public <T> List<T> nativeQueryAllBy(final String query, final Class<T> entityType, final Object[] columnValues,
+                                        final Set<String> querySpaces) {
+        return nativeQueryAllBy(query, entityType, columnValues, querySpaces, false);
+    }
+
+    /**
+     * Retrieves list entities by native query that reads only the declared tables, optionally through the
+     * query cache. A cached result holds the ids of the entities, which are then resolved like
+     * {@link #findById(Class, Object)}; it stays valid until one of the declared tables is written, or any
+     * table if none is declared.
+     *
+     * @param query        The native query.
+     * @param entityType   The class of the entity to retrieve.
+     * @param columnValues The array of entity field values.
+     * @param querySpaces  The names of the tables the query reads, an empty set means any table.
+     * @param cacheable    Whether the result is read from and put into the query cache.
+     * @param <T>          The type of the entity.
+     * @return The found list entities.
+     * @see org.svydovets.cache.QueryCache
+     */
+    public <T> List<T> nativeQueryAllBy(final String query, final Class<T> entityType, final Object[] columnValues,
+                                        final Set<String> querySpaces, final boolean cacheable) {
         checkIfOpenSession();
+        enforcePersistenceContextBudget();
+        autoFlush(querySpaces);
+        if (cacheable) {
+            return cachedQueryAllBy(query, entityType, columnValues, querySpaces);
+        }
+
         List<T> entities = jdbcDAO.nativeQueryAllBy(query, entityType, columnValues);
 
         return entities.stream().map(ent -> entityType.cast(computeIfAbsent(ent))).collect(Collectors.toList());
@@ -176,8 +353,21 @@ public class Session {
      */
     public <T> T jqlQueryBy(QueryManager<T> queryManager) {
         checkIfOpenSession();
+        enforcePersistenceContextBudget();
+        autoFlush(queryManager.getQuerySpaces());
 
         Class<T> entityType = queryManager.getEntityType();
+        if (queryManager.isCacheable()) {
+            List<T> entities = cachedQueryAllBy(queryManager.toSqlString(), entityType,
+                    queryManager.getParameters(), queryManager.getQuerySpaces());
+            if (entities.size() > 1) {
+                throw new DaoOperationException(String
+                        .format(GenericJdbcDAO.THE_RESULT_FOR_ENTITY_CONTAINS_MORE_THAN_ONE_LINE, entityType.getName()));
+            }
+
+            return entities.isEmpty() ? null : entities.get(0);
+        }
+
         T entity = jdbcDAO.nativeQueryBy(queryManager.toSqlString(), entityType, queryManager.getParameters());
 
         return entityType.cast(computeIfAbsent(entity));
@@ -193,14 +383,60 @@ public class Session {
      */
     public <T> List<T> jqlQueryAllBy(QueryManager<T> queryManager) {
         checkIfOpenSession();
+        enforcePersistenceContextBudget();
+        autoFlush(queryManager.getQuerySpaces());
 
         Class<T> entityType = queryManager.getEntityType();
+        if (queryManager.isCacheable()) {
+            return cachedQueryAllBy(queryManager.toSqlString(), entityType,
+                    queryManager.getParameters(), queryManager.getQuerySpaces());
+        }
+
         List<T> entities = jdbcDAO
                 .nativeQueryAllBy(queryManager.toSqlString(), entityType, queryManager.getParameters());
 
         return entities.stream().map(ent -> entityType.cast(computeIfAbsent(ent))).collect(Collectors.toList());
     }
 
+    /**
+     * Executes the query through the query cache. On a hit, the cached ids are resolved through the persistence
+     * context, the second-level cache and the database; if any of the entities is gone, the query is executed
+     * again. Results read inside a transaction are not cached, as they may contain uncommitted changes.
+     * The persistence context budget is checked by the callers, once before the ids are resolved, so no
+     * entity of the result is detached while the others are loaded.
+     */
+    private <T> List<T> cachedQueryAllBy(String query, Class<T> entityType, Object[] columnValues, Set<String> querySpaces) {
+        QueryCache queryCache = jdbcDAO.getSecondLevelCache().getQueryCache();
+        QueryCache.QueryKey queryKey = QueryCache.QueryKey.of(query, columnValues);
+
+        List<Object> cachedIds = queryCache.get(queryKey);
+        if (cachedIds != null) {
+            List<T> entities = new ArrayList<>(cachedIds.size());
+            for (Object id : cachedIds) {
+                T entity = getOrLoadEntity(entityType, id);
+                if (entity == null) {
+                    queryCache.evict(queryKey);
+                    break;
+                }
+                entities.add(entity);
+            }
+            if (entities.size() == cachedIds.size()) {
+                return entities;
+            }
+        }
+
+        long timestamp = queryCache.currentTimestamp();
+        List<T> entities = jdbcDAO.nativeQueryAllBy(query, entityType, columnValues).stream()
+                .map(ent -> entityType.cast(computeIfAbsent(ent)))
+                .collect(Collectors.toList());
+        if (!transactionManager.isActive()) {
+            List<Object> ids = entities.stream().map(EntityReflectionUtils::getEntityIdValue).toList();
+            queryCache.put(queryKey, querySpaces, timestamp, ids);
+        }
+
+        return entities;
+    }
+
     /**
      * Merges the state of the given entity with the one in the database.
      *
@@ -209,17 +445,19 @@ public class Session {
      * @return The merged entity.
      */
     public <T> T merge(T entity) {
+        enforcePersistenceContextBudget();
+
         EntityKey<T> entityKey = EntityKey.of(entity);
-        if (entitiesCache.containsKey(entityKey)) {
-            return entityKey.entityType().cast(entitiesCache.get(entityKey));
+        Object managedEntity = persistenceContext.getEntity(entityKey);
+        if (managedEntity != null) {
+            return entityKey.entityType().cast(managedEntity);
         }
 
         Object loadedEntity = jdbcDAO.loadFromDB(entityKey);
         if (loadedEntity != null) {
-            saveEntitySnapshots(entityKey, loadedEntity);
-
             Object mergedEntity = mergeEntity(entity);
-            entitiesCache.put(entityKey, mergedEntity);
+            persistenceContext.putEntity(entityKey.entityType(), entityKey.id(), mergedEntity);
+            saveEntitySnapshots(entityKey.entityType(), entityKey.id(), loadedEntity);
 
             return entityKey.entityType().cast(mergedEntity);
         }
@@ -227,6 +465,38 @@ public class Session {
         return null;
     }
 
+    /**
+     * Writes the state of the given detached entity to the database without loading it first, e.g. for
+     * entities built out of data received from elsewhere. On flush, the entity is inserted with its identifier,
+     * or the existing row is updated, with one statement batched with the other inserts; the update of a
+     * versioned entity only happens when the row holds the version of the entity. The entity does not become
+     * managed. If an entity with the same identifier is managed by the session, its state is overwritten
+     * with the state of the given entity instead.
+     *
+     * @param entity The entity to write.
+     * @throws IllegalArgumentException if the entity has no identifier.
+     */
+    public void mergeBlind(Object entity) {
+        checkIfOpenSession();
+        enforcePersistenceContextBudget();
+
+        EntityKey<?> entityKey = EntityKey.of(entity);
+        if (entityKey.id() == null) {
+            throw new IllegalArgumentException(String.format("Merging an entity without id %s", entityKey.entityType().getName()));
+        }
+
+        Object managedEntity = persistenceContext.getEntity(entityKey);
+        if (managedEntity != null) {
+            for (Field entityField : EntityReflectionUtils.getUpdatableFields(entityKey.entityType())) {
+                Object fieldValue = getFieldValue(entity, entityField);
+                EntityReflectionUtils.setFieldValue(managedEntity, entityField, fieldValue);
+            }
+            return;
+        }
+
+        actionQueue.addUpsertAction(new UpsertAction(EntityEntry.valueOf(entityKey, entity)));
+    }
+
     /**
      * Removes the specified entity from the database.
      *
@@ -234,7 +504,7 @@ public class Session {
      */
     public void remove(Object entity) {
         EntityKey<?> entityKey = EntityKey.of(entity);
-        if (!entitiesCache.containsKey(entityKey)) {
+        if (!persistenceContext.containsKey(entityKey)) {
             throw new IllegalArgumentException(String.format("Removing a detached entity %s", entityKey.entityType().getName()));
         }
 
@@ -243,20 +513,146 @@ public class Session {
     }
 
     /**
-     * This method close current session. Before closing the session, the following is performed:
-     * - “dirty check”,
-     * - clearing the first level cache
-     * - clearing all snapshots.
+     * Detaches the given entity from the persistence context. Changes made to the entity afterwards
+     * are not tracked and are not synchronized with the database. Actions already queued for the
+     * entity are kept. Does nothing if the entity is not managed by this session.
+     *
+     * @param entity The entity to detach.
      */
-    public void close() {
-        performDirtyCheck();
+    public void evict(Object entity) {
+        checkIfOpenSession();
 
-        flush();
+        EntityKey<?> entityKey = EntityKey.of(entity);
+        if (persistenceContext.getEntity(entityKey) != entity) {
+            return;
+        }
+
+        Object[] snapshots = persistenceContext.remove(entityKey.entityType(), entityKey.id());
+        estimatedBytes -= EntitySizeEstimator.estimateBytes(snapshots);
+    }
+
+    /**
+     * Completely clears the session: detaches all managed entities and discards all queued actions
+     * that were not flushed yet.
+     */
+    public void clear() {
+        checkIfOpenSession();
+
+        persistenceContext.clear();
+        actionQueue.clear();
+        estimatedBytes = 0;
+    }
+
+    /**
+     * Checks whether the given entity instance is managed by this session.
+     *
+     * @param entity The entity to check.
+     * @return {@code true} if the instance is in the persistence context, {@code false} otherwise.
+     */
+    public boolean contains(Object entity) {
+        checkIfOpenSession();
+
+        EntityKey<?> entityKey = EntityKey.of(entity);
+        return entityKey.id() != null && persistenceContext.getEntity(entityKey) == entity;
+    }
+
+    /**
+     * Limits the size of the persistence context. When a read or write operation finds the persistence
+     * context over the budget, the session first performs a dirty check, flushes all pending changes and
+     * clears itself, then notifies the listener and carries on with the operation. Entities returned
+     * before that point become detached. In {@link FlushMode#MANUAL}, where nothing is written before an
+     * explicit flush, the session only detaches the entities that are not changed and have no queued action,
+     * so the persistence context may stay over the budget until the next flush.
+     *
+     * @param budget   The budget to enforce, or {@code null} to remove the limit.
+     * @param listener The callback notified after each automatic clear, may be {@code null}.
+     */
+    public void setPersistenceContextBudget(PersistenceContextBudget budget, PersistenceContextListener listener) {
+        this.persistenceContextBudget = budget;
+        this.persistenceContextListener = listener;
+    }
+
+    /**
+     * Makes the session flush its queued actions incrementally: once the number of queued actions or
+     * their estimated size exceeds the threshold, they are executed as JDBC batches inside the active
+     * transaction and released. Applies in every {@link FlushMode}.
+     *
+     * @param flushThreshold The threshold to enforce, or {@code null} to queue actions until the next flush.
+     */
+    public void setFlushThreshold(FlushThreshold flushThreshold) {
+        actionQueue.setFlushThreshold(flushThreshold);
+    }
+
+    /**
+     * Returns how many times queued actions were flushed because the flush threshold was exceeded.
+     *
+     * @return the number of incremental flushes.
+     */
+    public long getIncrementalFlushCount() {
+        return actionQueue.getIncrementalFlushCount();
+    }
+
+    /**
+     * Returns the number of entities currently managed by this session.
+     *
+     * @return the number of managed entities.
+     */
+    public int getManagedEntitiesCount() {
+        return persistenceContext.size();
+    }
+
+    /**
+     * Returns the estimated size of the entities currently managed by this session.
+     *
+     * @return the estimated number of bytes.
+     * @see EntitySizeEstimator
+     */
+    public long getEstimatedPersistenceContextBytes() {
+        return estimatedBytes;
+    }
 
-        entitiesCache.clear();
-        entitiesSnapshots.clear();
+    /**
+     * Returns how many times the session was flushed and cleared, or had its unchanged entities detached in
+     * {@link FlushMode#MANUAL}, because the persistence context budget was exceeded.
+     *
+     * @return the number of automatic clears.
+     */
+    public long getAutoClearCount() {
+        return autoClearCount;
+    }
 
-        closed = true;
+    /**
+     * This method close current session. Before closing the session, the following is performed:
+     * - “dirty check” and flush, unless the flush mode is {@link FlushMode#MANUAL} or a transaction is left active,
+     * - rolling back the transaction left active, which returns its connection to the pool, discarding the changes
+     *   not flushed yet,
+     * - clearing the first level cache
+     * - clearing all snapshots
+     * The transaction is rolled back and the session is closed even if the flush fails.
+     */
+    public void close() {
+        boolean rollback = transactionManager.isActive();
+        try {
+            if (!rollback && flushMode != FlushMode.MANUAL) {
+                performDirtyCheck();
+                flush();
+            }
+        } finally {
+            try {
+                if (rollback) {
+                    if (log.isWarnEnabled()) {
+                        log.warn("Session was closed with an active transaction, rolling it back");
+                    }
+                    transactionManager.callback();
+                }
+            } finally {
+                persistenceContext.clear();
+                actionQueue.clear();
+                estimatedBytes = 0;
+
+                closed = true;
+            }
+        }
 
         if (log.isInfoEnabled()) {
             log.info("Session was closed");
@@ -270,8 +666,18 @@ public class Session {
         actionQueue.performAccumulatedActions();
     }
 
-    private void saveEntitySnapshots(EntityKey<?> entityKey, Object entity) {
-        Field[] fields = EntityReflectionUtils.getEntityFieldsSortedByName(entityKey.entityType());
+    /**
+     * Returns the plan the last flush of this session was executed with: the order of the executed
+     * steps and the entity type dependencies it was computed from.
+     *
+     * @return The last executed flush plan, empty if nothing has been flushed yet.
+     */
+    public FlushPlan getLastFlushPlan() {
+        return actionQueue.getLastFlushPlan();
+    }
+
+    private void saveEntitySnapshots(Class<?> entityType, Object id, Object entity) {
+        Field[] fields = EntityReflectionUtils.getEntityFieldsSortedByName(entityType);
         Object[] snapshots = new Object[fields.length];
         for (int i = 0; i < fields.length; i++) {
             snapshots[i] = getFieldValue(entity, fields[i]);
@@ -281,23 +687,103 @@ public class Session {
             }
         }
 
-        entitiesSnapshots.put(entityKey, snapshots);
+        Object[] previousSnapshots = persistenceContext.putSnapshot(entityType, id, snapshots);
+        if (previousSnapshots != null) {
+            estimatedBytes -= EntitySizeEstimator.estimateBytes(previousSnapshots);
+        }
+        estimatedBytes += EntitySizeEstimator.estimateBytes(snapshots);
+    }
+
+    private void enforcePersistenceContextBudget() {
+        if (persistenceContextBudget == null
+                || !persistenceContextBudget.isExceeded(persistenceContext.size(), estimatedBytes)) {
+            return;
+        }
+
+        int managedEntities = persistenceContext.size();
+        long managedBytes = estimatedBytes;
+
+        if (flushMode == FlushMode.MANUAL) {
+            evictUnchangedEntities();
+        } else {
+            performDirtyCheck();
+            flush();
+            clear();
+        }
+        autoClearCount++;
+
+        if (log.isDebugEnabled()) {
+            log.debug("Persistence context budget {} was exceeded by {} entities (~{} bytes), {} entities are left",
+                    persistenceContextBudget, managedEntities, managedBytes, persistenceContext.size());
+        }
+        if (persistenceContextListener != null) {
+            persistenceContextListener.onBudgetExceeded(persistenceContextBudget, managedEntities, managedBytes);
+        }
+    }
+
+    private void evictUnchangedEntities() {
+        List<EntityKey<?>> unchangedEntityKeys = new ArrayList<>();
+        persistenceContext.forEach((entityType, id, entity, snapshots) -> {
+            EntityKey<?> entityKey = new EntityKey<>(entityType, id);
+            if (!hasChanged(entityType, entity, snapshots)
+                    && !actionQueue.hasQueuedAction(EntityEntry.valueOf(entityKey, entity))) {
+                unchangedEntityKeys.add(entityKey);
+            }
+        });
+
+        for (EntityKey<?> entityKey : unchangedEntityKeys) {
+            Object[] snapshots = persistenceContext.remove(entityKey.entityType(), entityKey.id());
+            estimatedBytes -= EntitySizeEstimator.estimateBytes(snapshots);
+        }
     }
 
     private void performDirtyCheck() {
-        entitiesCache.entrySet()
-                .stream()
-                .filter(this::hasChanged)
-                .map(entry -> EntityEntry.valueOf(entry.getKey(), entry.getValue()))
-                .forEach(entityEntry -> actionQueue.addMergeAction(new MergeAction(entityEntry)));
+        performDirtyCheck(entityType -> true);
+    }
+
+    private List<EntityEntry> performDirtyCheck(Predicate<Class<?>> entityTypeFilter) {
+        List<EntityEntry> dirtyEntries = new ArrayList<>();
+        persistenceContext.forEach((entityType, id, entity, snapshots) -> {
+            if (entityTypeFilter.test(entityType) && hasChanged(entityType, entity, snapshots)) {
+                EntityEntry entityEntry = EntityEntry.valueOf(new EntityKey<>(entityType, id), entity);
+                actionQueue.addMergeAction(new MergeAction(entityEntry));
+                dirtyEntries.add(entityEntry);
+            }
+        });
+
+        return dirtyEntries;
     }
 
-    private boolean hasChanged(Map.Entry<EntityKey<?>, Object> entry) {
-        EntityKey<?> entityKey = entry.getKey();
-        Object entity = entry.getValue();
+    /**
+     * In {@link FlushMode#AUTO}, flushes the changes a query over the given tables could observe: the managed
+     * entities of these tables are dirty checked, then the queued actions for these tables and the tables
+     * related to them are executed. Snapshots of the flushed entities are refreshed, so the same change is
+     * not written again by a later flush.
+     *
+     * @param querySpaces The names of the tables the query reads, an empty set means any table.
+     */
+    private void autoFlush(Set<String> querySpaces) {
+        if (flushMode != FlushMode.AUTO) {
+            return;
+        }
+
+        List<EntityEntry> dirtyEntries = performDirtyCheck(entityType ->
+                querySpaces.isEmpty() || FlushPlanner.isInQuerySpaces(entityType, querySpaces));
+        if (actionQueue.size() == 0) {
+            return;
+        }
 
-        Field[] fields = EntityReflectionUtils.getEntityFieldsSortedByName(entityKey.entityType());
-        Object[] snapshots = entitiesSnapshots.get(entityKey);
+        actionQueue.performAccumulatedActions(querySpaces);
+        for (EntityEntry dirtyEntry : dirtyEntries) {
+            EntityKey<?> entityKey = dirtyEntry.entityKey();
+            if (persistenceContext.getEntity(entityKey) == dirtyEntry.entity()) {
+                saveEntitySnapshots(entityKey.entityType(), entityKey.id(), dirtyEntry.entity());
+            }
+        }
+    }
+
+    private boolean hasChanged(Class<?> entityType, Object entity, Object[] snapshots) {
+        Field[] fields = EntityReflectionUtils.getEntityFieldsSortedByName(entityType);
         for (int i = 0; i < snapshots.length; i++) {
             if (!Objects.equals(snapshots[i], getFieldValue(entity, fields[i]))) {
                 return true;
@@ -326,13 +812,15 @@ public class Session {
     }
 
     private Object computeIfAbsent(final Object entity) {
-        EntityKey<?> entityKey = EntityKey.of(entity);
-        if (entitiesCache.containsKey(entityKey)) {
-            return entitiesCache.get(entityKey);
+        Class<?> entityType = entity.getClass();
+        Object id = EntityReflectionUtils.getEntityIdValue(entity);
+        Object managedEntity = persistenceContext.getEntity(entityType, id);
+        if (managedEntity != null) {
+            return managedEntity;
         }
 
-        entitiesCache.put(entityKey, entity);
-        saveEntitySnapshots(entityKey, entity);
+        persistenceContext.putEntity(entityType, id, entity);
+        saveEntitySnapshots(entityType, id, entity);
 
         return entity;
     }
@@ -1,15 +1,25 @@
 package org.svydovets.session;
 
+import org.svydovets.cache.CacheInvalidationTransport;
+import org.svydovets.cache.PostgresCacheInvalidationTransport;
+import org.svydovets.cache.SecondLevelCache;
+import org.svydovets.cache.TableChangeCounter;
 import org.svydovets.connectionPool.config.DataSourceConfig;
+import org.svydovets.connectionPool.config.InitializationMode;
+import org.svydovets.connectionPool.config.PoolConfig;
+import org.svydovets.connectionPool.config.ThreadingMode;
 import org.svydovets.connectionPool.datasource.ConnectionHandler;
+import org.svydovets.connectionPool.datasource.DriverDataSource;
 import org.svydovets.connectionPool.datasource.PooledDataSource;
 import org.svydovets.dao.GenericJdbcDAO;
+import org.svydovets.dao.PostgresTableChangeCounter;
 import org.svydovets.dao.Properties;
 import org.svydovets.exception.InvalidParameterPropertiesException;
 
-import javax.sql.DataSource;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.Optional;
 
 import static java.util.Objects.requireNonNull;
@@ -18,12 +28,19 @@ import static java.util.Objects.requireNonNull;
  * Factory class for creating sessions for database operations.
  * This class handles the initialization of the necessary components for database connectivity,
  * including loading database properties and setting up a data source.
+ *
+ * <p>The factory should be {@link #close() closed} when the application stops, so the second-level cache
+ * regions kept in memory-mapped files are persisted for the next start.</p>
  */
-public class SessionFactory {
+public class SessionFactory implements AutoCloseable {
 
     private static final String DB_CONFIG = "src/main/resources/application.properties";
+    private final PooledDataSource dataSource;
     private final ConnectionHandler connectionHandler;
     private final GenericJdbcDAO jdbcDAO;
+    private final SecondLevelCache secondLevelCache;
+    private final CacheInvalidationTransport ownedInvalidationTransport;
+    private final int jdbcBatchSize;
 
     /**
      * Constructs a {@code SessionFactory} with the default database properties.
@@ -38,9 +55,35 @@ public class SessionFactory {
      * @param properties The {@code Properties} object containing the database connection details.
      */
     public SessionFactory(Properties properties) {
-        DataSource dataSource = createPooledDataSource(properties);
+        this(properties, properties.cacheInvalidationChannel() != null
+                ? new PostgresCacheInvalidationTransport(createDataSourceConfig(properties), properties.cacheInvalidationChannel())
+                : null, true);
+    }
+
+    /**
+     * Constructs a {@code SessionFactory} whose second-level cache exchanges invalidations with the caches of
+     * other nodes through the given transport. The transport is not closed with the factory.
+     *
+     * @param properties            The {@code Properties} object containing the database connection details.
+     * @param invalidationTransport The transport of second-level cache invalidations.
+     */
+    public SessionFactory(Properties properties, CacheInvalidationTransport invalidationTransport) {
+        this(properties, invalidationTransport, false);
+    }
+
+    private SessionFactory(Properties properties, CacheInvalidationTransport invalidationTransport,
+                           boolean ownsInvalidationTransport) {
+        this.dataSource = createPooledDataSource(properties);
         this.connectionHandler = new ConnectionHandler(dataSource);
-        this.jdbcDAO = new GenericJdbcDAO(connectionHandler, properties.isShownSql());
+        this.secondLevelCache = new SecondLevelCache(
+                properties.cacheDirectory() != null ? Path.of(properties.cacheDirectory()) : null,
+                properties.cacheDirectory() != null
+                        ? new PostgresTableChangeCounter(new DriverDataSource(createDataSourceConfig(properties)))
+                        : TableChangeCounter.NONE,
+                invalidationTransport);
+        this.ownedInvalidationTransport = ownsInvalidationTransport ? invalidationTransport : null;
+        this.jdbcDAO = new GenericJdbcDAO(connectionHandler, properties.isShownSql(), secondLevelCache);
+        this.jdbcBatchSize = properties.jdbcBatchSize();
     }
 
     /**
@@ -49,7 +92,62 @@ public class SessionFactory {
      * @return A new {@code Session} instance for interacting with the database.
      */
     public Session createSession() {
-        return new Session(jdbcDAO, connectionHandler);
+        return new Session(jdbcDAO, connectionHandler, jdbcBatchSize);
+    }
+
+    /**
+     * Creates a new stateless session for high-volume batch processing with the configured JDBC batch size.
+     *
+     * @return A new {@code StatelessSession} instance.
+     * @see StatelessSession
+     */
+    public StatelessSession createStatelessSession() {
+        return new StatelessSession(jdbcDAO, connectionHandler, jdbcBatchSize);
+    }
+
+    /**
+     * Creates a new stateless session for high-volume batch processing.
+     *
+     * @param jdbcBatchSize The maximum number of write statements sent to the database in one batch.
+     * @return A new {@code StatelessSession} instance.
+     * @see StatelessSession
+     */
+    public StatelessSession createStatelessSession(int jdbcBatchSize) {
+        return new StatelessSession(jdbcDAO, connectionHandler, jdbcBatchSize);
+    }
+
+    /**
+     * Returns the second-level cache shared by all sessions created by this factory, e.g. to inspect the
+     * statistics of its regions or to evict entities changed outside of Bibernate.
+     *
+     * @return the second-level cache
+     * @see org.svydovets.annotation.Cacheable
+     */
+    public SecondLevelCache getSecondLevelCache() {
+        return secondLevelCache;
+    }
+
+    /**
+     * Returns the pooled data source the sessions created by this factory borrow their connections from, e.g.
+     * to inspect its size and wait times.
+     *
+     * @return the pooled data source
+     */
+    public PooledDataSource getDataSource() {
+        return dataSource;
+    }
+
+    /**
+     * Closes the second-level cache, persisting the regions kept in memory-mapped files, the cache
+     * invalidation transport created for the factory and the connection pool.
+     */
+    @Override
+    public void close() {
+        secondLevelCache.close();
+        if (ownedInvalidationTransport != null) {
+            ownedInvalidationTransport.close();
+        }
+        dataSource.close();
     }
 
     /**
@@ -57,8 +155,14 @@ public class SessionFactory {
      *
      * <p>This method loads the database connection details from a file specified by
      * the {@code DB_CONFIG} constant. It expects the file to contain properties
-     * named 'db.url', 'db.user', and 'db.password'. These properties are then used
-     * to create and return a new {@code Properties} object.</p>
+     * named 'db.url', 'db.user', and 'db.password', and optionally 'db.sql-show',
+     * 'db.jdbc-batch-size', 'db.cache-directory', 'db.cache-invalidation-channel' and the connection pool
+     * settings 'db.pool.max-size', 'db.pool.min-idle', 'db.pool.connection-timeout', 'db.pool.idle-timeout' and
+     * 'db.pool.max-lifetime', 'db.pool.validation-timeout', 'db.pool.validation-skip-window', 'db.pool.keepalive-time',
+     * 'db.pool.leak-detection-threshold' (durations in milliseconds), 'db.pool.initialization-mode' ('blocking'
+     * or 'fail-fast'), 'db.pool.statement-cache-size', 'db.pool.max-open-statements' and 'db.pool.threading-mode'
+     * ('platform' or 'virtual'). These properties are then used to create and return a new
+     * {@code Properties} object.</p>
      *
      * @return A {@code Properties} object containing the database URL, username, and password.
      * @throws InvalidParameterPropertiesException if the configuration file cannot be read
@@ -76,12 +180,65 @@ public class SessionFactory {
             boolean isShownSql = Optional.ofNullable(properties.getProperty("db.sql-show")).isPresent() &&
                     Boolean.parseBoolean(properties.getProperty("db.sql-show"));
 
-            return new Properties(url, user, password, isShownSql);
-        } catch (IOException e) {
+            int jdbcBatchSize = Optional.ofNullable(properties.getProperty("db.jdbc-batch-size"))
+                    .map(String::trim)
+                    .map(Integer::parseInt)
+                    .orElse(Properties.DEFAULT_JDBC_BATCH_SIZE);
+
+            String cacheDirectory = Optional.ofNullable(properties.getProperty("db.cache-directory"))
+                    .map(String::trim)
+                    .orElse(null);
+
+            String cacheInvalidationChannel = Optional.ofNullable(properties.getProperty("db.cache-invalidation-channel"))
+                    .map(String::trim)
+                    .orElse(null);
+
+            PoolConfig defaults = PoolConfig.defaults();
+            PoolConfig poolConfig = defaults
+                    .withMaxPoolSize(getIntProperty(properties, "db.pool.max-size", defaults.maxPoolSize()))
+                    .withMinIdle(getIntProperty(properties, "db.pool.min-idle", defaults.minIdle()))
+                    .withConnectionTimeout(getMillisProperty(properties, "db.pool.connection-timeout", defaults.connectionTimeout()))
+                    .withIdleTimeout(getMillisProperty(properties, "db.pool.idle-timeout", defaults.idleTimeout()))
+                    .withMaxLifetime(getMillisProperty(properties, "db.pool.max-lifetime", defaults.maxLifetime()))
+                    .withValidationTimeout(getMillisProperty(properties, "db.pool.validation-timeout", defaults.validationTimeout()))
+                    .withValidationSkipWindow(getMillisProperty(properties, "db.pool.validation-skip-window",
+                            defaults.validationSkipWindow()))
+                    .withKeepaliveTime(getMillisProperty(properties, "db.pool.keepalive-time", defaults.keepaliveTime()))
+                    .withLeakDetectionThreshold(getMillisProperty(properties, "db.pool.leak-detection-threshold",
+                            defaults.leakDetectionThreshold()))
+                    .withInitializationMode(Optional.ofNullable(properties.getProperty("db.pool.initialization-mode"))
+                            .map(mode -> InitializationMode.valueOf(mode.trim().toUpperCase().replace('-', '_')))
+                            .orElse(defaults.initializationMode()))
+                    .withStatementCacheSize(getIntProperty(properties, "db.pool.statement-cache-size",
+                            defaults.statementCacheSize()))
+                    .withMaxOpenStatements(getIntProperty(properties, "db.pool.max-open-statements",
+                            defaults.maxOpenStatements()))
+                    .withThreadingMode(Optional.ofNullable(properties.getProperty("db.pool.threading-mode"))
+                            .map(mode -> ThreadingMode.valueOf(mode.trim().toUpperCase()))
+                            .orElse(defaults.threadingMode()));
+
+            return new Properties(url, user, password, isShownSql, jdbcBatchSize, cacheDirectory,
+                    cacheInvalidationChannel, poolConfig);
+        } catch (IOException | IllegalArgumentException e) {
             throw new InvalidParameterPropertiesException(e.getMessage(), e);
         }
     }
 
+    private static int getIntProperty(java.util.Properties properties, String name, int defaultValue) {
+        return Optional.ofNullable(properties.getProperty(name))
+                .map(String::trim)
+                .map(Integer::parseInt)
+                .orElse(defaultValue);
+    }
+
+    private static Duration getMillisProperty(java.util.Properties properties, String name, Duration defaultValue) {
+        return Optional.ofNullable(properties.getProperty(name))
+                .map(String::trim)
+                .map(Long::parseLong)
+                .map(Duration::ofMillis)
+                .orElse(defaultValue);
+    }
+
     /**
      * Creates a pooled data source using the provided database properties.
      *
@@ -94,7 +251,11 @@ public class SessionFactory {
      * @return An instance of {@code PooledDataSource} configured with the provided database properties.
      */
     private PooledDataSource createPooledDataSource(Properties properties) {
-        DataSourceConfig dataSourceConfig = new DataSourceConfig(properties.url(), properties.user(), properties.password());
-        return new PooledDataSource(dataSourceConfig);
+        DataSourceConfig dataSourceConfig = createDataSourceConfig(properties);
+        return new PooledDataSource(dataSourceConfig, properties.poolConfig());
+    }
+
+    private static DataSourceConfig createDataSourceConfig(Properties properties) {
+        return new DataSourceConfig(properties.url(), properties.user(), properties.password());
     }
 }
@@ -0,0 +1,318 @@
+package org.svydovets.session;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.svydovets.connectionPool.datasource.ConnectionHandler;
+import org.svydovets.dao.GenericJdbcDAO;
+import org.svydovets.dao.JdbcBatch;
+import org.svydovets.dao.Properties;
+import org.svydovets.exception.SessionOperationException;
+import org.svydovets.transaction.TransactionException;
+import org.svydovets.transaction.TransactionManager;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.stream.Stream;
+
+/**
+ * A session without a persistence context, intended for high-volume batch processing such as ETL.
+ *
+ * <p>Unlike {@link Session}, a stateless session keeps no first-level cache, no snapshots and no
+ * action queue: {@code insert}, {@code update}, {@code delete} and {@code get} go straight to the
+ * database and the returned entities are never tracked, so memory usage does not grow with the
+ * number of processed rows. Write operations are grouped into JDBC batches of the configured size,
+ * and all statements are executed on a single connection that is held for the whole lifetime of
+ * the session and released on {@link #close()}.</p>
+ *
+ * <pre>{@code
+ * try (StatelessSession session = sessionFactory.createStatelessSession()) {
+ *     TransactionManager transactionManager = session.transactionManager();
+ *     transactionManager.begin();
+ *     try (Stream<Person> persons = session.stream("select * from persons", Person.class, new Object[]{})) {
+ *         persons.map(this::toNote).forEach(session::insert);
+ *     }
+ *     transactionManager.commit();
+ * }
+ * }</pre>
+ */
+public class StatelessSession implements AutoCloseable {
+
+    public static final int DEFAULT_JDBC_BATCH_SIZE = Properties.DEFAULT_JDBC_BATCH_SIZE;
+    public static final int DEFAULT_FETCH_SIZE = 500;
+
+    private static final Logger log = LoggerFactory.getLogger(StatelessSession.class);
+    private final GenericJdbcDAO jdbcDAO;
+    private final ConnectionHandler connectionHandler;
+    private final int jdbcBatchSize;
+    private final StatelessTransactionManager transactionManager;
+
+    private Connection connection;
+    private JdbcBatch jdbcBatch;
+    private int fetchSize;
+    private boolean closed;
+
+    /**
+     * Constructs a new stateless session with the default JDBC batch size.
+     *
+     * @param jdbcDAO           The DAO for database operations.
+     * @param connectionHandler The handler the session borrows its connection from.
+     */
+    public StatelessSession(GenericJdbcDAO jdbcDAO, ConnectionHandler connectionHandler) {
+        this(jdbcDAO, connectionHandler, DEFAULT_JDBC_BATCH_SIZE);
+    }
+
+    /**
+     * Constructs a new stateless session.
+     *
+     * @param jdbcDAO           The DAO for database operations.
+     * @param connectionHandler The handler the session borrows its connection from.
+     * @param jdbcBatchSize     The maximum number of write statements sent to the database in one batch,
+     *                          {@code 1} disables batching.
+     * @throws IllegalArgumentException if {@code jdbcBatchSize} is less than 1.
+     */
+    public StatelessSession(GenericJdbcDAO jdbcDAO, ConnectionHandler connectionHandler, int jdbcBatchSize) {
+        if (jdbcBatchSize < 1) {
+            throw new IllegalArgumentException("JDBC batch size cannot be less than 1");
+        }
+        this.jdbcDAO = jdbcDAO;
+        this.connectionHandler = connectionHandler;
+        this.jdbcBatchSize = jdbcBatchSize;
+        this.transactionManager = new StatelessTransactionManager();
+        this.fetchSize = DEFAULT_FETCH_SIZE;
+
+        if (log.isInfoEnabled()) {
+            log.info("Stateless session was created");
+        }
+    }
+
+    /**
+     * Returns a transaction manager that controls transactions on the connection of this session.
+     *
+     * @return A {@link TransactionManager} instance.
+     */
+    public TransactionManager transactionManager() {
+        return transactionManager;
+    }
+
+    /**
+     * Inserts the given entity. The identifier generated by the database is set to the entity
+     * once the INSERT is executed, i.e. immediately when batching is disabled, or when the current
+     * batch is full or flushed otherwise.
+     *
+     * @param entity The entity to insert.
+     */
+    public void insert(Object entity) {
+        checkIfOpenSession();
+        batch().addInsert(entity);
+    }
+
+    /**
+     * Updates the given detached entity by its identifier.
+     *
+     * @param entity The entity to update.
+     */
+    public void update(Object entity) {
+        checkIfOpenSession();
+        batch().addUpdate(EntityEntry.valueOf(EntityKey.of(entity), entity));
+    }
+
+    /**
+     * Deletes the given entity by its identifier.
+     *
+     * @param entity The entity to delete.
+     */
+    public void delete(Object entity) {
+        checkIfOpenSession();
+        batch().addDelete(EntityKey.of(entity));
+    }
+
+    /**
+     * Retrieves an entity by its class type and identifier directly from the database. Pending
+     * batched statements are executed first, so the result reflects all previous writes.
+     *
+     * @param entityType The class of the entity to retrieve.
+     * @param id         The identifier of the entity.
+     * @param <T>        The type of the entity.
+     * @return The found entity or null if not found.
+     */
+    public <T> T get(Class<T> entityType, Object id) {
+        checkIfOpenSession();
+        flush();
+
+        return jdbcDAO.loadFromDB(new EntityKey<>(entityType, id), connection());
+    }
+
+    /**
+     * Executes a native SQL query and returns its result as a lazily populated stream. Rows are
+     * fetched from the database in chunks of the configured fetch size while the stream is consumed.
+     * The stream must be closed after use. PostgreSQL streams rows only inside a transaction, so
+     * the query should be executed after {@link TransactionManager#begin()}.
+     *
+     * @param query        The native query.
+     * @param entityType   The class of the entities to retrieve.
+     * @param columnValues The array of query parameter values.
+     * @param <T>          The type of the entity.
+     * @return The stream of found entities.
+     */
+    public <T> Stream<T> stream(final String query, final Class<T> entityType, final Object[] columnValues) {
+        checkIfOpenSession();
+        flush();
+
+        return jdbcDAO.streamAllBy(connection(), query, entityType, columnValues, fetchSize);
+    }
+
+    /**
+     * Sets the number of rows fetched from the database per round trip by {@link #stream}.
+     *
+     * @param fetchSize The fetch size, must be positive.
+     * @throws IllegalArgumentException if {@code fetchSize} is less than 1.
+     */
+    public void setFetchSize(int fetchSize) {
+        if (fetchSize < 1) {
+            throw new IllegalArgumentException("Fetch size cannot be less than 1");
+        }
+        this.fetchSize = fetchSize;
+    }
+
+    /**
+     * Executes all pending batched statements.
+     */
+    public void flush() {
+        if (jdbcBatch != null) {
+            jdbcBatch.execute();
+        }
+    }
+
+    /**
+     * Executes pending batched statements and releases the connection of this session. An active
+     * transaction that was neither committed nor rolled back is rolled back.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+
+        try {
+            if (transactionManager.isActive()) {
+                log.warn("Stateless session was closed with an active transaction, rolling it back");
+                transactionManager.callback();
+            } else if (jdbcBatch != null) {
+                jdbcBatch.close();
+            }
+        } finally {
+            closed = true;
+            releaseConnection();
+        }
+
+        if (log.isInfoEnabled()) {
+            log.info("Stateless session was closed");
+        }
+    }
+
+    private JdbcBatch batch() {
+        if (jdbcBatch == null) {
+            jdbcBatch = jdbcDAO.createBatch(connection(), jdbcBatchSize);
+        }
+
+        return jdbcBatch;
+    }
+
+    private Connection connection() {
+        if (connection == null) {
+            try {
+                connection = connectionHandler.getConnection();
+            } catch (SQLException exception) {
+                throw new SessionOperationException("Error obtaining connection for stateless session", exception);
+            }
+        }
+
+        return connection;
+    }
+
+    private void releaseConnection() {
+        if (connection == null) {
+            return;
+        }
+
+        try {
+            connection.close();
+        } catch (SQLException exception) {
+            log.warn("Error releasing connection of stateless session", exception);
+        } finally {
+            connection = null;
+            jdbcBatch = null;
+        }
+    }
+
+    private void checkIfOpenSession() {
+        if (closed) {
+            throw new SessionOperationException("Current session is closed");
+        }
+    }
+
+    /**
+     * Transaction manager bound to the single connection of the enclosing stateless session.
+     * Pending batched statements are executed before commit and discarded on rollback.
+     */
+    private class StatelessTransactionManager implements TransactionManager {
+
+        private boolean isActive;
+
+        @Override
+        public void begin() {
+            checkIfOpenSession();
+            if (isActive) {
+                throw new TransactionException("Transaction was started");
+            }
+
+            try {
+                connection().setAutoCommit(false);
+                isActive = true;
+            } catch (SQLException e) {
+                throw new TransactionException(e.getMessage(), e);
+            }
+        }
+
+        @Override
+        public void commit() {
+            if (!isActive) {
+                throw new TransactionException("Transaction is not started");
+            }
+
+            try {
+                flush();
+                connection.commit();
+                jdbcDAO.getSecondLevelCache().completeTransaction(connection, true);
+                connection.setAutoCommit(true);
+                isActive = false;
+            } catch (SQLException e) {
+                throw new TransactionException(e.getMessage(), e);
+            }
+        }
+
+        @Override
+        public void callback() {
+            if (!isActive) {
+                throw new TransactionException("Transaction is not started");
+            }
+
+            try {
+                if (jdbcBatch != null) {
+                    jdbcBatch.discard();
+                }
+                connection.rollback();
+                jdbcDAO.getSecondLevelCache().completeTransaction(connection, false);
+                connection.setAutoCommit(true);
+                isActive = false;
+            } catch (SQLException e) {
+                throw new TransactionException(e.getMessage(), e);
+            }
+        }
+
+        @Override
+        public boolean isActive() {
+            return isActive;
+        }
+    }
+}
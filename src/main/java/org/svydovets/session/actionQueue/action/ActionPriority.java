@@ -7,6 +7,8 @@ package org.svydovets.session.actionQueue.action;
  * Each action type is assigned a numeric priority, with lower numbers indicating higher priority.
  * This allows actions to be ordered and executed based on their defined priorities, facilitating
  * a controlled execution sequence for database operations.
+ *
+ * @see org.svydovets.session.actionQueue.plan.FlushPlanner
  */
 public enum ActionPriority {
     /**
@@ -1,6 +1,7 @@
 package org.svydovets.session.actionQueue.action;
 
 import org.svydovets.session.EntityEntry;
+import org.svydovets.util.EntitySizeEstimator;
 
 /**
  * Abstract base class for actions related to entities, such as persisting, merging, or removing.
@@ -11,6 +12,7 @@ public abstract class EntityAction {
 
     protected EntityEntry entityEntry;
     protected ActionPriority priority;
+    private long estimatedBytes = -1;
 
     public EntityAction(EntityEntry entityEntry) {
         this.entityEntry = entityEntry;
@@ -22,6 +24,22 @@ public abstract class EntityAction {
 
     public void updateEntityEntry(EntityEntry entityEntry) {
         this.entityEntry = entityEntry;
+        this.estimatedBytes = -1;
+    }
+
+    /**
+     * Returns the estimated memory retained by this action, i.e. by the entity it holds. The estimate
+     * is computed once and kept until the entity entry is updated.
+     *
+     * @return the estimated number of bytes
+     * @see EntitySizeEstimator#estimateEntityBytes(Object)
+     */
+    public long getEstimatedBytes() {
+        if (estimatedBytes < 0) {
+            estimatedBytes = EntitySizeEstimator.estimateEntityBytes(entityEntry.entity());
+        }
+
+        return estimatedBytes;
     }
 
     public EntityEntry getEntityEntry() {
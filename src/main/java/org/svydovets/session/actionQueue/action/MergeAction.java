@@ -19,5 +19,6 @@ public class MergeAction extends EntityAction {
      */
     public MergeAction(EntityEntry entityEntry) {
         super(entityEntry);
+        this.priority = ActionPriority.MERGE;
     }
 }
@@ -18,5 +18,6 @@ public class RemoveAction extends EntityAction {
      */
     public RemoveAction(EntityEntry entityEntry) {
         super(entityEntry);
+        this.priority = ActionPriority.REMOVE;
     }
 }
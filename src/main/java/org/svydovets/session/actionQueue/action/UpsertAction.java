@@ -0,0 +1,23 @@
+package org.svydovets.session.actionQueue.action;
+
+import org.svydovets.session.EntityEntry;
+
+/**
+ * Represents an action to write the state of a detached entity to the database without loading it first.
+ * The entity is inserted with its identifier, or the existing row with the same identifier is updated.
+ * Since the action may insert a row, it is executed along with the persist actions, so entities inserted
+ * in the same flush may reference it.
+ */
+public class UpsertAction extends EntityAction {
+
+    /**
+     * Constructs a new UpsertAction for a specified entity entry.
+     *
+     * @param entityEntry the entity entry that this upsert action will operate on. The
+     *                    entity entry encapsulates the entity to be written and its identifier.
+     */
+    public UpsertAction(EntityEntry entityEntry) {
+        super(entityEntry);
+        this.priority = ActionPriority.PERSIST;
+    }
+}
@@ -1,35 +1,94 @@
 package org.svydovets.session.actionQueue.executor;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.svydovets.connectionPool.datasource.ConnectionHandler;
 import org.svydovets.dao.GenericJdbcDAO;
+import org.svydovets.dao.JdbcBatch;
+import org.svydovets.dao.Properties;
+import org.svydovets.exception.SessionOperationException;
+import org.svydovets.session.EntityEntry;
+import org.svydovets.session.EntityKey;
+import org.svydovets.session.FlushThreshold;
+import org.svydovets.session.actionQueue.action.EntityAction;
 import org.svydovets.session.actionQueue.action.MergeAction;
 import org.svydovets.session.actionQueue.action.PersistAction;
 import org.svydovets.session.actionQueue.action.RemoveAction;
+import org.svydovets.session.actionQueue.action.UpsertAction;
+import org.svydovets.session.actionQueue.plan.FlushPlan;
+import org.svydovets.session.actionQueue.plan.FlushPlanner;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
 
 /**
- * Manages a queue of database actions including persist, merge, and remove operations.
+ * Manages a queue of database actions including persist, upsert, merge, and remove operations.
  * Actions can be executed immediately or accumulated for batch execution, depending on
  * their configuration and the nature of the operation.
+ *
+ * <p>Accumulated actions are executed according to a {@link FlushPlan}: they are grouped by
+ * action type and table, ordered by the foreign-key dependencies between entity types, and
+ * every group of more than one statement is sent to the database as a JDBC batch.</p>
  */
 public class ActionQueue {
 
+    private static final Logger log = LoggerFactory.getLogger(ActionQueue.class);
+
+    private final GenericJdbcDAO jdbcDAO;
+    private final ConnectionHandler connectionHandler;
+    private final int jdbcBatchSize;
+    private final FlushPlanner flushPlanner;
+    private FlushPlan lastFlushPlan;
+
     private PersisActionExecutor persistActionExecutor;
     private MergeActionExecutor mergeActionExecutor;
     private RemoveActionExecutor removeActionExecutor;
+    private UpsertActionExecutor upsertActionExecutor;
+
+    private Map<EntityIdentity, PersistAction> persistActions;
+    private Map<EntityKey<?>, MergeAction> mergeActions;
+    private Map<EntityKey<?>, RemoveAction> removeActions;
+    private Map<EntityKey<?>, UpsertAction> upsertActions;
+    private long coalescedActionsCount;
 
-    private List<PersistAction> persistActions;
-    private List<MergeAction> mergeActions;
-    private List<RemoveAction> removeActions;
+    private FlushThreshold flushThreshold;
+    private boolean trackingBytes;
+    private long estimatedBytes;
+    private long incrementalFlushCount;
 
     /**
      * Initializes the action queue with specific action executors and initializes
      * collections for each action type.
      *
-     * @param jdbcDAO the GenericJdbcDAO instance used for database operations, shared by all executors.
+     * @param jdbcDAO           the GenericJdbcDAO instance used for database operations, shared by all executors.
+     * @param connectionHandler the connection handler providing connections for batched statements.
      */
-    public ActionQueue(GenericJdbcDAO jdbcDAO) {
+    public ActionQueue(GenericJdbcDAO jdbcDAO, ConnectionHandler connectionHandler) {
+        this(jdbcDAO, connectionHandler, Properties.DEFAULT_JDBC_BATCH_SIZE);
+    }
+
+    /**
+     * Initializes the action queue with specific action executors and initializes
+     * collections for each action type.
+     *
+     * @param jdbcDAO           the GenericJdbcDAO instance used for database operations, shared by all executors.
+     * @param connectionHandler the connection handler providing connections for batched statements.
+     * @param jdbcBatchSize     the maximum number of statements sent to the database in one batch,
+     *                          {@code 1} disables batching.
+     * @throws IllegalArgumentException if {@code jdbcBatchSize} is less than 1.
+     */
+    public ActionQueue(GenericJdbcDAO jdbcDAO, ConnectionHandler connectionHandler, int jdbcBatchSize) {
+        if (jdbcBatchSize < 1) {
+            throw new IllegalArgumentException("JDBC batch size cannot be less than 1");
+        }
+        this.jdbcDAO = jdbcDAO;
+        this.connectionHandler = connectionHandler;
+        this.jdbcBatchSize = jdbcBatchSize;
+        this.flushPlanner = new FlushPlanner();
+        this.lastFlushPlan = FlushPlan.empty();
         initActionExecutors(jdbcDAO);
         initActionCollections();
     }
@@ -37,56 +96,388 @@ public class ActionQueue {
     /**
      * Adds a persist action to the queue. If the action is marked for instant execution,
      * it is executed immediately; otherwise, it is added to the queue for later execution.
+     * Queued persist actions are keyed by the entity instance, since the entity has no
+     * identifier until it is inserted; persisting the same instance twice queues it once.
+     * {@link org.svydovets.session.Session#persist(Object)} always inserts immediately, as the
+     * identifier is generated by the database and the persistence context needs it right away,
+     * so queued persist actions are not coalesced with the other actions of the entity.
      *
      * @param persistAction the persist action to add or execute.
      */
     public void addPersistAction(PersistAction persistAction) {
         if (persistAction.isInstantPersist()) {
             persistActionExecutor.execute(persistAction);
+        } else if (persistActions.putIfAbsent(new EntityIdentity(persistAction.entity()), persistAction) != null) {
+            coalescedActionsCount++;
         } else {
-            persistActions.add(persistAction);
+            retainBytes(persistAction);
+            checkFlushThreshold();
         }
     }
 
     /**
-     * Adds a merge action to the queue for later execution.
+     * Adds a merge action to the queue for later execution. The action is coalesced with the
+     * actions already queued for the same entity:
+     * <ul>
+     *     <li>if the entity is queued for removal, the merge is dropped;</li>
+     *     <li>if the entity is already queued for merge, the queued action takes the new entity state
+     *     and keeps its place in the queue, so only one UPDATE is executed.</li>
+     * </ul>
      *
      * @param mergeAction the merge action to add.
      */
     public void addMergeAction(MergeAction mergeAction) {
-        mergeActions.add(mergeAction);
+        EntityEntry entityEntry = mergeAction.getEntityEntry();
+        EntityKey<?> entityKey = entityEntry.entityKey();
+        if (removeActions.containsKey(entityKey)) {
+            coalescedActionsCount++;
+            return;
+        }
+
+        MergeAction queuedMergeAction = mergeActions.putIfAbsent(entityKey, mergeAction);
+        if (queuedMergeAction != null) {
+            releaseBytes(queuedMergeAction);
+            queuedMergeAction.updateEntityEntry(entityEntry);
+            retainBytes(queuedMergeAction);
+            coalescedActionsCount++;
+        } else {
+            retainBytes(mergeAction);
+            checkFlushThreshold();
+        }
     }
 
     /**
-     * Adds a remove action to the queue for later execution.
+     * Adds a remove action to the queue for later execution. The action is coalesced with the
+     * actions already queued for the same entity:
+     * <ul>
+     *     <li>a queued merge of the entity is dropped, only the DELETE is executed;</li>
+     *     <li>removing an entity that is already queued for removal does nothing.</li>
+     * </ul>
      *
      * @param removeAction the remove action to add.
      */
     public void addRemoveAction(RemoveAction removeAction) {
-        removeActions.add(removeAction);
+        EntityEntry entityEntry = removeAction.getEntityEntry();
+        EntityKey<?> entityKey = entityEntry.entityKey();
+        MergeAction queuedMergeAction = mergeActions.remove(entityKey);
+        if (queuedMergeAction != null) {
+            releaseBytes(queuedMergeAction);
+            coalescedActionsCount++;
+        }
+        if (removeActions.putIfAbsent(entityKey, removeAction) != null) {
+            coalescedActionsCount++;
+        } else {
+            retainBytes(removeAction);
+            checkFlushThreshold();
+        }
     }
 
     /**
-     * Executes all accumulated actions in the queue. Each type of action is executed
-     * in the order they were added.
+     * Adds an upsert action to the queue for later execution. The action is coalesced with the
+     * actions already queued for the same entity:
+     * <ul>
+     *     <li>a queued removal of the entity is dropped, the upsert writes the row again;</li>
+     *     <li>if the entity is already queued for upsert, the queued action takes the new entity state
+     *     and keeps its place in the queue, so only one statement is executed.</li>
+     * </ul>
+     *
+     * @param upsertAction the upsert action to add.
+     */
+    public void addUpsertAction(UpsertAction upsertAction) {
+        EntityEntry entityEntry = upsertAction.getEntityEntry();
+        EntityKey<?> entityKey = entityEntry.entityKey();
+        RemoveAction queuedRemoveAction = removeActions.remove(entityKey);
+        if (queuedRemoveAction != null) {
+            releaseBytes(queuedRemoveAction);
+            coalescedActionsCount++;
+        }
+
+        UpsertAction queuedUpsertAction = upsertActions.putIfAbsent(entityKey, upsertAction);
+        if (queuedUpsertAction != null) {
+            releaseBytes(queuedUpsertAction);
+            queuedUpsertAction.updateEntityEntry(entityEntry);
+            retainBytes(queuedUpsertAction);
+            coalescedActionsCount++;
+        } else {
+            retainBytes(upsertAction);
+            checkFlushThreshold();
+        }
+    }
+
+    /**
+     * Sets the threshold that triggers an incremental flush. Once the number of queued actions or their
+     * estimated size exceeds the threshold, all queued actions are executed right away as JDBC batches,
+     * inside the active transaction if there is one, and released from the queue.
+     *
+     * @param flushThreshold the threshold, or {@code null} to accumulate actions until an explicit flush.
+     */
+    public void setFlushThreshold(FlushThreshold flushThreshold) {
+        this.flushThreshold = flushThreshold;
+        this.trackingBytes = flushThreshold != null && flushThreshold.maxEstimatedBytes() > 0;
+        recalculateEstimatedBytes();
+    }
+
+    /**
+     * Returns the estimated size of the entities held by the queued actions. The size is only tracked
+     * while a flush threshold limited by bytes is set.
+     *
+     * @return the estimated number of bytes, {@code 0} if not tracked.
+     */
+    public long getEstimatedBytes() {
+        return estimatedBytes;
+    }
+
+    /**
+     * Tells whether an action is queued for the entity.
+     *
+     * @param entityEntry the entity and its key.
+     * @return {@code true} if the entity is queued for insert, upsert, update or removal.
+     */
+    public boolean hasQueuedAction(EntityEntry entityEntry) {
+        EntityKey<?> entityKey = entityEntry.entityKey();
+        return persistActions.containsKey(new EntityIdentity(entityEntry.entity()))
+                || upsertActions.containsKey(entityKey)
+                || mergeActions.containsKey(entityKey)
+                || removeActions.containsKey(entityKey);
+    }
+
+    /**
+     * Returns how many times the queue was flushed because the flush threshold was exceeded.
+     *
+     * @return the number of incremental flushes.
+     */
+    public long getIncrementalFlushCount() {
+        return incrementalFlushCount;
+    }
+
+    /**
+     * Returns how many queued actions were dropped or merged into other actions for the same entity
+     * since this queue was created, i.e. how many statements coalescing saved.
+     *
+     * @return the number of coalesced actions.
+     */
+    public long getCoalescedActionsCount() {
+        return coalescedActionsCount;
+    }
+
+    /**
+     * Executes all accumulated actions in the queue according to the plan built by {@link FlushPlanner}.
+     * Executed actions are removed from the queue.
      */
     public void performAccumulatedActions() {
-        persistActions.forEach(persistActionExecutor::execute);
-        mergeActions.forEach(mergeActionExecutor::execute);
-        removeActions.forEach(removeActionExecutor::execute);
+        if (size() == 0) {
+            return;
+        }
+
+        FlushPlan flushPlan = planAccumulatedActions();
+        if (log.isDebugEnabled()) {
+            log.debug("Executing {}", flushPlan);
+        }
+
+        executePlan(flushPlan);
+        lastFlushPlan = flushPlan.withoutActions();
+
+        clear();
     }
 
     /**
-     * Initializes collections for persist, merge, and remove actions.
+     * Executes the accumulated actions affecting the given query spaces, i.e. the actions for the given
+     * tables and for the tables related to them by foreign keys. Other actions stay in the queue.
+     *
+     * @param querySpaces the names of the tables about to be read, an empty set means all tables.
+     */
+    public void performAccumulatedActions(Set<String> querySpaces) {
+        if (size() == 0) {
+            return;
+        }
+
+        FlushPlan flushPlan = flushPlanner.plan(querySpaces, persistActions.values(), upsertActions.values(),
+                mergeActions.values(), removeActions.values());
+        if (flushPlan.isEmpty()) {
+            return;
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Executing {}", flushPlan);
+        }
+
+        executePlan(flushPlan);
+        lastFlushPlan = flushPlan.withoutActions();
+
+        removeExecutedActions(flushPlan);
+        recalculateEstimatedBytes();
+    }
+
+    /**
+     * Builds the plan for the currently accumulated actions without executing them.
+     *
+     * @return the plan the accumulated actions would be executed with.
+     */
+    public FlushPlan planAccumulatedActions() {
+        return flushPlanner.plan(persistActions.values(), upsertActions.values(), mergeActions.values(),
+                removeActions.values());
+    }
+
+    /**
+     * Returns the plan of the last successful execution of accumulated actions. The returned plan
+     * holds no references to the executed actions and their entities.
+     *
+     * @return the last executed plan, or an empty plan if nothing has been executed yet.
+     */
+    public FlushPlan getLastFlushPlan() {
+        return lastFlushPlan;
+    }
+
+    /**
+     * Discards all accumulated actions without executing them.
+     */
+    public void clear() {
+        persistActions.clear();
+        upsertActions.clear();
+        mergeActions.clear();
+        removeActions.clear();
+        estimatedBytes = 0;
+    }
+
+    /**
+     * Returns the number of accumulated actions waiting for execution.
+     *
+     * @return the number of queued actions.
+     */
+    public int size() {
+        return persistActions.size() + upsertActions.size() + mergeActions.size() + removeActions.size();
+    }
+
+    /**
+     * Executes the steps of the plan in order. A step with more than one action is sent to the
+     * database as a JDBC batch on a connection shared by the whole flush, other steps are executed
+     * action by action.
+     *
+     * @param flushPlan the plan to execute.
+     */
+    private void executePlan(FlushPlan flushPlan) {
+        Connection connection = null;
+        try {
+            for (FlushPlan.Step step : flushPlan.getSteps()) {
+                if (step.batchable() && step.size() > 1 && jdbcBatchSize > 1) {
+                    if (connection == null) {
+                        connection = connectionHandler.getConnection();
+                    }
+                    executeBatched(step, connection);
+                } else {
+                    step.actions().forEach(this::execute);
+                }
+            }
+        } catch (SQLException exception) {
+            throw new SessionOperationException("Error obtaining connection for flush", exception);
+        } finally {
+            closeConnection(connection);
+        }
+    }
+
+    private void executeBatched(FlushPlan.Step step, Connection connection) {
+        try (JdbcBatch jdbcBatch = jdbcDAO.createBatch(connection, jdbcBatchSize)) {
+            for (EntityAction action : step.actions()) {
+                if (action instanceof PersistAction persistAction) {
+                    persistActionExecutor.addToBatch(persistAction, jdbcBatch);
+                } else if (action instanceof UpsertAction upsertAction) {
+                    upsertActionExecutor.addToBatch(upsertAction, jdbcBatch);
+                } else if (action instanceof MergeAction mergeAction) {
+                    mergeActionExecutor.addToBatch(mergeAction, jdbcBatch);
+                } else if (action instanceof RemoveAction removeAction) {
+                    removeActionExecutor.addToBatch(removeAction, jdbcBatch);
+                }
+            }
+        }
+    }
+
+    private void execute(EntityAction action) {
+        if (action instanceof PersistAction persistAction) {
+            persistActionExecutor.execute(persistAction);
+        } else if (action instanceof UpsertAction upsertAction) {
+            upsertActionExecutor.execute(upsertAction);
+        } else if (action instanceof MergeAction mergeAction) {
+            mergeActionExecutor.execute(mergeAction);
+        } else if (action instanceof RemoveAction removeAction) {
+            removeActionExecutor.execute(removeAction);
+        }
+    }
+
+    private void removeExecutedActions(FlushPlan flushPlan) {
+        for (FlushPlan.Step step : flushPlan.getSteps()) {
+            for (EntityAction action : step.actions()) {
+                if (action instanceof PersistAction persistAction) {
+                    persistActions.remove(new EntityIdentity(persistAction.entity()));
+                } else if (action instanceof UpsertAction) {
+                    upsertActions.remove(action.getEntityEntry().entityKey());
+                } else if (action instanceof MergeAction) {
+                    mergeActions.remove(action.getEntityEntry().entityKey());
+                } else if (action instanceof RemoveAction) {
+                    removeActions.remove(action.getEntityEntry().entityKey());
+                }
+            }
+        }
+    }
+
+    private void checkFlushThreshold() {
+        if (flushThreshold == null || !flushThreshold.isExceeded(size(), estimatedBytes)) {
+            return;
+        }
+
+        int queuedActions = size();
+        long queuedBytes = estimatedBytes;
+        performAccumulatedActions();
+        incrementalFlushCount++;
+
+        if (log.isDebugEnabled()) {
+            log.debug("Flush threshold {} was exceeded by {} actions (~{} bytes), queued actions were flushed",
+                    flushThreshold, queuedActions, queuedBytes);
+        }
+    }
+
+    private void retainBytes(EntityAction action) {
+        if (trackingBytes) {
+            estimatedBytes += action.getEstimatedBytes();
+        }
+    }
+
+    private void releaseBytes(EntityAction action) {
+        if (trackingBytes) {
+            estimatedBytes -= action.getEstimatedBytes();
+        }
+    }
+
+    private void recalculateEstimatedBytes() {
+        estimatedBytes = 0;
+        persistActions.values().forEach(this::retainBytes);
+        upsertActions.values().forEach(this::retainBytes);
+        mergeActions.values().forEach(this::retainBytes);
+        removeActions.values().forEach(this::retainBytes);
+    }
+
+    private void closeConnection(Connection connection) {
+        if (connection == null) {
+            return;
+        }
+
+        try {
+            connection.close();
+        } catch (SQLException exception) {
+            log.warn("Error closing flush connection", exception);
+        }
+    }
+
+    /**
+     * Initializes collections for persist, upsert, merge, and remove actions.
      */
     private void initActionCollections() {
-        this.persistActions = new ArrayList<>();
-        this.mergeActions = new ArrayList<>();
-        this.removeActions = new ArrayList<>();
+        this.persistActions = new LinkedHashMap<>();
+        this.upsertActions = new LinkedHashMap<>();
+        this.mergeActions = new LinkedHashMap<>();
+        this.removeActions = new LinkedHashMap<>();
     }
 
     /**
-     * Initializes executors for persist, merge, and remove actions with a shared GenericJdbcDAO instance.
+     * Initializes executors for persist, upsert, merge, and remove actions with a shared GenericJdbcDAO instance.
      *
      * @param jdbcDAO the GenericJdbcDAO instance to be used by the executors.
      */
@@ -94,5 +485,29 @@ public class ActionQueue {
         this.persistActionExecutor = new PersisActionExecutor(jdbcDAO);
         this.mergeActionExecutor = new MergeActionExecutor(jdbcDAO);
         this.removeActionExecutor = new RemoveActionExecutor(jdbcDAO);
+        this.upsertActionExecutor = new UpsertActionExecutor(jdbcDAO);
+    }
+
+    /**
+     * Key comparing entity instances by identity, used for persist actions of entities that have
+     * no identifier yet and may not override {@code equals}/{@code hashCode} consistently.
+     */
+    private static final class EntityIdentity {
+
+        private final Object entity;
+
+        private EntityIdentity(Object entity) {
+            this.entity = entity;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof EntityIdentity entityIdentity && entityIdentity.entity == entity;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(entity);
+        }
     }
 }
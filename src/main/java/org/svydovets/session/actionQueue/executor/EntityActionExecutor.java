@@ -1,6 +1,7 @@
 package org.svydovets.session.actionQueue.executor;
 
 import org.svydovets.dao.GenericJdbcDAO;
+import org.svydovets.dao.JdbcBatch;
 import org.svydovets.session.actionQueue.action.EntityAction;
 
 /**
@@ -33,4 +34,13 @@ public abstract class EntityActionExecutor<T extends EntityAction> {
      * @param entityAction The entity action to execute, of type {@code T}.
      */
     protected abstract void execute(T entityAction);
+
+    /**
+     * Adds the statement of the given entity action to a JDBC batch instead of executing it right away.
+     * The action is completed once the batch is executed.
+     *
+     * @param entityAction The entity action to add, of type {@code T}.
+     * @param jdbcBatch    The batch collecting statements for the same table.
+     */
+    protected abstract void addToBatch(T entityAction, JdbcBatch jdbcBatch);
 }
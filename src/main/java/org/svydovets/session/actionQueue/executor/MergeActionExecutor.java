@@ -1,6 +1,7 @@
 package org.svydovets.session.actionQueue.executor;
 
 import org.svydovets.dao.GenericJdbcDAO;
+import org.svydovets.dao.JdbcBatch;
 import org.svydovets.session.actionQueue.action.MergeAction;
 
 /**
@@ -31,4 +32,15 @@ public class MergeActionExecutor extends EntityActionExecutor<MergeAction> {
     protected void execute(MergeAction entityAction) {
         super.jdbcDAO.update(entityAction.getEntityEntry());
     }
+
+    /**
+     * Adds the UPDATE statement of the given {@link MergeAction} to the batch.
+     *
+     * @param entityAction The {@code MergeAction} to be executed, encapsulating the entity and its state.
+     * @param jdbcBatch    The batch collecting UPDATE statements.
+     */
+    @Override
+    protected void addToBatch(MergeAction entityAction, JdbcBatch jdbcBatch) {
+        jdbcBatch.addUpdate(entityAction.getEntityEntry());
+    }
 }
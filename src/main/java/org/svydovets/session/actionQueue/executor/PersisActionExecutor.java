@@ -1,6 +1,7 @@
 package org.svydovets.session.actionQueue.executor;
 
 import org.svydovets.dao.GenericJdbcDAO;
+import org.svydovets.dao.JdbcBatch;
 import org.svydovets.session.EntityEntry;
 import org.svydovets.session.EntityKey;
 import org.svydovets.session.actionQueue.action.PersistAction;
@@ -44,4 +45,20 @@ public class PersisActionExecutor extends EntityActionExecutor<PersistAction> {
         EntityKey<?> entityKey = EntityKey.valueOf(entity, generatedId);
         persistAction.updateEntityEntry(EntityEntry.valueOf(entityKey, entity));
     }
+
+    /**
+     * Adds the INSERT statement of the given {@link PersistAction} to the batch. Once the batch is executed,
+     * the generated identifier is set to the entity and the action's entity entry is updated.
+     *
+     * @param persistAction The {@code PersistAction} to be executed, encapsulating the entity to be persisted.
+     * @param jdbcBatch     The batch collecting INSERT statements.
+     */
+    @Override
+    protected void addToBatch(PersistAction persistAction, JdbcBatch jdbcBatch) {
+        Object entity = persistAction.entity();
+        jdbcBatch.addInsert(entity, generatedId -> {
+            EntityKey<?> entityKey = EntityKey.valueOf(entity, generatedId);
+            persistAction.updateEntityEntry(EntityEntry.valueOf(entityKey, entity));
+        });
+    }
 }
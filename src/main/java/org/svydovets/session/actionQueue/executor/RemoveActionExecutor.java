@@ -1,6 +1,7 @@
 package org.svydovets.session.actionQueue.executor;
 
 import org.svydovets.dao.GenericJdbcDAO;
+import org.svydovets.dao.JdbcBatch;
 import org.svydovets.session.EntityKey;
 import org.svydovets.session.actionQueue.action.RemoveAction;
 
@@ -35,4 +36,16 @@ public class RemoveActionExecutor extends EntityActionExecutor<RemoveAction> {
         EntityKey<?> entityKey = entityAction.getEntityEntry().entityKey();
         super.jdbcDAO.remove(entityKey);
     }
+
+    /**
+     * Adds the DELETE statement of the given {@link RemoveAction} to the batch.
+     *
+     * @param entityAction The {@code RemoveAction} to execute, encapsulating the entity
+     *                     to be removed and its identifying key.
+     * @param jdbcBatch    The batch collecting DELETE statements.
+     */
+    @Override
+    protected void addToBatch(RemoveAction entityAction, JdbcBatch jdbcBatch) {
+        jdbcBatch.addDelete(entityAction.getEntityEntry().entityKey());
+    }
 }
@@ -0,0 +1,43 @@
+package org.svydovets.session.actionQueue.executor;
+
+import org.svydovets.dao.GenericJdbcDAO;
+import org.svydovets.dao.JdbcBatch;
+import org.svydovets.session.actionQueue.action.UpsertAction;
+
+/**
+ * Executes {@link UpsertAction}s against the database by inserting entities or updating their existing rows.
+ * This class extends {@link EntityActionExecutor} to provide specific functionality for
+ * handling upsert actions, using the associated {@link GenericJdbcDAO} for database operations.
+ */
+public class UpsertActionExecutor extends EntityActionExecutor<UpsertAction> {
+
+    /**
+     * Constructs an {@code UpsertActionExecutor} with the specified {@link GenericJdbcDAO}.
+     *
+     * @param jdbcDAO The {@code GenericJdbcDAO} instance to be used for executing upsert operations.
+     */
+    public UpsertActionExecutor(GenericJdbcDAO jdbcDAO) {
+        super(jdbcDAO);
+    }
+
+    /**
+     * Executes a given {@link UpsertAction} by writing the entity's state with one upsert statement.
+     *
+     * @param entityAction The {@code UpsertAction} to be executed, encapsulating the entity and its identifier.
+     */
+    @Override
+    protected void execute(UpsertAction entityAction) {
+        super.jdbcDAO.upsert(entityAction.getEntityEntry());
+    }
+
+    /**
+     * Adds the upsert statement of the given {@link UpsertAction} to the batch.
+     *
+     * @param entityAction The {@code UpsertAction} to be executed, encapsulating the entity and its identifier.
+     * @param jdbcBatch    The batch collecting upsert statements.
+     */
+    @Override
+    protected void addToBatch(UpsertAction entityAction, JdbcBatch jdbcBatch) {
+        jdbcBatch.addUpsert(entityAction.getEntityEntry());
+    }
+}
@@ -0,0 +1,153 @@
+package org.svydovets.session.actionQueue.plan;
+
+import org.svydovets.session.actionQueue.action.ActionPriority;
+import org.svydovets.session.actionQueue.action.EntityAction;
+
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * The ordered list of steps in which the accumulated actions of an
+ * {@link org.svydovets.session.actionQueue.executor.ActionQueue} are executed on flush.
+ *
+ * <p>Each step holds the actions of one type ({@link ActionPriority}) for one entity type, so all
+ * statements of a step share the same SQL and can be sent to the database as a single JDBC batch.
+ * Steps are ordered by action priority first and by the foreign-key dependencies between entity
+ * types second, see {@link FlushPlanner}.</p>
+ *
+ * <p>The plan is immutable and its {@link #toString()} lists the computed ordering, which makes it
+ * suitable for logging and diagnostics.</p>
+ */
+public class FlushPlan {
+
+    private static final FlushPlan EMPTY = new FlushPlan(List.of(), List.of(), Set.of());
+
+    private final List<Step> steps;
+    private final List<Class<?>> entityTypeOrder;
+    private final Set<String> querySpaces;
+
+    FlushPlan(List<Step> steps, List<Class<?>> entityTypeOrder, Set<String> querySpaces) {
+        this.steps = List.copyOf(steps);
+        this.entityTypeOrder = List.copyOf(entityTypeOrder);
+        this.querySpaces = Set.copyOf(querySpaces);
+    }
+
+    /**
+     * Returns a plan without steps.
+     *
+     * @return the empty plan
+     */
+    public static FlushPlan empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Returns the steps of the plan in execution order.
+     *
+     * @return the unmodifiable list of steps
+     */
+    public List<Step> getSteps() {
+        return steps;
+    }
+
+    /**
+     * Returns the entity types of the plan ordered by their foreign-key dependencies: referenced
+     * (parent) types come before the types referencing them. Inserts and updates follow this order,
+     * deletes follow the reverse one.
+     *
+     * @return the unmodifiable list of entity types
+     */
+    public List<Class<?>> getEntityTypeOrder() {
+        return entityTypeOrder;
+    }
+
+    /**
+     * Returns the query spaces the plan was limited to.
+     *
+     * @return the table names the plan was built for, an empty set if the plan covers all queued actions
+     */
+    public Set<String> getQuerySpaces() {
+        return querySpaces;
+    }
+
+    /**
+     * Returns the total number of actions in the plan.
+     *
+     * @return the number of actions
+     */
+    public int getActionsCount() {
+        return steps.stream().mapToInt(Step::size).sum();
+    }
+
+    /**
+     * Returns a copy of this plan that keeps the ordering and the number of actions of every step but no
+     * references to the actions and their entities, so it can be kept for diagnostics after the flush.
+     *
+     * @return the plan without actions
+     */
+    public FlushPlan withoutActions() {
+        return new FlushPlan(steps.stream().map(Step::withoutActions).toList(), entityTypeOrder, querySpaces);
+    }
+
+    /**
+     * Checks whether the plan has nothing to execute.
+     *
+     * @return {@code true} if the plan has no steps
+     */
+    public boolean isEmpty() {
+        return steps.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder plan = new StringBuilder()
+                .append("FlushPlan[steps=").append(steps.size())
+                .append(", actions=").append(getActionsCount())
+                .append(", entityTypeOrder=")
+                .append(entityTypeOrder.stream().map(Class::getSimpleName).collect(Collectors.joining(" -> ")));
+        if (!querySpaces.isEmpty()) {
+            plan.append(", querySpaces=").append(querySpaces);
+        }
+        plan.append(']');
+
+        for (int i = 0; i < steps.size(); i++) {
+            plan.append(System.lineSeparator()).append("  ").append(i + 1).append(". ").append(steps.get(i));
+        }
+
+        return plan.toString();
+    }
+
+    /**
+     * A group of actions of the same kind for the same entity type.
+     *
+     * @param priority   the kind of the actions
+     * @param entityType the entity type the actions operate on
+     * @param tableName  the table the statements are executed against
+     * @param batchable  {@code false} if the actions must be executed one by one, e.g. inserts of an entity
+     *                   type referencing itself, where a row may need the generated id of a previous one
+     * @param size       the number of actions of the step
+     * @param actions    the actions in the order they were queued, empty in a plan {@link #withoutActions()}
+     */
+    public record Step(ActionPriority priority, Class<?> entityType, String tableName, boolean batchable,
+                       int size, List<EntityAction> actions) {
+
+        public Step {
+            actions = List.copyOf(actions);
+        }
+
+        Step(ActionPriority priority, Class<?> entityType, String tableName, boolean batchable,
+             List<EntityAction> actions) {
+            this(priority, entityType, tableName, batchable, actions.size(), actions);
+        }
+
+        private Step withoutActions() {
+            return new Step(priority, entityType, tableName, batchable, size, List.of());
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s %s x%d%s", priority, tableName, size, batchable ? "" : " (not batchable)");
+        }
+    }
+}
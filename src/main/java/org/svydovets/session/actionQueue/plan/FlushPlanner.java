@@ -0,0 +1,212 @@
+package org.svydovets.session.actionQueue.plan;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.svydovets.query.ParameterNameResolver;
+import org.svydovets.session.EntityKey;
+import org.svydovets.session.actionQueue.action.ActionPriority;
+import org.svydovets.session.actionQueue.action.EntityAction;
+import org.svydovets.util.EntityReflectionUtils;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Builds a {@link FlushPlan} out of the actions accumulated in an action queue.
+ *
+ * <p>Actions are grouped by their {@link ActionPriority} and entity type, so that statements against
+ * the same table end up next to each other and can be batched. The groups are ordered as follows:</p>
+ * <ul>
+ *     <li>by action priority: all inserts and upserts, then all updates, then all deletes;</li>
+ *     <li>within inserts and updates, referenced (parent) entity types come before the types that reference
+ *     them through a {@code @ManyToOne} or {@code @OneToOne} join column;</li>
+ *     <li>within deletes, the order is reversed: children are deleted before their parents.</li>
+ * </ul>
+ * <p>Entity types that are not related keep the order in which they were first queued, and actions within
+ * a group keep the order in which they were queued. If the mappings form a cycle, the cycle is broken at the
+ * type that was queued first.</p>
+ *
+ * <p>A plan may be limited to a set of query spaces (table names, compared case-insensitively). Such a plan
+ * contains the actions for the tables in the set and, to keep foreign keys satisfied, the actions for all
+ * queued entity types related to them, directly or transitively.</p>
+ */
+public class FlushPlanner {
+
+    private static final Logger log = LoggerFactory.getLogger(FlushPlanner.class);
+
+    private final Map<Class<?>, Set<Class<?>>> referencedTypesCache = new HashMap<>();
+
+    /**
+     * Builds the plan for the given actions.
+     *
+     * @param actionLists the queued actions, each collection in the order the actions were queued
+     * @return the plan executing all given actions
+     */
+    @SafeVarargs
+    public final FlushPlan plan(Collection<? extends EntityAction>... actionLists) {
+        return plan(Set.of(), actionLists);
+    }
+
+    /**
+     * Builds the plan for the given actions limited to the given query spaces.
+     *
+     * @param querySpaces the tables whose pending changes must be executed, an empty set means all tables
+     * @param actionLists the queued actions, each collection in the order the actions were queued
+     * @return the plan executing the actions affecting the query spaces
+     */
+    @SafeVarargs
+    public final FlushPlan plan(Set<String> querySpaces, Collection<? extends EntityAction>... actionLists) {
+        Map<ActionPriority, Map<Class<?>, List<EntityAction>>> actionsByPriority = new EnumMap<>(ActionPriority.class);
+        Set<Class<?>> entityTypes = new LinkedHashSet<>();
+
+        for (Collection<? extends EntityAction> actions : actionLists) {
+            for (EntityAction action : actions) {
+                Class<?> entityType = entityTypeOf(action);
+                entityTypes.add(entityType);
+                actionsByPriority
+                        .computeIfAbsent(action.getActionPriority(), priority -> new LinkedHashMap<>())
+                        .computeIfAbsent(entityType, type -> new ArrayList<>())
+                        .add(action);
+            }
+        }
+
+        if (!querySpaces.isEmpty()) {
+            entityTypes.retainAll(typesAffecting(entityTypes, querySpaces));
+        }
+        if (entityTypes.isEmpty()) {
+            return FlushPlan.empty();
+        }
+
+        List<Class<?>> entityTypeOrder = sortByDependencies(entityTypes);
+        List<Class<?>> reversedEntityTypeOrder = new ArrayList<>(entityTypeOrder);
+        Collections.reverse(reversedEntityTypeOrder);
+
+        List<FlushPlan.Step> steps = new ArrayList<>();
+        Arrays.stream(ActionPriority.values())
+                .sorted(Comparator.comparingInt(ActionPriority::getPriority))
+                .filter(actionsByPriority::containsKey)
+                .forEach(priority -> {
+                    Map<Class<?>, List<EntityAction>> actionsByType = actionsByPriority.get(priority);
+                    List<Class<?>> order = priority == ActionPriority.REMOVE ? reversedEntityTypeOrder : entityTypeOrder;
+                    for (Class<?> entityType : order) {
+                        List<EntityAction> actions = actionsByType.get(entityType);
+                        if (actions != null) {
+                            steps.add(new FlushPlan.Step(priority, entityType,
+                                    ParameterNameResolver.resolveTableName(entityType),
+                                    isBatchable(priority, entityType), actions));
+                        }
+                    }
+                });
+
+        return new FlushPlan(steps, entityTypeOrder, querySpaces);
+    }
+
+    /**
+     * Checks whether the table of the entity type is one of the query spaces.
+     *
+     * @param entityType  the entity class
+     * @param querySpaces the table names, compared case-insensitively
+     * @return {@code true} if the entity's table is in the query spaces
+     */
+    public static boolean isInQuerySpaces(Class<?> entityType, Set<String> querySpaces) {
+        String tableName = ParameterNameResolver.resolveTableName(entityType);
+        return querySpaces.stream().anyMatch(tableName::equalsIgnoreCase);
+    }
+
+    /**
+     * Returns the queued types whose table is in the query spaces, together with all queued types related
+     * to them through references in either direction.
+     */
+    private Set<Class<?>> typesAffecting(Set<Class<?>> queuedTypes, Set<String> querySpaces) {
+        Set<Class<?>> affectedTypes = new LinkedHashSet<>();
+        queuedTypes.stream()
+                .filter(entityType -> isInQuerySpaces(entityType, querySpaces))
+                .forEach(affectedTypes::add);
+
+        boolean expanded = !affectedTypes.isEmpty();
+        while (expanded) {
+            expanded = false;
+            for (Class<?> queuedType : queuedTypes) {
+                if (!affectedTypes.contains(queuedType) && isRelated(queuedType, affectedTypes)) {
+                    affectedTypes.add(queuedType);
+                    expanded = true;
+                }
+            }
+        }
+
+        return affectedTypes;
+    }
+
+    private boolean isRelated(Class<?> entityType, Set<Class<?>> otherTypes) {
+        Set<Class<?>> referencedTypes = referencedTypesOf(entityType);
+        return otherTypes.stream()
+                .anyMatch(otherType -> referencedTypes.contains(otherType) || referencedTypesOf(otherType).contains(entityType));
+    }
+
+    /**
+     * Orders the entity types so that every type comes after the types it references. Among the types
+     * whose references are all satisfied, the one queued first is taken.
+     */
+    private List<Class<?>> sortByDependencies(Set<Class<?>> entityTypes) {
+        List<Class<?>> remainingTypes = new ArrayList<>(entityTypes);
+        List<Class<?>> sortedTypes = new ArrayList<>(entityTypes.size());
+
+        while (!remainingTypes.isEmpty()) {
+            Class<?> nextType = remainingTypes.stream()
+                    .filter(entityType -> referencedTypesOf(entityType).stream()
+                            .noneMatch(referencedType -> referencedType != entityType && remainingTypes.contains(referencedType)))
+                    .findFirst()
+                    .orElse(null);
+
+            if (nextType == null) {
+                nextType = remainingTypes.get(0);
+                if (log.isDebugEnabled()) {
+                    log.debug("Cyclic references between entity types {}, breaking the cycle at {}",
+                            remainingTypes, nextType.getName());
+                }
+            }
+
+            remainingTypes.remove(nextType);
+            sortedTypes.add(nextType);
+        }
+
+        return sortedTypes;
+    }
+
+    /**
+     * Inserts of an entity type referencing itself are executed one by one, since the referenced row may be
+     * inserted in the same flush and its generated id is only known after its insert is executed.
+     */
+    private boolean isBatchable(ActionPriority priority, Class<?> entityType) {
+        return priority != ActionPriority.PERSIST || !referencedTypesOf(entityType).contains(entityType);
+    }
+
+    private Set<Class<?>> referencedTypesOf(Class<?> entityType) {
+        return referencedTypesCache.computeIfAbsent(entityType, type -> {
+            Set<Class<?>> referencedTypes = new LinkedHashSet<>();
+            for (Field entityField : EntityReflectionUtils.getEntityFields(type)) {
+                referencedTypes.add(entityField.getType());
+            }
+
+            return referencedTypes;
+        });
+    }
+
+    private static Class<?> entityTypeOf(EntityAction action) {
+        EntityKey<?> entityKey = action.getEntityEntry().entityKey();
+        return entityKey.entityType() != null
+                ? entityKey.entityType()
+                : action.getEntityEntry().entity().getClass();
+    }
+}
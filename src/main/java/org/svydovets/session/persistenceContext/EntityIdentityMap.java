@@ -0,0 +1,266 @@
+package org.svydovets.session.persistenceContext;
+
+/**
+ * Identity map for the managed entities of one entity type, based on open addressing with linear probing.
+ *
+ * <p>Each slot of the table holds the identifier, the managed entity instance and its snapshot in parallel
+ * arrays, so an entity costs a single slot instead of separate map entries and key objects. A slot is
+ * free when its entity is {@code null}. Removal uses backward-shift deletion, so no tombstones are left
+ * behind and lookups never degrade after many evictions.</p>
+ *
+ * <p>Subclasses define how identifiers are stored, hashed and compared, which allows a specialization
+ * for numeric identifiers that never boxes or allocates on lookup.</p>
+ */
+abstract class EntityIdentityMap {
+
+    static final int DEFAULT_CAPACITY = 16;
+    private static final float LOAD_FACTOR = 0.5f;
+
+    protected Object[] entities;
+    protected Object[][] snapshots;
+    protected int mask;
+    private int size;
+    private int resizeThreshold;
+
+    EntityIdentityMap(int capacity) {
+        allocate(tableSizeFor(capacity));
+    }
+
+    /**
+     * Returns {@code true} if the given identifier can be stored in this map.
+     */
+    boolean supportsId(Object id) {
+        return true;
+    }
+
+    /**
+     * Returns the slot holding the given identifier, or {@code -1} if it is absent.
+     */
+    abstract int indexOf(Object id);
+
+    /**
+     * Returns the home slot of the identifier stored in the given slot.
+     */
+    abstract int homeSlotOf(int slot);
+
+    /**
+     * Returns the first slot probed for the given identifier.
+     */
+    abstract int homeSlotOf(Object id);
+
+    /**
+     * Returns {@code true} if the given slot holds the given identifier.
+     */
+    abstract boolean keyEquals(int slot, Object id);
+
+    /**
+     * Stores the identifier in the given slot.
+     */
+    abstract void setKey(int slot, Object id);
+
+    /**
+     * Returns the identifier stored in the given slot, boxed to the entity's identifier type.
+     */
+    abstract Object keyAt(int slot);
+
+    /**
+     * Copies the identifier of slot {@code from} to slot {@code to}.
+     */
+    abstract void moveKey(int from, int to);
+
+    /**
+     * Clears the identifier stored in the given slot.
+     */
+    abstract void clearKey(int slot);
+
+    /**
+     * Allocates key storage for a table of the given size.
+     */
+    abstract void allocateKeys(int tableSize);
+
+    /**
+     * Returns the current key storage, used as the source of a rehash.
+     */
+    abstract Object keys();
+
+    /**
+     * Stores the identifier found in slot {@code oldSlot} of the old key storage into a free slot
+     * of the current table and returns that slot.
+     */
+    abstract int rehash(Object oldKeys, int oldSlot);
+
+    /**
+     * Returns the first free slot in the probe sequence starting at the given home slot.
+     */
+    int freeSlotFrom(int homeSlot) {
+        int slot = homeSlot;
+        while (entities[slot] != null) {
+            slot = (slot + 1) & mask;
+        }
+
+        return slot;
+    }
+
+    Object getEntity(Object id) {
+        int slot = indexOf(id);
+        return slot < 0 ? null : entities[slot];
+    }
+
+    Object[] getSnapshot(Object id) {
+        int slot = indexOf(id);
+        return slot < 0 ? null : snapshots[slot];
+    }
+
+    boolean containsKey(Object id) {
+        return indexOf(id) >= 0;
+    }
+
+    /**
+     * Puts the entity with the given identifier, keeping the snapshot of a previously stored entity.
+     *
+     * @return the previously stored entity, or {@code null}
+     */
+    Object put(Object id, Object entity) {
+        if (entity == null) {
+            throw new IllegalArgumentException("Managed entity cannot be null");
+        }
+
+        int slot = homeSlotOf(id);
+        while (entities[slot] != null) {
+            if (keyEquals(slot, id)) {
+                Object previousEntity = entities[slot];
+                entities[slot] = entity;
+                return previousEntity;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        setKey(slot, id);
+        entities[slot] = entity;
+        if (++size > resizeThreshold) {
+            resize();
+        }
+
+        return null;
+    }
+
+    /**
+     * Replaces the snapshot of a stored entity.
+     *
+     * @return the previous snapshot, or {@code null}
+     * @throws IllegalStateException if no entity with the identifier is stored
+     */
+    Object[] putSnapshot(Object id, Object[] snapshot) {
+        int slot = indexOf(id);
+        if (slot < 0) {
+            throw new IllegalStateException(String.format("Entity with id [%s] is not managed", id));
+        }
+
+        Object[] previousSnapshot = snapshots[slot];
+        snapshots[slot] = snapshot;
+        return previousSnapshot;
+    }
+
+    /**
+     * Removes the entity with the given identifier.
+     *
+     * @return the snapshot of the removed entity, or {@code null} if the entity was absent or had no snapshot
+     */
+    Object[] remove(Object id) {
+        int slot = indexOf(id);
+        if (slot < 0) {
+            return null;
+        }
+
+        Object[] removedSnapshot = snapshots[slot];
+        deleteSlot(slot);
+        size--;
+
+        return removedSnapshot;
+    }
+
+    int size() {
+        return size;
+    }
+
+    void clear() {
+        if (size == 0) {
+            return;
+        }
+
+        allocate(tableSizeFor(DEFAULT_CAPACITY));
+        size = 0;
+    }
+
+    void forEach(Class<?> entityType, PersistenceContext.EntityConsumer consumer) {
+        Object[] currentEntities = entities;
+        for (int slot = 0; slot < currentEntities.length; slot++) {
+            if (currentEntities[slot] != null) {
+                consumer.accept(entityType, keyAt(slot), currentEntities[slot], snapshots[slot]);
+            }
+        }
+    }
+
+    private void deleteSlot(int freedSlot) {
+        entities[freedSlot] = null;
+        snapshots[freedSlot] = null;
+        clearKey(freedSlot);
+
+        int slot = freedSlot;
+        while (true) {
+            slot = (slot + 1) & mask;
+            if (entities[slot] == null) {
+                return;
+            }
+
+            int homeSlot = homeSlotOf(slot);
+            boolean reachableFromHome = freedSlot <= slot
+                    ? freedSlot < homeSlot && homeSlot <= slot
+                    : freedSlot < homeSlot || homeSlot <= slot;
+            if (reachableFromHome) {
+                continue;
+            }
+
+            moveKey(slot, freedSlot);
+            entities[freedSlot] = entities[slot];
+            snapshots[freedSlot] = snapshots[slot];
+            entities[slot] = null;
+            snapshots[slot] = null;
+            clearKey(slot);
+            freedSlot = slot;
+        }
+    }
+
+    private void resize() {
+        Object[] oldEntities = entities;
+        Object[][] oldSnapshots = snapshots;
+        Object oldKeys = keys();
+
+        allocate(oldEntities.length << 1);
+        for (int oldSlot = 0; oldSlot < oldEntities.length; oldSlot++) {
+            if (oldEntities[oldSlot] != null) {
+                int slot = rehash(oldKeys, oldSlot);
+                entities[slot] = oldEntities[oldSlot];
+                snapshots[slot] = oldSnapshots[oldSlot];
+            }
+        }
+    }
+
+    private void allocate(int tableSize) {
+        entities = new Object[tableSize];
+        snapshots = new Object[tableSize][];
+        mask = tableSize - 1;
+        resizeThreshold = (int) (tableSize * LOAD_FACTOR);
+        allocateKeys(tableSize);
+    }
+
+    private static int tableSizeFor(int capacity) {
+        int tableSize = Integer.highestOneBit(Math.max(DEFAULT_CAPACITY, capacity) - 1) << 1;
+        return Math.max(tableSize, DEFAULT_CAPACITY);
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[size=" + size + ", capacity=" + entities.length + "]";
+    }
+}
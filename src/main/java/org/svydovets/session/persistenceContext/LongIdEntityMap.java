@@ -0,0 +1,127 @@
+package org.svydovets.session.persistenceContext;
+
+/**
+ * {@link EntityIdentityMap} specialized for {@code long} and {@code int} identifiers. Identifiers are kept
+ * in a primitive {@code long[]}, so lookups neither box nor allocate, and the boxed identifier is only
+ * created again when the map is iterated. Identifiers of other types, e.g. a {@code String} passed to
+ * {@code findById}, are not supported and are kept by the persistence context in a generic map instead.
+ */
+final class LongIdEntityMap extends EntityIdentityMap {
+
+    private static final long GOLDEN_RATIO = 0x9E3779B97F4A7C15L;
+
+    private final boolean intIds;
+    private long[] keys;
+
+    /**
+     * @param intIds   {@code true} if the entity identifiers are {@code int}/{@code Integer},
+     *                 {@code false} if they are {@code long}/{@code Long}
+     * @param capacity the initial capacity
+     */
+    LongIdEntityMap(boolean intIds, int capacity) {
+        super(capacity);
+        this.intIds = intIds;
+    }
+
+    /**
+     * Returns the slot holding the given identifier, or {@code -1} if it is absent.
+     */
+    int indexOf(long id) {
+        int slot = hash(id) & mask;
+        while (entities[slot] != null) {
+            if (keys[slot] == id) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        return -1;
+    }
+
+    @Override
+    boolean supportsId(Object id) {
+        return id == null || id instanceof Long || id instanceof Integer || id instanceof Short || id instanceof Byte;
+    }
+
+    @Override
+    int indexOf(Object id) {
+        return id == null ? -1 : indexOf(toLong(id));
+    }
+
+    @Override
+    int homeSlotOf(int slot) {
+        return hash(keys[slot]) & mask;
+    }
+
+    @Override
+    int homeSlotOf(Object id) {
+        return hash(toLong(id)) & mask;
+    }
+
+    @Override
+    boolean keyEquals(int slot, Object id) {
+        return keys[slot] == toLong(id);
+    }
+
+    @Override
+    void setKey(int slot, Object id) {
+        keys[slot] = toLong(id);
+    }
+
+    @Override
+    Object keyAt(int slot) {
+        if (intIds) {
+            return Integer.valueOf((int) keys[slot]);
+        }
+
+        return Long.valueOf(keys[slot]);
+    }
+
+    @Override
+    void moveKey(int from, int to) {
+        keys[to] = keys[from];
+    }
+
+    @Override
+    void clearKey(int slot) {
+        keys[slot] = 0;
+    }
+
+    @Override
+    void allocateKeys(int tableSize) {
+        keys = new long[tableSize];
+    }
+
+    @Override
+    Object keys() {
+        return keys;
+    }
+
+    @Override
+    int rehash(Object oldKeys, int oldSlot) {
+        long id = ((long[]) oldKeys)[oldSlot];
+        int slot = freeSlotFrom(hash(id) & mask);
+        keys[slot] = id;
+
+        return slot;
+    }
+
+    private static int hash(long id) {
+        long hash = id * GOLDEN_RATIO;
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    private static long toLong(Object id) {
+        if (id instanceof Long longId) {
+            return longId;
+        } else if (id instanceof Integer intId) {
+            return intId;
+        } else if (id instanceof Short || id instanceof Byte) {
+            return ((Number) id).longValue();
+        }
+
+        throw new IllegalArgumentException(String.format(
+                "Identifier [%s] is expected to be a number, but was %s",
+                id, id == null ? null : id.getClass().getName()));
+    }
+}
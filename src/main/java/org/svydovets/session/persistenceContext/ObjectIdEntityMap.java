@@ -0,0 +1,92 @@
+package org.svydovets.session.persistenceContext;
+
+import java.util.Objects;
+
+/**
+ * Generic {@link EntityIdentityMap} for identifiers of any type, e.g. {@code String} or {@code UUID}.
+ * Identifiers are compared with {@link Object#equals(Object)}.
+ */
+final class ObjectIdEntityMap extends EntityIdentityMap {
+
+    private Object[] keys;
+
+    ObjectIdEntityMap(int capacity) {
+        super(capacity);
+    }
+
+    @Override
+    int indexOf(Object id) {
+        if (id == null) {
+            return -1;
+        }
+
+        int slot = hash(id) & mask;
+        while (entities[slot] != null) {
+            if (id.equals(keys[slot])) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        return -1;
+    }
+
+    @Override
+    int homeSlotOf(int slot) {
+        return hash(keys[slot]) & mask;
+    }
+
+    @Override
+    int homeSlotOf(Object id) {
+        return hash(Objects.requireNonNull(id, "Identifier of managed entity cannot be null")) & mask;
+    }
+
+    @Override
+    boolean keyEquals(int slot, Object id) {
+        return id.equals(keys[slot]);
+    }
+
+    @Override
+    void setKey(int slot, Object id) {
+        keys[slot] = id;
+    }
+
+    @Override
+    Object keyAt(int slot) {
+        return keys[slot];
+    }
+
+    @Override
+    void moveKey(int from, int to) {
+        keys[to] = keys[from];
+    }
+
+    @Override
+    void clearKey(int slot) {
+        keys[slot] = null;
+    }
+
+    @Override
+    void allocateKeys(int tableSize) {
+        keys = new Object[tableSize];
+    }
+
+    @Override
+    Object keys() {
+        return keys;
+    }
+
+    @Override
+    int rehash(Object oldKeys, int oldSlot) {
+        Object id = ((Object[]) oldKeys)[oldSlot];
+        int slot = freeSlotFrom(hash(id) & mask);
+        keys[slot] = id;
+
+        return slot;
+    }
+
+    private static int hash(Object id) {
+        int hash = id.hashCode();
+        return hash ^ (hash >>> 16);
+    }
+}
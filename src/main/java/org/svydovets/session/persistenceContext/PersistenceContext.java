@@ -0,0 +1,237 @@
+package org.svydovets.session.persistenceContext;
+
+import org.svydovets.session.EntityKey;
+import org.svydovets.util.EntityReflectionUtils;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The first-level cache of a session: keeps the managed entity instances together with the snapshots
+ * of their state taken when they entered the session.
+ *
+ * <p>Entities are stored in a separate identity map per entity type. Types with {@code long}/{@code int}
+ * identifiers use a map specialized for primitive keys, all other types use a generic one. Both are
+ * open-addressing tables that keep the entity and its snapshot in parallel arrays, so looking an entity up
+ * allocates nothing and each managed entity costs a single table slot. Identifiers the specialized map
+ * cannot store, e.g. a {@code String} passed for a {@code long} identifier, are kept in a generic map of
+ * their own, so they are told apart from the numeric identifiers as they would be by {@link EntityKey}.</p>
+ *
+ * <p>This class is not thread-safe, just like the session that owns it.</p>
+ */
+public class PersistenceContext {
+
+    private final Map<Class<?>, EntityIdentityMap> identityMaps;
+    private final Map<Class<?>, EntityIdentityMap> fallbackIdentityMaps;
+    private Class<?> lastEntityType;
+    private EntityIdentityMap lastIdentityMap;
+    private int size;
+
+    public PersistenceContext() {
+        this.identityMaps = new HashMap<>();
+        this.fallbackIdentityMaps = new HashMap<>();
+    }
+
+    /**
+     * Returns the managed entity with the given type and identifier.
+     *
+     * @param entityType the class of the entity
+     * @param id         the identifier of the entity
+     * @return the managed entity, or {@code null} if it is not in the persistence context
+     */
+    public Object getEntity(Class<?> entityType, Object id) {
+        EntityIdentityMap identityMap = findIdentityMap(entityType, id);
+        return identityMap == null ? null : identityMap.getEntity(id);
+    }
+
+    /**
+     * Returns the managed entity identified by the key.
+     *
+     * @param entityKey the key of the entity
+     * @return the managed entity, or {@code null} if it is not in the persistence context
+     */
+    public Object getEntity(EntityKey<?> entityKey) {
+        return getEntity(entityKey.entityType(), entityKey.id());
+    }
+
+    /**
+     * Returns the snapshot of the managed entity with the given type and identifier.
+     *
+     * @param entityType the class of the entity
+     * @param id         the identifier of the entity
+     * @return the snapshot, or {@code null} if the entity is not in the persistence context
+     */
+    public Object[] getSnapshot(Class<?> entityType, Object id) {
+        EntityIdentityMap identityMap = findIdentityMap(entityType, id);
+        return identityMap == null ? null : identityMap.getSnapshot(id);
+    }
+
+    /**
+     * Checks whether an entity with the given type and identifier is in the persistence context.
+     *
+     * @param entityType the class of the entity
+     * @param id         the identifier of the entity
+     * @return {@code true} if the entity is managed, {@code false} otherwise
+     */
+    public boolean containsKey(Class<?> entityType, Object id) {
+        EntityIdentityMap identityMap = findIdentityMap(entityType, id);
+        return identityMap != null && identityMap.containsKey(id);
+    }
+
+    /**
+     * Checks whether an entity identified by the key is in the persistence context.
+     *
+     * @param entityKey the key of the entity
+     * @return {@code true} if the entity is managed, {@code false} otherwise
+     */
+    public boolean containsKey(EntityKey<?> entityKey) {
+        return containsKey(entityKey.entityType(), entityKey.id());
+    }
+
+    /**
+     * Puts the entity into the persistence context. If an entity with the same type and identifier
+     * is already managed, it is replaced and its snapshot is kept.
+     *
+     * @param entityType the class of the entity
+     * @param id         the identifier of the entity
+     * @param entity     the entity instance
+     * @return the previously managed entity, or {@code null}
+     */
+    public Object putEntity(Class<?> entityType, Object id, Object entity) {
+        Object previousEntity = getOrCreateIdentityMap(entityType, id).put(id, entity);
+        if (previousEntity == null) {
+            size++;
+        }
+
+        return previousEntity;
+    }
+
+    /**
+     * Replaces the snapshot of a managed entity.
+     *
+     * @param entityType the class of the entity
+     * @param id         the identifier of the entity
+     * @param snapshot   the new snapshot
+     * @return the previous snapshot, or {@code null}
+     * @throws IllegalStateException if the entity is not in the persistence context
+     */
+    public Object[] putSnapshot(Class<?> entityType, Object id, Object[] snapshot) {
+        return getOrCreateIdentityMap(entityType, id).putSnapshot(id, snapshot);
+    }
+
+    /**
+     * Removes the entity with the given type and identifier from the persistence context.
+     *
+     * @param entityType the class of the entity
+     * @param id         the identifier of the entity
+     * @return the snapshot of the removed entity, or {@code null} if there was none
+     */
+    public Object[] remove(Class<?> entityType, Object id) {
+        EntityIdentityMap identityMap = findIdentityMap(entityType, id);
+        if (identityMap == null || !identityMap.containsKey(id)) {
+            return null;
+        }
+
+        size--;
+        return identityMap.remove(id);
+    }
+
+    /**
+     * Returns the number of managed entities of all types.
+     *
+     * @return the number of managed entities
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Removes all entities from the persistence context.
+     */
+    public void clear() {
+        identityMaps.values().forEach(EntityIdentityMap::clear);
+        fallbackIdentityMaps.values().forEach(EntityIdentityMap::clear);
+        size = 0;
+    }
+
+    /**
+     * Performs the given action for each managed entity.
+     *
+     * @param consumer the action to perform
+     */
+    public void forEach(EntityConsumer consumer) {
+        identityMaps.forEach((entityType, identityMap) -> identityMap.forEach(entityType, consumer));
+        fallbackIdentityMaps.forEach((entityType, identityMap) -> identityMap.forEach(entityType, consumer));
+    }
+
+    private EntityIdentityMap findIdentityMap(Class<?> entityType, Object id) {
+        EntityIdentityMap identityMap = findIdentityMap(entityType);
+        if (identityMap == null || identityMap.supportsId(id)) {
+            return identityMap;
+        }
+
+        return fallbackIdentityMaps.get(entityType);
+    }
+
+    private EntityIdentityMap getOrCreateIdentityMap(Class<?> entityType, Object id) {
+        EntityIdentityMap identityMap = getOrCreateIdentityMap(entityType);
+        if (identityMap.supportsId(id)) {
+            return identityMap;
+        }
+
+        return fallbackIdentityMaps.computeIfAbsent(entityType,
+                type -> new ObjectIdEntityMap(EntityIdentityMap.DEFAULT_CAPACITY));
+    }
+
+    private EntityIdentityMap findIdentityMap(Class<?> entityType) {
+        if (entityType == lastEntityType) {
+            return lastIdentityMap;
+        }
+
+        EntityIdentityMap identityMap = identityMaps.get(entityType);
+        if (identityMap != null) {
+            lastEntityType = entityType;
+            lastIdentityMap = identityMap;
+        }
+
+        return identityMap;
+    }
+
+    private EntityIdentityMap getOrCreateIdentityMap(Class<?> entityType) {
+        EntityIdentityMap identityMap = findIdentityMap(entityType);
+        if (identityMap == null) {
+            identityMap = createIdentityMap(entityType);
+            identityMaps.put(entityType, identityMap);
+            lastEntityType = entityType;
+            lastIdentityMap = identityMap;
+        }
+
+        return identityMap;
+    }
+
+    private static EntityIdentityMap createIdentityMap(Class<?> entityType) {
+        Class<?> idType = EntityReflectionUtils.getIdField(entityType).getType();
+        if (idType == long.class || idType == Long.class) {
+            return new LongIdEntityMap(false, EntityIdentityMap.DEFAULT_CAPACITY);
+        } else if (idType == int.class || idType == Integer.class) {
+            return new LongIdEntityMap(true, EntityIdentityMap.DEFAULT_CAPACITY);
+        }
+
+        return new ObjectIdEntityMap(EntityIdentityMap.DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Action performed for a managed entity by {@link #forEach(EntityConsumer)}.
+     */
+    @FunctionalInterface
+    public interface EntityConsumer {
+
+        /**
+         * @param entityType the class of the entity
+         * @param id         the identifier of the entity
+         * @param entity     the managed entity instance
+         * @param snapshot   the snapshot of the entity, may be {@code null}
+         */
+        void accept(Class<?> entityType, Object id, Object entity, Object[] snapshot);
+    }
+}
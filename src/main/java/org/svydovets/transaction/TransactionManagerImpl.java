@@ -2,54 +2,96 @@ package org.svydovets.transaction;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.svydovets.cache.SecondLevelCache;
 import org.svydovets.connectionPool.datasource.ConnectionHandler;
+import org.svydovets.session.FlushMode;
 import org.svydovets.session.actionQueue.executor.ActionQueue;
 
+import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.function.Supplier;
 
 /**
  * Implementation of the {@link TransactionManager} interface.
  * This class manages database transactions by handling the beginning, committing, and rollback of transactions.
  * It also provides a method to check if a transaction is currently active.
+ *
+ * <p>The state of the transaction belongs to the manager, one per session. The connection of the transaction is
+ * bound to the connection handler of the session, so only that session uses it, whatever thread it runs on,
+ * while other sessions keep using connections of their own.</p>
  */
 public class TransactionManagerImpl implements TransactionManager {
 
     private static final Logger log = LoggerFactory.getLogger(TransactionManagerImpl.class);
     private boolean isActive;
+    private Connection connection;
     private final ConnectionHandler connectionHandler;
     private final ActionQueue actionQueue;
+    private final Supplier<FlushMode> flushModeSupplier;
+    private final SecondLevelCache secondLevelCache;
 
     /**
      * Constructs a new {@code TransactionManagerImpl} with the specified {@link ConnectionHandler}.
+     * Accumulated actions are flushed on commit.
      *
      * @param connectionHandler the connection handler used for managing database connections.
      */
     public TransactionManagerImpl(ConnectionHandler connectionHandler, ActionQueue actionQueue) {
+        this(connectionHandler, actionQueue, () -> FlushMode.AUTO);
+    }
+
+    /**
+     * Constructs a new {@code TransactionManagerImpl} that flushes accumulated actions on commit
+     * unless the current flush mode is {@link FlushMode#MANUAL}.
+     *
+     * @param connectionHandler the connection handler used for managing database connections.
+     * @param actionQueue       the queue of actions flushed on commit.
+     * @param flushModeSupplier the supplier of the current flush mode of the session.
+     */
+    public TransactionManagerImpl(ConnectionHandler connectionHandler, ActionQueue actionQueue,
+                                  Supplier<FlushMode> flushModeSupplier) {
+        this(connectionHandler, actionQueue, flushModeSupplier, null);
+    }
+
+    /**
+     * Constructs a new {@code TransactionManagerImpl} that also completes the transaction in the second-level
+     * cache, which invalidates and publishes the changes of committed transactions.
+     *
+     * @param connectionHandler the connection handler used for managing database connections.
+     * @param actionQueue       the queue of actions flushed on commit.
+     * @param flushModeSupplier the supplier of the current flush mode of the session.
+     * @param secondLevelCache  the second-level cache of the session, may be {@code null}.
+     */
+    public TransactionManagerImpl(ConnectionHandler connectionHandler, ActionQueue actionQueue,
+                                  Supplier<FlushMode> flushModeSupplier, SecondLevelCache secondLevelCache) {
         this.connectionHandler = connectionHandler;
         this.actionQueue = actionQueue;
+        this.flushModeSupplier = flushModeSupplier;
+        this.secondLevelCache = secondLevelCache;
     }
 
     /**
      * Begins a new transaction. If a transaction is already active, this method throws a {@link TransactionException}.
-     * It sets the auto-commit mode of the database connection to false, indicating the start of a transaction.
+     * It binds a connection to the connection handler of the session and sets its auto-commit mode to false,
+     * indicating the start of a transaction.
      */
     @Override
     public void begin() {
         if (isActive) {
             throw new TransactionException("Transaction was started");
         }
-
-        if (log.isInfoEnabled()) {
-            log.info("Transaction was started");
-        }
-
         try {
+            connection = connectionHandler.bindTransactionConnection();
+            connection.setAutoCommit(false);
             isActive = true;
-            connectionHandler.getConnectionAttributes().setTransactionActivated(true);
-            connectionHandler.getConnection().setAutoCommit(false);
         } catch (SQLException e) {
+            releaseConnection();
             throw new TransactionException(e.getMessage(), e);
         }
+
+        if (log.isInfoEnabled()) {
+            log.info("Transaction was started");
+        }
     }
 
     /**
@@ -63,11 +105,15 @@ public class TransactionManagerImpl implements TransactionManager {
         }
 
         try {
-            actionQueue.performAccumulatedActions();
-            connectionHandler.getConnection().commit();
-            connectionHandler.closeConnectionByThreadName();
+            if (flushModeSupplier.get() != FlushMode.MANUAL) {
+                actionQueue.performAccumulatedActions();
+            }
+            connection.commit();
+            if (secondLevelCache != null) {
+                secondLevelCache.completeTransaction(connection, true);
+            }
             isActive = false;
-            connectionHandler.getConnectionAttributes().setTransactionActivated(false);
+            releaseConnection();
 
             if (log.isInfoEnabled()) {
                 log.info("Transaction was commit");
@@ -79,7 +125,8 @@ public class TransactionManagerImpl implements TransactionManager {
 
     /**
      * Rolls back the current transaction. If there is no active transaction, this method throws a {@link TransactionException}.
-     * It also sets the transaction state as inactive and resets the connection's auto-commit mode.
+     * It also sets the transaction state as inactive and resets the connection's auto-commit mode. The connection
+     * is released even if the rollback fails.
      */
     @Override
     public void callback() {
@@ -88,15 +135,25 @@ public class TransactionManagerImpl implements TransactionManager {
         }
 
         try {
-            connectionHandler.getConnection().rollback();
-            isActive = false;
-            connectionHandler.getConnectionAttributes().setTransactionActivated(false);
-            connectionHandler.closeConnectionByThreadName();
+            connection.rollback();
             if (log.isInfoEnabled()) {
                 log.info("Transaction was rollback");
             }
         } catch (SQLException e) {
             throw new TransactionException(e.getMessage(), e);
+        } finally {
+            if (secondLevelCache != null) {
+                secondLevelCache.completeTransaction(connection, false);
+            }
+            isActive = false;
+            releaseConnection();
+        }
+    }
+
+    private void releaseConnection() {
+        if (connection != null) {
+            connectionHandler.releaseTransactionConnection(connection);
+            connection = null;
         }
     }
 
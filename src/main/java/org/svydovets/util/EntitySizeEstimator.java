@@ -0,0 +1,97 @@
+package org.svydovets.util;
+
+import java.lang.reflect.Field;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.time.temporal.Temporal;
+import java.util.Date;
+import java.util.UUID;
+
+/**
+ * Gives a rough estimate of how much heap memory an entity occupies while it is held by the framework,
+ * e.g. in the persistence context of a session or in the action queue.
+ *
+ * <p>The estimate is computed from the entity state (the values of its column and join column fields)
+ * and assumes a 64-bit JVM with compressed references. It is intended for enforcing memory budgets
+ * cheaply and is neither exact nor recursive.</p>
+ */
+public class EntitySizeEstimator {
+
+    /**
+     * Approximate cost of the bookkeeping around one managed entity: the key, the map entries and
+     * the object headers of the entity and of its state array.
+     */
+    private static final long ENTITY_OVERHEAD_BYTES = 128;
+    private static final long REFERENCE_BYTES = 4;
+    private static final long STRING_OVERHEAD_BYTES = 40;
+    private static final long ARRAY_OVERHEAD_BYTES = 16;
+    private static final long SMALL_BOX_BYTES = 16;
+    private static final long LARGE_BOX_BYTES = 24;
+    private static final long BIG_NUMBER_BYTES = 64;
+    private static final long UNKNOWN_VALUE_BYTES = 32;
+
+    private EntitySizeEstimator() {
+    }
+
+    /**
+     * Estimates the memory occupied by an entity with the given state.
+     *
+     * @param state The values of the entity fields, e.g. a snapshot taken by the session.
+     * @return The estimated number of bytes.
+     */
+    public static long estimateBytes(Object[] state) {
+        if (state == null) {
+            return ENTITY_OVERHEAD_BYTES;
+        }
+
+        long bytes = ENTITY_OVERHEAD_BYTES + 2 * REFERENCE_BYTES * state.length;
+        for (Object value : state) {
+            bytes += estimateValueBytes(value);
+        }
+
+        return bytes;
+    }
+
+    /**
+     * Estimates the memory occupied by the given entity from its current field values. Referenced
+     * entities are counted as references only.
+     *
+     * @param entity The entity instance.
+     * @return The estimated number of bytes.
+     */
+    public static long estimateEntityBytes(Object entity) {
+        Field[] fields = EntityReflectionUtils.getEntityFieldsSortedByName(entity.getClass());
+        long bytes = ENTITY_OVERHEAD_BYTES + REFERENCE_BYTES * fields.length;
+        for (Field field : fields) {
+            if (!EntityReflectionUtils.isEntityField(field)) {
+                bytes += estimateValueBytes(EntityReflectionUtils.getFieldValue(entity, field));
+            }
+        }
+
+        return bytes;
+    }
+
+    /**
+     * Estimates the memory occupied by a single field value.
+     *
+     * @param value The field value.
+     * @return The estimated number of bytes, {@code 0} for {@code null}.
+     */
+    public static long estimateValueBytes(Object value) {
+        if (value == null) {
+            return 0;
+        } else if (value instanceof String string) {
+            return STRING_OVERHEAD_BYTES + string.length();
+        } else if (value instanceof Long || value instanceof Double) {
+            return LARGE_BOX_BYTES;
+        } else if (value instanceof Number || value instanceof Boolean || value instanceof Character) {
+            return value instanceof BigDecimal || value instanceof BigInteger ? BIG_NUMBER_BYTES : SMALL_BOX_BYTES;
+        } else if (value instanceof byte[] bytes) {
+            return ARRAY_OVERHEAD_BYTES + bytes.length;
+        } else if (value instanceof Temporal || value instanceof Date || value instanceof UUID) {
+            return LARGE_BOX_BYTES;
+        }
+
+        return UNKNOWN_VALUE_BYTES;
+    }
+}
@@ -70,6 +70,20 @@ public class SqlQueryUtil {
         return updateBuilder.toString();
     }
 
+    /**
+     * Generates a string for the {@code do update} part of an SQL upsert statement that sets each updatable
+     * column to the value the conflicting INSERT proposed, e.g. {@code first_name = excluded.first_name}.
+     *
+     * @param entityType The class of the entity for which to construct the upsert statement part.
+     * @return A string suitable for the SET part of an {@code on conflict do update} clause.
+     */
+    public static String resolveUpdatableColumnsWithExcludedValues(Class<?> entityType) {
+        return Arrays.stream(EntityReflectionUtils.getUpdatableFields(entityType))
+                .map(ParameterNameResolver::resolveColumnName)
+                .map(columnName -> columnName + " = excluded." + columnName)
+                .collect(Collectors.joining(", "));
+    }
+
     public static String pessimisticLockBuildPostfixQuery(String sql, PessimisticLockStrategy lock){
         return switch (lock){
             case ENABLE_PESSIMISTIC_READ -> sql + POSTFIX_LOCK_FOR_UPDATE;
@@ -0,0 +1,29 @@
+package org.svydovets.baseEntity;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.svydovets.annotation.Cacheable;
+import org.svydovets.annotation.Column;
+import org.svydovets.annotation.Entity;
+import org.svydovets.annotation.Id;
+import org.svydovets.annotation.JoinColumn;
+import org.svydovets.annotation.ManyToOne;
+import org.svydovets.annotation.Table;
+
+@Entity
+@Table(name = "cities")
+@Cacheable
+@Getter
+@Setter
+public class City {
+
+    @Id
+    private Long id;
+
+    @Column
+    private String name;
+
+    @ManyToOne
+    @JoinColumn(name = "country_id")
+    private Country country;
+}
@@ -0,0 +1,24 @@
+package org.svydovets.baseEntity;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.svydovets.annotation.Cacheable;
+import org.svydovets.annotation.Column;
+import org.svydovets.annotation.Entity;
+import org.svydovets.annotation.Id;
+import org.svydovets.annotation.Table;
+import org.svydovets.cache.EvictionPolicy;
+
+@Entity
+@Table(name = "countries")
+@Cacheable(maxEntries = 100, eviction = EvictionPolicy.LRU)
+@Getter
+@Setter
+public class Country {
+
+    @Id
+    private Long id;
+
+    @Column
+    private String name;
+}
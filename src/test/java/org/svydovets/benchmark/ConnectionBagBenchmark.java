@@ -0,0 +1,90 @@
+package org.svydovets.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.svydovets.connectionPool.datasource.ConcurrentBag;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the {@link ConcurrentBag} of the pooled data source with the fair {@code ArrayBlockingQueue} it
+ * replaced: one borrow, a short use and the return of a pooled entry, with 1, 8, 64 and 256 threads sharing
+ * a pool of {@code poolSize} entries.
+ *
+ * <p>Run {@link #main(String[])} from the IDE, or {@code org.openjdk.jmh.Main ConnectionBagBenchmark -t <threads>}
+ * on the test classpath after {@code mvn test-compile}.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConnectionBagBenchmark {
+
+    private static final int[] THREADS = {1, 8, 64, 256};
+    private static final long BORROW_TIMEOUT_SECONDS = 10;
+
+    @Param({"10"})
+    private int poolSize;
+
+    @Param({"50"})
+    private int useTokens;
+
+    private ArrayBlockingQueue<PooledEntry> queue;
+    private ConcurrentBag<PooledEntry> bag;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        queue = new ArrayBlockingQueue<>(poolSize, true);
+        bag = new ConcurrentBag<>();
+        for (int i = 0; i < poolSize; i++) {
+            queue.add(new PooledEntry());
+            bag.add(new PooledEntry());
+        }
+    }
+
+    @Benchmark
+    public void borrowFromQueue(Blackhole blackhole) throws InterruptedException {
+        PooledEntry entry = queue.poll(BORROW_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        blackhole.consume(entry);
+        Blackhole.consumeCPU(useTokens);
+        queue.add(entry);
+    }
+
+    @Benchmark
+    public void borrowFromBag(Blackhole blackhole) throws InterruptedException {
+        PooledEntry entry = bag.borrow(BORROW_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        blackhole.consume(entry);
+        Blackhole.consumeCPU(useTokens);
+        bag.requite(entry);
+    }
+
+    public static class PooledEntry extends ConcurrentBag.Entry {
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        for (int threads : THREADS) {
+            new Runner(new OptionsBuilder()
+                    .include(ConnectionBagBenchmark.class.getSimpleName())
+                    .threads(threads)
+                    .build())
+                    .run();
+        }
+    }
+}
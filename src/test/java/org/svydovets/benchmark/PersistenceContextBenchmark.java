@@ -0,0 +1,112 @@
+package org.svydovets.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.svydovets.baseEntity.PersonSessionTest;
+import org.svydovets.session.EntityKey;
+import org.svydovets.session.persistenceContext.PersistenceContext;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the persistence context with the pair of {@code HashMap}s keyed by {@link EntityKey}
+ * it replaced: lookup of a managed entity and filling the context with {@code managedEntities} entities.
+ *
+ * <p>Run {@link #main(String[])} from the IDE, or {@code org.openjdk.jmh.Main PersistenceContextBenchmark}
+ * on the test classpath after {@code mvn test-compile}.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PersistenceContextBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    private int managedEntities;
+
+    private Map<EntityKey<?>, Object> entitiesCache;
+    private Map<EntityKey<?>, Object[]> entitiesSnapshots;
+    private PersistenceContext persistenceContext;
+    private PersonSessionTest[] persons;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        persons = new PersonSessionTest[managedEntities];
+        for (int i = 0; i < managedEntities; i++) {
+            persons[i] = new PersonSessionTest();
+            persons[i].setId(i);
+        }
+
+        entitiesCache = new HashMap<>();
+        entitiesSnapshots = new HashMap<>();
+        persistenceContext = new PersistenceContext();
+        for (PersonSessionTest person : persons) {
+            EntityKey<PersonSessionTest> entityKey = new EntityKey<>(PersonSessionTest.class, person.getId());
+            entitiesCache.put(entityKey, person);
+            entitiesSnapshots.put(entityKey, new Object[0]);
+            persistenceContext.putEntity(PersonSessionTest.class, person.getId(), person);
+            persistenceContext.putSnapshot(PersonSessionTest.class, person.getId(), new Object[0]);
+        }
+    }
+
+    @Benchmark
+    public Object lookupHashMap() {
+        Integer id = persons[ThreadLocalRandom.current().nextInt(managedEntities)].getId();
+        return entitiesCache.get(new EntityKey<>(PersonSessionTest.class, id));
+    }
+
+    @Benchmark
+    public Object lookupPersistenceContext() {
+        Integer id = persons[ThreadLocalRandom.current().nextInt(managedEntities)].getId();
+        return persistenceContext.getEntity(PersonSessionTest.class, id);
+    }
+
+    @Benchmark
+    public Object insertHashMap() {
+        Map<EntityKey<?>, Object> cache = new HashMap<>();
+        Map<EntityKey<?>, Object[]> snapshots = new HashMap<>();
+        for (PersonSessionTest person : persons) {
+            EntityKey<PersonSessionTest> entityKey = new EntityKey<>(PersonSessionTest.class, person.getId());
+            cache.put(entityKey, person);
+            snapshots.put(entityKey, new Object[0]);
+        }
+
+        return cache;
+    }
+
+    @Benchmark
+    public Object insertPersistenceContext() {
+        PersistenceContext context = new PersistenceContext();
+        for (PersonSessionTest person : persons) {
+            context.putEntity(PersonSessionTest.class, person.getId(), person);
+            context.putSnapshot(PersonSessionTest.class, person.getId(), new Object[0]);
+        }
+
+        return context;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(PersistenceContextBenchmark.class.getSimpleName())
+                .build())
+                .run();
+    }
+}
@@ -0,0 +1,235 @@
+package org.svydovets.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.svydovets.connectionPool.config.DataSourceConfig;
+import org.svydovets.connectionPool.config.PoolConfig;
+import org.svydovets.connectionPool.config.ThreadingMode;
+import org.svydovets.connectionPool.datasource.PooledDataSource;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Stress test of the pooled data source: {@value #SESSIONS} sessions started at once, each borrowing one of
+ * {@value #POOL_SIZE} connections, running a statement that takes the database {@code queryMillis} and returning
+ * the connection. Reports how many sessions complete per second, in both {@link ThreadingMode}s of the pool, with
+ * a virtual thread per session and with the sessions queued on {@value #PLATFORM_THREADS} platform threads.
+ *
+ * <p>The database is simulated by a JDBC driver answering {@code jdbc:simulated:} URLs, so the pool, not the
+ * network, is measured. The best possible throughput is {@code POOL_SIZE * 1000 / queryMillis} sessions per
+ * second. The virtual thread benchmark needs JDK 21 or later.</p>
+ *
+ * <p>Run {@link #main(String[])} from the IDE, or {@code org.openjdk.jmh.Main VirtualThreadPoolBenchmark}
+ * on the test classpath after {@code mvn test-compile}.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class VirtualThreadPoolBenchmark {
+
+    private static final int SESSIONS = 10_000;
+    private static final int POOL_SIZE = 20;
+    private static final int PLATFORM_THREADS = 200;
+    private static final String URL = "jdbc:simulated:bibernate";
+    private static final String UPDATE_SQL = "update persons set first_name = ? where id = ?";
+
+    @Param({"PLATFORM", "VIRTUAL"})
+    private ThreadingMode threadingMode;
+
+    @Param({"1"})
+    private int queryMillis;
+
+    private SimulatedDriver driver;
+    private PooledDataSource dataSource;
+    private ExecutorService platformThreads;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        driver = new SimulatedDriver(queryMillis);
+        DriverManager.registerDriver(driver);
+        dataSource = new PooledDataSource(new DataSourceConfig(URL, "user", "password"), PoolConfig.defaults()
+                .withMaxPoolSize(POOL_SIZE)
+                .withMinIdle(POOL_SIZE)
+                .withConnectionTimeout(Duration.ofMinutes(1))
+                .withThreadingMode(threadingMode));
+        platformThreads = Executors.newFixedThreadPool(PLATFORM_THREADS);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        platformThreads.shutdownNow();
+        dataSource.close();
+        DriverManager.deregisterDriver(driver);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SESSIONS)
+    public void virtualThreadSessions() throws Exception {
+        ExecutorService virtualThreads = newVirtualThreadPerTaskExecutor();
+        try {
+            runSessions(virtualThreads);
+        } finally {
+            virtualThreads.shutdown();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SESSIONS)
+    public void platformThreadSessions() throws Exception {
+        runSessions(platformThreads);
+    }
+
+    private void runSessions(ExecutorService executor) throws InterruptedException, ExecutionException {
+        List<Future<?>> sessions = new ArrayList<>(SESSIONS);
+        for (int i = 0; i < SESSIONS; i++) {
+            long id = i;
+            sessions.add(executor.submit(() -> {
+                try (Connection connection = dataSource.getConnection();
+                     PreparedStatement statement = connection.prepareStatement(UPDATE_SQL)) {
+                    statement.setString(1, "John");
+                    statement.setLong(2, id);
+                    return statement.executeUpdate();
+                }
+            }));
+        }
+        for (Future<?> session : sessions) {
+            session.get();
+        }
+    }
+
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Virtual threads need JDK 21 or later", e);
+        }
+    }
+
+    /**
+     * A JDBC driver whose connections take {@code queryMillis} to execute a statement, sleeping instead of waiting
+     * for a database, and do nothing otherwise.
+     */
+    private static class SimulatedDriver implements Driver {
+
+        private final int queryMillis;
+
+        private SimulatedDriver(int queryMillis) {
+            this.queryMillis = queryMillis;
+        }
+
+        @Override
+        public Connection connect(String url, Properties info) {
+            if (!acceptsURL(url)) {
+                return null;
+            }
+            return proxy(Connection.class, (proxy, method, args) -> switch (method.getName()) {
+                case "getAutoCommit", "isValid" -> true;
+                case "getTransactionIsolation" -> Connection.TRANSACTION_READ_COMMITTED;
+                case "getSchema" -> "public";
+                case "prepareStatement" -> proxy(PreparedStatement.class, (statement, statementMethod, statementArgs) ->
+                        switch (statementMethod.getName()) {
+                            case "executeUpdate" -> {
+                                Thread.sleep(queryMillis);
+                                yield 1;
+                            }
+                            default -> answerDefault(statement, statementMethod, statementArgs);
+                        });
+                default -> answerDefault(proxy, method, args);
+            });
+        }
+
+        @Override
+        public boolean acceptsURL(String url) {
+            return url.startsWith("jdbc:simulated:");
+        }
+
+        @Override
+        public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) {
+            return new DriverPropertyInfo[0];
+        }
+
+        @Override
+        public int getMajorVersion() {
+            return 1;
+        }
+
+        @Override
+        public int getMinorVersion() {
+            return 0;
+        }
+
+        @Override
+        public boolean jdbcCompliant() {
+            return false;
+        }
+
+        @Override
+        public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+            throw new SQLFeatureNotSupportedException();
+        }
+
+        private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+            return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, handler));
+        }
+
+        private static Object answerDefault(Object proxy, Method method, Object[] args) {
+            Class<?> type = method.getReturnType();
+            if (method.getName().equals("equals")) {
+                return proxy == args[0];
+            } else if (method.getName().equals("hashCode")) {
+                return System.identityHashCode(proxy);
+            } else if (type == boolean.class) {
+                return false;
+            } else if (type == int.class) {
+                return 0;
+            } else if (type == long.class) {
+                return 0L;
+            }
+            return null;
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(VirtualThreadPoolBenchmark.class.getSimpleName())
+                .build())
+                .run();
+    }
+}
@@ -0,0 +1,83 @@
+package org.svydovets.cache;
+
+import org.junit.jupiter.api.Test;
+import org.svydovets.baseEntity.City;
+import org.svydovets.baseEntity.Country;
+import org.svydovets.session.EntityKey;
+
+import java.math.BigDecimal;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CacheInvalidationTest {
+
+    @Test
+    void shouldInvalidateWholeEntityTypeOnceTooManyEntitiesChanged() {
+        Set<EntityKey<?>> entityKeys = new HashSet<>();
+        for (long id = 0; id <= CacheInvalidation.MAX_KEYS_PER_ENTITY_TYPE; id++) {
+            entityKeys.add(new EntityKey<>(Country.class, id));
+        }
+        entityKeys.add(new EntityKey<>(City.class, 1L));
+
+        CacheInvalidation invalidation = CacheInvalidation.of("node", entityKeys, Set.of("countries", "cities"));
+
+        assertEquals(Set.of(Country.class), invalidation.entityTypes());
+        assertEquals(Set.of(new EntityKey<>(City.class, 1L)), invalidation.entityKeys());
+    }
+
+    @Test
+    void shouldDecodeEncodedInvalidation() {
+        UUID uuid = UUID.randomUUID();
+        CacheInvalidation invalidation = new CacheInvalidation("node",
+                Set.of(new EntityKey<>(Country.class, 1L), new EntityKey<>(City.class, "Kyiv"), new EntityKey<>(City.class, uuid)),
+                Set.of(), Set.of("countries"));
+
+        assertEquals(invalidation, CacheInvalidation.fromLines(invalidation.toLines()));
+    }
+
+    @Test
+    void shouldEncodeUnsupportedIdAsWholeEntityType() {
+        CacheInvalidation invalidation = new CacheInvalidation("node",
+                Set.of(new EntityKey<>(Country.class, BigDecimal.ONE)), Set.of(), Set.of());
+
+        CacheInvalidation decoded = CacheInvalidation.fromLines(invalidation.toLines());
+
+        assertEquals(Set.of(Country.class), decoded.entityTypes());
+        assertTrue(decoded.entityKeys().isEmpty());
+    }
+
+    @Test
+    void shouldSkipUnknownEntityClassesAndRejectMalformedLines() {
+        CacheInvalidation decoded = CacheInvalidation.fromLines(List.of("node", "A\tcom.example.Missing", "T\tnotes"));
+
+        assertTrue(decoded.entityTypes().isEmpty());
+        assertEquals(Set.of("notes"), decoded.tables());
+        assertThrows(IllegalArgumentException.class, () -> CacheInvalidation.fromLines(List.of("node", "K\tx")));
+    }
+
+    @Test
+    void shouldSplitLargeInvalidationIntoNotificationPayloads() {
+        Set<EntityKey<?>> entityKeys = new HashSet<>();
+        for (long id = 0; id < 2_000; id++) {
+            entityKeys.add(new EntityKey<>(Country.class, id));
+        }
+        CacheInvalidation invalidation = new CacheInvalidation("node", entityKeys, Set.of(), Set.of());
+
+        List<String> payloads = PostgresCacheInvalidationTransport.toPayloads(invalidation.toLines());
+
+        assertTrue(payloads.size() > 1);
+        assertTrue(payloads.stream().allMatch(payload -> payload.length() <= PostgresCacheInvalidationTransport.MAX_PAYLOAD_BYTES));
+        Set<EntityKey<?>> decodedKeys = payloads.stream()
+                .map(payload -> CacheInvalidation.fromLines(List.of(payload.split("\n"))))
+                .flatMap(decoded -> decoded.entityKeys().stream())
+                .collect(Collectors.toSet());
+        assertEquals(entityKeys, decodedKeys);
+    }
+}
@@ -0,0 +1,70 @@
+package org.svydovets.cache;
+
+import org.junit.jupiter.api.Test;
+import org.svydovets.baseEntity.City;
+import org.svydovets.baseEntity.Country;
+import org.svydovets.baseEntity.PersonWithVersionAnnotation;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class EntityStateCodecTest {
+
+    @Test
+    void shouldDecodeEncodedStateWithNulls() {
+        EntityStateCodec codec = EntityStateCodec.forEntity(City.class);
+        Object[] state = {42L, null, 7L};
+
+        Object[] decodedState = codec.decodeState(ByteBuffer.wrap(codec.encodeState(state)));
+
+        assertArrayEquals(state, decodedState);
+    }
+
+    @Test
+    void shouldKeepTypeOfValuesOtherThanDeclaredOnes() {
+        EntityStateCodec codec = EntityStateCodec.forEntity(City.class);
+        Timestamp timestamp = Timestamp.valueOf(LocalDateTime.of(2024, 1, 2, 3, 4, 5, 123456789));
+        Object[] state = {new BigDecimal("12.340"), timestamp, UUID.randomUUID()};
+
+        Object[] decodedState = codec.decodeState(ByteBuffer.wrap(codec.encodeState(state)));
+
+        assertArrayEquals(state, decodedState);
+        assertEquals(3, ((BigDecimal) decodedState[0]).scale());
+    }
+
+    @Test
+    void shouldRejectStateEncodedForAnotherEntity() {
+        EntityStateCodec cityCodec = EntityStateCodec.forEntity(City.class);
+        EntityStateCodec countryCodec = EntityStateCodec.forEntity(Country.class);
+        byte[] countryState = countryCodec.encodeState(new Object[]{1L, "Ukraine"});
+
+        assertNotEquals(cityCodec.getSchemaHash(), countryCodec.getSchemaHash());
+        assertThrows(IllegalArgumentException.class, () -> cityCodec.decodeState(ByteBuffer.wrap(countryState)));
+    }
+
+    @Test
+    void shouldRejectUnsupportedValues() {
+        EntityStateCodec codec = EntityStateCodec.forEntity(Country.class);
+
+        assertThrows(IllegalArgumentException.class, () -> codec.encodeState(new Object[]{1L, new Object()}));
+        assertThrows(IllegalArgumentException.class, () -> codec.encodeState(new Object[]{1L}));
+    }
+
+    @Test
+    void shouldResolveVersionFromState() {
+        EntityStateCodec codec = EntityStateCodec.forEntity(PersonWithVersionAnnotation.class);
+        Object[] state = {1, "John", "Doe", 30, 3, "m"};
+
+        assertEquals(3, codec.getVersion(codec.decodeState(ByteBuffer.wrap(codec.encodeState(state)))));
+        assertNull(EntityStateCodec.forEntity(Country.class).getVersion(new Object[]{1L, "Ukraine"}));
+    }
+}
@@ -0,0 +1,63 @@
+package org.svydovets.cache;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class EvictionPolicyTest {
+
+    @Test
+    void shouldEvictLeastRecentlyUsedEntry() {
+        CacheStorage<Integer, String> storage = EvictionPolicy.LRU.createStorage(2);
+        storage.put(1, "one");
+        storage.put(2, "two");
+        storage.get(1);
+        storage.put(3, "three");
+
+        assertEquals("one", storage.get(1));
+        assertNull(storage.get(2));
+        assertEquals(2, storage.size());
+    }
+
+    @Test
+    void shouldKeepFrequentlyUsedEntriesThroughScan() {
+        CacheStorage<Integer, String> storage = EvictionPolicy.W_TINY_LFU.createStorage(100);
+        for (int hotKey = 0; hotKey < 50; hotKey++) {
+            storage.put(hotKey, "hot");
+        }
+        for (int round = 0; round < 5; round++) {
+            for (int hotKey = 0; hotKey < 50; hotKey++) {
+                storage.get(hotKey);
+            }
+        }
+
+        for (int scannedKey = 1000; scannedKey < 2000; scannedKey++) {
+            storage.put(scannedKey, "scanned");
+        }
+
+        for (int hotKey = 0; hotKey < 50; hotKey++) {
+            assertNotNull(storage.get(hotKey));
+        }
+        assertEquals(100, storage.size());
+    }
+
+    @Test
+    void shouldNotExceedMaximumSize() {
+        for (EvictionPolicy evictionPolicy : EvictionPolicy.values()) {
+            CacheStorage<Integer, Integer> storage = evictionPolicy.createStorage(1);
+            storage.put(1, 1);
+            storage.put(2, 2);
+
+            assertEquals(1, storage.size(), evictionPolicy.name());
+        }
+    }
+
+    @Test
+    void shouldThrowExceptionWhenMaximumSizeIsNotPositive() {
+        assertThrows(IllegalArgumentException.class, () -> EvictionPolicy.W_TINY_LFU.createStorage(0));
+        assertThrows(IllegalArgumentException.class, () -> EvictionPolicy.LRU.createStorage(0));
+    }
+}
@@ -0,0 +1,92 @@
+package org.svydovets.cache;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.svydovets.baseEntity.Country;
+import org.svydovets.baseEntity.PersonWithVersionAnnotation;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MappedFileCacheStorageTest {
+
+    private final EntityStateCodec countryCodec = EntityStateCodec.forEntity(Country.class);
+    private final EntityStateCodec personCodec = EntityStateCodec.forEntity(PersonWithVersionAnnotation.class);
+
+    @TempDir
+    private Path directory;
+
+    @Test
+    void shouldTrustRestoredStateIfTableDidNotChange() {
+        Path file = directory.resolve("countries.cache");
+        MappedFileCacheStorage storage = new MappedFileCacheStorage(countryCodec, 100, 1024 * 1024, file, () -> 7L);
+        storage.put(1L, new CachedEntityState(new Object[]{1L, "Ukraine"}, CachedEntityState.NEVER_EXPIRES));
+        storage.put(2L, new CachedEntityState(new Object[]{2L, "Poland"}, CachedEntityState.NEVER_EXPIRES));
+        storage.remove(2L);
+        storage.close();
+
+        MappedFileCacheStorage reopened = new MappedFileCacheStorage(countryCodec, 100, 1024 * 1024, file, () -> 7L);
+
+        assertEquals(1, reopened.size());
+        CachedEntityState cachedState = reopened.get(1L);
+        assertArrayEquals(new Object[]{1L, "Ukraine"}, cachedState.state());
+        assertFalse(cachedState.restored());
+        assertNull(reopened.get(2L));
+    }
+
+    @Test
+    void shouldMarkRestoredStateOfVersionedEntityIfTableChanged() {
+        Path file = directory.resolve("persons.cache");
+        MappedFileCacheStorage storage = new MappedFileCacheStorage(personCodec, 100, 1024 * 1024, file, () -> 7L);
+        storage.put(1, new CachedEntityState(new Object[]{1, "John", "Doe", 30, 3, "m"}, CachedEntityState.NEVER_EXPIRES));
+        storage.close();
+
+        MappedFileCacheStorage reopened = new MappedFileCacheStorage(personCodec, 100, 1024 * 1024, file, () -> 8L);
+
+        CachedEntityState cachedState = reopened.get(1);
+        assertTrue(cachedState.restored());
+        assertEquals(3, personCodec.getVersion(cachedState.state()));
+    }
+
+    @Test
+    void shouldDiscardFileIfTableChangedOrFileWasNotClosed() {
+        Path file = directory.resolve("countries.cache");
+        MappedFileCacheStorage storage = new MappedFileCacheStorage(countryCodec, 100, 1024 * 1024, file, () -> 7L);
+        storage.put(1L, new CachedEntityState(new Object[]{1L, "Ukraine"}, CachedEntityState.NEVER_EXPIRES));
+        storage.close();
+
+        assertEquals(0, new MappedFileCacheStorage(countryCodec, 100, 1024 * 1024, file, () -> 8L).size());
+
+        MappedFileCacheStorage notClosed = new MappedFileCacheStorage(countryCodec, 100, 1024 * 1024, file, () -> 7L);
+        notClosed.put(1L, new CachedEntityState(new Object[]{1L, "Ukraine"}, CachedEntityState.NEVER_EXPIRES));
+
+        assertEquals(0, new MappedFileCacheStorage(countryCodec, 100, 1024 * 1024, file, () -> 7L).size());
+    }
+
+    @Test
+    void shouldValidateRestoredStateOnFirstRead() {
+        Path file = directory.resolve("persons.cache");
+        MappedFileCacheStorage storage = new MappedFileCacheStorage(personCodec, 100, 1024 * 1024, file, () -> 7L);
+        storage.put(1, new CachedEntityState(new Object[]{1, "John", "Doe", 30, 3, "m"}, CachedEntityState.NEVER_EXPIRES));
+        storage.put(2, new CachedEntityState(new Object[]{2, "Jane", "Doe", 25, 1, "f"}, CachedEntityState.NEVER_EXPIRES));
+        storage.close();
+
+        MappedFileCacheStorage reopened = new MappedFileCacheStorage(personCodec, 100, 1024 * 1024, file,
+                () -> TableChangeCounter.UNKNOWN);
+        CacheRegion region = new CacheRegion("persons", 100, Duration.ZERO, maxEntries -> reopened, System::nanoTime);
+
+        assertNull(region.get(1));
+        assertEquals(2, region.size());
+        assertArrayEquals(new Object[]{1, "John", "Doe", 30, 3, "m"},
+                region.get(1, state -> Integer.valueOf(3).equals(state[4])));
+        assertArrayEquals(new Object[]{1, "John", "Doe", 30, 3, "m"}, region.get(1));
+        assertNull(region.get(2, state -> Integer.valueOf(2).equals(state[4])));
+        assertEquals(1, region.size());
+    }
+}
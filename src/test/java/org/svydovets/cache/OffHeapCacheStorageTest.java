@@ -0,0 +1,96 @@
+package org.svydovets.cache;
+
+import org.junit.jupiter.api.Test;
+import org.svydovets.baseEntity.Country;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OffHeapCacheStorageTest {
+
+    private final EntityStateCodec codec = EntityStateCodec.forEntity(Country.class);
+
+    @Test
+    void shouldStoreReplaceAndRemoveState() {
+        OffHeapCacheStorage storage = new OffHeapCacheStorage(codec, 100, 1024 * 1024);
+        storage.put(1L, state(1L, "Ukrain", 10));
+        storage.put(2L, state(2L, "Poland", 20));
+        storage.put(1L, state(1L, "Ukraine", 30));
+
+        CachedEntityState cachedState = storage.get(1L);
+        assertArrayEquals(new Object[]{1L, "Ukraine"}, cachedState.state());
+        assertEquals(30, cachedState.expiresAt());
+        assertEquals(2, storage.size());
+
+        assertNotNull(storage.remove(2L));
+        assertNull(storage.get(2L));
+        assertNull(storage.get(3L));
+        assertEquals(1, storage.size());
+    }
+
+    @Test
+    void shouldNotExceedMaximumNumberOfEntries() {
+        OffHeapCacheStorage storage = new OffHeapCacheStorage(codec, 100, 1024 * 1024);
+        for (long id = 0; id < 1000; id++) {
+            storage.put(id, state(id, "country " + id, CachedEntityState.NEVER_EXPIRES));
+        }
+
+        assertTrue(storage.size() <= 100);
+        assertArrayEquals(new Object[]{999L, "country 999"}, storage.get(999L).state());
+    }
+
+    @Test
+    void shouldReuseSegmentsOnceCapacityIsReached() {
+        OffHeapCacheStorage storage = new OffHeapCacheStorage(codec, 1_000_000, 0);
+        for (long id = 0; id < 10_000; id++) {
+            storage.put(id, state(id, "country " + id, CachedEntityState.NEVER_EXPIRES));
+        }
+
+        assertEquals(OffHeapCacheStorage.SEGMENTS_COUNT * (long) OffHeapCacheStorage.MIN_SEGMENT_BYTES,
+                storage.getAllocatedBytes());
+        assertTrue(storage.size() < 10_000);
+        assertNotNull(storage.get(9_999L));
+        assertNull(storage.get(0L));
+    }
+
+    @Test
+    void shouldGiveSecondChanceToSegmentsThatWereRead() {
+        OffHeapCacheStorage storage = new OffHeapCacheStorage(codec, 1_000_000, 0);
+        storage.put(-1L, state(-1L, "hot", CachedEntityState.NEVER_EXPIRES));
+        for (long id = 0; id < 2_000; id++) {
+            assertNotNull(storage.get(-1L));
+            storage.put(id, state(id, "country " + id, CachedEntityState.NEVER_EXPIRES));
+        }
+
+        assertNotNull(storage.get(-1L));
+    }
+
+    @Test
+    void shouldEvictSegmentWhoseOnlyLiveEntryIsItsFirst() {
+        OffHeapCacheStorage storage = new OffHeapCacheStorage(codec, 1_000_000, 0);
+        for (long id = 0; id < 100; id++) {
+            storage.put(id, state(id, "country " + id, CachedEntityState.NEVER_EXPIRES));
+        }
+        for (long id = 1; id < 100; id++) {
+            storage.remove(id);
+        }
+
+        assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+            for (long id = 1_000; id <= 20_000; id++) {
+                storage.put(id, state(id, "country " + id, CachedEntityState.NEVER_EXPIRES));
+            }
+        });
+        assertNull(storage.get(0L));
+        assertNotNull(storage.get(20_000L));
+    }
+
+    private static CachedEntityState state(Long id, String name, long expiresAt) {
+        return new CachedEntityState(new Object[]{id, name}, expiresAt);
+    }
+}
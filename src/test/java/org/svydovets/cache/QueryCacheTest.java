@@ -0,0 +1,80 @@
+package org.svydovets.cache;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class QueryCacheTest {
+
+    private static final String SQL = "select * from notes where person_id = ?";
+
+    private TableUpdateTimestamps updateTimestamps;
+    private QueryCache queryCache;
+
+    @BeforeEach
+    void setUp() {
+        updateTimestamps = new TableUpdateTimestamps();
+        queryCache = new QueryCache(10, EvictionPolicy.LRU, updateTimestamps);
+    }
+
+    @Test
+    void shouldReturnCachedIdsForSameSqlAndParameters() {
+        queryCache.put(QueryCache.QueryKey.of(SQL, new Object[]{1}), Set.of("notes"),
+                queryCache.currentTimestamp(), List.of(3, 1, 2));
+
+        assertEquals(List.of(3, 1, 2), queryCache.get(QueryCache.QueryKey.of(SQL, new Object[]{1})));
+        assertNull(queryCache.get(QueryCache.QueryKey.of(SQL, new Object[]{2})));
+    }
+
+    @Test
+    void shouldInvalidateResultWhenQueriedTableIsWritten() {
+        QueryCache.QueryKey queryKey = QueryCache.QueryKey.of(SQL, new Object[]{1});
+        queryCache.put(queryKey, Set.of("notes"), queryCache.currentTimestamp(), List.of(1));
+
+        updateTimestamps.invalidate("persons");
+        assertEquals(List.of(1), queryCache.get(queryKey));
+
+        updateTimestamps.invalidate("NOTES");
+        assertNull(queryCache.get(queryKey));
+    }
+
+    @Test
+    void shouldInvalidateResultOfQueryWithUnknownTablesOnAnyWrite() {
+        QueryCache.QueryKey queryKey = QueryCache.QueryKey.of(SQL, new Object[]{1});
+        queryCache.put(queryKey, Set.of(), queryCache.currentTimestamp(), List.of(1));
+
+        updateTimestamps.invalidate("persons");
+
+        assertNull(queryCache.get(queryKey));
+    }
+
+    @Test
+    void shouldTreatResultReadWhileTableWasWrittenAsStale() {
+        QueryCache.QueryKey queryKey = QueryCache.QueryKey.of(SQL, new Object[]{1});
+        long timestamp = queryCache.currentTimestamp();
+        updateTimestamps.invalidate("notes");
+        queryCache.put(queryKey, Set.of("notes"), timestamp, List.of(1));
+
+        assertNull(queryCache.get(queryKey));
+    }
+
+    @Test
+    void shouldCountHitsAndMissesPerQuery() {
+        QueryCache.QueryKey queryKey = QueryCache.QueryKey.of(SQL, new Object[]{1});
+        queryCache.get(queryKey);
+        queryCache.put(queryKey, Set.of("notes"), queryCache.currentTimestamp(), List.of(1));
+        queryCache.get(queryKey);
+        queryCache.get(queryKey);
+        queryCache.get(QueryCache.QueryKey.of(SQL, new Object[]{2}));
+
+        QueryStatistics statistics = queryCache.getStatistics(SQL);
+        assertEquals(2, statistics.getHitCount());
+        assertEquals(2, statistics.getMissCount());
+        assertEquals(0.5, statistics.getHitRatio());
+    }
+}
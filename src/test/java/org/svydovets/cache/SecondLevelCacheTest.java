@@ -0,0 +1,320 @@
+package org.svydovets.cache;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+import org.svydovets.baseEntity.City;
+import org.svydovets.baseEntity.Country;
+import org.svydovets.baseEntity.PersonSessionTest;
+import org.svydovets.connectionPool.datasource.ConnectionHandler;
+import org.svydovets.dao.GenericJdbcDAO;
+import org.svydovets.exception.DaoOperationException;
+import org.svydovets.session.EntityEntry;
+import org.svydovets.session.EntityKey;
+
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class SecondLevelCacheTest {
+
+    @Mock
+    private ConnectionHandler connectionHandler;
+    @Mock
+    private Connection connection;
+    @Mock
+    private PreparedStatement statement;
+    @Mock
+    private ResultSet resultSet;
+
+    private SecondLevelCache secondLevelCache;
+    private GenericJdbcDAO jdbcDAO;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        MockitoAnnotations.openMocks(this);
+        when(connection.getAutoCommit()).thenReturn(true);
+        when(connection.prepareStatement(anyString())).thenReturn(statement);
+        when(statement.executeQuery()).thenReturn(resultSet);
+        when(statement.executeUpdate()).thenReturn(1);
+        when(resultSet.next()).thenReturn(true, false);
+        when(resultSet.getObject("id")).thenReturn(1L);
+        when(resultSet.getObject("name")).thenReturn("Ukraine");
+        secondLevelCache = new SecondLevelCache();
+        jdbcDAO = new GenericJdbcDAO(connectionHandler, false, secondLevelCache);
+    }
+
+    @Test
+    void shouldCreateRegionOnlyForCacheableEntities() {
+        CacheRegion region = secondLevelCache.getRegion(Country.class);
+
+        assertEquals(Country.class.getName(), region.getName());
+        assertEquals(100, region.getMaxEntries());
+        assertNull(secondLevelCache.getRegion(PersonSessionTest.class));
+        assertEquals(1, secondLevelCache.getRegions().size());
+    }
+
+    @Test
+    void shouldServeRepeatedLoadsFromCacheWithNewInstances() throws SQLException {
+        EntityKey<Country> entityKey = new EntityKey<>(Country.class, 1L);
+
+        Country loadedCountry = jdbcDAO.loadFromDB(entityKey, connection);
+        Country cachedCountry = jdbcDAO.loadFromDB(entityKey, connection);
+
+        verify(connection, times(1)).prepareStatement(anyString());
+        assertNotSame(loadedCountry, cachedCountry);
+        assertEquals("Ukraine", cachedCountry.getName());
+        assertEquals(1, secondLevelCache.getRegion(Country.class).getHitCount());
+    }
+
+    @Test
+    void shouldCacheReferencedEntityAsIdAndLoadItOnAssembly() throws SQLException {
+        when(resultSet.next()).thenReturn(true, true, false);
+        when(resultSet.getObject("country_id")).thenReturn(1L);
+        EntityKey<City> entityKey = new EntityKey<>(City.class, 1L);
+
+        jdbcDAO.loadFromDB(entityKey, connection);
+        City cachedCity = jdbcDAO.loadFromDB(entityKey, connection);
+
+        assertArrayEquals(new Object[]{1L, "Ukraine", 1L}, secondLevelCache.get(entityKey));
+        assertEquals("Ukraine", cachedCity.getCountry().getName());
+        assertEquals(1, secondLevelCache.getRegion(Country.class).getHitCount());
+    }
+
+    @Test
+    void shouldLoadUncachedEntitiesWithOneSelectByIds() throws SQLException {
+        Array idArray = Mockito.mock(Array.class);
+        when(connectionHandler.getConnection()).thenReturn(connection);
+        when(connection.createArrayOf(anyString(), any())).thenReturn(idArray);
+        when(resultSet.next()).thenReturn(true, true, false);
+        when(resultSet.getObject("id")).thenReturn(1L, 3L);
+        secondLevelCache.put(new EntityKey<>(Country.class, 2L), new Object[]{2L, "Poland"});
+
+        Map<Object, Country> countries = jdbcDAO.loadAllFromDB(Country.class, List.of(1L, 2L, 3L, 1L));
+
+        assertEquals(Set.of(1L, 2L, 3L), countries.keySet());
+        assertEquals("Poland", countries.get(2L).getName());
+        verify(connection).prepareStatement("select * from countries where id = any(?)");
+        verify(connection).createArrayOf("bigint", new Object[]{1L, 3L});
+        verify(statement).setArray(1, idArray);
+        assertNotNull(secondLevelCache.get(new EntityKey<>(Country.class, 3L)));
+    }
+
+    @Test
+    void shouldNotCacheStateReadWhileWriteOfEntityCommitted() throws SQLException {
+        EntityKey<Country> entityKey = new EntityKey<>(Country.class, 1L);
+        Connection writeConnection = Mockito.mock(Connection.class);
+        when(statement.executeQuery()).thenAnswer(invocation -> {
+            secondLevelCache.recordEviction(writeConnection, entityKey);
+            secondLevelCache.completeTransaction(writeConnection, true);
+            return resultSet;
+        });
+
+        Country country = jdbcDAO.loadFromDB(entityKey, connection);
+
+        assertEquals("Ukraine", country.getName());
+        assertNull(secondLevelCache.get(entityKey));
+    }
+
+    @Test
+    void shouldNotCacheStateSelectedByIdsWhileEntitiesWereEvicted() throws SQLException {
+        Array idArray = Mockito.mock(Array.class);
+        when(connectionHandler.getConnection()).thenReturn(connection);
+        when(connection.createArrayOf(anyString(), any())).thenReturn(idArray);
+        when(statement.executeQuery()).thenAnswer(invocation -> {
+            secondLevelCache.evictAll(Country.class);
+            return resultSet;
+        });
+
+        Map<Object, Country> countries = jdbcDAO.loadAllFromDB(Country.class, List.of(1L));
+
+        assertEquals(Set.of(1L), countries.keySet());
+        assertNull(secondLevelCache.get(new EntityKey<>(Country.class, 1L)));
+    }
+
+    @Test
+    void shouldCacheStateOnlyIfNotInvalidatedSinceStampWasTaken() {
+        EntityKey<Country> entityKey = new EntityKey<>(Country.class, 1L);
+        long invalidationStamp = secondLevelCache.getInvalidationStamp(Country.class);
+        secondLevelCache.evict(new EntityKey<>(Country.class, 2L));
+
+        secondLevelCache.put(entityKey, new Object[]{1L, "Ukraine"}, invalidationStamp);
+        assertNull(secondLevelCache.get(entityKey));
+
+        secondLevelCache.put(entityKey, new Object[]{1L, "Ukraine"}, secondLevelCache.getInvalidationStamp(Country.class));
+        assertArrayEquals(new Object[]{1L, "Ukraine"}, secondLevelCache.get(entityKey));
+    }
+
+    @Test
+    void shouldNotCacheStateLoadedInsideTransaction() throws SQLException {
+        when(connection.getAutoCommit()).thenReturn(false);
+
+        jdbcDAO.loadFromDB(new EntityKey<>(Country.class, 1L), connection);
+
+        assertEquals(0, secondLevelCache.getRegion(Country.class).size());
+    }
+
+    @Test
+    void shouldInvalidateCachedStateOnUpdate() {
+        EntityKey<Country> entityKey = new EntityKey<>(Country.class, 1L);
+        Country country = jdbcDAO.loadFromDB(entityKey, connection);
+
+        jdbcDAO.update(EntityEntry.valueOf(entityKey, country), connection);
+
+        assertNull(secondLevelCache.get(entityKey));
+    }
+
+    @Test
+    void shouldNotLeakInvalidationOfFailedWriteToNextBorrowerOfConnection() throws SQLException {
+        EntityKey<Country> entityKey = new EntityKey<>(Country.class, 1L);
+        Country country = jdbcDAO.loadFromDB(entityKey, connection);
+        when(statement.executeUpdate()).thenThrow(new SQLException("Connection reset"));
+
+        assertThrows(DaoOperationException.class,
+                () -> jdbcDAO.update(EntityEntry.valueOf(entityKey, country), connection));
+        when(resultSet.next()).thenReturn(true, false);
+        jdbcDAO.loadFromDB(entityKey, connection);
+        secondLevelCache.completeTransaction(connection, true);
+
+        assertNotNull(secondLevelCache.get(entityKey));
+    }
+
+    @Test
+    void shouldShareConcurrentLoadOfSameEntity() throws Exception {
+        CountDownLatch selectStarted = new CountDownLatch(1);
+        CountDownLatch releaseSelect = new CountDownLatch(1);
+        when(statement.executeQuery()).thenAnswer(invocation -> {
+            selectStarted.countDown();
+            releaseSelect.await(5, TimeUnit.SECONDS);
+            return resultSet;
+        });
+        EntityKey<Country> entityKey = new EntityKey<>(Country.class, 1L);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<Country> leader = executor.submit(() -> jdbcDAO.loadFromDB(entityKey, connection));
+            assertTrue(selectStarted.await(5, TimeUnit.SECONDS));
+            Future<Country> follower = executor.submit(() -> jdbcDAO.loadFromDB(entityKey, connection));
+            while (secondLevelCache.getEntityLoads().getCoalescedCount() < 1) {
+                Thread.onSpinWait();
+            }
+            releaseSelect.countDown();
+
+            assertNotSame(leader.get(5, TimeUnit.SECONDS), follower.get(5, TimeUnit.SECONDS));
+            assertEquals("Ukraine", follower.get().getName());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        verify(statement, times(1)).executeQuery();
+        assertEquals(1, secondLevelCache.getEntityLoads().getLoadCount());
+    }
+
+    @Test
+    void shouldForgetLoadInFlightWhenEntityIsEvicted() {
+        EntityKey<Country> entityKey = new EntityKey<>(Country.class, 1L);
+
+        secondLevelCache.getEntityLoads().execute(entityKey, () -> {
+            assertEquals(1, secondLevelCache.getEntityLoads().getInFlightCount());
+            secondLevelCache.applyInvalidation(CacheInvalidation.of("node", Set.of(entityKey), Set.of()));
+            assertEquals(0, secondLevelCache.getEntityLoads().getInFlightCount());
+            return new Object[]{1L, "Ukraine"};
+        });
+    }
+
+    @Test
+    void shouldExpireStateAfterTimeToLive() {
+        AtomicLong now = new AtomicLong();
+        CacheRegion region = new CacheRegion("countries", 10, Duration.ofSeconds(1), EvictionPolicy.LRU, now::get);
+        Object[] state = {1L, "Ukraine"};
+        region.put(1L, state);
+
+        assertArrayEquals(state, region.get(1L));
+        now.addAndGet(Duration.ofSeconds(1).toNanos());
+        assertNull(region.get(1L));
+        assertEquals(1, region.getMissCount());
+    }
+
+    @Test
+    void shouldPublishChangesOfCommittedTransactionToOtherNodes() throws SQLException {
+        LoopbackCacheInvalidationTransport transport = new LoopbackCacheInvalidationTransport();
+        SecondLevelCache nodeCache = new SecondLevelCache(null, TableChangeCounter.NONE, transport);
+        SecondLevelCache peerCache = new SecondLevelCache(null, TableChangeCounter.NONE, transport);
+        GenericJdbcDAO nodeDAO = new GenericJdbcDAO(connectionHandler, false, nodeCache);
+        EntityKey<Country> entityKey = new EntityKey<>(Country.class, 1L);
+        peerCache.put(entityKey, new Object[]{1L, "Ukraine"});
+        Country country = nodeDAO.loadFromDB(entityKey, connection);
+        when(connection.getAutoCommit()).thenReturn(false);
+
+        nodeDAO.update(EntityEntry.valueOf(entityKey, country), connection);
+        nodeDAO.update(EntityEntry.valueOf(entityKey, country), connection);
+
+        assertNotNull(peerCache.get(entityKey));
+        nodeCache.completeTransaction(connection, true);
+        assertNull(peerCache.get(entityKey));
+        assertEquals(1, transport.getPublishedCount());
+    }
+
+    @Test
+    void shouldDropChangesOfRolledBackTransaction() {
+        LoopbackCacheInvalidationTransport transport = new LoopbackCacheInvalidationTransport();
+        SecondLevelCache nodeCache = new SecondLevelCache(null, TableChangeCounter.NONE, transport);
+        nodeCache.recordEviction(connection, new EntityKey<>(Country.class, 1L));
+        nodeCache.recordTableUpdate(connection, "countries");
+
+        nodeCache.completeTransaction(connection, false);
+        nodeCache.completeTransaction(connection, true);
+
+        assertEquals(0, transport.getPublishedCount());
+    }
+
+    @Test
+    void shouldEvictEverythingWhenInvalidationsWereLost() {
+        CacheInvalidationTransport.Listener[] listener = new CacheInvalidationTransport.Listener[1];
+        CacheInvalidationTransport transport = new CacheInvalidationTransport() {
+            @Override
+            public void publish(CacheInvalidation invalidation) {
+            }
+
+            @Override
+            public void subscribe(Listener subscribed) {
+                listener[0] = subscribed;
+            }
+        };
+        SecondLevelCache cache = new SecondLevelCache(null, TableChangeCounter.NONE, transport);
+        EntityKey<Country> entityKey = new EntityKey<>(Country.class, 1L);
+        cache.put(entityKey, new Object[]{1L, "Ukraine"});
+
+        listener[0].onInvalidation(CacheInvalidation.of(cache.getId(), Set.of(entityKey), Set.of()));
+        assertNotNull(cache.get(entityKey));
+
+        listener[0].onInvalidationsLost();
+        assertNull(cache.get(entityKey));
+    }
+}
@@ -0,0 +1,140 @@
+package org.svydovets.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SingleFlightTest {
+
+    private final SingleFlight<String, String> singleFlight = new SingleFlight<>();
+
+    @Test
+    void shouldShareLoadInFlightBetweenConcurrentCallers() throws Exception {
+        CountDownLatch loadStarted = new CountDownLatch(1);
+        CountDownLatch releaseLoad = new CountDownLatch(1);
+        AtomicInteger loads = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Future<String> leader = executor.submit(() -> singleFlight.execute("country:1", () -> {
+                loads.incrementAndGet();
+                loadStarted.countDown();
+                await(releaseLoad);
+                return "Ukraine";
+            }));
+            assertTrue(loadStarted.await(5, TimeUnit.SECONDS));
+
+            List<Future<String>> followers = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                followers.add(executor.submit(() -> singleFlight.execute("country:1", () -> {
+                    loads.incrementAndGet();
+                    return "Poland";
+                })));
+            }
+            while (singleFlight.getCoalescedCount() < 3) {
+                Thread.onSpinWait();
+            }
+            releaseLoad.countDown();
+
+            assertEquals("Ukraine", leader.get(5, TimeUnit.SECONDS));
+            for (Future<String> follower : followers) {
+                assertEquals("Ukraine", follower.get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(1, loads.get());
+        assertEquals(1, singleFlight.getLoadCount());
+        assertEquals(3, singleFlight.getCoalescedCount());
+        assertEquals(0, singleFlight.getInFlightCount());
+    }
+
+    @Test
+    void shouldRethrowExceptionOfLoadToCallersSharingIt() throws Exception {
+        CountDownLatch loadStarted = new CountDownLatch(1);
+        CountDownLatch releaseLoad = new CountDownLatch(1);
+        IllegalStateException failure = new IllegalStateException("connection lost");
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<?> leader = executor.submit(() -> singleFlight.execute("country:1", () -> {
+                loadStarted.countDown();
+                await(releaseLoad);
+                throw failure;
+            }));
+            assertTrue(loadStarted.await(5, TimeUnit.SECONDS));
+            Future<Throwable> follower = executor.submit(() -> assertThrows(IllegalStateException.class,
+                    () -> singleFlight.execute("country:1", () -> "Ukraine")));
+            while (singleFlight.getCoalescedCount() < 1) {
+                Thread.onSpinWait();
+            }
+            releaseLoad.countDown();
+
+            assertSame(failure, follower.get(5, TimeUnit.SECONDS));
+            assertThrows(Exception.class, () -> leader.get(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals("Ukraine", singleFlight.execute("country:1", () -> "Ukraine"));
+    }
+
+    @Test
+    void shouldRunNestedLoadOfKeyInFlightInsteadOfWaitingForIt() throws Exception {
+        CountDownLatch firstLoadStarted = new CountDownLatch(1);
+        CountDownLatch secondLoadStarted = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<String> first = executor.submit(() -> singleFlight.execute("person:1", () -> {
+                firstLoadStarted.countDown();
+                await(secondLoadStarted);
+                return "person:" + singleFlight.execute("address:1", () -> "address");
+            }));
+            Future<String> second = executor.submit(() -> singleFlight.execute("address:1", () -> {
+                await(firstLoadStarted);
+                secondLoadStarted.countDown();
+                return "address:" + singleFlight.execute("person:1", () -> "person");
+            }));
+
+            assertEquals("person:address", first.get(5, TimeUnit.SECONDS));
+            assertEquals("address:person", second.get(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(0, singleFlight.getCoalescedCount());
+        assertEquals(4, singleFlight.getLoadCount());
+    }
+
+    @Test
+    void shouldRunNewLoadAfterKeyWasForgotten() {
+        String value = singleFlight.execute("country:1", () -> {
+            singleFlight.forget("country:1");
+            return singleFlight.execute("country:1", () -> "Ukraine");
+        });
+
+        assertEquals("Ukraine", value);
+        assertEquals(2, singleFlight.getLoadCount());
+        assertEquals(0, singleFlight.getInFlightCount());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(exception);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package org.svydovets.connectionPool.datasource;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConcurrentBagTest {
+
+    private final ConcurrentBag<TestEntry> bag = new ConcurrentBag<>();
+
+    @Test
+    void shouldBorrowEntryReturnedByTheSameThreadFirst() throws InterruptedException {
+        TestEntry first = new TestEntry();
+        TestEntry second = new TestEntry();
+        bag.add(first);
+        bag.add(second);
+
+        TestEntry borrowedFirst = bag.borrow(1, TimeUnit.SECONDS);
+        TestEntry borrowedSecond = bag.borrow(1, TimeUnit.SECONDS);
+        bag.requite(borrowedSecond);
+
+        assertSame(first, borrowedFirst);
+        assertSame(second, bag.borrow(1, TimeUnit.SECONDS));
+        assertEquals(0, bag.getCount(ConcurrentBag.Entry.NOT_IN_USE));
+    }
+
+    @Test
+    void shouldBorrowEntriesInOrderOfSharedListWithoutThreadLocalEntries() throws InterruptedException {
+        ConcurrentBag<TestEntry> bag = new ConcurrentBag<>(waiting -> {
+        }, false);
+        TestEntry first = new TestEntry();
+        TestEntry second = new TestEntry();
+        bag.add(first);
+        bag.add(second);
+
+        TestEntry borrowedFirst = bag.borrow(1, TimeUnit.SECONDS);
+        TestEntry borrowedSecond = bag.borrow(1, TimeUnit.SECONDS);
+        bag.requite(borrowedFirst);
+        bag.requite(borrowedSecond);
+
+        assertSame(first, bag.borrow(1, TimeUnit.SECONDS));
+        assertTrue(bag.remove(borrowedFirst));
+        assertEquals(1, bag.size());
+    }
+
+    @Test
+    void shouldHandReturnedEntryToWaitingBorrower() throws Exception {
+        TestEntry entry = new TestEntry();
+        bag.add(entry);
+        TestEntry borrowed = bag.borrow(1, TimeUnit.SECONDS);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<TestEntry> waiting = executor.submit(() -> bag.borrow(5, TimeUnit.SECONDS));
+            while (bag.getWaiterCount() == 0) {
+                Thread.onSpinWait();
+            }
+
+            bag.requite(borrowed);
+
+            assertSame(entry, waiting.get(5, TimeUnit.SECONDS));
+            assertEquals(ConcurrentBag.Entry.IN_USE, entry.getState());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void shouldReturnNullWhenNoEntryBecameAvailable() throws InterruptedException {
+        bag.add(new TestEntry());
+        bag.borrow(1, TimeUnit.SECONDS);
+
+        assertNull(bag.borrow(20, TimeUnit.MILLISECONDS));
+        assertEquals(0, bag.getWaiterCount());
+    }
+
+    @Test
+    void shouldRemoveOnlyBorrowedEntry() throws InterruptedException {
+        TestEntry entry = new TestEntry();
+        bag.add(entry);
+
+        assertFalse(bag.remove(entry));
+        assertTrue(bag.remove(bag.borrow(1, TimeUnit.SECONDS)));
+        assertEquals(0, bag.size());
+        assertEquals(ConcurrentBag.Entry.REMOVED, entry.getState());
+    }
+
+    @Test
+    void shouldNotKeepEntryRemovedByAnotherThreadReachable() throws Exception {
+        WeakReference<TestEntry> reference = returnAndRemoveOnAnotherThread(new TestEntry());
+
+        for (int i = 0; i < 50 && reference.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+
+        assertNull(reference.get());
+    }
+
+    private WeakReference<TestEntry> returnAndRemoveOnAnotherThread(TestEntry entry) throws Exception {
+        bag.add(entry);
+        bag.requite(bag.borrow(1, TimeUnit.SECONDS));
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Boolean> removed = executor.submit(() -> bag.reserve(entry) && bag.remove(entry));
+            assertTrue(removed.get(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+        return new WeakReference<>(entry);
+    }
+
+    private static class TestEntry extends ConcurrentBag.Entry {
+    }
+}
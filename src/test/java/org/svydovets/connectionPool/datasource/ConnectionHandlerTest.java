@@ -30,40 +30,69 @@ class ConnectionHandlerTest {
 
     @Test
     void shouldGetConnectionWhenNoTransactionActivated() throws SQLException {
-        connectionHandler.getConnectionAttributes().setTransactionActivated(false);
-
         Connection retrievedConnection = connectionHandler.getConnection();
 
         verify(dataSource, times(1)).getConnection();
-        assertNotNull(retrievedConnection);
+        assertSame(connection, retrievedConnection);
+        assertFalse(connectionHandler.isTransactionActive());
     }
 
     @Test
-    void shouldGetConnectionWithActiveTransactionForNewThread() throws SQLException {
-        connectionHandler.getConnectionAttributes().setTransactionActivated(true);
+    void shouldGetConnectionOfTransactionBoundToHandler() throws SQLException {
+        Connection transactionConnection = connectionHandler.bindTransactionConnection();
 
         Connection firstRetrieval = connectionHandler.getConnection();
+        Connection secondRetrieval = connectionHandler.getConnection();
 
         verify(dataSource, times(1)).getConnection();
-        assertNotNull(firstRetrieval);
+        assertSame(transactionConnection, firstRetrieval);
+        assertSame(transactionConnection, secondRetrieval);
+        assertTrue(connectionHandler.isTransactionActive());
     }
 
     @Test
-    void shouldGetConnectionWithActiveTransactionForExistingThread() throws SQLException {
-        connectionHandler.getConnectionAttributes().setTransactionActivated(true);
-        Connection firstRetrieval = connectionHandler.getConnection();
+    void shouldNotShareConnectionOfTransactionWithOtherSessionOnSameThread() throws SQLException {
+        ConnectionHandler firstSessionHandler = connectionHandler.forSession();
+        ConnectionHandler secondSessionHandler = connectionHandler.forSession();
+        Connection transactionConnection = firstSessionHandler.bindTransactionConnection();
 
-        Connection secondRetrieval = connectionHandler.getConnection();
+        Connection otherSessionConnection = secondSessionHandler.getConnection();
 
-        verify(dataSource, times(1)).getConnection();
-        assertSame(firstRetrieval, secondRetrieval);
+        assertSame(connection, otherSessionConnection);
+        assertNotSame(transactionConnection, otherSessionConnection);
+        assertFalse(secondSessionHandler.isTransactionActive());
+        assertFalse(connectionHandler.isTransactionActive());
     }
 
     @Test
-    void shouldGetConnectionAttributesReturnsCorrectAttributes() {
-        ConnectionAttributes attributes = connectionHandler.getConnectionAttributes();
+    void shouldRunTransactionsOfSessionsOnSameThreadEachOnItsOwnConnection() throws SQLException {
+        ConnectionHandler firstSessionHandler = connectionHandler.forSession();
+        ConnectionHandler secondSessionHandler = connectionHandler.forSession();
+
+        Connection firstTransactionConnection = firstSessionHandler.bindTransactionConnection();
+        Connection secondTransactionConnection = secondSessionHandler.bindTransactionConnection();
+
+        assertNotSame(firstTransactionConnection, secondTransactionConnection);
+        assertSame(firstTransactionConnection, firstSessionHandler.getConnection());
+        assertSame(secondTransactionConnection, secondSessionHandler.getConnection());
+    }
+
+    @Test
+    void shouldThrowExceptionWhenBindingSecondTransactionConnectionToHandler() throws SQLException {
+        connectionHandler.bindTransactionConnection();
+
+        assertThrows(IllegalStateException.class, () -> connectionHandler.bindTransactionConnection());
+    }
+
+    @Test
+    void shouldKeepConnectionOfTransactionBorrowedUntilTransactionEnds() throws SQLException {
+        Connection transactionConnection = connectionHandler.bindTransactionConnection();
+        connectionHandler.getConnection().close();
+        verify(connection, never()).close();
+
+        connectionHandler.releaseTransactionConnection(transactionConnection);
 
-        assertNotNull(attributes);
-        assertFalse(attributes.isTransactionActivated());
+        verify(connection).close();
+        assertFalse(connectionHandler.isTransactionActive());
     }
 }
@@ -0,0 +1,610 @@
+package org.svydovets.connectionPool.datasource;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.svydovets.connectionPool.config.DataSourceConfig;
+import org.svydovets.connectionPool.config.InitializationMode;
+import org.svydovets.connectionPool.config.PoolConfig;
+import org.svydovets.connectionPool.config.ThreadingMode;
+import org.svydovets.connectionPool.exception.ConnectionTimeoutException;
+import org.svydovets.connectionPool.exception.PooledDataSourceCreationException;
+
+import javax.sql.DataSource;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class PooledDataSourceTest {
+
+    private static final DataSourceConfig CONFIG = new DataSourceConfig("jdbc:postgresql://localhost:5432/test", "user", "password");
+
+    private final List<Connection> physicalConnections = new CopyOnWriteArrayList<>();
+    private final AtomicInteger openingConnections = new AtomicInteger();
+    private final AtomicInteger openAttempts = new AtomicInteger();
+    private final AtomicInteger maxOpeningConnections = new AtomicInteger();
+    private volatile long openDelayMillis;
+    private volatile int failingConnection = Integer.MAX_VALUE;
+    private volatile CountDownLatch openGate = new CountDownLatch(0);
+    private volatile boolean validConnections = true;
+    private final AtomicLong ticker = new AtomicLong();
+    private DataSource physicalDataSource;
+    private PooledDataSource dataSource;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        physicalDataSource = mock(DataSource.class);
+        when(physicalDataSource.getConnection()).thenAnswer(invocation -> openPhysicalConnection());
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (dataSource != null) {
+            dataSource.close();
+        }
+    }
+
+    @Test
+    void shouldWaitForConnectionReturnedByAnotherCaller() throws Exception {
+        PooledDataSource dataSource = createDataSource(1, Duration.ofSeconds(5));
+        Connection borrowed = dataSource.getConnection();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            AtomicReference<Thread> waiter = new AtomicReference<>();
+            Future<Connection> waiting = executor.submit(() -> {
+                waiter.set(Thread.currentThread());
+                return dataSource.getConnection();
+            });
+            awaitWaiting(waiter);
+            assertFalse(waiting.isDone());
+
+            borrowed.close();
+
+            assertSame(borrowed, waiting.get(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(2, dataSource.getWaitTimeHistogram().getCount());
+        assertTrue(dataSource.getWaitTimeHistogram().getMaxWaitNanos() > 0);
+    }
+
+    @Test
+    void shouldServeWaitingCallersInOrder() throws Exception {
+        PooledDataSource dataSource = createDataSource(1, Duration.ofSeconds(5));
+        Connection borrowed = dataSource.getConnection();
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            AtomicReference<Thread> firstWaiter = new AtomicReference<>();
+            Future<Connection> first = executor.submit(() -> {
+                firstWaiter.set(Thread.currentThread());
+                return dataSource.getConnection();
+            });
+            awaitWaiting(firstWaiter);
+            AtomicReference<Thread> secondWaiter = new AtomicReference<>();
+            Future<Connection> second = executor.submit(() -> {
+                secondWaiter.set(Thread.currentThread());
+                return dataSource.getConnection();
+            });
+            awaitWaiting(secondWaiter);
+
+            borrowed.close();
+
+            assertSame(borrowed, first.get(5, TimeUnit.SECONDS));
+            assertFalse(second.isDone());
+            borrowed.close();
+            assertSame(borrowed, second.get(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void shouldGrowOnDemandUpToMaxPoolSize() throws SQLException {
+        PooledDataSource dataSource = createDataSource(PoolConfig.defaults()
+                .withMaxPoolSize(2)
+                .withMinIdle(1)
+                .withConnectionTimeout(Duration.ofSeconds(5)));
+        assertEquals(1, dataSource.getTotalConnectionCount());
+
+        Connection first = dataSource.getConnection();
+        Connection second = dataSource.getConnection();
+
+        assertNotSame(first, second);
+        assertEquals(2, dataSource.getTotalConnectionCount());
+        assertEquals(2, dataSource.getActiveConnectionCount());
+        assertEquals(2, physicalConnections.size());
+    }
+
+    @Test
+    void shouldRetireIdleConnectionsAboveMinIdle() throws SQLException {
+        PooledDataSource dataSource = createDataSource(PoolConfig.defaults()
+                .withMaxPoolSize(3)
+                .withMinIdle(1)
+                .withIdleTimeout(Duration.ofMinutes(1)));
+        List<Connection> borrowed = List.of(dataSource.getConnection(), dataSource.getConnection(), dataSource.getConnection());
+        for (Connection connection : borrowed) {
+            connection.close();
+        }
+        assertEquals(3, dataSource.getIdleConnectionCount());
+
+        ticker.addAndGet(TimeUnit.MINUTES.toNanos(2));
+        dataSource.housekeep();
+
+        assertEquals(1, dataSource.getTotalConnectionCount());
+        assertEquals(2, dataSource.getRetiredConnectionCount());
+    }
+
+    @Test
+    void shouldReplaceConnectionWhoseLifetimeEnded() throws SQLException {
+        PooledDataSource dataSource = createDataSource(PoolConfig.defaults()
+                .withMaxPoolSize(1)
+                .withMaxLifetime(Duration.ofMinutes(10)));
+        Connection connection = dataSource.getConnection();
+        connection.close();
+
+        ticker.addAndGet(TimeUnit.MINUTES.toNanos(10));
+        Connection replacement = dataSource.getConnection();
+
+        assertNotSame(connection, replacement);
+        assertEquals(2, dataSource.getCreatedConnectionCount());
+        verify(physicalConnections.get(0), timeout(5000)).close();
+    }
+
+    @Test
+    void shouldOpenMinIdleConnectionsInParallelOnBoundedNumberOfThreads() {
+        openDelayMillis = 100;
+
+        long startedAt = System.nanoTime();
+        PooledDataSource dataSource = createDataSource(PoolConfig.defaults().withMaxPoolSize(16).withMinIdle(16));
+        long constructionMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt);
+
+        assertEquals(16, dataSource.getTotalConnectionCount());
+        assertTrue(constructionMillis < 16 * 100, "connections were opened one by one");
+        assertEquals(PooledDataSource.INITIAL_FILL_PARALLELISM, maxOpeningConnections.get());
+        assertNotNull(dataSource.getTimeToMinIdle());
+    }
+
+    @Test
+    void shouldFailAndCloseOpenedConnectionsWhenMinIdleConnectionCannotBeOpened() throws SQLException {
+        failingConnection = 3;
+
+        assertThrows(PooledDataSourceCreationException.class,
+                () -> createDataSource(PoolConfig.defaults().withMinIdle(5)));
+
+        for (Connection connection : physicalConnections) {
+            verify(connection, timeout(5000)).close();
+        }
+    }
+
+    @Test
+    void shouldReturnOnceFirstConnectionIsValidatedInFailFastMode() throws Exception {
+        CountDownLatch gate = new CountDownLatch(1);
+        openGate = gate;
+
+        PooledDataSource dataSource = createDataSource(PoolConfig.defaults()
+                .withMinIdle(4)
+                .withInitializationMode(InitializationMode.FAIL_FAST));
+
+        assertEquals(1, dataSource.getTotalConnectionCount());
+        assertNull(dataSource.getTimeToMinIdle());
+        verify(physicalConnections.get(0)).isValid(anyInt());
+
+        gate.countDown();
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (dataSource.getTimeToMinIdle() == null) {
+            assertTrue(System.nanoTime() < deadline, "minimum idle connections were not opened");
+            Thread.sleep(1);
+        }
+        assertEquals(4, dataSource.getTotalConnectionCount());
+    }
+
+    @Test
+    void shouldFailInFailFastModeWhenFirstConnectionIsNotValid() throws SQLException {
+        validConnections = false;
+
+        assertThrows(PooledDataSourceCreationException.class, () -> createDataSource(PoolConfig.defaults()
+                .withInitializationMode(InitializationMode.FAIL_FAST)));
+        verify(physicalConnections.get(0)).close();
+    }
+
+    @Test
+    void shouldReplaceDeadConnectionOnBorrow() throws SQLException {
+        PooledDataSource dataSource = createDataSource(PoolConfig.defaults().withMaxPoolSize(1));
+        Connection connection = dataSource.getConnection();
+        connection.close();
+        when(physicalConnections.get(0).isValid(anyInt())).thenReturn(false);
+
+        ticker.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        Connection replacement = dataSource.getConnection();
+
+        assertNotSame(connection, replacement);
+        assertEquals(1, dataSource.getDeadConnectionCount());
+        verify(physicalConnections.get(0), timeout(5000)).close();
+    }
+
+    @Test
+    void shouldNotValidateConnectionUsedWithinSkipWindow() throws SQLException {
+        PooledDataSource dataSource = createDataSource(PoolConfig.defaults().withMaxPoolSize(1));
+        dataSource.getConnection().close();
+
+        ticker.addAndGet(TimeUnit.MILLISECONDS.toNanos(100));
+        dataSource.getConnection();
+
+        verify(physicalConnections.get(0), never()).isValid(anyInt());
+    }
+
+    @Test
+    void shouldReplaceIdleConnectionFailingKeepalive() throws SQLException {
+        PooledDataSource dataSource = createDataSource(PoolConfig.defaults()
+                .withMinIdle(1)
+                .withKeepaliveTime(Duration.ofMinutes(1)));
+        when(physicalConnections.get(0).isValid(anyInt())).thenReturn(false);
+
+        ticker.addAndGet(TimeUnit.MINUTES.toNanos(1));
+        dataSource.housekeep();
+
+        assertEquals(1, dataSource.getDeadConnectionCount());
+        verify(physicalConnections.get(0), timeout(5000)).close();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (physicalConnections.size() < 2 || dataSource.getTotalConnectionCount() < 1) {
+            assertTrue(System.nanoTime() < deadline, "dead connection was not replaced");
+            Thread.onSpinWait();
+        }
+    }
+
+    @Test
+    void shouldReportConnectionBorrowedLongerThanLeakDetectionThreshold() throws Exception {
+        PooledDataSource dataSource = createDataSource(PoolConfig.defaults()
+                .withLeakDetectionThreshold(Duration.ofMillis(50)));
+        dataSource.getConnection().close();
+        dataSource.getConnection();
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (dataSource.getLeakCount() == 0) {
+            assertTrue(System.nanoTime() < deadline, "leak was not reported");
+            Thread.sleep(10);
+        }
+        Thread.sleep(100);
+        assertEquals(1, dataSource.getLeakCount());
+    }
+
+    @Test
+    void shouldThrowConnectionTimeoutExceptionWhenNoConnectionIsReturnedInTime() throws SQLException {
+        PooledDataSource dataSource = createDataSource(1, Duration.ofMillis(50));
+        dataSource.getConnection();
+
+        ConnectionTimeoutException exception = assertThrows(ConnectionTimeoutException.class, dataSource::getConnection);
+
+        assertTrue(exception.getMessage().contains("timed out after 50 ms"));
+        assertEquals(1, dataSource.getTimeoutCount());
+        assertTrue(dataSource.getWaitTimeHistogram().getMaxWaitNanos() >= TimeUnit.MILLISECONDS.toNanos(50));
+    }
+
+    @Test
+    void shouldReusePreparedStatementClosedByCaller() throws SQLException {
+        PooledDataSource dataSource = createDataSource(PoolConfig.defaults().withMaxPoolSize(1));
+        Connection connection = dataSource.getConnection();
+        PreparedStatement statement = connection.prepareStatement("select * from persons where id = ?");
+        statement.setLong(1, 1L);
+        statement.close();
+
+        PreparedStatement reused = connection.prepareStatement("select * from persons where id = ?");
+
+        PreparedStatement physicalStatement = statement.unwrap(PreparedStatement.class);
+        assertSame(physicalStatement, reused.unwrap(PreparedStatement.class));
+        assertSame(connection, reused.getConnection());
+        assertTrue(statement.isClosed());
+        verify(physicalStatement).clearParameters();
+        verify(physicalStatement, never()).close();
+        verify(physicalConnections.get(0), times(1)).prepareStatement("select * from persons where id = ?");
+        assertEquals(1, dataSource.getStatementCacheStatistics().getHitCount());
+        assertEquals(1, dataSource.getStatementCacheStatistics().getMissCount());
+    }
+
+    @Test
+    void shouldKeepPreparedStatementsCachedWhileConnectionIsInPool() throws SQLException {
+        PooledDataSource dataSource = createDataSource(PoolConfig.defaults().withMaxPoolSize(1));
+        Connection connection = dataSource.getConnection();
+        PreparedStatement physicalStatement = connection.prepareStatement("select * from persons")
+                .unwrap(PreparedStatement.class);
+        connection.close();
+
+        PreparedStatement reused = dataSource.getConnection().prepareStatement("select * from persons");
+
+        assertSame(physicalStatement, reused.unwrap(PreparedStatement.class));
+        verify(physicalStatement, never()).close();
+    }
+
+    @Test
+    void shouldClosePreparedStatementWhoseSettingsWereChanged() throws SQLException {
+        PooledDataSource dataSource = createDataSource(PoolConfig.defaults().withMaxPoolSize(1));
+        Connection connection = dataSource.getConnection();
+        PreparedStatement statement = connection.prepareStatement("select * from persons");
+        statement.setFetchSize(100);
+        statement.close();
+
+        PreparedStatement physicalStatement = statement.unwrap(PreparedStatement.class);
+        verify(physicalStatement).close();
+        assertNotSame(physicalStatement, connection.prepareStatement("select * from persons").unwrap(PreparedStatement.class));
+    }
+
+    @Test
+    void shouldClosePreparedStatementsWhenCacheIsDisabled() throws SQLException {
+        PooledDataSource dataSource = createDataSource(PoolConfig.defaults().withStatementCacheSize(0));
+        Connection connection = dataSource.getConnection();
+        PreparedStatement statement = connection.prepareStatement("select * from persons");
+        statement.close();
+
+        verify(statement.unwrap(PreparedStatement.class)).close();
+        assertEquals(0, dataSource.getStatementCacheStatistics().getMissCount());
+    }
+
+    @Test
+    void shouldTrackStatementsOfEveryKindUntilTheyAreClosed() throws SQLException {
+        PooledDataSource dataSource = createDataSource(PoolConfig.defaults().withMaxPoolSize(1));
+        PooledDataSource.ConnectionProxy connection = (PooledDataSource.ConnectionProxy) dataSource.getConnection();
+        Statement statement = connection.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        PreparedStatement insert = connection.prepareStatement("insert into persons (name) values (?)",
+                Statement.RETURN_GENERATED_KEYS);
+        CallableStatement call = connection.prepareCall("{call refresh_statistics()}");
+        assertEquals(3, connection.getOpenStatementCount());
+
+        insert.close();
+        assertEquals(2, connection.getOpenStatementCount());
+
+        connection.close();
+        assertEquals(0, connection.getOpenStatementCount());
+        verify(statement.unwrap(Statement.class)).close();
+        verify(call.unwrap(CallableStatement.class)).close();
+        verify(insert.unwrap(PreparedStatement.class), never()).close();
+    }
+
+    @Test
+    void shouldRefuseToOpenMoreStatementsThanMaxOpenStatements() throws SQLException {
+        PooledDataSource dataSource = createDataSource(PoolConfig.defaults()
+                .withMaxPoolSize(1)
+                .withMaxOpenStatements(2));
+        Connection connection = dataSource.getConnection();
+        connection.prepareStatement("select * from persons");
+        Statement statement = connection.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+
+        SQLException exception = assertThrows(SQLException.class, () -> connection.prepareCall("{call refresh_statistics()}"));
+
+        assertTrue(exception.getMessage().contains("Cannot open more than 2 statements"));
+        statement.close();
+        assertNotNull(connection.prepareCall("{call refresh_statistics()}"));
+    }
+
+    @Test
+    void shouldReturnConnectionToPoolWhenClosingLeftOpenStatementFails() throws SQLException {
+        PooledDataSource dataSource = createDataSource(PoolConfig.defaults().withMaxPoolSize(1));
+        Connection connection = dataSource.getConnection();
+        CallableStatement call = connection.prepareCall("{call refresh_statistics()}");
+        doThrow(new SQLException("Connection reset")).when(call.unwrap(CallableStatement.class)).close();
+
+        assertThrows(SQLException.class, connection::close);
+
+        assertEquals(1, dataSource.getIdleConnectionCount());
+    }
+
+    @Test
+    void shouldNotSendSettingsConnectionAlreadyHasToDatabase() throws SQLException {
+        PooledDataSource dataSource = createDataSource(PoolConfig.defaults().withMaxPoolSize(1));
+        Connection connection = dataSource.getConnection();
+
+        connection.setAutoCommit(true);
+        connection.setReadOnly(false);
+        connection.setTransactionIsolation(Connection.TRANSACTION_READ_COMMITTED);
+        connection.setSchema("public");
+
+        Connection physicalConnection = physicalConnections.get(0);
+        verify(physicalConnection, never()).setAutoCommit(anyBoolean());
+        verify(physicalConnection, never()).setReadOnly(anyBoolean());
+        verify(physicalConnection, never()).setTransactionIsolation(anyInt());
+        verify(physicalConnection, never()).setSchema(anyString());
+        assertEquals(Connection.TRANSACTION_READ_COMMITTED, connection.getTransactionIsolation());
+        assertEquals("public", connection.getSchema());
+        verify(physicalConnection, times(1)).getTransactionIsolation();
+        verify(physicalConnection, times(1)).getSchema();
+    }
+
+    @Test
+    void shouldResetOnlySettingsChangedByBorrowerWhenConnectionIsReturned() throws SQLException {
+        PooledDataSource dataSource = createDataSource(PoolConfig.defaults().withMaxPoolSize(1));
+        Connection connection = dataSource.getConnection();
+        connection.setAutoCommit(false);
+        connection.setSchema("audit");
+        connection.setReadOnly(true);
+        connection.setReadOnly(false);
+
+        connection.close();
+
+        Connection physicalConnection = physicalConnections.get(0);
+        verify(physicalConnection).rollback();
+        verify(physicalConnection).setAutoCommit(true);
+        verify(physicalConnection).setSchema("public");
+        verify(physicalConnection, times(2)).setReadOnly(anyBoolean());
+        verify(physicalConnection, never()).setTransactionIsolation(anyInt());
+        verify(physicalConnection, never()).setNetworkTimeout(any(), anyInt());
+        Connection nextBorrow = dataSource.getConnection();
+        assertTrue(nextBorrow.getAutoCommit());
+        assertEquals("public", nextBorrow.getSchema());
+    }
+
+    @Test
+    void shouldReplaceConnectionWhoseStateCannotBeReset() throws SQLException {
+        PooledDataSource dataSource = createDataSource(PoolConfig.defaults().withMaxPoolSize(1));
+        Connection connection = dataSource.getConnection();
+        connection.setAutoCommit(false);
+        doThrow(new SQLException("Connection reset")).when(physicalConnections.get(0)).rollback();
+
+        connection.close();
+
+        verify(physicalConnections.get(0), timeout(5000)).close();
+        assertEquals(1, dataSource.getRetiredConnectionCount());
+    }
+
+    @Test
+    void shouldLetCallersWaitForPermitOnlyUntilConnectionTimeoutInVirtualMode() throws Exception {
+        PooledDataSource dataSource = createDataSource(PoolConfig.defaults()
+                .withMaxPoolSize(1)
+                .withConnectionTimeout(Duration.ofMillis(50))
+                .withThreadingMode(ThreadingMode.VIRTUAL));
+        Connection borrowed = dataSource.getConnection();
+
+        assertThrows(ConnectionTimeoutException.class, dataSource::getConnection);
+        borrowed.close();
+
+        assertSame(borrowed, dataSource.getConnection());
+        assertEquals(1, dataSource.getTimeoutCount());
+    }
+
+    @Test
+    void shouldHandReturnedConnectionToCallerWaitingForPermitInVirtualMode() throws Exception {
+        PooledDataSource dataSource = createDataSource(PoolConfig.defaults()
+                .withMaxPoolSize(1)
+                .withConnectionTimeout(Duration.ofSeconds(5))
+                .withThreadingMode(ThreadingMode.VIRTUAL));
+        Connection borrowed = dataSource.getConnection();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            AtomicReference<Thread> waiter = new AtomicReference<>();
+            Future<Connection> waiting = executor.submit(() -> {
+                waiter.set(Thread.currentThread());
+                return dataSource.getConnection();
+            });
+            awaitWaiting(waiter);
+
+            borrowed.close();
+
+            assertSame(borrowed, waiting.get(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void shouldServeManyMoreConcurrentCallersThanConnectionsInVirtualMode() throws Exception {
+        int callers = 1000;
+        PooledDataSource dataSource = createDataSource(PoolConfig.defaults()
+                .withMaxPoolSize(4)
+                .withConnectionTimeout(Duration.ofSeconds(10))
+                .withThreadingMode(ThreadingMode.VIRTUAL));
+        ExecutorService executor = newVirtualThreadPerTaskExecutor();
+        try {
+            List<Future<?>> sessions = new ArrayList<>();
+            for (int i = 0; i < callers; i++) {
+                sessions.add(executor.submit(() -> {
+                    try (Connection connection = dataSource.getConnection();
+                         PreparedStatement statement = connection.prepareStatement("select 1")) {
+                        statement.execute();
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> session : sessions) {
+                session.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertTrue(dataSource.getTotalConnectionCount() <= 4);
+        assertEquals(dataSource.getTotalConnectionCount(), dataSource.getIdleConnectionCount());
+        assertEquals(callers, dataSource.getWaitTimeHistogram().getCount());
+        assertEquals(0, dataSource.getTimeoutCount());
+    }
+
+    private PooledDataSource createDataSource(int maxPoolSize, Duration connectionTimeout) {
+        return createDataSource(PoolConfig.defaults()
+                .withMaxPoolSize(maxPoolSize)
+                .withConnectionTimeout(connectionTimeout));
+    }
+
+    private PooledDataSource createDataSource(PoolConfig poolConfig) {
+        dataSource = new PooledDataSource(CONFIG, poolConfig, physicalDataSource, ticker::get);
+        return dataSource;
+    }
+
+    private Connection openPhysicalConnection() throws Exception {
+        int opening = openingConnections.incrementAndGet();
+        maxOpeningConnections.accumulateAndGet(opening, Math::max);
+        try {
+            if (!physicalConnections.isEmpty()) {
+                assertTrue(openGate.await(5, TimeUnit.SECONDS));
+            }
+            Thread.sleep(openDelayMillis);
+            if (openAttempts.incrementAndGet() >= failingConnection) {
+                throw new SQLException("Connection refused");
+            }
+            Connection connection = mock(Connection.class);
+            when(connection.isValid(anyInt())).thenReturn(validConnections);
+            when(connection.getAutoCommit()).thenReturn(true);
+            when(connection.getTransactionIsolation()).thenReturn(Connection.TRANSACTION_READ_COMMITTED);
+            when(connection.getSchema()).thenReturn("public");
+            when(connection.prepareStatement(anyString())).thenAnswer(invocation -> mock(PreparedStatement.class));
+            when(connection.prepareStatement(anyString(), anyInt())).thenAnswer(invocation -> mock(PreparedStatement.class));
+            when(connection.createStatement(anyInt(), anyInt())).thenAnswer(invocation -> mock(Statement.class));
+            when(connection.prepareCall(anyString())).thenAnswer(invocation -> mock(CallableStatement.class));
+            physicalConnections.add(connection);
+            return connection;
+        } finally {
+            openingConnections.decrementAndGet();
+        }
+    }
+
+    /**
+     * Runs each task on a virtual thread when the JVM supports them, on one of 64 platform threads otherwise.
+     */
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(64);
+        }
+    }
+
+    private static void awaitWaiting(AtomicReference<Thread> waiter) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (waiter.get() == null || waiter.get().getState() != Thread.State.TIMED_WAITING) {
+            assertTrue(System.nanoTime() < deadline, "caller is not waiting for a connection");
+            Thread.sleep(1);
+        }
+    }
+}
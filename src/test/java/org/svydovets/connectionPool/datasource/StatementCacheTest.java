@@ -0,0 +1,80 @@
+package org.svydovets.connectionPool.datasource;
+
+import org.junit.jupiter.api.Test;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+class StatementCacheTest {
+
+    private final StatementCacheStatistics statistics = new StatementCacheStatistics();
+    private final StatementCache statementCache = new StatementCache(2, statistics);
+
+    @Test
+    void shouldTakeStatementOutOfCacheUntilItIsPutBack() {
+        StatementCache.Key key = StatementCache.Key.of("select * from persons where id = ?");
+        PreparedStatement statement = mock(PreparedStatement.class);
+
+        assertNull(statementCache.take(key));
+        statementCache.put(key, statement);
+
+        assertSame(statement, statementCache.take(key));
+        assertNull(statementCache.take(key));
+        assertEquals(1, statistics.getHitCount());
+        assertEquals(2, statistics.getMissCount());
+    }
+
+    @Test
+    void shouldCloseLeastRecentlyUsedStatementOnceFull() throws SQLException {
+        PreparedStatement persons = mock(PreparedStatement.class);
+        PreparedStatement notes = mock(PreparedStatement.class);
+        PreparedStatement addresses = mock(PreparedStatement.class);
+        statementCache.put(StatementCache.Key.of("select * from persons"), persons);
+        statementCache.put(StatementCache.Key.of("select * from notes"), notes);
+        statementCache.put(StatementCache.Key.of("select * from persons"), mock(PreparedStatement.class));
+
+        statementCache.put(StatementCache.Key.of("select * from addresses"), addresses);
+
+        verify(notes).close();
+        verify(persons, never()).close();
+        assertEquals(2, statementCache.size());
+        assertEquals(1, statistics.getEvictionCount());
+    }
+
+    @Test
+    void shouldCloseStatementPutForKeyAlreadyCached() throws SQLException {
+        StatementCache.Key key = StatementCache.Key.of("select * from persons");
+        PreparedStatement cached = mock(PreparedStatement.class);
+        PreparedStatement duplicate = mock(PreparedStatement.class);
+        statementCache.put(key, cached);
+
+        statementCache.put(key, duplicate);
+
+        verify(duplicate).close();
+        assertSame(cached, statementCache.take(key));
+    }
+
+    @Test
+    void shouldTellStatementsPreparedWithDifferentOptionsApart() {
+        String sql = "insert into persons (name) values (?)";
+
+        assertEquals(StatementCache.Key.withColumnNames(sql, new String[]{"id"}),
+                StatementCache.Key.withColumnNames(sql, new String[]{"id"}));
+        assertNotEquals(StatementCache.Key.of(sql),
+                StatementCache.Key.withAutoGeneratedKeys(sql, Statement.RETURN_GENERATED_KEYS));
+        assertNotEquals(StatementCache.Key.of(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY),
+                StatementCache.Key.of(sql, ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY));
+        assertNotEquals(StatementCache.Key.withColumnIndexes(sql, new int[]{1}),
+                StatementCache.Key.withColumnIndexes(sql, new int[]{2}));
+    }
+}
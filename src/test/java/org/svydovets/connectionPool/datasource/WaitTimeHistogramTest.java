@@ -0,0 +1,41 @@
+package org.svydovets.connectionPool.datasource;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class WaitTimeHistogramTest {
+
+    private final WaitTimeHistogram histogram = new WaitTimeHistogram();
+
+    @Test
+    void shouldReportPercentilesAsUpperBoundsOfBuckets() {
+        for (int i = 0; i < 98; i++) {
+            histogram.record(500);
+        }
+        histogram.record(TimeUnit.MICROSECONDS.toNanos(300));
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(40));
+
+        assertEquals(100, histogram.getCount());
+        assertEquals(TimeUnit.MICROSECONDS.toNanos(1), histogram.getPercentileNanos(50));
+        assertEquals(TimeUnit.MICROSECONDS.toNanos(512), histogram.getPercentileNanos(99));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(40), histogram.getPercentileNanos(100));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(40), histogram.getMaxWaitNanos());
+        assertEquals(List.of(
+                new WaitTimeHistogram.Bucket(TimeUnit.MICROSECONDS.toNanos(1), 98),
+                new WaitTimeHistogram.Bucket(TimeUnit.MICROSECONDS.toNanos(512), 1),
+                new WaitTimeHistogram.Bucket(TimeUnit.MICROSECONDS.toNanos(65536), 1)), histogram.getBuckets());
+    }
+
+    @Test
+    void shouldReportZeroWhenNothingWasRecorded() {
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getPercentileNanos(99));
+        assertEquals(0, histogram.getMeanWaitNanos());
+        assertThrows(IllegalArgumentException.class, () -> histogram.getPercentileNanos(101));
+    }
+}
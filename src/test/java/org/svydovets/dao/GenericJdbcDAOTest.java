@@ -0,0 +1,75 @@
+package org.svydovets.dao;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.svydovets.baseEntity.PersonWithVersionAnnotation;
+import org.svydovets.connectionPool.datasource.ConnectionHandler;
+import org.svydovets.exception.DaoOperationException;
+import org.svydovets.session.EntityEntry;
+import org.svydovets.session.EntityKey;
+import org.svydovets.util.EntityReflectionUtils;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class GenericJdbcDAOTest {
+
+    @Mock
+    private ConnectionHandler connectionHandler;
+    @Mock
+    private Connection connection;
+    @Mock
+    private PreparedStatement statement;
+
+    private GenericJdbcDAO jdbcDAO;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        MockitoAnnotations.openMocks(this);
+        when(connectionHandler.getConnection()).thenReturn(connection);
+        when(connection.getAutoCommit()).thenReturn(true);
+        when(connection.prepareStatement(anyString())).thenReturn(statement);
+        when(statement.executeUpdate()).thenReturn(1);
+        jdbcDAO = new GenericJdbcDAO(connectionHandler, false);
+    }
+
+    @Test
+    void shouldUpsertWithIncrementedVersionGuardedByCurrentOne() throws SQLException {
+        PersonWithVersionAnnotation person = PersonWithVersionAnnotation.builder()
+                .id(7).firstName("Taras").lastName("Shevchenko").age(47).male("M").version(3).build();
+
+        jdbcDAO.upsert(EntityEntry.valueOf(new EntityKey<>(PersonWithVersionAnnotation.class, 7), person));
+
+        verify(statement).setObject(1, 7);
+        verify(statement).setObject(6, 4);
+        verify(statement).setObject(7, 3);
+        assertEquals(4, versionOf(person));
+    }
+
+    @Test
+    void shouldFailUpsertWhenRowHoldsAnotherVersion() throws SQLException {
+        when(statement.executeUpdate()).thenReturn(0);
+        PersonWithVersionAnnotation person = PersonWithVersionAnnotation.builder().id(7).build();
+
+        assertThrows(DaoOperationException.class, () -> jdbcDAO.upsert(
+                EntityEntry.valueOf(new EntityKey<>(PersonWithVersionAnnotation.class, 7), person)));
+
+        verify(statement).setObject(6, 0);
+        verify(statement).setObject(7, null);
+        assertEquals(null, versionOf(person));
+    }
+
+    private static Object versionOf(PersonWithVersionAnnotation person) {
+        return EntityReflectionUtils.getFieldValue(person,
+                EntityReflectionUtils.getVersionField(PersonWithVersionAnnotation.class));
+    }
+}
@@ -53,6 +53,35 @@ public class SqlQueryBuilderTest {
         assertThat(updateByVersionQuery).isEqualTo(SqlQueryBuilder.buildUpdateByIdQuery(PersonWithVersionAnnotation.class));
     }
 
+    @Test
+    public void shouldReturnSelectVersionByIdQuery() {
+        String selectVersionQuery = "select version from persons where id = ?";
+        assertThat(selectVersionQuery).isEqualTo(SqlQueryBuilder.buildSelectVersionByIdQuery(PersonWithVersionAnnotation.class));
+    }
+
+    @Test
+    public void shouldReturnSelectByIdsQuery() {
+        String selectByIdsQuery = "select * from persons where id = any(?)";
+        assertThat(selectByIdsQuery).isEqualTo(SqlQueryBuilder.buildSelectByIdsQuery(PersonWithValidAnnotations.class));
+    }
+
+    @Test
+    public void shouldReturnUpsertQuery() {
+        String upsertQuery = "insert into persons (id, age, first_name, last_name, male) values (?, ?, ?, ?, ?) "
+                + "on conflict (id) do update set age = excluded.age, first_name = excluded.first_name, "
+                + "last_name = excluded.last_name, male = excluded.male";
+        assertThat(upsertQuery).isEqualTo(SqlQueryBuilder.buildUpsertQuery(PersonWithValidAnnotations.class));
+    }
+
+    @Test
+    public void shouldReturnUpsertQueryWithVersionOptLock() {
+        String upsertQuery = "insert into persons (id, age, first_name, last_name, male, version) values (?, ?, ?, ?, ?, ?) "
+                + "on conflict (id) do update set age = excluded.age, first_name = excluded.first_name, "
+                + "last_name = excluded.last_name, male = excluded.male, version = excluded.version "
+                + "where persons.version = ?";
+        assertThat(upsertQuery).isEqualTo(SqlQueryBuilder.buildUpsertQuery(PersonWithVersionAnnotation.class));
+    }
+
     @Test
     public void shouldReturnDeleteByIdQuery() {
         String selectByIdQuery = "delete from persons where id = ?";
@@ -1,23 +1,27 @@
 package org.svydovets.session;
 
-import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.platform.commons.util.ReflectionUtils;
 import org.mockito.Mockito;
 import org.svydovets.baseEntity.PersonSessionTest;
+import org.svydovets.cache.SecondLevelCache;
 import org.svydovets.connectionPool.datasource.ConnectionHandler;
 import org.svydovets.dao.GenericJdbcDAO;
+import org.svydovets.session.persistenceContext.PersistenceContext;
 import org.svydovets.util.EntityReflectionUtils;
 import org.testcontainers.shaded.org.apache.commons.lang3.RandomStringUtils;
 
 import java.lang.reflect.Field;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -29,24 +33,18 @@ class SessionTest {
 
     private Session sessionTestable;
     private GenericJdbcDAO mockJdbcDAO;
-    private final Map<EntityKey<?>, Object> entitiesCacheExpected = new HashMap<>();
-    private final Map<EntityKey<?>, Object[]> entitiesSnapshotsExpected = new HashMap<>();
     private final AtomicInteger personIdSequence = new AtomicInteger(0);
 
     @BeforeEach
     public void initData() throws SQLException {
         mockJdbcDAO = Mockito.mock(GenericJdbcDAO.class);
         ConnectionHandler connectionHandler = Mockito.mock(ConnectionHandler.class);
+        Mockito.when(connectionHandler.forSession()).thenReturn(connectionHandler);
+        Mockito.when(mockJdbcDAO.withConnectionHandler(any())).thenReturn(mockJdbcDAO);
         sessionTestable = new Session(mockJdbcDAO, connectionHandler);
         Mockito.when(connectionHandler.getConnection()).thenReturn(Mockito.mock(Connection.class));
     }
 
-    @AfterEach
-    public void cleanData() {
-        entitiesCacheExpected.clear();
-        entitiesSnapshotsExpected.clear();
-    }
-
     @Test
     void shouldReturnPersonById_positive() throws Exception {
         PersonSessionTest person1 = generateRandomPerson();
@@ -67,13 +65,13 @@ class SessionTest {
 
         doNothing().when(mockJdbcDAO).update(any());
 
-        Assertions.assertNotEquals(0, entitiesCacheExpected.size());
-        Assertions.assertNotEquals(0, entitiesSnapshotsExpected.size());
+        Assertions.assertNotEquals(0, persistenceContext().size());
+        Assertions.assertNotEquals(0, countSnapshots());
 
         sessionTestable.close();
 
-        Assertions.assertEquals(0, entitiesCacheExpected.size());
-        Assertions.assertEquals(0, entitiesSnapshotsExpected.size());
+        Assertions.assertEquals(0, persistenceContext().size());
+        Assertions.assertEquals(0, countSnapshots());
         Mockito.verify(mockJdbcDAO, times(0)).update(any());
 
         System.out.println();
@@ -87,13 +85,13 @@ class SessionTest {
 
         doNothing().when(mockJdbcDAO).update(any());
 
-        Assertions.assertNotEquals(0, entitiesCacheExpected.size());
-        Assertions.assertNotEquals(0, entitiesSnapshotsExpected.size());
+        Assertions.assertNotEquals(0, persistenceContext().size());
+        Assertions.assertNotEquals(0, countSnapshots());
 
         sessionTestable.close();
 
-        Assertions.assertEquals(0, entitiesCacheExpected.size());
-        Assertions.assertEquals(0, entitiesSnapshotsExpected.size());
+        Assertions.assertEquals(0, persistenceContext().size());
+        Assertions.assertEquals(0, countSnapshots());
 
         Mockito.verify(mockJdbcDAO, times(0)).update(any());
     }
@@ -112,17 +110,37 @@ class SessionTest {
 
         doNothing().when(mockJdbcDAO).update(any());
 
-        Assertions.assertNotEquals(0, entitiesCacheExpected.size());
-        Assertions.assertNotEquals(0, entitiesSnapshotsExpected.size());
+        Assertions.assertNotEquals(0, persistenceContext().size());
+        Assertions.assertNotEquals(0, countSnapshots());
 
         sessionTestable.close();
 
-        Assertions.assertEquals(0, entitiesCacheExpected.size());
-        Assertions.assertEquals(0, entitiesSnapshotsExpected.size());
+        Assertions.assertEquals(0, persistenceContext().size());
+        Assertions.assertEquals(0, countSnapshots());
 
         Mockito.verify(mockJdbcDAO, times(1)).update(any());
     }
 
+    @Test
+    void shouldRollBackActiveTransactionWithoutFlushOnClose() throws Exception {
+        ConnectionHandler connectionHandler = Mockito.mock(ConnectionHandler.class);
+        Connection connection = Mockito.mock(Connection.class);
+        Mockito.when(connectionHandler.forSession()).thenReturn(connectionHandler);
+        Mockito.when(connectionHandler.bindTransactionConnection()).thenReturn(connection);
+        Session session = new Session(mockJdbcDAO, connectionHandler);
+        PersonSessionTest person = generateRandomPerson();
+        Mockito.when(mockJdbcDAO.loadFromDB(any())).thenReturn(person);
+        session.transactionManager().begin();
+        session.findById(PersonSessionTest.class, person.getId()).setFirstName("changed");
+
+        session.close();
+
+        Mockito.verify(connection, times(1)).rollback();
+        Mockito.verify(connectionHandler, times(1)).releaseTransactionConnection(connection);
+        Mockito.verify(mockJdbcDAO, times(0)).update(any());
+        Assertions.assertFalse(session.transactionManager().isActive());
+    }
+
     @Test
     void shouldCloseSessionWithUpdateIfNullFieldRecord() throws Exception {
         PersonSessionTest person = generateRandomPerson();
@@ -141,13 +159,13 @@ class SessionTest {
 
         doNothing().when(mockJdbcDAO).update(any());
 
-        Assertions.assertNotEquals(0, entitiesCacheExpected.size());
-        Assertions.assertNotEquals(0, entitiesSnapshotsExpected.size());
+        Assertions.assertNotEquals(0, persistenceContext().size());
+        Assertions.assertNotEquals(0, countSnapshots());
 
         sessionTestable.close();
 
-        Assertions.assertEquals(0, entitiesCacheExpected.size());
-        Assertions.assertEquals(0, entitiesSnapshotsExpected.size());
+        Assertions.assertEquals(0, persistenceContext().size());
+        Assertions.assertEquals(0, countSnapshots());
 
         Mockito.verify(mockJdbcDAO, times(1)).update(any());
     }
@@ -167,19 +185,220 @@ class SessionTest {
 
         doNothing().when(mockJdbcDAO).update(any());
 
-        Assertions.assertNotEquals(0, entitiesCacheExpected.size());
-        Assertions.assertNotEquals(0, entitiesSnapshotsExpected.size());
+        Assertions.assertNotEquals(0, persistenceContext().size());
+        Assertions.assertNotEquals(0, countSnapshots());
+
+        sessionTestable.close();
+
+        Assertions.assertEquals(0, persistenceContext().size());
+        Assertions.assertEquals(0, countSnapshots());
+
+        Mockito.verify(mockJdbcDAO, times(1)).update(any());
+    }
+
+    @Test
+    void shouldEvictManagedEntity() {
+        PersonSessionTest person = generateRandomPerson();
+        Mockito.when(mockJdbcDAO.loadFromDB(any())).thenReturn(person);
+
+        PersonSessionTest personById = sessionTestable.findById(PersonSessionTest.class, person.getId());
+        Assertions.assertTrue(sessionTestable.contains(personById));
+
+        sessionTestable.evict(personById);
 
+        Assertions.assertFalse(sessionTestable.contains(personById));
+        Assertions.assertEquals(0, sessionTestable.getManagedEntitiesCount());
+        Assertions.assertEquals(0, sessionTestable.getEstimatedPersistenceContextBytes());
+
+        sessionTestable.findById(PersonSessionTest.class, person.getId());
+        Mockito.verify(mockJdbcDAO, times(2)).loadFromDB(any());
+    }
+
+    @Test
+    void shouldFindAllByIdInRequestedOrderLoadingOnlyUnmanagedEntities() throws Exception {
+        PersonSessionTest managed = generateRandomPerson();
+        PersonSessionTest loaded = generateRandomPerson();
+        addPersonToTastableScope(managed);
+        Mockito.when(mockJdbcDAO.loadAllFromDB(Mockito.eq(PersonSessionTest.class), any()))
+                .thenReturn(Map.of(loaded.getId(), loaded));
+
+        List<PersonSessionTest> persons = sessionTestable.findAllById(PersonSessionTest.class,
+                List.of(loaded.getId(), 100, managed.getId()));
+        List<PersonSessionTest> existingPersons = sessionTestable.findAllById(PersonSessionTest.class,
+                List.of(loaded.getId(), 100, managed.getId()), true);
+
+        Assertions.assertEquals(Arrays.asList(loaded, null, managed), persons);
+        Assertions.assertEquals(List.of(loaded, managed), existingPersons);
+        Assertions.assertTrue(sessionTestable.contains(loaded));
+        Mockito.verify(mockJdbcDAO).loadAllFromDB(PersonSessionTest.class, List.of(loaded.getId(), 100));
+        Mockito.verify(mockJdbcDAO).loadAllFromDB(PersonSessionTest.class, List.of(100));
+    }
+
+    @Test
+    void shouldMergeBlindWithoutLoadingEntity() throws Exception {
+        PersonSessionTest managed = generateRandomPerson();
+        addPersonToTastableScope(managed);
+        PersonSessionTest detachedCopy = generateRandomPerson();
+        detachedCopy.setId(managed.getId());
+        PersonSessionTest detached = generateRandomPerson();
+
+        sessionTestable.mergeBlind(detachedCopy);
+        sessionTestable.mergeBlind(detached);
+        Assertions.assertFalse(sessionTestable.contains(detached));
         sessionTestable.close();
 
-        Assertions.assertEquals(0, entitiesCacheExpected.size());
-        Assertions.assertEquals(0, entitiesSnapshotsExpected.size());
+        Assertions.assertEquals(detachedCopy.getFirstName(), managed.getFirstName());
+        Mockito.verify(mockJdbcDAO, times(0)).loadFromDB(any());
+        Mockito.verify(mockJdbcDAO).upsert(EntityEntry.valueOf(EntityKey.of(detached), detached));
+        Mockito.verify(mockJdbcDAO).update(any());
+    }
+
+    @Test
+    void shouldDetachAllEntitiesOnClear() {
+        PersonSessionTest person = generateRandomPerson();
+        Mockito.when(mockJdbcDAO.loadFromDB(any())).thenReturn(person);
+        PersonSessionTest personById = sessionTestable.findById(PersonSessionTest.class, person.getId());
+        personById.setFirstName("changed");
+
+        sessionTestable.clear();
+
+        Assertions.assertEquals(0, sessionTestable.getManagedEntitiesCount());
+
+        sessionTestable.close();
+
+        Mockito.verify(mockJdbcDAO, times(0)).update(any());
+    }
+
+    @Test
+    void shouldFlushAndClearWhenPersistenceContextBudgetIsExceeded() {
+        Map<Object, PersonSessionTest> persons = new HashMap<>();
+        for (int i = 0; i < 3; i++) {
+            PersonSessionTest person = generateRandomPerson();
+            persons.put(person.getId(), person);
+        }
+        Mockito.when(mockJdbcDAO.loadFromDB(any()))
+                .thenAnswer(invocation -> persons.get(invocation.<EntityKey<?>>getArgument(0).id()));
+        AtomicInteger listenerCalls = new AtomicInteger();
+        sessionTestable.setPersistenceContextBudget(PersistenceContextBudget.ofEntities(1),
+                (budget, managedEntities, estimatedBytes) -> listenerCalls.incrementAndGet());
+
+        PersonSessionTest first = sessionTestable.findById(PersonSessionTest.class, 1);
+        sessionTestable.findById(PersonSessionTest.class, 2);
+        first.setFirstName("changed");
+
+        Assertions.assertEquals(2, sessionTestable.getManagedEntitiesCount());
+
+        sessionTestable.findById(PersonSessionTest.class, 3);
 
+        Assertions.assertEquals(1, listenerCalls.get());
+        Assertions.assertEquals(1, sessionTestable.getAutoClearCount());
+        Assertions.assertEquals(1, sessionTestable.getManagedEntitiesCount());
+        Assertions.assertFalse(sessionTestable.contains(first));
         Mockito.verify(mockJdbcDAO, times(1)).update(any());
     }
 
+    @Test
+    void shouldDetachOnlyUnchangedEntitiesWhenBudgetIsExceededInManualFlushMode() {
+        Map<Object, PersonSessionTest> persons = new HashMap<>();
+        for (int i = 0; i < 3; i++) {
+            PersonSessionTest person = generateRandomPerson();
+            persons.put(person.getId(), person);
+        }
+        Mockito.when(mockJdbcDAO.loadFromDB(any()))
+                .thenAnswer(invocation -> persons.get(invocation.<EntityKey<?>>getArgument(0).id()));
+        sessionTestable.setFlushMode(FlushMode.MANUAL);
+        sessionTestable.setPersistenceContextBudget(PersistenceContextBudget.ofEntities(1), null);
+
+        PersonSessionTest first = sessionTestable.findById(PersonSessionTest.class, 1);
+        PersonSessionTest second = sessionTestable.findById(PersonSessionTest.class, 2);
+        first.setFirstName("changed");
+        sessionTestable.findById(PersonSessionTest.class, 3);
+
+        Assertions.assertEquals(1, sessionTestable.getAutoClearCount());
+        Assertions.assertTrue(sessionTestable.contains(first));
+        Assertions.assertFalse(sessionTestable.contains(second));
+        Mockito.verify(mockJdbcDAO, times(0)).update(any());
+    }
 
     //utils methods
+    @Test
+    void shouldFlushChangesOfQueriedTableBeforeQueryInAutoFlushMode() throws Exception {
+        PersonSessionTest person = generateRandomPerson();
+        Mockito.when(mockJdbcDAO.loadFromDB(any())).thenReturn(person);
+        PersonSessionTest personById = sessionTestable.findById(PersonSessionTest.class, person.getId());
+        personById.setFirstName("changed");
+        Field firstNameField = PersonSessionTest.class.getDeclaredField("firstName");
+
+        sessionTestable.nativeQueryAllBy("select * from notes", PersonSessionTest.class, new Object[]{}, Set.of("notes"));
+        Mockito.verify(mockJdbcDAO, times(0)).update(any());
+
+        sessionTestable.findAllBy(PersonSessionTest.class, firstNameField, "changed");
+        sessionTestable.findAllBy(PersonSessionTest.class, firstNameField, "changed");
+        Mockito.verify(mockJdbcDAO, times(1)).update(any());
+
+        sessionTestable.close();
+        Mockito.verify(mockJdbcDAO, times(1)).update(any());
+    }
+
+    @Test
+    void shouldNotFlushBeforeQueryInCommitFlushMode() throws Exception {
+        PersonSessionTest person = generateRandomPerson();
+        Mockito.when(mockJdbcDAO.loadFromDB(any())).thenReturn(person);
+        sessionTestable.setFlushMode(FlushMode.COMMIT);
+        sessionTestable.findById(PersonSessionTest.class, person.getId()).setFirstName("changed");
+
+        sessionTestable.findAllBy(PersonSessionTest.class, PersonSessionTest.class.getDeclaredField("firstName"), "changed");
+        Mockito.verify(mockJdbcDAO, times(0)).update(any());
+
+        sessionTestable.close();
+        Mockito.verify(mockJdbcDAO, times(1)).update(any());
+    }
+
+    @Test
+    void shouldKeepCachedQueryResultManagedWhenItExceedsBudget() {
+        Mockito.when(mockJdbcDAO.getSecondLevelCache()).thenReturn(new SecondLevelCache());
+        Map<Object, PersonSessionTest> persons = new HashMap<>();
+        for (int i = 0; i < 3; i++) {
+            PersonSessionTest person = generateRandomPerson();
+            persons.put(person.getId(), person);
+        }
+        Mockito.when(mockJdbcDAO.nativeQueryAllBy(any(), Mockito.eq(PersonSessionTest.class), any()))
+                .thenReturn(List.copyOf(persons.values()));
+        Mockito.when(mockJdbcDAO.loadFromDB(any()))
+                .thenAnswer(invocation -> persons.get(invocation.<EntityKey<?>>getArgument(0).id()));
+        String query = "select * from persons";
+        sessionTestable.nativeQueryAllBy(query, PersonSessionTest.class, new Object[]{}, Set.of("persons"), true);
+        sessionTestable.clear();
+        sessionTestable.setPersistenceContextBudget(PersistenceContextBudget.ofEntities(1), null);
+
+        List<PersonSessionTest> cachedResult = sessionTestable
+                .nativeQueryAllBy(query, PersonSessionTest.class, new Object[]{}, Set.of("persons"), true);
+
+        Assertions.assertEquals(3, cachedResult.size());
+        cachedResult.forEach(person -> Assertions.assertTrue(sessionTestable.contains(person)));
+        Assertions.assertEquals(0, sessionTestable.getAutoClearCount());
+    }
+
+    @Test
+    void shouldResolveCachedQueryResultByIdInNextSession() {
+        ConnectionHandler connectionHandler = Mockito.mock(ConnectionHandler.class);
+        Mockito.when(connectionHandler.forSession()).thenReturn(connectionHandler);
+        Mockito.when(mockJdbcDAO.getSecondLevelCache()).thenReturn(new SecondLevelCache());
+        PersonSessionTest person = generateRandomPerson();
+        Mockito.when(mockJdbcDAO.nativeQueryAllBy(any(), Mockito.eq(PersonSessionTest.class), any())).thenReturn(List.of(person));
+        Mockito.when(mockJdbcDAO.loadFromDB(any())).thenReturn(person);
+        String query = "select * from persons where age > ?";
+
+        new Session(mockJdbcDAO, connectionHandler)
+                .nativeQueryAllBy(query, PersonSessionTest.class, new Object[]{18}, Set.of("persons"), true);
+        List<PersonSessionTest> cachedResult = new Session(mockJdbcDAO, connectionHandler)
+                .nativeQueryAllBy(query, PersonSessionTest.class, new Object[]{18}, Set.of("persons"), true);
+
+        Assertions.assertEquals(List.of(person), cachedResult);
+        Mockito.verify(mockJdbcDAO, times(1)).nativeQueryAllBy(any(), any(), any());
+        Mockito.verify(mockJdbcDAO, times(1)).loadFromDB(any());
+    }
+
     private PersonSessionTest generateRandomPerson() {
         PersonSessionTest person = new PersonSessionTest();
         person.setId(personIdSequence.incrementAndGet());
@@ -196,13 +415,25 @@ class SessionTest {
     }
 
     private void addPersonToEntityExpected(PersonSessionTest person) throws IllegalAccessException {
-        EntityKey<PersonSessionTest> entKeyId = getEntityKeyByPerson(person);
-        entitiesCacheExpected.put(entKeyId, person);
-        Field entitiesCacheField = ReflectionUtils.findFields(Session.class,
-                field -> field.getName().equals("entitiesCache"),
+        persistenceContext().putEntity(PersonSessionTest.class, person.getId(), person);
+    }
+
+    private PersistenceContext persistenceContext() throws IllegalAccessException {
+        Field persistenceContextField = ReflectionUtils.findFields(Session.class,
+                field -> field.getName().equals("persistenceContext"),
                 ReflectionUtils.HierarchyTraversalMode.TOP_DOWN).get(0);
-        entitiesCacheField.setAccessible(true);
-        entitiesCacheField.set(sessionTestable, entitiesCacheExpected);
+        persistenceContextField.setAccessible(true);
+        return (PersistenceContext) persistenceContextField.get(sessionTestable);
+    }
+
+    private int countSnapshots() throws IllegalAccessException {
+        AtomicInteger snapshotsCount = new AtomicInteger();
+        persistenceContext().forEach((entityType, id, entity, snapshot) -> {
+            if (snapshot != null) {
+                snapshotsCount.incrementAndGet();
+            }
+        });
+        return snapshotsCount.get();
     }
 
     private static EntityKey<PersonSessionTest> getEntityKeyByPerson(PersonSessionTest person) {
@@ -216,13 +447,7 @@ class SessionTest {
             snapshots[i] = getFieldValue(entity, fields[i]);
         }
 
-        entitiesSnapshotsExpected.put(entityKey, snapshots);
-
-        Field entitiesSnapshotsField = ReflectionUtils.findFields(Session.class,
-                field -> field.getName().equals("entitiesSnapshots"),
-                ReflectionUtils.HierarchyTraversalMode.TOP_DOWN).get(0);
-        entitiesSnapshotsField.setAccessible(true);
-        entitiesSnapshotsField.set(sessionTestable, entitiesSnapshotsExpected);
+        persistenceContext().putSnapshot(entityKey.entityType(), entityKey.id(), snapshots);
     }
 
     private Object getFieldValue(Object entity, Field fields) throws IllegalAccessException {
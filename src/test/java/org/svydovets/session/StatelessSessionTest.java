@@ -0,0 +1,162 @@
+package org.svydovets.session;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.svydovets.baseEntity.PersonSessionTest;
+import org.svydovets.cache.CacheInvalidationTransport;
+import org.svydovets.cache.SecondLevelCache;
+import org.svydovets.connectionPool.datasource.ConnectionHandler;
+import org.svydovets.dao.GenericJdbcDAO;
+import org.svydovets.exception.SessionOperationException;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class StatelessSessionTest {
+
+    @Mock
+    private ConnectionHandler connectionHandler;
+    @Mock
+    private Connection connection;
+    @Mock
+    private PreparedStatement insertStatement;
+    @Mock
+    private PreparedStatement deleteStatement;
+    @Mock
+    private ResultSet generatedKeys;
+
+    private StatelessSession statelessSession;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        MockitoAnnotations.openMocks(this);
+        when(connectionHandler.getConnection()).thenReturn(connection);
+        when(connection.prepareStatement(anyString(), eq(Statement.RETURN_GENERATED_KEYS))).thenReturn(insertStatement);
+        when(connection.prepareStatement(anyString())).thenReturn(deleteStatement);
+        when(insertStatement.executeBatch()).thenReturn(new int[]{1, 1}, new int[]{1});
+        when(insertStatement.getGeneratedKeys()).thenReturn(generatedKeys);
+        when(generatedKeys.next()).thenReturn(true);
+        when(generatedKeys.getObject(1)).thenReturn(1, 2, 3);
+        when(deleteStatement.executeBatch()).thenReturn(new int[]{1});
+
+        GenericJdbcDAO jdbcDAO = new GenericJdbcDAO(connectionHandler, false);
+        statelessSession = new StatelessSession(jdbcDAO, connectionHandler, 2);
+    }
+
+    @Test
+    void shouldGroupInsertsIntoBatchesOnSingleConnection() throws SQLException {
+        PersonSessionTest first = newPerson();
+        PersonSessionTest second = newPerson();
+        PersonSessionTest third = newPerson();
+
+        statelessSession.insert(first);
+        statelessSession.insert(second);
+        statelessSession.insert(third);
+
+        verify(insertStatement, times(3)).addBatch();
+        verify(insertStatement, times(1)).executeBatch();
+        assertEquals(1, first.getId());
+        assertEquals(2, second.getId());
+
+        statelessSession.close();
+
+        verify(insertStatement, times(2)).executeBatch();
+        assertEquals(3, third.getId());
+        verify(connectionHandler, times(1)).getConnection();
+        verify(connection, times(1)).close();
+    }
+
+    @Test
+    void shouldExecutePendingBatchBeforeStatementWithDifferentSql() throws SQLException {
+        PersonSessionTest inserted = newPerson();
+        PersonSessionTest deleted = newPerson();
+        deleted.setId(10);
+
+        statelessSession.insert(inserted);
+        statelessSession.delete(deleted);
+
+        InOrder executionOrder = inOrder(insertStatement, deleteStatement);
+        executionOrder.verify(insertStatement).executeBatch();
+        executionOrder.verify(deleteStatement).setObject(1, 10);
+        verify(deleteStatement, never()).executeBatch();
+
+        statelessSession.flush();
+
+        verify(deleteStatement, times(1)).executeBatch();
+    }
+
+    @Test
+    void shouldDiscardPendingBatchOnRollback() throws SQLException {
+        statelessSession.transactionManager().begin();
+        statelessSession.insert(newPerson());
+        statelessSession.transactionManager().callback();
+
+        verify(insertStatement, never()).executeBatch();
+        verify(connection, times(1)).rollback();
+    }
+
+    @Test
+    void shouldPublishInvalidationsOfBatchCreatedBeforeTransactionOnlyOnCommit() throws SQLException {
+        AtomicBoolean autoCommit = new AtomicBoolean(true);
+        when(connection.getAutoCommit()).thenAnswer(invocation -> autoCommit.get());
+        doAnswer(invocation -> {
+            autoCommit.set(invocation.getArgument(0));
+            return null;
+        }).when(connection).setAutoCommit(anyBoolean());
+        CacheInvalidationTransport invalidationTransport = mock(CacheInvalidationTransport.class);
+        SecondLevelCache secondLevelCache = new SecondLevelCache(null, null, invalidationTransport);
+        StatelessSession session = new StatelessSession(
+                new GenericJdbcDAO(connectionHandler, false, secondLevelCache), connectionHandler, 2);
+
+        session.insert(newPerson());
+        session.transactionManager().begin();
+        session.insert(newPerson());
+
+        verify(insertStatement, times(1)).executeBatch();
+        verify(invalidationTransport, never()).publish(any());
+
+        session.transactionManager().commit();
+
+        InOrder inOrder = inOrder(connection, invalidationTransport);
+        inOrder.verify(connection).commit();
+        inOrder.verify(invalidationTransport).publish(any());
+        verify(invalidationTransport, times(1)).publish(any());
+    }
+
+    @Test
+    void shouldThrowExceptionWhenSessionIsClosed() {
+        statelessSession.close();
+
+        assertThrows(SessionOperationException.class, () -> statelessSession.insert(newPerson()));
+    }
+
+    private PersonSessionTest newPerson() {
+        PersonSessionTest person = new PersonSessionTest();
+        person.setFirstName("firstName");
+        person.setLastName("lastName");
+        person.setAge(20);
+        person.setMale("m");
+        return person;
+    }
+}
@@ -0,0 +1,185 @@
+package org.svydovets.session.actionQueue.executor;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.svydovets.baseEntity.Note;
+import org.svydovets.baseEntity.Person;
+import org.svydovets.connectionPool.datasource.ConnectionHandler;
+import org.svydovets.dao.GenericJdbcDAO;
+import org.svydovets.dao.JdbcBatch;
+import org.svydovets.session.EntityEntry;
+import org.svydovets.session.EntityKey;
+import org.svydovets.session.FlushThreshold;
+import org.svydovets.session.actionQueue.action.MergeAction;
+import org.svydovets.session.actionQueue.action.RemoveAction;
+import org.svydovets.session.actionQueue.action.UpsertAction;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ActionQueueTest {
+
+    @Mock
+    private GenericJdbcDAO jdbcDAO;
+    @Mock
+    private ConnectionHandler connectionHandler;
+    @Mock
+    private Connection connection;
+    @Mock
+    private JdbcBatch jdbcBatch;
+
+    private ActionQueue actionQueue;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        MockitoAnnotations.openMocks(this);
+        when(connectionHandler.getConnection()).thenReturn(connection);
+        when(jdbcDAO.createBatch(connection, 10)).thenReturn(jdbcBatch);
+        actionQueue = new ActionQueue(jdbcDAO, connectionHandler, 10);
+    }
+
+    @Test
+    void shouldBatchActionsForSameTableAndExecuteSingleActionsDirectly() throws SQLException {
+        EntityEntry firstNote = entry(Note.class, 1, new Note());
+        EntityEntry secondNote = entry(Note.class, 2, new Note());
+        EntityEntry person = entry(Person.class, 1, new Person());
+        actionQueue.addMergeAction(new MergeAction(firstNote));
+        actionQueue.addRemoveAction(new RemoveAction(person));
+        actionQueue.addMergeAction(new MergeAction(secondNote));
+
+        actionQueue.performAccumulatedActions();
+
+        InOrder executionOrder = inOrder(jdbcBatch, jdbcDAO);
+        executionOrder.verify(jdbcBatch).addUpdate(firstNote);
+        executionOrder.verify(jdbcBatch).addUpdate(secondNote);
+        executionOrder.verify(jdbcBatch).close();
+        executionOrder.verify(jdbcDAO).remove(person.entityKey());
+        verify(jdbcDAO, never()).update(any());
+        verify(connection, times(1)).close();
+        assertEquals(2, actionQueue.getLastFlushPlan().getSteps().size());
+        assertEquals(0, actionQueue.size());
+    }
+
+    @Test
+    void shouldNotBatchWhenBatchSizeIsOne() {
+        actionQueue = new ActionQueue(jdbcDAO, connectionHandler, 1);
+        actionQueue.addMergeAction(new MergeAction(entry(Note.class, 1, new Note())));
+        actionQueue.addMergeAction(new MergeAction(entry(Note.class, 2, new Note())));
+
+        actionQueue.performAccumulatedActions();
+
+        verify(jdbcDAO, times(2)).update(any());
+        verify(jdbcDAO, never()).createBatch(any(), anyInt());
+    }
+
+    @Test
+    void shouldCollapseRepeatedMergesIntoOneWithFinalState() {
+        EntityEntry firstState = entry(Note.class, 1, new Note());
+        EntityEntry finalState = entry(Note.class, 1, new Note());
+        actionQueue.addMergeAction(new MergeAction(firstState));
+        actionQueue.addMergeAction(new MergeAction(entry(Note.class, 1, new Note())));
+        actionQueue.addMergeAction(new MergeAction(finalState));
+
+        assertEquals(1, actionQueue.size());
+        actionQueue.performAccumulatedActions();
+
+        verify(jdbcDAO, times(1)).update(finalState);
+        verify(jdbcDAO, never()).update(firstState);
+        assertEquals(2, actionQueue.getCoalescedActionsCount());
+    }
+
+    @Test
+    void shouldReplaceMergeWithRemoveOfSameEntity() {
+        EntityEntry note = entry(Note.class, 1, new Note());
+        actionQueue.addMergeAction(new MergeAction(note));
+        actionQueue.addRemoveAction(new RemoveAction(note));
+        actionQueue.addMergeAction(new MergeAction(note));
+
+        assertEquals(1, actionQueue.size());
+        actionQueue.performAccumulatedActions();
+
+        verify(jdbcDAO, never()).update(any());
+        verify(jdbcDAO, times(1)).remove(note.entityKey());
+    }
+
+    @Test
+    void shouldBatchUpsertsWithInsertsAndDropQueuedRemoveOfSameEntity() {
+        EntityEntry firstNote = entry(Note.class, 1, new Note());
+        EntityEntry secondNote = entry(Note.class, 2, new Note());
+        EntityEntry person = entry(Person.class, 1, new Person());
+        actionQueue.addMergeAction(new MergeAction(person));
+        actionQueue.addRemoveAction(new RemoveAction(firstNote));
+        actionQueue.addUpsertAction(new UpsertAction(firstNote));
+        actionQueue.addUpsertAction(new UpsertAction(secondNote));
+        actionQueue.addUpsertAction(new UpsertAction(secondNote));
+
+        assertEquals(3, actionQueue.size());
+        actionQueue.performAccumulatedActions();
+
+        InOrder executionOrder = inOrder(jdbcBatch, jdbcDAO);
+        executionOrder.verify(jdbcBatch).addUpsert(firstNote);
+        executionOrder.verify(jdbcBatch).addUpsert(secondNote);
+        executionOrder.verify(jdbcDAO).update(person);
+        verify(jdbcDAO, never()).remove(any());
+        assertEquals(2, actionQueue.getCoalescedActionsCount());
+    }
+
+    @Test
+    void shouldFlushIncrementallyWhenActionThresholdIsExceeded() throws SQLException {
+        actionQueue.setFlushThreshold(FlushThreshold.ofActions(2));
+        EntityEntry firstNote = entry(Note.class, 1, new Note());
+        EntityEntry secondNote = entry(Note.class, 2, new Note());
+        actionQueue.addMergeAction(new MergeAction(firstNote));
+        actionQueue.addMergeAction(new MergeAction(secondNote));
+
+        verify(jdbcBatch, never()).addUpdate(any());
+        actionQueue.addMergeAction(new MergeAction(entry(Note.class, 3, new Note())));
+
+        verify(jdbcBatch).addUpdate(firstNote);
+        verify(jdbcBatch).addUpdate(secondNote);
+        assertEquals(0, actionQueue.size());
+        assertEquals(1, actionQueue.getIncrementalFlushCount());
+        assertTrue(actionQueue.getLastFlushPlan().getSteps().get(0).actions().isEmpty());
+        assertEquals(3, actionQueue.getLastFlushPlan().getActionsCount());
+    }
+
+    @Test
+    void shouldFlushIncrementallyWhenByteThresholdIsExceeded() {
+        actionQueue.setFlushThreshold(FlushThreshold.ofBytes(1));
+        actionQueue.addRemoveAction(new RemoveAction(entry(Note.class, 1, new Note())));
+
+        verify(jdbcDAO).remove(new EntityKey<>(Note.class, 1));
+        assertEquals(0, actionQueue.size());
+        assertEquals(0, actionQueue.getEstimatedBytes());
+    }
+
+    @Test
+    void shouldTrackEstimatedBytesOfQueuedActions() {
+        actionQueue.setFlushThreshold(FlushThreshold.ofBytes(Long.MAX_VALUE));
+        actionQueue.addMergeAction(new MergeAction(entry(Note.class, 1, new Note())));
+        long singleActionBytes = actionQueue.getEstimatedBytes();
+        actionQueue.addMergeAction(new MergeAction(entry(Note.class, 1, new Note())));
+        actionQueue.addMergeAction(new MergeAction(entry(Note.class, 2, new Note())));
+
+        assertTrue(singleActionBytes > 0);
+        assertEquals(2 * singleActionBytes, actionQueue.getEstimatedBytes());
+        assertEquals(0, actionQueue.getIncrementalFlushCount());
+    }
+
+    private static EntityEntry entry(Class<?> entityType, Object id, Object entity) {
+        return EntityEntry.valueOf(new EntityKey<>(entityType, id), entity);
+    }
+}
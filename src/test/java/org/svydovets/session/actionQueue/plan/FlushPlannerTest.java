@@ -0,0 +1,82 @@
+package org.svydovets.session.actionQueue.plan;
+
+import org.junit.jupiter.api.Test;
+import org.svydovets.baseEntity.Address;
+import org.svydovets.baseEntity.Note;
+import org.svydovets.baseEntity.Person;
+import org.svydovets.session.EntityEntry;
+import org.svydovets.session.EntityKey;
+import org.svydovets.session.actionQueue.action.ActionPriority;
+import org.svydovets.session.actionQueue.action.MergeAction;
+import org.svydovets.session.actionQueue.action.PersistAction;
+import org.svydovets.session.actionQueue.action.RemoveAction;
+import org.svydovets.session.actionQueue.action.UpsertAction;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FlushPlannerTest {
+
+    private final FlushPlanner flushPlanner = new FlushPlanner();
+
+    @Test
+    void shouldInsertParentsBeforeChildrenAndDeleteChildrenBeforeParents() {
+        List<UpsertAction> upsertActions = List.of(
+                new UpsertAction(entry(Note.class, 3, new Note())),
+                new UpsertAction(entry(Address.class, 1, new Address())),
+                new UpsertAction(entry(Person.class, 2, new Person())),
+                new UpsertAction(entry(Note.class, 4, new Note())));
+        List<RemoveAction> removeActions = List.of(
+                new RemoveAction(entry(Person.class, 1, new Person())),
+                new RemoveAction(entry(Note.class, 2, new Note())));
+
+        FlushPlan flushPlan = flushPlanner.plan(upsertActions, List.<MergeAction>of(), removeActions);
+
+        assertEquals(List.of(Person.class, Note.class, Address.class), flushPlan.getEntityTypeOrder());
+        assertEquals(List.of("PERSIST persons x1", "PERSIST notes x2", "PERSIST addresses x1",
+                        "REMOVE notes x1", "REMOVE persons x1"),
+                flushPlan.getSteps().stream().map(FlushPlan.Step::toString).toList());
+        assertEquals(6, flushPlan.getActionsCount());
+    }
+
+    @Test
+    void shouldGroupActionsByTableAndKeepQueuedOrderWithinGroup() {
+        MergeAction firstNote = new MergeAction(entry(Note.class, 1, new Note()));
+        MergeAction person = new MergeAction(entry(Person.class, 1, new Person()));
+        MergeAction secondNote = new MergeAction(entry(Note.class, 2, new Note()));
+
+        FlushPlan flushPlan = flushPlanner.plan(List.of(firstNote, person, secondNote));
+
+        assertEquals(2, flushPlan.getSteps().size());
+        FlushPlan.Step noteStep = flushPlan.getSteps().get(1);
+        assertEquals(ActionPriority.MERGE, noteStep.priority());
+        assertEquals("notes", noteStep.tableName());
+        assertTrue(noteStep.batchable());
+        assertEquals(List.of(firstNote, secondNote), noteStep.actions());
+    }
+
+    @Test
+    void shouldOrderStepsByActionPriority() {
+        FlushPlan flushPlan = flushPlanner.plan(
+                List.of(new RemoveAction(entry(Person.class, 1, new Person()))),
+                List.of(new MergeAction(entry(Person.class, 2, new Person()))),
+                List.of(new PersistAction(new Person(), false)));
+
+        assertEquals(List.of(ActionPriority.PERSIST, ActionPriority.MERGE, ActionPriority.REMOVE),
+                flushPlan.getSteps().stream().map(FlushPlan.Step::priority).toList());
+    }
+
+    @Test
+    void shouldReturnEmptyPlanWhenThereAreNoActions() {
+        FlushPlan flushPlan = flushPlanner.plan(List.of(), List.of(), List.of());
+
+        assertTrue(flushPlan.isEmpty());
+        assertEquals(0, flushPlan.getActionsCount());
+    }
+
+    private static EntityEntry entry(Class<?> entityType, Object id, Object entity) {
+        return EntityEntry.valueOf(new EntityKey<>(entityType, id), entity);
+    }
+}
@@ -0,0 +1,143 @@
+package org.svydovets.session.persistenceContext;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.svydovets.baseEntity.Note;
+import org.svydovets.baseEntity.PersonSessionTest;
+import org.svydovets.session.EntityKey;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PersistenceContextTest {
+
+    private PersistenceContext persistenceContext;
+
+    @BeforeEach
+    void setUp() {
+        persistenceContext = new PersistenceContext();
+    }
+
+    @Test
+    void shouldKeepEntitiesOfDifferentTypesWithSameIdSeparately() {
+        PersonSessionTest person = new PersonSessionTest();
+        Note note = new Note();
+
+        persistenceContext.putEntity(PersonSessionTest.class, 1, person);
+        persistenceContext.putEntity(Note.class, 1, note);
+
+        assertSame(person, persistenceContext.getEntity(PersonSessionTest.class, 1));
+        assertSame(note, persistenceContext.getEntity(new EntityKey<>(Note.class, 1)));
+        assertEquals(2, persistenceContext.size());
+    }
+
+    @Test
+    void shouldKeepSnapshotWhenEntityIsReplaced() {
+        PersonSessionTest person = new PersonSessionTest();
+        PersonSessionTest mergedPerson = new PersonSessionTest();
+        Object[] snapshot = {"firstName"};
+
+        persistenceContext.putEntity(PersonSessionTest.class, 1, person);
+        persistenceContext.putSnapshot(PersonSessionTest.class, 1, snapshot);
+
+        assertSame(person, persistenceContext.putEntity(PersonSessionTest.class, 1, mergedPerson));
+        assertSame(mergedPerson, persistenceContext.getEntity(PersonSessionTest.class, 1));
+        assertSame(snapshot, persistenceContext.getSnapshot(PersonSessionTest.class, 1));
+        assertEquals(1, persistenceContext.size());
+    }
+
+    @Test
+    void shouldThrowExceptionWhenSnapshotIsPutForNotManagedEntity() {
+        persistenceContext.putEntity(PersonSessionTest.class, 1, new PersonSessionTest());
+
+        assertThrows(IllegalStateException.class,
+                () -> persistenceContext.putSnapshot(PersonSessionTest.class, 2, new Object[0]));
+    }
+
+    @Test
+    void shouldFindAllEntitiesAfterResizeAndRemoval() {
+        Map<Integer, PersonSessionTest> expected = new HashMap<>();
+        for (int id = 1; id <= 10_000; id++) {
+            PersonSessionTest person = new PersonSessionTest();
+            persistenceContext.putEntity(PersonSessionTest.class, id, person);
+            persistenceContext.putSnapshot(PersonSessionTest.class, id, new Object[]{id});
+            expected.put(id, person);
+        }
+
+        for (int id = 1; id <= 10_000; id += 3) {
+            assertArrayEquals(new Object[]{id}, persistenceContext.remove(PersonSessionTest.class, id));
+            expected.remove(id);
+        }
+
+        assertEquals(expected.size(), persistenceContext.size());
+        for (int id = 1; id <= 10_000; id++) {
+            assertSame(expected.get(id), persistenceContext.getEntity(PersonSessionTest.class, id));
+        }
+        persistenceContext.forEach((entityType, id, entity, snapshot) -> {
+            assertTrue(id instanceof Integer);
+            assertSame(expected.get(id), entity);
+            assertArrayEquals(new Object[]{id}, snapshot);
+        });
+    }
+
+    @Test
+    void shouldRemoveEntitiesFromGenericIdentityMapWithCollidingHashes() {
+        ObjectIdEntityMap identityMap = new ObjectIdEntityMap(EntityIdentityMap.DEFAULT_CAPACITY);
+        // "Aa" and "BB" have the same hash code
+        identityMap.put("Aa", "first");
+        identityMap.put("BB", "second");
+        identityMap.put("AaAa", "third");
+        identityMap.put("BBBB", "fourth");
+
+        identityMap.remove("Aa");
+
+        assertNull(identityMap.getEntity("Aa"));
+        assertEquals("second", identityMap.getEntity("BB"));
+        assertEquals("third", identityMap.getEntity("AaAa"));
+        assertEquals("fourth", identityMap.getEntity("BBBB"));
+        assertEquals(3, identityMap.size());
+    }
+
+    @Test
+    void shouldKeepEntityWithNonNumericIdOfNumericIdTypeInGenericIdentityMap() {
+        PersonSessionTest person = new PersonSessionTest();
+        PersonSessionTest personByStringId = new PersonSessionTest();
+        persistenceContext.putEntity(PersonSessionTest.class, 5, person);
+
+        assertNull(persistenceContext.getEntity(PersonSessionTest.class, "5"));
+        persistenceContext.putEntity(PersonSessionTest.class, "5", personByStringId);
+        persistenceContext.putSnapshot(PersonSessionTest.class, "5", new Object[]{"5"});
+
+        assertSame(person, persistenceContext.getEntity(PersonSessionTest.class, 5));
+        assertSame(personByStringId, persistenceContext.getEntity(PersonSessionTest.class, "5"));
+        assertArrayEquals(new Object[]{"5"}, persistenceContext.getSnapshot(PersonSessionTest.class, "5"));
+        assertEquals(2, persistenceContext.size());
+        Map<Object, Object> managedEntities = new HashMap<>();
+        persistenceContext.forEach((entityType, id, entity, snapshot) -> managedEntities.put(id, entity));
+        assertEquals(Map.of(5, person, "5", personByStringId), managedEntities);
+
+        assertArrayEquals(new Object[]{"5"}, persistenceContext.remove(PersonSessionTest.class, "5"));
+        assertFalse(persistenceContext.containsKey(PersonSessionTest.class, "5"));
+        assertEquals(1, persistenceContext.size());
+    }
+
+    @Test
+    void shouldRemoveAllEntitiesOnClear() {
+        persistenceContext.putEntity(PersonSessionTest.class, 1, new PersonSessionTest());
+        persistenceContext.putEntity(Note.class, 1, new Note());
+
+        persistenceContext.clear();
+
+        assertEquals(0, persistenceContext.size());
+        assertFalse(persistenceContext.containsKey(PersonSessionTest.class, 1));
+        assertFalse(persistenceContext.containsKey(new EntityKey<>(Note.class, 1)));
+    }
+}
@@ -4,8 +4,9 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
-import org.svydovets.connectionPool.datasource.ConnectionAttributes;
+import org.svydovets.cache.SecondLevelCache;
 import org.svydovets.connectionPool.datasource.ConnectionHandler;
+import org.svydovets.session.FlushMode;
 import org.svydovets.session.actionQueue.executor.ActionQueue;
 
 import java.sql.Connection;
@@ -22,23 +23,19 @@ class TransactionManagerImplTest {
     private ActionQueue actionQueue;
     @Mock
     private Connection connection;
-    @Mock
-    private ConnectionAttributes connectionAttributes;
     private TransactionManagerImpl transactionManager;
 
     @BeforeEach
     void setUp() throws SQLException {
         MockitoAnnotations.openMocks(this);
-        when(connectionHandler.getConnection()).thenReturn(connection);
-        when(connectionHandler.getConnectionAttributes()).thenReturn(connectionAttributes);
+        when(connectionHandler.bindTransactionConnection()).thenReturn(connection);
         transactionManager = new TransactionManagerImpl(connectionHandler, actionQueue);
     }
 
     @Test
     void shouldBeginTransactionWhenNoneIsActive() throws SQLException {
         transactionManager.begin();
-        verify(connectionHandler, times(1)).getConnectionAttributes();
-        verify(connectionAttributes, times(1)).setTransactionActivated(true);
+        verify(connectionHandler, times(1)).bindTransactionConnection();
         verify(connection, times(1)).setAutoCommit(false);
         assertTrue(transactionManager.isActive());
     }
@@ -57,9 +54,34 @@ class TransactionManagerImplTest {
 
         verify(actionQueue, times(1)).performAccumulatedActions();
         verify(connection, times(1)).commit();
+        verify(connectionHandler, times(1)).releaseTransactionConnection(connection);
         assertFalse(transactionManager.isActive());
     }
 
+    @Test
+    void shouldNotFlushOnCommitInManualFlushMode() throws SQLException {
+        transactionManager = new TransactionManagerImpl(connectionHandler, actionQueue, () -> FlushMode.MANUAL);
+        transactionManager.begin();
+        transactionManager.commit();
+
+        verify(actionQueue, never()).performAccumulatedActions();
+        verify(connection, times(1)).commit();
+    }
+
+    @Test
+    void shouldCompleteTransactionInSecondLevelCache() {
+        SecondLevelCache secondLevelCache = mock(SecondLevelCache.class);
+        transactionManager = new TransactionManagerImpl(connectionHandler, actionQueue, () -> FlushMode.AUTO, secondLevelCache);
+
+        transactionManager.begin();
+        transactionManager.commit();
+        transactionManager.begin();
+        transactionManager.callback();
+
+        verify(secondLevelCache, times(1)).completeTransaction(connection, true);
+        verify(secondLevelCache, times(1)).completeTransaction(connection, false);
+    }
+
     @Test
     void shouldThrowExceptionWhenTransactionIsNotActive() {
         Exception exception = assertThrows(TransactionException.class, transactionManager::commit);
@@ -72,6 +94,7 @@ class TransactionManagerImplTest {
         transactionManager.callback();
 
         verify(connection, times(1)).rollback();
+        verify(connectionHandler, times(1)).releaseTransactionConnection(connection);
         assertFalse(transactionManager.isActive());
     }
 
@@ -81,6 +104,27 @@ class TransactionManagerImplTest {
         assertEquals("Transaction is not started", exception.getMessage());
     }
 
+    @Test
+    void shouldReleaseConnectionWhenRollbackFails() throws SQLException {
+        transactionManager.begin();
+        doThrow(new SQLException("Connection reset")).when(connection).rollback();
+
+        assertThrows(TransactionException.class, () -> transactionManager.callback());
+
+        verify(connectionHandler, times(1)).releaseTransactionConnection(connection);
+        assertFalse(transactionManager.isActive());
+    }
+
+    @Test
+    void shouldReleaseConnectionWhenTransactionCannotBegin() throws SQLException {
+        doThrow(new SQLException("Connection reset")).when(connection).setAutoCommit(false);
+
+        assertThrows(TransactionException.class, () -> transactionManager.begin());
+
+        verify(connectionHandler, times(1)).releaseTransactionConnection(connection);
+        assertFalse(transactionManager.isActive());
+    }
+
     @Test
     void shouldIsActiveReflectsCurrentTransactionState() {
         assertFalse(transactionManager.isActive());